@@ -19,6 +19,11 @@ public class RemarkClientFallback implements FallbackFactory<RemarkClient> {
             public Set<Long> isBizLiked(Iterable<Long> bizIds) {
                 return CollUtils.emptySet();
             }
+
+            @Override
+            public Set<Long> isBizLiked(String bizType, Iterable<Long> bizIds) {
+                return CollUtils.emptySet();
+            }
         };
     }
 }
\ No newline at end of file
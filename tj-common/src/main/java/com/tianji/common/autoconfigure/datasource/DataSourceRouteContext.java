@@ -0,0 +1,50 @@
+package com.tianji.common.autoconfigure.datasource;
+
+/**
+ * 数据源路由上下文，记录当前线程是否要求只读路由，以及最近一次写操作的时间
+ */
+public class DataSourceRouteContext {
+    private static final ThreadLocal<Boolean> READ_ONLY = new ThreadLocal<>();
+    private static final ThreadLocal<Long> LAST_WRITE_TIME = new ThreadLocal<>();
+
+    /**
+     * 设置只读路由标记
+     *
+     * @return 设置之前的标记，用于嵌套调用时恢复
+     */
+    public static Boolean setReadOnly(Boolean readOnly) {
+        Boolean old = READ_ONLY.get();
+        if (readOnly == null) {
+            READ_ONLY.remove();
+        } else {
+            READ_ONLY.set(readOnly);
+        }
+        return old;
+    }
+
+    public static boolean isReadOnly() {
+        return Boolean.TRUE.equals(READ_ONLY.get());
+    }
+
+    /**
+     * 标记当前线程执行过写操作，之后一段时间内的读操作强制走主库，保证读己之写
+     */
+    public static void markWrite() {
+        LAST_WRITE_TIME.set(System.currentTimeMillis());
+    }
+
+    /**
+     * 判断当前线程是否需要强制走主库
+     *
+     * @param stickyMillis 写操作后强制走主库的时长
+     */
+    public static boolean isPrimaryForced(long stickyMillis) {
+        Long time = LAST_WRITE_TIME.get();
+        return time != null && System.currentTimeMillis() - time <= stickyMillis;
+    }
+
+    public static void clear() {
+        READ_ONLY.remove();
+        LAST_WRITE_TIME.remove();
+    }
+}
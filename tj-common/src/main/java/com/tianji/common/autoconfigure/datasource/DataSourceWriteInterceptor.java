@@ -0,0 +1,28 @@
+package com.tianji.common.autoconfigure.datasource;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+
+/**
+ * 写操作标记拦截器，执行insert、update、delete前标记当前线程，写操作本身和之后的读操作都强制走主库，保证读己之写
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})
+})
+public class DataSourceWriteInterceptor implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        // 执行之前标记，写操作获取连接时就路由到主库；执行之后再次标记，粘滞时长从写完开始计算
+        DataSourceRouteContext.markWrite();
+        try {
+            return invocation.proceed();
+        } finally {
+            DataSourceRouteContext.markWrite();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.tianji.common.autoconfigure.datasource;
+
+import com.tianji.common.autoconfigure.datasource.aspect.DataSourceRouteAspect;
+import com.tianji.common.filters.DataSourceRouteFilter;
+import com.tianji.common.utils.StringUtils;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.ibatis.plugin.Interceptor;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读写分离配置，开启后原有的spring.datasource作为主库，tj.datasource.replica.nodes作为从库。
+ * 连接池使用spring.datasource.hikari的配置，从库可以用tj.datasource.replica.hikari覆盖其中的部分配置
+ */
+@Configuration
+@ConditionalOnClass({AbstractRoutingDataSource.class, HikariDataSource.class})
+@ConditionalOnProperty(prefix = "tj.datasource.replica", name = "enable", havingValue = "true")
+@AutoConfigureBefore(DataSourceAutoConfiguration.class)
+@EnableConfigurationProperties({DataSourceProperties.class, ReplicaDataSourceProperties.class})
+public class ReadWriteDataSourceConfig {
+
+    /**
+     * 主库，连接池配置与未开启读写分离时一致
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReadWriteRoutingDataSource readWriteRoutingDataSource(
+            HikariDataSource primaryDataSource, DataSourceProperties dataSourceProperties,
+            ReplicaDataSourceProperties replicaProperties, Environment environment) {
+        // 1.从库，未配置用户名密码的沿用主库的
+        Binder binder = Binder.get(environment);
+        List<DataSource> replicas = new ArrayList<>(replicaProperties.getNodes().size());
+        for (int i = 0; i < replicaProperties.getNodes().size(); i++) {
+            ReplicaDataSourceProperties.Node node = replicaProperties.getNodes().get(i);
+            HikariDataSource replica = dataSourceProperties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(node.getUrl())
+                    .username(StringUtils.isBlank(node.getUsername()) ? dataSourceProperties.determineUsername() : node.getUsername())
+                    .password(StringUtils.isBlank(node.getPassword()) ? dataSourceProperties.determinePassword() : node.getPassword())
+                    .build();
+            // 2.连接池沿用主库的配置，再用从库的配置覆盖
+            bindPool(binder, replica, i);
+            replicas.add(replica);
+        }
+        return new ReadWriteRoutingDataSource(primaryDataSource, replicas, replicaProperties);
+    }
+
+    static void bindPool(Binder binder, HikariDataSource replica, int index) {
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(replica));
+        binder.bind("tj.datasource.replica.hikari", Bindable.ofInstance(replica));
+        // 连接池名称不能重复
+        if (replica.getPoolName() != null) {
+            replica.setPoolName(replica.getPoolName() + "-replica-" + index);
+        }
+    }
+
+    /**
+     * 对外暴露的数据源，延迟到真正执行SQL时才获取连接，此时只读事务、路由标记都已经设置完成
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource readWriteRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readWriteRoutingDataSource);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public DataSourceRouteAspect dataSourceRouteAspect() {
+        return new DataSourceRouteAspect();
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public DataSourceRouteFilter dataSourceRouteFilter() {
+        return new DataSourceRouteFilter();
+    }
+
+    @Configuration
+    @ConditionalOnClass(Interceptor.class)
+    static class WriteMarkConfiguration {
+        /**
+         * 写操作标记拦截器，会被MybatisPlus自动注册到SqlSessionFactory
+         */
+        @Bean
+        public DataSourceWriteInterceptor dataSourceWriteInterceptor() {
+            return new DataSourceWriteInterceptor();
+        }
+    }
+}
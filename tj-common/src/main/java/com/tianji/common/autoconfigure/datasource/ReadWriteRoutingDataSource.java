@@ -0,0 +1,184 @@
+package com.tianji.common.autoconfigure.datasource;
+
+import com.tianji.common.utils.StringUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h1>读写分离路由数据源</h1>
+ * 路由规则：
+ * <ol>
+ *     <li>当前线程刚执行过写操作（读己之写），或处于读写事务中，走主库</li>
+ *     <li>标记了{@link com.tianji.common.autoconfigure.datasource.annotations.ReadOnlyRoute}或处于只读事务中，轮询健康的从库</li>
+ *     <li>没有健康的从库（连接失败或主从延迟过大），回退到主库</li>
+ *     <li>其它情况走主库</li>
+ * </ol>
+ * 注意：只读事务的标记在事务开启后才设置，因此该数据源需要被LazyConnectionDataSourceProxy包装，延迟到真正执行SQL时才获取连接
+ */
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    public static final String PRIMARY = "primary";
+    private static final String REPLICA_PREFIX = "replica-";
+    private static final String LAG_COLUMN = "Seconds_Behind_Master";
+
+    private final List<Replica> replicas;
+    private final ReplicaDataSourceProperties properties;
+    private final AtomicInteger counter = new AtomicInteger();
+    private ScheduledExecutorService healthChecker;
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicaDataSources,
+                                      ReplicaDataSourceProperties properties) {
+        this.properties = properties;
+        this.replicas = new ArrayList<>(replicaDataSources.size());
+        Map<Object, Object> targets = new HashMap<>(replicaDataSources.size() + 1);
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicaDataSources.size(); i++) {
+            Replica replica = new Replica(REPLICA_PREFIX + i, replicaDataSources.get(i));
+            replicas.add(replica);
+            targets.put(replica.key, replica.dataSource);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        // 1.启动时先检查一次
+        checkReplicas();
+        // 2.定时检查，间隔不大于0则不检查
+        long interval = properties.getCheckInterval().toMillis();
+        if (interval <= 0 || replicas.isEmpty()) {
+            return;
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-health-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkReplicas, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        // 1.读己之写，刚写过的线程走主库
+        if (DataSourceRouteContext.isPrimaryForced(properties.getStickyDuration().toMillis())) {
+            return PRIMARY;
+        }
+        // 2.读写事务中的连接会被之后的写操作复用，即使先执行的是只读路由的方法，也走主库
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        // 3.判断是否是只读请求
+        boolean readOnly = DataSourceRouteContext.isReadOnly()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        if (!readOnly) {
+            return PRIMARY;
+        }
+        // 4.轮询健康的从库
+        int size = replicas.size();
+        int start = counter.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica.key;
+            }
+        }
+        // 5.没有可用从库，回退主库
+        return PRIMARY;
+    }
+
+    /**
+     * 检查所有从库的连通性和主从延迟
+     */
+    public void checkReplicas() {
+        long maxLag = properties.getMaxLag().getSeconds();
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try {
+                Long lag = queryLag(replica.dataSource);
+                healthy = lag == null || lag <= maxLag;
+                if (!healthy) {
+                    log.warn("从库{}主从延迟{}秒，超过阈值{}秒，暂停使用", replica.key, lag, maxLag);
+                }
+            } catch (Exception e) {
+                healthy = false;
+                log.warn("从库{}健康检查失败，暂停使用，原因：{}", replica.key, e.getMessage());
+            }
+            if (healthy && !replica.healthy) {
+                log.info("从库{}恢复可用", replica.key);
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    /**
+     * 查询主从延迟
+     *
+     * @return 延迟秒数，只检查连通性时返回null
+     * @throws SQLException 连接失败或复制中断（延迟为null）
+     */
+    private Long queryLag(DataSource dataSource) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            String lagQuery = properties.getLagQuery();
+            if (StringUtils.isBlank(lagQuery)) {
+                if (!conn.isValid(1)) {
+                    throw new SQLException("连接不可用");
+                }
+                return null;
+            }
+            try (ResultSet rs = stmt.executeQuery(lagQuery)) {
+                if (!rs.next()) {
+                    throw new SQLException("未查询到主从复制状态");
+                }
+                Object lag = hasColumn(rs.getMetaData(), LAG_COLUMN) ? rs.getObject(LAG_COLUMN) : rs.getObject(1);
+                if (lag == null) {
+                    throw new SQLException("主从复制已中断");
+                }
+                return Long.valueOf(lag.toString());
+            }
+        }
+    }
+
+    private boolean hasColumn(ResultSetMetaData metaData, String column) throws SQLException {
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (column.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Replica {
+        private final String key;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+
+        Replica(String key, DataSource dataSource) {
+            this.key = key;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.tianji.common.autoconfigure.datasource;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "tj.datasource.replica")
+public class ReplicaDataSourceProperties {
+    /**
+     * 是否开启读写分离，默认false
+     */
+    private Boolean enable = false;
+    /**
+     * 从库列表
+     */
+    private List<Node> nodes = new ArrayList<>();
+    /**
+     * 允许的最大主从延迟，超过则该从库暂停使用，读请求回退到主库
+     */
+    private Duration maxLag = Duration.ofSeconds(5);
+    /**
+     * 从库健康检查间隔，不大于0则只在启动时检查一次
+     */
+    private Duration checkInterval = Duration.ofSeconds(5);
+    /**
+     * 查询主从延迟的SQL，结果中包含Seconds_Behind_Master列或第一列为延迟秒数，为空则只检查连通性
+     */
+    private String lagQuery = "SHOW SLAVE STATUS";
+    /**
+     * 写操作之后强制读主库的时长，请求结束时也会清除
+     */
+    private Duration stickyDuration = Duration.ofSeconds(5);
+
+    @Data
+    public static class Node {
+        private String url;
+        /**
+         * 用户名，为空则使用主库用户名
+         */
+        private String username;
+        /**
+         * 密码，为空则使用主库密码
+         */
+        private String password;
+    }
+}
@@ -0,0 +1,15 @@
+package com.tianji.common.autoconfigure.datasource.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 只读路由，被标记的方法（或类中的所有方法）中的查询会优先路由到从库。
+ * 开启了只读事务（@Transactional(readOnly = true)）的方法无需标记，会被自动路由到从库
+ **/
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface ReadOnlyRoute {
+}
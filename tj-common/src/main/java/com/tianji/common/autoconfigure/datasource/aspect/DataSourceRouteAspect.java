@@ -0,0 +1,25 @@
+package com.tianji.common.autoconfigure.datasource.aspect;
+
+import com.tianji.common.autoconfigure.datasource.DataSourceRouteContext;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+/**
+ * 处理{@link com.tianji.common.autoconfigure.datasource.annotations.ReadOnlyRoute}注解，
+ * 方法执行期间设置只读路由标记，执行结束后恢复之前的标记，支持嵌套调用
+ */
+@Aspect
+public class DataSourceRouteAspect {
+
+    @Around("@annotation(com.tianji.common.autoconfigure.datasource.annotations.ReadOnlyRoute) " +
+            "|| @within(com.tianji.common.autoconfigure.datasource.annotations.ReadOnlyRoute)")
+    public Object routeReadOnly(ProceedingJoinPoint pjp) throws Throwable {
+        Boolean old = DataSourceRouteContext.setReadOnly(true);
+        try {
+            return pjp.proceed();
+        } finally {
+            DataSourceRouteContext.setReadOnly(old);
+        }
+    }
+}
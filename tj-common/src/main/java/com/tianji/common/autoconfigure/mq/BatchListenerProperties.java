@@ -0,0 +1,19 @@
+package com.tianji.common.autoconfigure.mq;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "tj.mq.batch")
+public class BatchListenerProperties {
+    /**
+     * 每批最多消费的消息数量，默认100
+     */
+    private Integer batchSize = 100;
+    /**
+     * 凑批的最长等待时间，超时后不足一批也会交给监听器处理，默认1秒
+     */
+    private Duration receiveTimeout = Duration.ofSeconds(1);
+}
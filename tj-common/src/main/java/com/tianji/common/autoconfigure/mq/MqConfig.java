@@ -18,6 +18,7 @@ import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainer
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.EnvironmentAware;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -31,6 +32,7 @@ import static com.tianji.common.constants.MqConstants.Queue.ERROR_QUEUE_TEMPLATE
 
 @Configuration
 @ConditionalOnClass(value = {MessageConverter.class, AmqpTemplate.class})
+@EnableConfigurationProperties(BatchListenerProperties.class)
 public class MqConfig implements EnvironmentAware{
 
     private String defaultErrorRoutingKey;
@@ -55,6 +57,37 @@ public class MqConfig implements EnvironmentAware{
         return factory;
     }
 
+    /**
+     * <h1>批量消费的监听容器工厂</h1>
+     * 消费者攒够batchSize条消息或等待超过receiveTimeout后，一次性交给监听器处理，整批消息一起确认。
+     * 监听器通过@RabbitListener(containerFactory = "batchRabbitListenerContainerFactory")使用，
+     * 方法参数为List&lt;Message&gt;，单条消息的转换、校验失败应自行处理，避免整批重新投递
+     */
+    @Bean(name = "batchRabbitListenerContainerFactory")
+    @ConditionalOnProperty(prefix = "spring.rabbitmq.listener", name = "type", havingValue = "simple",
+            matchIfMissing = true)
+    SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            BatchListenerProperties properties) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        // 1.开启批量消费
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(properties.getBatchSize());
+        factory.setReceiveTimeout(properties.getReceiveTimeout().toMillis());
+        // 2.预取数量不能小于批大小，否则凑不满一批，默认250
+        factory.setPrefetchCount(Math.max(properties.getBatchSize(), 250));
+        factory.setAfterReceivePostProcessors(message -> {
+            Object header = message.getMessageProperties().getHeader(REQUEST_ID_HEADER);
+            if(header != null) {
+                MDC.put(REQUEST_ID_HEADER, header.toString());
+            }
+            return message;
+        });
+        return factory;
+    }
+
     @Bean
     public MessageConverter messageConverter(ObjectMapper mapper){
         // 1.定义消息转换器
@@ -0,0 +1,88 @@
+package com.tianji.common.autoconfigure.mybatis;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * 支持批量SQL的Mapper，需要配合{@link com.tianji.common.autoconfigure.mybatis.injector.BatchSqlInjector}使用。
+ * <p>
+ * 与IService中的saveBatch、updateBatchById（JDBC批处理，每行一条SQL）不同，这里每批数据只生成一条SQL。
+ * 推荐调用自动分批的insertAll、upsertAll、updateAllByCase，单条SQL的大小和行数由tj.mybatis.batch配置控制
+ * </p>
+ * 注意：createTime、updateTime由数据库维护，不会被写入
+ */
+public interface BatchMapper<T> extends BaseMapper<T> {
+
+    /**
+     * 多行INSERT，不分批
+     */
+    int insertBatchSomeColumn(@Param("list") Collection<T> list);
+
+    /**
+     * 多行INSERT ... ON DUPLICATE KEY UPDATE，冲突时整行覆盖，不分批
+     */
+    int upsertBatch(@Param("list") Collection<T> list);
+
+    /**
+     * 单条UPDATE ... CASE id WHEN ...按主键批量更新，不分批
+     *
+     * @param list  要更新的数据，为null的字段保持原值
+     * @param props 需要更新的属性，不能为空
+     */
+    int updateBatchByCase(@Param("list") Collection<T> list, @Param("props") Set<String> props);
+
+    /**
+     * 自动分批的多行INSERT
+     *
+     * @return 影响行数
+     */
+    default int insertAll(Collection<T> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return 0;
+        }
+        int rows = 0;
+        for (BatchSqlHelper.Chunk<T> chunk : BatchSqlHelper.split(entities)) {
+            rows += insertBatchSomeColumn(chunk.getRows());
+        }
+        return rows;
+    }
+
+    /**
+     * 自动分批的多行INSERT ... ON DUPLICATE KEY UPDATE
+     *
+     * @return 影响行数，与MySQL一致：新插入的行计1，被更新的行计2
+     */
+    default int upsertAll(Collection<T> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return 0;
+        }
+        int rows = 0;
+        for (BatchSqlHelper.Chunk<T> chunk : BatchSqlHelper.split(entities)) {
+            rows += upsertBatch(chunk.getRows());
+        }
+        return rows;
+    }
+
+    /**
+     * 自动分批的按主键批量更新，实体中为null的字段保持原值
+     *
+     * @return 影响行数
+     */
+    default int updateAllByCase(Collection<T> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return 0;
+        }
+        int rows = 0;
+        for (BatchSqlHelper.Chunk<T> chunk : BatchSqlHelper.split(entities)) {
+            if (chunk.getProps().isEmpty()) {
+                // 没有需要更新的字段
+                continue;
+            }
+            rows += updateBatchByCase(chunk.getRows(), chunk.getProps());
+        }
+        return rows;
+    }
+}
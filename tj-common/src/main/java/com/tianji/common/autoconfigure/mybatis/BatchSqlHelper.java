@@ -0,0 +1,128 @@
+package com.tianji.common.autoconfigure.mybatis;
+
+import com.baomidou.mybatisplus.core.metadata.TableFieldInfo;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.tianji.common.autoconfigure.mybatis.injector.BatchSqlInjector;
+import lombok.Getter;
+import org.apache.ibatis.reflection.Reflector;
+
+import java.nio.charset.StandardCharsets;
+import java.time.temporal.Temporal;
+import java.util.*;
+
+/**
+ * 批量SQL分批工具，按照估算的SQL字节数和行数拆分数据，保证每条SQL都小于max_allowed_packet
+ */
+public class BatchSqlHelper {
+
+    /**
+     * 每个参数在SQL中除值以外的开销，包括列名、CASE WHEN等关键字、分隔符等，按上限估算
+     */
+    private static final int PARAM_OVERHEAD = 48;
+
+    private static volatile long maxPacketBytes = new BatchSqlProperties().getMaxPacketSize().toBytes();
+    private static volatile int maxRows = new BatchSqlProperties().getMaxRows();
+
+    private BatchSqlHelper() {
+    }
+
+    /**
+     * 设置分批的上限
+     */
+    public static void configure(BatchSqlProperties properties) {
+        maxPacketBytes = properties.getMaxPacketSize().toBytes();
+        maxRows = properties.getMaxRows();
+    }
+
+    /**
+     * 按照SQL大小和行数将数据拆分为多批
+     *
+     * @param entities 要写入的实体，不能为空
+     * @return 拆分后的批次
+     */
+    public static <T> List<Chunk<T>> split(Collection<T> entities) {
+        // 1.获取表信息
+        Class<?> entityClass = entities.iterator().next().getClass();
+        TableInfo tableInfo = TableInfoHelper.getTableInfo(entityClass);
+        if (tableInfo == null) {
+            throw new IllegalArgumentException("未找到实体" + entityClass.getName() + "对应的表信息");
+        }
+        Reflector reflector = tableInfo.getConfiguration().getReflectorFactory().findForClass(entityClass);
+        List<TableFieldInfo> fields = new ArrayList<>(tableInfo.getFieldList().size());
+        for (TableFieldInfo field : tableInfo.getFieldList()) {
+            if (BatchSqlInjector.NOT_DB_MANAGED.test(field) && !field.isLogicDelete()) {
+                fields.add(field);
+            }
+        }
+        // 2.逐行估算大小，超过上限则开启新的批次
+        List<Chunk<T>> chunks = new ArrayList<>();
+        Chunk<T> current = new Chunk<>();
+        for (T entity : entities) {
+            long rowBytes = PARAM_OVERHEAD + estimate(getValue(reflector, tableInfo.getKeyProperty(), entity));
+            List<String> props = new ArrayList<>(fields.size());
+            for (TableFieldInfo field : fields) {
+                Object value = getValue(reflector, field.getProperty(), entity);
+                // 主键在CASE中每列都会出现一次
+                rowBytes += PARAM_OVERHEAD * 2L + estimate(value);
+                if (value != null) {
+                    props.add(field.getProperty());
+                }
+            }
+            if (!current.rows.isEmpty() && (current.bytes + rowBytes > maxPacketBytes || current.rows.size() >= maxRows)) {
+                chunks.add(current);
+                current = new Chunk<>();
+            }
+            current.rows.add(entity);
+            current.props.addAll(props);
+            current.bytes += rowBytes;
+        }
+        chunks.add(current);
+        return chunks;
+    }
+
+    private static Object getValue(Reflector reflector, String property, Object entity) {
+        if (property == null) {
+            return null;
+        }
+        try {
+            return reflector.getGetInvoker(property).invoke(entity, null);
+        } catch (Exception e) {
+            throw new IllegalStateException("读取属性" + property + "失败", e);
+        }
+    }
+
+    /**
+     * 估算参数值转为SQL字面量后的字节数
+     */
+    private static long estimate(Object value) {
+        if (value == null) {
+            return 4;
+        }
+        if (value instanceof CharSequence) {
+            // 按UTF-8编码，加上引号和可能的转义
+            return value.toString().getBytes(StandardCharsets.UTF_8).length * 2L + 2;
+        }
+        if (value instanceof Temporal || value instanceof Date) {
+            return 28;
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length * 2L + 3;
+        }
+        return value.toString().length();
+    }
+
+    /**
+     * 一个批次的数据
+     */
+    public static class Chunk<T> {
+        @Getter
+        private final List<T> rows = new ArrayList<>();
+        /**
+         * 本批数据中至少有一行不为null的属性
+         */
+        @Getter
+        private final Set<String> props = new HashSet<>();
+        private long bytes;
+    }
+}
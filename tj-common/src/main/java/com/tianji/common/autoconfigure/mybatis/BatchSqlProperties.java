@@ -0,0 +1,18 @@
+package com.tianji.common.autoconfigure.mybatis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@Data
+@ConfigurationProperties(prefix = "tj.mybatis.batch")
+public class BatchSqlProperties {
+    /**
+     * 单条批量SQL的最大字节数，必须小于数据库的max_allowed_packet，默认2MB
+     */
+    private DataSize maxPacketSize = DataSize.ofMegabytes(2);
+    /**
+     * 单条批量SQL的最大行数，默认500
+     */
+    private Integer maxRows = 500;
+}
@@ -2,18 +2,25 @@ package com.tianji.common.autoconfigure.mybatis;
 
 
 import com.baomidou.mybatisplus.annotation.DbType;
+import com.baomidou.mybatisplus.core.injector.ISqlInjector;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
 import com.baomidou.mybatisplus.extension.plugins.inner.DynamicTableNameInnerInterceptor;
 import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import com.tianji.common.autoconfigure.mybatis.injector.BatchSqlInjector;
+import com.tianji.common.filters.SqlProfileFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 @ConditionalOnClass({MybatisPlusInterceptor.class, BaseMapper.class})
+@EnableConfigurationProperties({SqlProfilerProperties.class, BatchSqlProperties.class})
 public class MybatisConfig {
 
     /**
@@ -42,4 +49,30 @@ public class MybatisConfig {
         interceptor.addInnerInterceptor(new MyBatisAutoFillInterceptor());
         return interceptor;
     }
+
+    /**
+     * SQL执行分析拦截器，统计每个请求内的SQL执行情况，用于发现N+1查询
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "tj.mybatis.profiler", name = "enable", havingValue = "true")
+    public SqlProfilerInterceptor sqlProfilerInterceptor(SqlProfilerProperties properties) {
+        return new SqlProfilerInterceptor(properties);
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    @ConditionalOnProperty(prefix = "tj.mybatis.profiler", name = "enable", havingValue = "true")
+    public SqlProfileFilter sqlProfileFilter(SqlProfilerInterceptor sqlProfilerInterceptor, SqlProfilerProperties properties) {
+        return new SqlProfileFilter(sqlProfilerInterceptor, properties);
+    }
+
+    /**
+     * 批量SQL注入器，为BatchMapper注入多行插入、upsert、CASE批量更新方法
+     */
+    @Bean
+    @ConditionalOnMissingBean(ISqlInjector.class)
+    public BatchSqlInjector batchSqlInjector(BatchSqlProperties properties) {
+        BatchSqlHelper.configure(properties);
+        return new BatchSqlInjector();
+    }
 }
@@ -0,0 +1,119 @@
+package com.tianji.common.autoconfigure.mybatis;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个请求内的SQL执行统计，按照归一化后的SQL形状聚合
+ */
+public class SqlProfile {
+
+    @Getter
+    private final String requestId;
+
+    private final ConcurrentHashMap<String, StatementStat> stats = new ConcurrentHashMap<>();
+
+    public SqlProfile(String requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * 记录一次SQL执行
+     *
+     * @param statementId MappedStatement的id
+     * @param shape       归一化后的SQL
+     * @param nanos       执行耗时，纳秒
+     */
+    public void record(String statementId, String shape, long nanos) {
+        stats.computeIfAbsent(shape, s -> new StatementStat(statementId, s)).add(nanos);
+    }
+
+    /**
+     * SQL总执行次数
+     */
+    public long getTotalCount() {
+        long count = 0;
+        for (StatementStat stat : stats.values()) {
+            count += stat.getCount();
+        }
+        return count;
+    }
+
+    /**
+     * SQL总耗时，毫秒
+     */
+    public long getTotalMillis() {
+        long nanos = 0;
+        for (StatementStat stat : stats.values()) {
+            nanos += stat.totalNanos.sum();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * 按执行次数倒序排列的统计信息
+     */
+    public List<StatementStat> getStats() {
+        List<StatementStat> list = new ArrayList<>(stats.values());
+        list.sort(Comparator.comparingLong(StatementStat::getCount).reversed());
+        return list;
+    }
+
+    /**
+     * 生成简要报告，格式：count=执行次数;time=总耗时ms;statementId*次数*耗时ms,...
+     *
+     * @param limit 最多展示的SQL形状数量
+     */
+    public String summary(int limit) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("count=").append(getTotalCount()).append(";time=").append(getTotalMillis()).append("ms");
+        List<StatementStat> list = getStats();
+        for (int i = 0; i < list.size() && i < limit; i++) {
+            StatementStat stat = list.get(i);
+            sb.append(i == 0 ? ";" : ",")
+                    .append(stat.getStatementId()).append('*').append(stat.getCount())
+                    .append('*').append(stat.getTotalMillis()).append("ms");
+        }
+        return sb.toString();
+    }
+
+    public static class StatementStat {
+        @Getter
+        private final String statementId;
+        @Getter
+        private final String shape;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        StatementStat(String statementId, String shape) {
+            this.statementId = statementId;
+            this.shape = shape;
+        }
+
+        void add(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(totalNanos.sum());
+        }
+
+        public long getMaxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.tianji.common.autoconfigure.mybatis;
+
+import com.tianji.common.constants.Constant;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.ResultHandler;
+import org.slf4j.MDC;
+
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * <h1>SQL执行分析拦截器</h1>
+ * 按照MDC中的requestId记录每个请求内执行过的SQL：statementId、归一化后的SQL形状、耗时、执行次数。
+ * 请求结束时如果同一个SQL形状执行次数超过阈值（疑似N+1查询），或SQL总耗时超过阈值，则打印警告日志。
+ * 只有通过{@link #begin(String)}开启了分析的请求才会被记录，避免非请求线程产生的数据无法清理。
+ */
+@Slf4j
+@Intercepts({
+        @Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
+        @Signature(type = StatementHandler.class, method = "update", args = {Statement.class}),
+        @Signature(type = StatementHandler.class, method = "batch", args = {Statement.class})
+})
+public class SqlProfilerInterceptor implements Interceptor {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN\\s*\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern VALUES_LIST = Pattern.compile("(\\([?,\\s]+\\))(\\s*,\\s*\\([?,\\s]+\\))+");
+
+    private final SqlProfilerProperties properties;
+
+    /**
+     * 正在分析中的请求，key是requestId
+     */
+    private final Map<String, SqlProfile> profiles = new ConcurrentHashMap<>();
+
+    public SqlProfilerInterceptor(SqlProfilerProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        // 1.判断当前请求是否开启了分析
+        String requestId = MDC.get(Constant.REQUEST_ID_HEADER);
+        SqlProfile profile = requestId == null ? null : profiles.get(requestId);
+        if (profile == null) {
+            return invocation.proceed();
+        }
+        // 2.执行并计时
+        long begin = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            long nanos = System.nanoTime() - begin;
+            // 3.记录
+            StatementHandler handler = (StatementHandler) invocation.getTarget();
+            profile.record(resolveStatementId(handler), normalize(handler.getBoundSql().getSql()), nanos);
+        }
+    }
+
+    /**
+     * 开启指定请求的SQL分析
+     */
+    public void begin(String requestId) {
+        profiles.put(requestId, new SqlProfile(requestId));
+    }
+
+    /**
+     * 结束指定请求的SQL分析，检查是否存在N+1或慢请求并返回分析结果
+     *
+     * @return 分析结果，如果请求未开启分析则返回null
+     */
+    public SqlProfile end(String requestId) {
+        SqlProfile profile = profiles.remove(requestId);
+        if (profile == null) {
+            return null;
+        }
+        // 1.检查重复执行的SQL
+        for (SqlProfile.StatementStat stat : profile.getStats()) {
+            if (stat.getCount() <= properties.getRepeatThreshold()) {
+                // 已按次数倒序排列，后面的无需再检查
+                break;
+            }
+            log.warn("疑似N+1查询，requestId：{}，statement：{}，执行次数：{}，总耗时：{}ms，sql：{}",
+                    requestId, stat.getStatementId(), stat.getCount(), stat.getTotalMillis(), stat.getShape());
+        }
+        // 2.检查SQL总耗时
+        long totalMillis = profile.getTotalMillis();
+        if (totalMillis > properties.getSlowThreshold().toMillis()) {
+            log.warn("请求SQL总耗时过长，requestId：{}，SQL执行次数：{}，总耗时：{}ms",
+                    requestId, profile.getTotalCount(), totalMillis);
+        }
+        log.debug("请求SQL分析结果，requestId：{}，{}", requestId, profile.summary(Integer.MAX_VALUE));
+        return profile;
+    }
+
+    private String resolveStatementId(StatementHandler handler) {
+        // RoutingStatementHandler -> delegate -> mappedStatement
+        MetaObject metaObject = SystemMetaObject.forObject(handler);
+        while (metaObject.hasGetter("h")) {
+            // 被其它插件代理过，取出原始对象
+            metaObject = SystemMetaObject.forObject(metaObject.getValue("h.target"));
+        }
+        String property = metaObject.hasGetter("delegate") ? "delegate.mappedStatement" : "mappedStatement";
+        MappedStatement ms = (MappedStatement) metaObject.getValue(property);
+        return ms.getId();
+    }
+
+    /**
+     * SQL归一化：合并空白、字面量替换为?、IN列表和多行VALUES折叠，使参数不同的同类SQL得到相同的形状
+     */
+    public static String normalize(String sql) {
+        String shape = WHITESPACE.matcher(sql).replaceAll(" ").trim();
+        shape = STRING_LITERAL.matcher(shape).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = IN_LIST.matcher(shape).replaceAll("IN (...)");
+        shape = VALUES_LIST.matcher(shape).replaceAll("$1, ...");
+        return shape;
+    }
+}
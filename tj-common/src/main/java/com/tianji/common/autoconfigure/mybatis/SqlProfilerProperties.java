@@ -0,0 +1,31 @@
+package com.tianji.common.autoconfigure.mybatis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "tj.mybatis.profiler")
+public class SqlProfilerProperties {
+    /**
+     * 是否开启SQL执行分析，默认false
+     */
+    private Boolean enable = false;
+    /**
+     * 同一个SQL形状在一次请求内的执行次数阈值，超过则认为疑似N+1查询
+     */
+    private Integer repeatThreshold = 10;
+    /**
+     * 一次请求内SQL总耗时阈值
+     */
+    private Duration slowThreshold = Duration.ofMillis(500);
+    /**
+     * 调试请求头，请求中携带该请求头时，在响应头中返回SQL分析报告
+     */
+    private String debugHeader = "x-sql-profile";
+    /**
+     * 响应头中最多展示的SQL形状数量
+     */
+    private Integer headerLimit = 5;
+}
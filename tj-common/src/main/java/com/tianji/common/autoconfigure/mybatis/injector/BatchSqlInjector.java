@@ -0,0 +1,43 @@
+package com.tianji.common.autoconfigure.mybatis.injector;
+
+import com.baomidou.mybatisplus.core.injector.AbstractMethod;
+import com.baomidou.mybatisplus.core.injector.DefaultSqlInjector;
+import com.baomidou.mybatisplus.core.metadata.TableFieldInfo;
+import com.baomidou.mybatisplus.extension.injector.methods.InsertBatchSomeColumn;
+import com.tianji.common.autoconfigure.mybatis.BatchMapper;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import static com.tianji.common.constants.Constant.DATA_FIELD_NAME_CREATE_TIME_CAMEL;
+import static com.tianji.common.constants.Constant.DATA_FIELD_NAME_UPDATE_TIME_CAMEL;
+
+/**
+ * 批量SQL注入器，在默认方法的基础上为继承了{@link BatchMapper}的Mapper注入：
+ * <ul>
+ *     <li>insertBatchSomeColumn：多行INSERT</li>
+ *     <li>upsertBatch：多行INSERT ... ON DUPLICATE KEY UPDATE</li>
+ *     <li>updateBatchByCase：单条UPDATE ... SET col = CASE id WHEN ... END</li>
+ * </ul>
+ */
+public class BatchSqlInjector extends DefaultSqlInjector {
+
+    /**
+     * 创建时间、更新时间由数据库默认值维护，批量写入时不能显式写入null，因此排除
+     */
+    public static final Predicate<TableFieldInfo> NOT_DB_MANAGED = f ->
+            !DATA_FIELD_NAME_CREATE_TIME_CAMEL.equals(f.getProperty())
+                    && !DATA_FIELD_NAME_UPDATE_TIME_CAMEL.equals(f.getProperty());
+
+    @Override
+    public List<AbstractMethod> getMethodList(Class<?> mapperClass) {
+        List<AbstractMethod> methodList = super.getMethodList(mapperClass);
+        if (!BatchMapper.class.isAssignableFrom(mapperClass)) {
+            return methodList;
+        }
+        methodList.add(new InsertBatchSomeColumn(NOT_DB_MANAGED));
+        methodList.add(new UpsertBatch(NOT_DB_MANAGED));
+        methodList.add(new UpdateBatchByCase(NOT_DB_MANAGED));
+        return methodList;
+    }
+}
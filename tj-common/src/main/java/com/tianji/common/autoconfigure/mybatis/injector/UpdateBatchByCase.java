@@ -0,0 +1,61 @@
+package com.tianji.common.autoconfigure.mybatis.injector;
+
+import com.baomidou.mybatisplus.core.enums.SqlMethod;
+import com.baomidou.mybatisplus.core.injector.AbstractMethod;
+import com.baomidou.mybatisplus.core.metadata.TableFieldInfo;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+import com.baomidou.mybatisplus.core.toolkit.sql.SqlScriptUtils;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlSource;
+
+import java.util.function.Predicate;
+
+/**
+ * 用一条UPDATE语句按主键批量更新：
+ * <pre>
+ * UPDATE table SET
+ *   a = CASE id WHEN ? THEN ? WHEN ? THEN a END,
+ *   b = CASE id WHEN ? THEN ? WHEN ? THEN ? END
+ * WHERE id IN (?, ?)
+ * </pre>
+ * 与updateById一致，实体中为null的字段保持原值。参数props是本批数据中至少有一行不为null的属性，
+ * 只有这些列会出现在SET中，避免只更新一两个字段时为每一列都生成CASE
+ */
+public class UpdateBatchByCase extends AbstractMethod {
+
+    public static final String METHOD = "updateBatchByCase";
+
+    private final Predicate<TableFieldInfo> predicate;
+
+    public UpdateBatchByCase(Predicate<TableFieldInfo> predicate) {
+        this.predicate = predicate;
+    }
+
+    @Override
+    public MappedStatement injectMappedStatement(Class<?> mapperClass, Class<?> modelClass, TableInfo tableInfo) {
+        String keyColumn = tableInfo.getKeyColumn();
+        String keyParam = SqlScriptUtils.safeParam(ENTITY_DOT + tableInfo.getKeyProperty());
+        // 1.每一列生成一个CASE，值为null时保持原值，逻辑删除字段不更新
+        String sets = filterTableFieldInfo(tableInfo.getFieldList(), predicate.and(f -> !f.isLogicDelete()), f -> {
+            String value = SqlScriptUtils.convertChoose(
+                    ENTITY_DOT + f.getProperty() + " != null", SqlScriptUtils.safeParam(ENTITY_DOT + f.getEl()), f.getColumn());
+            String whens = SqlScriptUtils.convertForeach(
+                    "WHEN " + keyParam + " THEN " + value, "list", null, ENTITY, SPACE);
+            return SqlScriptUtils.convertIf(
+                    f.getColumn() + EQUALS + "CASE " + keyColumn + NEWLINE + whens + NEWLINE + "END,",
+                    String.format("props.contains('%s')", f.getProperty()), true);
+        }, NEWLINE);
+        sets = SqlScriptUtils.convertTrim(sets, "SET", null, null, COMMA);
+        // 2.按主键过滤，存在逻辑删除字段时只更新未删除的数据
+        String ids = SqlScriptUtils.convertForeach(keyParam, "list", null, ENTITY, COMMA);
+        String sql = String.format("<script>\nUPDATE %s %s\nWHERE %s IN (%s) %s\n</script>",
+                tableInfo.getTableName(), sets, keyColumn, ids, tableInfo.getLogicDeleteSql(true, true));
+        SqlSource sqlSource = languageDriver.createSqlSource(configuration, sql, modelClass);
+        return addUpdateMappedStatement(mapperClass, modelClass, getMethod(null), sqlSource);
+    }
+
+    @Override
+    public String getMethod(SqlMethod sqlMethod) {
+        return METHOD;
+    }
+}
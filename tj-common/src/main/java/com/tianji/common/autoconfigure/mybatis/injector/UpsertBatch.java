@@ -0,0 +1,59 @@
+package com.tianji.common.autoconfigure.mybatis.injector;
+
+import com.baomidou.mybatisplus.core.enums.SqlMethod;
+import com.baomidou.mybatisplus.core.injector.AbstractMethod;
+import com.baomidou.mybatisplus.core.metadata.TableFieldInfo;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+import com.baomidou.mybatisplus.core.toolkit.sql.SqlScriptUtils;
+import org.apache.ibatis.executor.keygen.NoKeyGenerator;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlSource;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * 多行插入，主键或唯一索引冲突时更新非主键字段：
+ * <pre>
+ * INSERT INTO table (id, a, b) VALUES (?, ?, ?), (?, ?, ?)
+ * ON DUPLICATE KEY UPDATE a = VALUES(a), b = VALUES(b)
+ * </pre>
+ * 冲突时按整行覆盖，实体中为null的字段也会被更新为null
+ */
+public class UpsertBatch extends AbstractMethod {
+
+    public static final String METHOD = "upsertBatch";
+
+    private final Predicate<TableFieldInfo> predicate;
+
+    public UpsertBatch(Predicate<TableFieldInfo> predicate) {
+        this.predicate = predicate;
+    }
+
+    @Override
+    public MappedStatement injectMappedStatement(Class<?> mapperClass, Class<?> modelClass, TableInfo tableInfo) {
+        List<TableFieldInfo> fieldList = tableInfo.getFieldList();
+        // 1.插入的列
+        String columns = tableInfo.getKeyInsertSqlColumn(true)
+                + filterTableFieldInfo(fieldList, predicate, TableFieldInfo::getInsertSqlColumn, EMPTY);
+        columns = LEFT_BRACKET + columns.substring(0, columns.length() - 1) + RIGHT_BRACKET;
+        // 2.每行的值
+        String values = tableInfo.getKeyInsertSqlProperty(ENTITY_DOT, true)
+                + filterTableFieldInfo(fieldList, predicate, f -> f.getInsertSqlProperty(ENTITY_DOT), EMPTY);
+        values = LEFT_BRACKET + values.substring(0, values.length() - 1) + RIGHT_BRACKET;
+        String valuesScript = SqlScriptUtils.convertForeach(values, "list", null, ENTITY, COMMA);
+        // 3.冲突时更新的列
+        String updates = filterTableFieldInfo(fieldList, predicate,
+                f -> f.getColumn() + EQUALS + "VALUES(" + f.getColumn() + RIGHT_BRACKET, COMMA);
+        String sql = String.format("<script>\nINSERT INTO %s %s VALUES %s\nON DUPLICATE KEY UPDATE %s\n</script>",
+                tableInfo.getTableName(), columns, valuesScript, updates);
+        SqlSource sqlSource = languageDriver.createSqlSource(configuration, sql, modelClass);
+        return addInsertMappedStatement(mapperClass, modelClass, getMethod(null), sqlSource,
+                NoKeyGenerator.INSTANCE, null, null);
+    }
+
+    @Override
+    public String getMethod(SqlMethod sqlMethod) {
+        return METHOD;
+    }
+}
@@ -0,0 +1,52 @@
+package com.tianji.common.autoconfigure.redisson;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按锁名称区分的本地锁，作为分布式锁的第一级：同一个JVM内竞争同一把锁的线程先在本地排队，
+ * 只有获取到本地锁的线程才去Redis加锁，避免本地并发请求都访问Redis。
+ * <p>
+ * 每个锁名称对应独立的ReentrantLock，不同名称之间不会互相等待。锁对象按引用计数管理，
+ * 最后一个使用者释放后从Map中移除，不会随锁名称的增加而无限增长
+ * </p>
+ */
+public class LocalLocks {
+
+    private final ConcurrentHashMap<String, Ref> locks = new ConcurrentHashMap<>();
+
+    /**
+     * 获取锁名称对应的本地锁并增加引用，使用完后必须调用{@link #release(String)}，无论是否加锁成功
+     */
+    public ReentrantLock acquire(String name) {
+        return locks.compute(name, (k, ref) -> {
+            if (ref == null) {
+                ref = new Ref();
+            }
+            ref.count++;
+            return ref;
+        }).lock;
+    }
+
+    /**
+     * 减少引用，没有使用者时移除本地锁
+     */
+    public void release(String name) {
+        locks.computeIfPresent(name, (k, ref) -> --ref.count == 0 ? null : ref);
+    }
+
+    /**
+     * 当前的本地锁数量
+     */
+    public int size() {
+        return locks.size();
+    }
+
+    private static class Ref {
+        private final ReentrantLock lock = new ReentrantLock();
+        /**
+         * 只在ConcurrentHashMap.compute中读写，由Map保证互斥
+         */
+        private int count;
+    }
+}
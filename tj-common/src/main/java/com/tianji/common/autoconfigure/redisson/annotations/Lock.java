@@ -50,4 +50,10 @@ public @interface Lock {
      * 锁策略，包括5种，默认策略是 不断尝试获取锁，直到成功或超时，超时后抛出异常
      */
     LockStrategy lockStrategy() default LockStrategy.FAIL_AFTER_RETRY_TIMEOUT;
+
+    /**
+     * 是否先获取本地锁，默认false。开启后同一个JVM内的竞争者先在本地排队，只有获取到本地锁的线程才去Redis加锁，
+     * 适合重复点击、重试等主要竞争来自同一实例的场景。读锁不支持，会忽略该配置
+     */
+    boolean localFirst() default false;
 }
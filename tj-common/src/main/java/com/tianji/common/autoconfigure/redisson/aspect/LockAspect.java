@@ -1,6 +1,9 @@
 package com.tianji.common.autoconfigure.redisson.aspect;
 
+import com.tianji.common.autoconfigure.redisson.LocalLocks;
 import com.tianji.common.autoconfigure.redisson.annotations.Lock;
+import com.tianji.common.autoconfigure.redisson.enums.LockStrategy;
+import com.tianji.common.autoconfigure.redisson.enums.LockType;
 import com.tianji.common.exceptions.BizIllegalException;
 import com.tianji.common.utils.StringUtils;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -20,6 +23,8 @@ import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.util.ObjectUtils;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -27,6 +32,7 @@ import java.util.regex.Pattern;
 public class LockAspect {
 
     private final RedissonClient redissonClient;
+    private final LocalLocks localLocks = new LocalLocks();
 
     public LockAspect(RedissonClient redissonClient) {
         this.redissonClient = redissonClient;
@@ -43,23 +49,67 @@ public class LockAspect {
         String name = getLockName(properties.name(), pjp);
         // 2.得到锁对象
         RLock rLock = properties.lockType().getLock(redissonClient, name);
-        // 3.尝试获取锁
+        // 3.判断是否需要先获取本地锁
+        if (properties.localFirst() && properties.lockType() != LockType.READ_LOCK) {
+            return handleLocalFirst(pjp, properties, name, rLock);
+        }
+        // 4.尝试获取锁
         boolean success = properties.lockStrategy().tryLock(rLock, properties);
         if (!success) {
             // 获取锁失败，结束
             return null;
         }
         try {
-            // 4.执行被代理方法
+            // 5.执行被代理方法
             return pjp.proceed();
         } finally {
-            // 5.释放锁
+            // 6.释放锁
             if (properties.autoUnlock()) {
                 rLock.unlock();
             }
         }
     }
 
+    /**
+     * 两级加锁：先获取本地锁，成功后再用剩余的等待时间获取分布式锁
+     */
+    private Object handleLocalFirst(ProceedingJoinPoint pjp, Lock properties, String name, RLock rLock) throws Throwable {
+        LockStrategy strategy = properties.lockStrategy();
+        TimeUnit unit = properties.timeUnit();
+        long begin = System.nanoTime();
+        ReentrantLock localLock = localLocks.acquire(name);
+        try {
+            // 1.获取本地锁
+            if (!strategy.tryLocalLock(localLock, properties.waitTime(), unit)) {
+                return null;
+            }
+            try {
+                // 2.用剩余的等待时间获取分布式锁
+                long waitMillis = Math.max(0, unit.toMillis(properties.waitTime())
+                        - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+                long leaseMillis = properties.leaseTime() > 0 ? unit.toMillis(properties.leaseTime()) : properties.leaseTime();
+                if (!strategy.tryLock(rLock, waitMillis, leaseMillis, TimeUnit.MILLISECONDS)) {
+                    return null;
+                }
+                try {
+                    // 3.执行被代理方法
+                    return pjp.proceed();
+                } finally {
+                    // 4.释放分布式锁
+                    if (properties.autoUnlock()) {
+                        rLock.unlock();
+                    }
+                }
+            } finally {
+                // 5.释放本地锁，本地锁不能跨线程持有，因此无论是否自动释放分布式锁都要释放
+                localLock.unlock();
+            }
+        } finally {
+            // 6.没有其它线程使用时移除本地锁
+            localLocks.release(name);
+        }
+    }
+
     /**
      * SPEL的正则规则
      */
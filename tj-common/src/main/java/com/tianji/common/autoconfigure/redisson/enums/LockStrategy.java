@@ -3,14 +3,21 @@ package com.tianji.common.autoconfigure.redisson.enums;
 import com.tianji.common.autoconfigure.redisson.annotations.Lock;
 import org.redisson.api.RLock;
 
+import java.util.concurrent.TimeUnit;
+
 public enum LockStrategy {
     /**
      * 不重试，直接结束，返回false
      */
     SKIP_FAST() {
         @Override
-        public boolean tryLock(RLock lock, Lock properties) throws InterruptedException {
-            return lock.tryLock(0, properties.leaseTime(), properties.timeUnit());
+        public boolean tryLock(RLock lock, long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+            return lock.tryLock(0, leaseTime, unit);
+        }
+
+        @Override
+        public boolean tryLocalLock(java.util.concurrent.locks.Lock lock, long waitTime, TimeUnit unit) {
+            return lock.tryLock();
         }
     },
     /**
@@ -18,21 +25,34 @@ public enum LockStrategy {
      */
     FAIL_FAST() {
         @Override
-        public boolean tryLock(RLock lock, Lock properties) throws InterruptedException {
-            boolean success = lock.tryLock(0, properties.leaseTime(), properties.timeUnit());
+        public boolean tryLock(RLock lock, long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+            boolean success = lock.tryLock(0, leaseTime, unit);
             if (!success) {
                 throw new RuntimeException("请求太频繁");
             }
             return true;
         }
+
+        @Override
+        public boolean tryLocalLock(java.util.concurrent.locks.Lock lock, long waitTime, TimeUnit unit) {
+            if (!lock.tryLock()) {
+                throw new RuntimeException("请求太频繁");
+            }
+            return true;
+        }
     },
     /**
      * 重试，直到超时后，直接结束
      */
     SKIP_AFTER_RETRY_TIMEOUT() {
         @Override
-        public boolean tryLock(RLock lock, Lock properties) throws InterruptedException {
-            return lock.tryLock(properties.waitTime(), properties.leaseTime(), properties.timeUnit());
+        public boolean tryLock(RLock lock, long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+            return lock.tryLock(waitTime, leaseTime, unit);
+        }
+
+        @Override
+        public boolean tryLocalLock(java.util.concurrent.locks.Lock lock, long waitTime, TimeUnit unit) throws InterruptedException {
+            return lock.tryLock(waitTime, unit);
         }
     },
     /**
@@ -40,25 +60,54 @@ public enum LockStrategy {
      */
     FAIL_AFTER_RETRY_TIMEOUT() {
         @Override
-        public boolean tryLock(RLock lock, Lock properties) throws InterruptedException {
-            boolean success = lock.tryLock(properties.waitTime(), properties.leaseTime(), properties.timeUnit());
+        public boolean tryLock(RLock lock, long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+            boolean success = lock.tryLock(waitTime, leaseTime, unit);
             if (!success) {
                 throw new RuntimeException("请求超时");
             }
             return true;
         }
+
+        @Override
+        public boolean tryLocalLock(java.util.concurrent.locks.Lock lock, long waitTime, TimeUnit unit) throws InterruptedException {
+            if (!lock.tryLock(waitTime, unit)) {
+                throw new RuntimeException("请求超时");
+            }
+            return true;
+        }
     },
     /**
      * 不停重试，直到成功为止
      */
     KEEP_RETRY() {
         @Override
-        public boolean tryLock(RLock lock, Lock properties) throws InterruptedException {
-            lock.lock(properties.leaseTime(), properties.timeUnit());
+        public boolean tryLock(RLock lock, long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+            lock.lock(leaseTime, unit);
+            return true;
+        }
+
+        @Override
+        public boolean tryLocalLock(java.util.concurrent.locks.Lock lock, long waitTime, TimeUnit unit) throws InterruptedException {
+            lock.lockInterruptibly();
             return true;
         }
     },
     ;
 
-    public abstract boolean tryLock(RLock lock, Lock properties) throws InterruptedException;
+    public boolean tryLock(RLock lock, Lock properties) throws InterruptedException {
+        return tryLock(lock, properties.waitTime(), properties.leaseTime(), properties.timeUnit());
+    }
+
+    /**
+     * 按照当前策略获取分布式锁
+     *
+     * @param waitTime  最长等待时间
+     * @param leaseTime 锁自动释放时间，-1表示使用看门狗续期
+     */
+    public abstract boolean tryLock(RLock lock, long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * 按照当前策略获取本地锁，等待和失败的处理方式与分布式锁一致
+     */
+    public abstract boolean tryLocalLock(java.util.concurrent.locks.Lock lock, long waitTime, TimeUnit unit) throws InterruptedException;
 }
@@ -0,0 +1,42 @@
+package com.tianji.common.autoconfigure.xxljob;
+
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.LongCodec;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Redis的分片任务进度存储，进度设置有效期，避免任务下线后残留
+ */
+public class RedissonShardCheckpointStore implements ShardCheckpointStore {
+
+    private static final String KEY_PREFIX = "job:checkpoint:";
+    private static final Duration TTL = Duration.ofDays(1);
+
+    private final RedissonClient redissonClient;
+
+    public RedissonShardCheckpointStore(RedissonClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    @Override
+    public Long load(String key) {
+        return getBucket(key).get();
+    }
+
+    @Override
+    public void save(String key, long lastId) {
+        getBucket(key).set(lastId, TTL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void remove(String key) {
+        getBucket(key).delete();
+    }
+
+    private RBucket<Long> getBucket(String key) {
+        return redissonClient.getBucket(KEY_PREFIX + key, LongCodec.INSTANCE);
+    }
+}
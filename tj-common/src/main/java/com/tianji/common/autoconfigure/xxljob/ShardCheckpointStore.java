@@ -0,0 +1,24 @@
+package com.tianji.common.autoconfigure.xxljob;
+
+/**
+ * 分片任务的进度存储，记录每个分片已经处理到的最大id，用于任务中断后继续执行
+ */
+public interface ShardCheckpointStore {
+
+    /**
+     * 读取进度
+     *
+     * @return 已处理的最大id，没有进度则返回null
+     */
+    Long load(String key);
+
+    /**
+     * 保存进度
+     */
+    void save(String key, long lastId);
+
+    /**
+     * 清除进度，分片全部处理完成后调用
+     */
+    void remove(String key);
+}
@@ -0,0 +1,198 @@
+package com.tianji.common.autoconfigure.xxljob;
+
+import com.xxl.job.core.context.XxlJobHelper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h1>分片批处理任务模板</h1>
+ * 适用于XXL-Job分片广播任务：
+ * <ol>
+ *     <li>按照id取模分片，每个执行器只处理 id % shardTotal == shardIndex 的数据</li>
+ *     <li>按照id游标分页（WHERE id > lastId ORDER BY id LIMIT n），避免OFFSET深分页</li>
+ *     <li>每页数据交给有界线程池并行处理，单条失败不影响其它数据</li>
+ *     <li>每页处理完成后保存进度，任务超时中断或宕机后，下次执行从进度处继续</li>
+ *     <li>超过时间预算后停止拉取新的数据，避免与下一次调度重叠</li>
+ * </ol>
+ * 子类实现{@link #fetchChunk(long, int, int, int)}、{@link #idOf(Object)}和{@link #process(Object)}，
+ * 在@XxlJob方法中调用{@link #execute()}即可
+ *
+ * @param <T> 数据类型
+ */
+@Slf4j
+public abstract class ShardedBatchJob<T> {
+
+    private final String jobName;
+    private final ShardCheckpointStore checkpointStore;
+
+    protected ShardedBatchJob(String jobName, ShardCheckpointStore checkpointStore) {
+        this.jobName = jobName;
+        this.checkpointStore = checkpointStore;
+    }
+
+    /**
+     * 查询一页数据
+     *
+     * @param lastId     上一页的最大id，第一页为0
+     * @param shardIndex 分片序号
+     * @param shardTotal 分片总数
+     * @param limit      每页数量
+     * @return 满足 id > lastId 且 id % shardTotal == shardIndex 的数据，必须按id升序排列
+     */
+    protected abstract List<T> fetchChunk(long lastId, int shardIndex, int shardTotal, int limit);
+
+    /**
+     * 获取数据的id
+     */
+    protected abstract long idOf(T item);
+
+    /**
+     * 处理单条数据
+     */
+    protected abstract void process(T item) throws Exception;
+
+    /**
+     * 每页数量，默认200
+     */
+    protected int chunkSize() {
+        return 200;
+    }
+
+    /**
+     * 处理数据的并行线程数，默认4
+     */
+    protected int parallelism() {
+        return 4;
+    }
+
+    /**
+     * 单次执行的时间预算，超过后停止拉取新的数据，下次执行时从进度处继续，默认5分钟
+     */
+    protected Duration timeBudget() {
+        return Duration.ofMinutes(5);
+    }
+
+    /**
+     * 按照XXL-Job当前的分片参数执行，不在XXL-Job调度中时按单分片执行
+     */
+    public JobResult execute() {
+        int shardTotal = XxlJobHelper.getShardTotal();
+        if (shardTotal <= 0) {
+            return execute(0, 1);
+        }
+        return execute(XxlJobHelper.getShardIndex(), shardTotal);
+    }
+
+    /**
+     * 执行指定分片
+     *
+     * @param shardIndex 分片序号
+     * @param shardTotal 分片总数
+     */
+    public JobResult execute(int shardIndex, int shardTotal) {
+        long deadline = System.currentTimeMillis() + timeBudget().toMillis();
+        String key = jobName + ":" + shardTotal + ":" + shardIndex;
+        JobResult result = new JobResult();
+        // 1.读取进度
+        Long checkpoint = checkpointStore.load(key);
+        long lastId = checkpoint == null ? 0 : checkpoint;
+        int limit = chunkSize();
+        ExecutorService executor = newExecutor();
+        try {
+            while (true) {
+                // 2.检查时间预算
+                if (System.currentTimeMillis() >= deadline) {
+                    log.warn("任务{}分片{}/{}超过时间预算，已处理{}条，下次从id {}继续",
+                            jobName, shardIndex, shardTotal, result.getProcessed(), lastId);
+                    return result;
+                }
+                // 3.查询一页数据
+                List<T> chunk = fetchChunk(lastId, shardIndex, shardTotal, limit);
+                if (chunk == null || chunk.isEmpty()) {
+                    break;
+                }
+                // 4.并行处理
+                processChunk(chunk, executor, result);
+                // 5.保存进度
+                lastId = idOf(chunk.get(chunk.size() - 1));
+                checkpointStore.save(key, lastId);
+                if (chunk.size() < limit) {
+                    break;
+                }
+            }
+            // 6.全部处理完成，清除进度，下次从头开始
+            checkpointStore.remove(key);
+            result.finished = true;
+            log.info("任务{}分片{}/{}执行完成，处理{}条，失败{}条",
+                    jobName, shardIndex, shardTotal, result.getProcessed(), result.getFailed());
+            return result;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 并行处理一页数据，等待全部完成后返回
+     */
+    private void processChunk(List<T> chunk, ExecutorService executor, JobResult result) {
+        List<Future<?>> futures = new ArrayList<>(chunk.size());
+        for (T item : chunk) {
+            futures.add(executor.submit(() -> {
+                try {
+                    process(item);
+                    result.processed.incrementAndGet();
+                } catch (Exception e) {
+                    result.failed.incrementAndGet();
+                    log.error("任务{}处理数据{}失败", jobName, idOf(item), e);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("任务" + jobName + "被中断", e);
+            } catch (ExecutionException e) {
+                // process中的异常已经处理过，这里不会发生
+                log.error("任务{}执行异常", jobName, e.getCause());
+            }
+        }
+    }
+
+    private ExecutorService newExecutor() {
+        int parallelism = Math.max(1, parallelism());
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(chunkSize()),
+                r -> new Thread(r, jobName + "-worker-" + counter.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * 单个分片的执行结果
+     */
+    public static class JobResult {
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        /**
+         * 是否已经处理完分片内的全部数据，false表示因超过时间预算而中断
+         */
+        @Getter
+        private boolean finished;
+
+        public int getProcessed() {
+            return processed.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+    }
+}
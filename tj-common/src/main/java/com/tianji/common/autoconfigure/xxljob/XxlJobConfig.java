@@ -3,7 +3,9 @@ package com.tianji.common.autoconfigure.xxljob;
 import com.tianji.common.utils.StringUtils;
 import com.xxl.job.core.executor.impl.XxlJobSpringExecutor;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -40,4 +42,17 @@ public class XxlJobConfig {
         log.info(">>>>>>>>>>> xxl-job config end.");
         return xxlJobSpringExecutor;
     }
+
+    @Configuration
+    @ConditionalOnClass(RedissonClient.class)
+    static class CheckpointStoreConfiguration {
+        /**
+         * 分片批处理任务的进度存储
+         */
+        @Bean
+        @ConditionalOnMissingBean
+        public ShardCheckpointStore shardCheckpointStore(RedissonClient redissonClient) {
+            return new RedissonShardCheckpointStore(redissonClient);
+        }
+    }
 }
@@ -27,6 +27,9 @@ public interface MqConstants {
 
         /*优惠券促销有关的交换机*/
         String Promotion_EXCHANGE = "promotion.topic";
+
+        /*用户有关的交换机*/
+        String USER_EXCHANGE = "user.topic";
     }
     interface Queue {
         String ERROR_QUEUE_TEMPLATE = "error.{}.queue";
@@ -39,6 +42,9 @@ public interface MqConstants {
         String COURSE_EXPIRE_KEY = "course.expire";
         String COURSE_DELETE_KEY = "course.delete";
 
+        /*用户信息变更的RoutingKey*/
+        String USER_UPDATE_KEY = "user.update";
+
         /*订单有关的RoutingKey*/
         String ORDER_PAY_KEY = "order.pay";
         String ORDER_REFUND_KEY = "order.refund";
@@ -55,6 +61,9 @@ public interface MqConstants {
         /* 笔记被采集 */
         String NOTE_GATHERED = "note.gathered";
 
+        /*课表过期*/
+        String LESSON_EXPIRED = "lesson.expired";
+
         /*点赞的RoutingKey*/
         String LIKED_TIMES_KEY_TEMPLATE = "{}.times.changed";
         /*问答*/
@@ -0,0 +1,25 @@
+package com.tianji.common.filters;
+
+import com.tianji.common.autoconfigure.datasource.DataSourceRouteContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+import javax.servlet.*;
+import java.io.IOException;
+
+/**
+ * 请求结束时清理数据源路由上下文，避免线程复用时读写标记串到下一个请求。
+ * 排在RequestIdFilter、SqlProfileFilter之后，顺序是确定的
+ */
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class DataSourceRouteFilter implements Filter {
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            DataSourceRouteContext.clear();
+        }
+    }
+}
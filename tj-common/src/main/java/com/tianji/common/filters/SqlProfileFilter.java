@@ -0,0 +1,58 @@
+package com.tianji.common.filters;
+
+import com.tianji.common.autoconfigure.mybatis.SqlProfile;
+import com.tianji.common.autoconfigure.mybatis.SqlProfilerInterceptor;
+import com.tianji.common.autoconfigure.mybatis.SqlProfilerProperties;
+import com.tianji.common.constants.Constant;
+import com.tianji.common.utils.RequestIdUtil;
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 为每个请求开启SQL执行分析，请求结束后输出分析结果。
+ * 请求携带调试请求头时，将分析报告写入同名响应头
+ */
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class SqlProfileFilter implements Filter {
+
+    private final SqlProfilerInterceptor profiler;
+    private final SqlProfilerProperties properties;
+
+    public SqlProfileFilter(SqlProfilerInterceptor profiler, SqlProfilerProperties properties) {
+        this.profiler = profiler;
+        this.properties = properties;
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        // 1.确保存在requestId
+        RequestIdUtil.markRequest();
+        String requestId = MDC.get(Constant.REQUEST_ID_HEADER);
+        // 2.判断是否需要返回分析报告，需要则缓存响应体，以便在请求结束后写入响应头
+        boolean debug = request.getHeader(properties.getDebugHeader()) != null;
+        ContentCachingResponseWrapper response = debug ?
+                new ContentCachingResponseWrapper((HttpServletResponse) servletResponse) : null;
+        // 3.开启分析
+        profiler.begin(requestId);
+        try {
+            filterChain.doFilter(request, debug ? response : servletResponse);
+        } finally {
+            // 4.结束分析
+            SqlProfile profile = profiler.end(requestId);
+            if (debug) {
+                if (profile != null) {
+                    response.setHeader(properties.getDebugHeader(), profile.summary(properties.getHeaderLimit()));
+                }
+                response.copyBodyToResponse();
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.tianji.common.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务相关的工具类
+ */
+public class TransactionUtils {
+
+    /**
+     * 在当前事务提交后执行任务，事务回滚时不执行；没有事务时立即执行。
+     * 用于写Redis、发MQ等无法随事务回滚的操作
+     * @param task 要执行的任务
+     */
+    public static void afterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
+}
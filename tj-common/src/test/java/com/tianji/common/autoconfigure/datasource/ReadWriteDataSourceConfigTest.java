@@ -0,0 +1,29 @@
+package com.tianji.common.autoconfigure.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReadWriteDataSourceConfigTest {
+
+    @Test
+    void testReplicaPoolInheritsHikariSettings() {
+        Binder binder = new Binder(new MapConfigurationPropertySource(Map.of(
+                "spring.datasource.hikari.maximum-pool-size", "20",
+                "spring.datasource.hikari.connection-timeout", "1234",
+                "spring.datasource.hikari.pool-name", "learning",
+                "tj.datasource.replica.hikari.maximum-pool-size", "5")));
+        try (HikariDataSource replica = new HikariDataSource()) {
+            ReadWriteDataSourceConfig.bindPool(binder, replica, 1);
+            // 从库的配置覆盖主库的，未配置的沿用主库的
+            assertEquals(5, replica.getMaximumPoolSize());
+            assertEquals(1234, replica.getConnectionTimeout());
+            assertEquals("learning-replica-1", replica.getPoolName());
+        }
+    }
+}
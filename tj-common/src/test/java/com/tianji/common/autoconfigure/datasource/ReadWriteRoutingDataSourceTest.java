@@ -0,0 +1,200 @@
+package com.tianji.common.autoconfigure.datasource;
+
+import com.tianji.common.autoconfigure.datasource.annotations.ReadOnlyRoute;
+import com.tianji.common.autoconfigure.datasource.aspect.DataSourceRouteAspect;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadWriteRoutingDataSourceTest {
+
+    public interface DemoMapper {
+        @Insert("INSERT INTO demo (id, name) VALUES (#{id}, #{name})")
+        void insert(@Param("id") Long id, @Param("name") String name);
+
+        @Select("SELECT name FROM demo WHERE id = 1")
+        String selectSource();
+    }
+
+    public static class DemoService {
+        private final JdbcTemplate jdbcTemplate;
+
+        public DemoService(JdbcTemplate jdbcTemplate) {
+            this.jdbcTemplate = jdbcTemplate;
+        }
+
+        @ReadOnlyRoute
+        public String queryReadOnly() {
+            return jdbcTemplate.queryForObject("SELECT name FROM demo WHERE id = 1", String.class);
+        }
+    }
+
+    private JdbcTemplate primaryTemplate;
+    private JdbcTemplate replicaTemplate;
+    private ReadWriteRoutingDataSource routingDataSource;
+    private DataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        DataSource primary = createDataSource("rw_primary");
+        DataSource replica = createDataSource("rw_replica");
+        // 两个库中放入不同的数据，通过查询结果判断路由到了哪个库
+        primaryTemplate = new JdbcTemplate(primary);
+        replicaTemplate = new JdbcTemplate(replica);
+        for (JdbcTemplate template : List.of(primaryTemplate, replicaTemplate)) {
+            template.execute("DROP TABLE IF EXISTS demo");
+            template.execute("CREATE TABLE demo (id BIGINT PRIMARY KEY, name VARCHAR(32))");
+        }
+        primaryTemplate.update("INSERT INTO demo VALUES (1, 'primary')");
+        replicaTemplate.update("INSERT INTO demo VALUES (1, 'replica')");
+        // 模拟主从延迟
+        replicaTemplate.execute("DROP TABLE IF EXISTS replica_status");
+        replicaTemplate.execute("CREATE TABLE replica_status (Seconds_Behind_Master INT)");
+        replicaTemplate.update("INSERT INTO replica_status VALUES (0)");
+
+        ReplicaDataSourceProperties properties = new ReplicaDataSourceProperties();
+        properties.setLagQuery("SELECT Seconds_Behind_Master FROM replica_status");
+        properties.setMaxLag(Duration.ofSeconds(5));
+        properties.setCheckInterval(Duration.ZERO);
+        properties.setStickyDuration(Duration.ofMillis(200));
+        routingDataSource = new ReadWriteRoutingDataSource(primary, List.of(replica), properties);
+        routingDataSource.afterPropertiesSet();
+        dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        routingDataSource.destroy();
+        DataSourceRouteContext.clear();
+    }
+
+    @Test
+    void testDefaultRouteToPrimary() {
+        assertEquals("primary", querySource());
+    }
+
+    @Test
+    void testReadOnlyTransactionRouteToReplica() {
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        tx.setReadOnly(true);
+        assertEquals("replica", tx.execute(status -> querySource()));
+        // 读写事务走主库
+        tx.setReadOnly(false);
+        assertEquals("primary", tx.execute(status -> querySource()));
+    }
+
+    @Test
+    void testReadOnlyRouteAnnotation() {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new DemoService(jdbcTemplate));
+        factory.addAspect(new DataSourceRouteAspect());
+        DemoService service = factory.getProxy();
+
+        assertEquals("replica", service.queryReadOnly());
+        // 方法结束后恢复标记
+        assertFalse(DataSourceRouteContext.isReadOnly());
+        assertEquals("primary", querySource());
+    }
+
+    @Test
+    void testFallbackToPrimaryWhenLagging() {
+        DataSourceRouteContext.setReadOnly(true);
+        assertEquals("replica", querySource());
+
+        // 1.延迟超过阈值，回退主库
+        replicaTemplate.update("UPDATE replica_status SET Seconds_Behind_Master = 30");
+        routingDataSource.checkReplicas();
+        assertEquals("primary", querySource());
+
+        // 2.复制中断，回退主库
+        replicaTemplate.update("UPDATE replica_status SET Seconds_Behind_Master = NULL");
+        routingDataSource.checkReplicas();
+        assertEquals("primary", querySource());
+
+        // 3.延迟恢复，重新使用从库
+        replicaTemplate.update("UPDATE replica_status SET Seconds_Behind_Master = 1");
+        routingDataSource.checkReplicas();
+        assertEquals("replica", querySource());
+    }
+
+    @Test
+    void testReadYourWrites() throws InterruptedException {
+        Configuration configuration = new Configuration(
+                new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.addInterceptor(new DataSourceWriteInterceptor());
+        configuration.addMapper(DemoMapper.class);
+        SqlSessionFactory sessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+
+        // 与SqlSessionTemplate在事务外的行为一致，每条语句使用新的会话和连接
+        DataSourceRouteContext.setReadOnly(true);
+        try (SqlSession session = sessionFactory.openSession(true)) {
+            assertEquals("replica", session.getMapper(DemoMapper.class).selectSource());
+        }
+        // 1.只读路由中的写操作也写入主库
+        try (SqlSession session = sessionFactory.openSession(true)) {
+            session.getMapper(DemoMapper.class).insert(2L, "new");
+        }
+        assertEquals(1, countNew(primaryTemplate));
+        assertEquals(0, countNew(replicaTemplate));
+        // 2.写操作之后，只读请求也走主库
+        assertEquals("primary", querySource());
+        // 3.超过粘滞时长后恢复读从库
+        Thread.sleep(300);
+        assertEquals("replica", querySource());
+    }
+
+    /**
+     * 读写事务中先调用只读路由的方法，再写入，整个事务都在主库
+     */
+    @Test
+    void testReadOnlyRouteFirstInReadWriteTransaction() {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new DemoService(jdbcTemplate));
+        factory.addAspect(new DataSourceRouteAspect());
+        DemoService service = factory.getProxy();
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        String source = tx.execute(status -> {
+            String name = service.queryReadOnly();
+            jdbcTemplate.update("INSERT INTO demo VALUES (2, 'new')");
+            return name;
+        });
+        assertEquals("primary", source);
+        assertEquals(1, countNew(primaryTemplate));
+        assertEquals(0, countNew(replicaTemplate));
+    }
+
+    private static int countNew(JdbcTemplate template) {
+        Integer count = template.queryForObject("SELECT COUNT(*) FROM demo WHERE id = 2", Integer.class);
+        return count == null ? 0 : count;
+    }
+
+    private String querySource() {
+        return jdbcTemplate.queryForObject("SELECT name FROM demo WHERE id = 1", String.class);
+    }
+
+    private static DataSource createDataSource(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+}
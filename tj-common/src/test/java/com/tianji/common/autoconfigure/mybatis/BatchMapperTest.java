@@ -0,0 +1,260 @@
+package com.tianji.common.autoconfigure.mybatis;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableLogic;
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.baomidou.mybatisplus.core.config.GlobalConfig;
+import com.baomidou.mybatisplus.core.toolkit.GlobalConfigUtils;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.tianji.common.autoconfigure.mybatis.injector.BatchSqlInjector;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class BatchMapperTest {
+
+    @Data
+    @TableName("batch_demo")
+    public static class BatchDemo {
+        @TableId(type = IdType.INPUT)
+        private Long id;
+        private String name;
+        private Integer score;
+        @TableLogic
+        private Integer deleted;
+        private LocalDateTime createTime;
+    }
+
+    public interface BatchDemoMapper extends BatchMapper<BatchDemo> {
+        @Update("DROP TABLE IF EXISTS batch_demo")
+        void dropTable();
+
+        @Update("CREATE TABLE batch_demo (id BIGINT PRIMARY KEY, name VARCHAR(64), score INT NOT NULL DEFAULT 0, " +
+                "deleted INT NOT NULL DEFAULT 0, create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP)")
+        void createTable();
+
+        @Select("SELECT SUM(score) FROM batch_demo")
+        Long sumScore();
+    }
+
+    public interface PlainDemoMapper extends BaseMapper<BatchDemo> {
+    }
+
+    private MybatisConfiguration configuration;
+    private SqlSessionFactory sessionFactory;
+
+    @BeforeEach
+    void setUp() {
+        PooledDataSource dataSource = new PooledDataSource(
+                "org.h2.Driver", "jdbc:h2:mem:batch;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        configuration = new MybatisConfiguration(
+                new Environment("test", new JdbcTransactionFactory(), dataSource));
+        GlobalConfig globalConfig = GlobalConfigUtils.defaults();
+        globalConfig.setBanner(false);
+        globalConfig.setSqlInjector(new BatchSqlInjector());
+        GlobalConfigUtils.setGlobalConfig(configuration, globalConfig);
+        configuration.addMapper(BatchDemoMapper.class);
+        configuration.addMapper(PlainDemoMapper.class);
+        sessionFactory = new MybatisSqlSessionFactoryBuilder().build(configuration);
+
+        try (SqlSession session = sessionFactory.openSession(true)) {
+            BatchDemoMapper mapper = session.getMapper(BatchDemoMapper.class);
+            mapper.dropTable();
+            mapper.createTable();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        BatchSqlHelper.configure(new BatchSqlProperties());
+    }
+
+    @Test
+    void testBatchMethodsOnlyForBatchMapper() {
+        for (String method : List.of("insertBatchSomeColumn", "upsertBatch", "updateBatchByCase")) {
+            assertTrue(configuration.hasStatement(BatchDemoMapper.class.getName() + "." + method, false), method);
+            assertFalse(configuration.hasStatement(PlainDemoMapper.class.getName() + "." + method, false), method);
+        }
+        // 默认方法不受影响
+        assertTrue(configuration.hasStatement(PlainDemoMapper.class.getName() + ".insert", false));
+    }
+
+    @Test
+    void testInsertAllInChunks() {
+        BatchSqlProperties properties = new BatchSqlProperties();
+        properties.setMaxRows(1000);
+        BatchSqlHelper.configure(properties);
+        List<BatchDemo> list = createList(1, 2500);
+        assertEquals(3, BatchSqlHelper.split(list).size());
+
+        try (SqlSession session = sessionFactory.openSession(true)) {
+            BatchDemoMapper mapper = session.getMapper(BatchDemoMapper.class);
+            assertEquals(2500, mapper.insertAll(list));
+            assertEquals(2500, mapper.selectCount(null));
+            // 创建时间由数据库默认值填充
+            assertNotNull(mapper.selectById(1L).getCreateTime());
+        }
+    }
+
+    @Test
+    void testSplitByPacketSize() {
+        BatchSqlProperties properties = new BatchSqlProperties();
+        properties.setMaxPacketSize(DataSize.ofKilobytes(16));
+        BatchSqlHelper.configure(properties);
+        List<BatchDemo> list = createList(1, 1000);
+        for (BatchDemo demo : list) {
+            demo.setName("长名称".repeat(10));
+        }
+        List<BatchSqlHelper.Chunk<BatchDemo>> chunks = BatchSqlHelper.split(list);
+        assertTrue(chunks.size() > 1);
+        assertEquals(1000, chunks.stream().mapToInt(c -> c.getRows().size()).sum());
+
+        try (SqlSession session = sessionFactory.openSession(true)) {
+            BatchDemoMapper mapper = session.getMapper(BatchDemoMapper.class);
+            assertEquals(1000, mapper.insertAll(list));
+            assertEquals(1000, mapper.selectCount(null));
+        }
+    }
+
+    @Test
+    void testUpdateAllByCase() {
+        try (SqlSession session = sessionFactory.openSession(true)) {
+            BatchDemoMapper mapper = session.getMapper(BatchDemoMapper.class);
+            mapper.insertAll(createList(1, 10));
+            mapper.deleteById(10L);
+
+            // 只更新score，name为null保持原值
+            List<BatchDemo> updates = new ArrayList<>();
+            for (long i = 1; i <= 10; i++) {
+                BatchDemo demo = new BatchDemo();
+                demo.setId(i);
+                demo.setScore((int) i * 100);
+                updates.add(demo);
+            }
+            assertEquals(9, mapper.updateAllByCase(updates));
+
+            BatchDemo first = mapper.selectById(1L);
+            assertEquals(100, first.getScore());
+            assertEquals("name1", first.getName());
+            // 已逻辑删除的数据不会被更新
+            assertEquals(100L * (1 + 9) * 9 / 2 + 1, mapper.sumScore());
+        }
+    }
+
+    @Test
+    void testUpsertAll() {
+        try (SqlSession session = sessionFactory.openSession(true)) {
+            BatchDemoMapper mapper = session.getMapper(BatchDemoMapper.class);
+            mapper.insertAll(createList(1, 5));
+
+            List<BatchDemo> list = createList(4, 8);
+            for (BatchDemo demo : list) {
+                demo.setScore(99);
+            }
+            mapper.upsertAll(list);
+
+            assertEquals(8, mapper.selectCount(null));
+            assertEquals(1, mapper.selectById(3L).getScore());
+            assertEquals(99, mapper.selectById(4L).getScore());
+            assertEquals(99, mapper.selectById(8L).getScore());
+        }
+    }
+
+    /**
+     * 对比IService.updateBatchById（JDBC批处理，每行一条UPDATE）与updateAllByCase的耗时
+     */
+    @Test
+    void benchmarkAgainstUpdateBatchById() {
+        int size = 5000;
+        try (SqlSession session = sessionFactory.openSession(true)) {
+            session.getMapper(BatchDemoMapper.class).insertAll(createList(1, size));
+        }
+        // 预热
+        updateBatchById(updates(size, 1));
+        updateAllByCase(updates(size, 2));
+
+        long begin = System.nanoTime();
+        updateBatchById(updates(size, 3));
+        long batchByIdMillis = (System.nanoTime() - begin) / 1_000_000;
+
+        begin = System.nanoTime();
+        updateAllByCase(updates(size, 4));
+        long byCaseMillis = (System.nanoTime() - begin) / 1_000_000;
+
+        log.info("更新{}行，updateBatchById耗时{}ms，updateAllByCase耗时{}ms", size, batchByIdMillis, byCaseMillis);
+        try (SqlSession session = sessionFactory.openSession(true)) {
+            assertEquals(4L * size, session.getMapper(BatchDemoMapper.class).sumScore());
+        }
+    }
+
+    /**
+     * 与ServiceImpl.updateBatchById相同：BATCH执行器逐行updateById，每1000行刷新一次
+     */
+    private void updateBatchById(List<BatchDemo> list) {
+        try (SqlSession session = sessionFactory.openSession(ExecutorType.BATCH)) {
+            BatchDemoMapper mapper = session.getMapper(BatchDemoMapper.class);
+            int i = 0;
+            for (BatchDemo demo : list) {
+                mapper.updateById(demo);
+                if (++i % 1000 == 0) {
+                    List<BatchResult> results = session.flushStatements();
+                    assertFalse(results.isEmpty());
+                }
+            }
+            session.flushStatements();
+            session.commit();
+        }
+    }
+
+    private void updateAllByCase(List<BatchDemo> list) {
+        try (SqlSession session = sessionFactory.openSession(true)) {
+            assertEquals(list.size(), session.getMapper(BatchDemoMapper.class).updateAllByCase(list));
+        }
+    }
+
+    private static List<BatchDemo> updates(int size, int score) {
+        List<BatchDemo> list = new ArrayList<>(size);
+        for (long i = 1; i <= size; i++) {
+            BatchDemo demo = new BatchDemo();
+            demo.setId(i);
+            demo.setScore(score);
+            list.add(demo);
+        }
+        return list;
+    }
+
+    private static List<BatchDemo> createList(long from, long to) {
+        List<BatchDemo> list = new ArrayList<>();
+        for (long i = from; i <= to; i++) {
+            BatchDemo demo = new BatchDemo();
+            demo.setId(i);
+            demo.setName("name" + i);
+            demo.setScore(1);
+            demo.setDeleted(0);
+            list.add(demo);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,149 @@
+package com.tianji.common.autoconfigure.mybatis;
+
+import com.tianji.common.constants.Constant;
+import com.tianji.common.filters.SqlProfileFilter;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlProfilerInterceptorTest {
+
+    public interface DemoMapper {
+        @Update("CREATE TABLE IF NOT EXISTS demo (id BIGINT PRIMARY KEY, name VARCHAR(32))")
+        void createTable();
+
+        @Insert("MERGE INTO demo (id, name) VALUES (#{id}, #{name})")
+        void insert(@Param("id") Long id, @Param("name") String name);
+
+        @Select("SELECT name FROM demo WHERE id = #{id}")
+        String selectName(@Param("id") Long id);
+
+        @Select("SELECT COUNT(*) FROM demo")
+        int count();
+    }
+
+    private SqlProfilerProperties properties;
+    private SqlProfilerInterceptor interceptor;
+    private SqlSessionFactory sessionFactory;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SqlProfilerProperties();
+        properties.setRepeatThreshold(5);
+        interceptor = new SqlProfilerInterceptor(properties);
+
+        PooledDataSource dataSource = new PooledDataSource(
+                "org.h2.Driver", "jdbc:h2:mem:profiler;DB_CLOSE_DELAY=-1", "sa", "");
+        Configuration configuration = new Configuration(
+                new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.addInterceptor(interceptor);
+        configuration.addMapper(DemoMapper.class);
+        sessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+
+        try (SqlSession session = sessionFactory.openSession(true)) {
+            DemoMapper mapper = session.getMapper(DemoMapper.class);
+            mapper.createTable();
+            for (long i = 1; i <= 20; i++) {
+                mapper.insert(i, "name" + i);
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        MDC.clear();
+    }
+
+    @Test
+    void testRecordPerRequest() {
+        MDC.put(Constant.REQUEST_ID_HEADER, "req-1");
+        interceptor.begin("req-1");
+        try (SqlSession session = sessionFactory.openSession(true)) {
+            DemoMapper mapper = session.getMapper(DemoMapper.class);
+            mapper.count();
+            // 模拟N+1：循环中逐条查询
+            for (long i = 1; i <= 20; i++) {
+                mapper.selectName(i);
+            }
+        }
+        SqlProfile profile = interceptor.end("req-1");
+
+        assertNotNull(profile);
+        assertEquals(21, profile.getTotalCount());
+        List<SqlProfile.StatementStat> stats = profile.getStats();
+        assertEquals(2, stats.size());
+        SqlProfile.StatementStat top = stats.get(0);
+        assertEquals(DemoMapper.class.getName() + ".selectName", top.getStatementId());
+        assertEquals(20, top.getCount());
+        assertEquals("SELECT name FROM demo WHERE id = ?", top.getShape());
+        assertTrue(profile.summary(1).startsWith("count=21;"));
+        // 结束后不再记录
+        assertNull(interceptor.end("req-1"));
+    }
+
+    @Test
+    void testNotRecordWithoutBegin() {
+        MDC.put(Constant.REQUEST_ID_HEADER, "req-2");
+        try (SqlSession session = sessionFactory.openSession(true)) {
+            session.getMapper(DemoMapper.class).count();
+        }
+        assertNull(interceptor.end("req-2"));
+    }
+
+    @Test
+    void testNormalize() {
+        assertEquals("SELECT * FROM t WHERE id IN (...) AND name = ?",
+                SqlProfilerInterceptor.normalize("SELECT *\n  FROM t WHERE id IN ( ?, ?,? ) AND name = 'jack'"));
+        assertEquals("INSERT INTO t (a, b) VALUES (?, ?), ...",
+                SqlProfilerInterceptor.normalize("INSERT INTO t (a, b) VALUES (?, ?), (?, ?),(?, ?)"));
+        assertEquals("SELECT * FROM points_board_12 LIMIT ?",
+                SqlProfilerInterceptor.normalize("SELECT * FROM points_board_12 LIMIT 10"));
+    }
+
+    @Test
+    void testDebugHeader() throws Exception {
+        SqlProfileFilter filter = new SqlProfileFilter(interceptor, properties);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(properties.getDebugHeader(), "true");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain(new javax.servlet.http.HttpServlet() {
+            @Override
+            protected void service(javax.servlet.http.HttpServletRequest req,
+                                   javax.servlet.http.HttpServletResponse resp) throws java.io.IOException {
+                try (SqlSession session = sessionFactory.openSession(true)) {
+                    DemoMapper mapper = session.getMapper(DemoMapper.class);
+                    for (long i = 1; i <= 3; i++) {
+                        mapper.selectName(i);
+                    }
+                }
+                resp.getWriter().write("ok");
+            }
+        }));
+
+        String header = response.getHeader(properties.getDebugHeader());
+        assertNotNull(header);
+        assertTrue(header.startsWith("count=3;"));
+        assertTrue(header.contains(".selectName*3*"));
+        assertEquals("ok", response.getContentAsString());
+    }
+}
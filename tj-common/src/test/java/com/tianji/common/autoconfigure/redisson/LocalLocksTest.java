@@ -0,0 +1,69 @@
+package com.tianji.common.autoconfigure.redisson;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalLocksTest {
+
+    private final LocalLocks localLocks = new LocalLocks();
+
+    @Test
+    void testDifferentNamesDoNotShareLock() throws Exception {
+        // "Aa"和"BB"的hashCode相同，也是不同的本地锁
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        ReentrantLock a = localLocks.acquire("Aa");
+        a.lock();
+        try {
+            Future<Boolean> other = Executors.newSingleThreadExecutor().submit(() -> {
+                ReentrantLock b = localLocks.acquire("BB");
+                try {
+                    boolean locked = b.tryLock();
+                    if (locked) {
+                        b.unlock();
+                    }
+                    return locked;
+                } finally {
+                    localLocks.release("BB");
+                }
+            });
+            assertTrue(other.get(5, TimeUnit.SECONDS));
+        } finally {
+            a.unlock();
+            localLocks.release("Aa");
+        }
+        assertEquals(0, localLocks.size());
+    }
+
+    @Test
+    void testSameNameSharesLockUntilLastRelease() throws Exception {
+        ReentrantLock first = localLocks.acquire("lock:order:1");
+        first.lock();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Future<Boolean> waiter = Executors.newSingleThreadExecutor().submit(() -> {
+            ReentrantLock lock = localLocks.acquire("lock:order:1");
+            acquired.countDown();
+            try {
+                boolean locked = lock.tryLock(5, TimeUnit.SECONDS);
+                if (locked) {
+                    lock.unlock();
+                }
+                return locked;
+            } finally {
+                localLocks.release("lock:order:1");
+            }
+        });
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        // 同名的线程共用一把锁，第一个线程释放引用后，等待中的线程仍持有引用，锁对象不会被移除
+        assertEquals(1, localLocks.size());
+        assertFalse(waiter.isDone());
+        localLocks.release("lock:order:1");
+        assertEquals(1, localLocks.size());
+        first.unlock();
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(0, localLocks.size());
+    }
+}
@@ -0,0 +1,173 @@
+package com.tianji.common.autoconfigure.redisson.aspect;
+
+import com.tianji.common.autoconfigure.redisson.annotations.Lock;
+import com.tianji.common.autoconfigure.redisson.enums.LockStrategy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class LockAspectTest {
+
+    public static class CouponService {
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+        private final AtomicInteger executed = new AtomicInteger();
+
+        @Lock(name = "lock:coupon:#{userId}", lockStrategy = LockStrategy.SKIP_FAST, localFirst = true)
+        public void receiveFast(Long userId) {
+            doWork();
+        }
+
+        @Lock(name = "lock:coupon:#{userId}", lockStrategy = LockStrategy.SKIP_FAST)
+        public void receiveFastRemoteOnly(Long userId) {
+            doWork();
+        }
+
+        @Lock(name = "lock:coupon:#{userId}", waitTime = 10, localFirst = true)
+        public void receiveWait(Long userId) {
+            doWork();
+        }
+
+        private void doWork() {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executed.incrementAndGet();
+            running.decrementAndGet();
+        }
+    }
+
+    /**
+     * 模拟Redis中的一把分布式锁，记录加锁次数和同时在Redis上等待的线程数
+     */
+    private static class FakeRedisLock {
+        private final AtomicReference<Thread> owner = new AtomicReference<>();
+        private final AtomicInteger lockCalls = new AtomicInteger();
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicInteger maxWaiting = new AtomicInteger();
+
+        RLock newRLock() throws InterruptedException {
+            RLock rLock = mock(RLock.class);
+            when(rLock.tryLock(anyLong(), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+                lockCalls.incrementAndGet();
+                maxWaiting.accumulateAndGet(waiting.incrementAndGet(), Math::max);
+                try {
+                    long deadline = System.nanoTime()
+                            + invocation.<TimeUnit>getArgument(2).toNanos(invocation.getArgument(0));
+                    do {
+                        if (owner.compareAndSet(null, Thread.currentThread())) {
+                            return true;
+                        }
+                        Thread.sleep(1);
+                    } while (System.nanoTime() < deadline);
+                    return false;
+                } finally {
+                    waiting.decrementAndGet();
+                }
+            });
+            doAnswer(invocation -> {
+                assertTrue(owner.compareAndSet(Thread.currentThread(), null), "只能由持有锁的线程释放");
+                return null;
+            }).when(rLock).unlock();
+            return rLock;
+        }
+    }
+
+    private FakeRedisLock redisLock;
+    private CouponService target;
+
+    @BeforeEach
+    void setUp() {
+        redisLock = new FakeRedisLock();
+        target = new CouponService();
+    }
+
+    @Test
+    void testLocalWaitersDoNotHitRedis() throws Exception {
+        // 1.只使用分布式锁，每个并发请求都要访问Redis
+        CouponService remoteOnly = newNode();
+        runConcurrently(10, () -> remoteOnly.receiveFastRemoteOnly(1L));
+        assertEquals(10, redisLock.lockCalls.get());
+        assertEquals(1, target.executed.get());
+
+        // 2.先获取本地锁，本地竞争失败的请求不会访问Redis
+        redisLock.lockCalls.set(0);
+        target.executed.set(0);
+        CouponService localFirst = newNode();
+        runConcurrently(10, () -> localFirst.receiveFast(1L));
+        assertEquals(1, redisLock.lockCalls.get());
+        assertEquals(1, target.executed.get());
+    }
+
+    @Test
+    void testLocalWaitersQueueLocally() throws Exception {
+        CouponService service = newNode();
+        runConcurrently(10, () -> service.receiveWait(1L));
+
+        assertEquals(10, target.executed.get());
+        assertEquals(1, target.maxRunning.get());
+        // 同一时刻最多只有一个线程在Redis上等待锁
+        assertEquals(1, redisLock.maxWaiting.get());
+    }
+
+    @Test
+    void testMutualExclusionAcrossNodes() throws Exception {
+        // 两个切面实例模拟两个节点，各自有独立的本地锁，共享同一把分布式锁
+        CouponService node1 = newNode();
+        CouponService node2 = newNode();
+        runConcurrently(12, i -> (i % 2 == 0 ? node1 : node2).receiveWait(1L));
+
+        assertEquals(12, target.executed.get());
+        assertEquals(1, target.maxRunning.get());
+        // 每个节点最多一个线程在Redis上等待
+        assertTrue(redisLock.maxWaiting.get() <= 2);
+    }
+
+    private CouponService newNode() throws InterruptedException {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        RLock rLock = redisLock.newRLock();
+        when(redissonClient.getLock(anyString())).thenReturn(rLock);
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new LockAspect(redissonClient));
+        return factory.getProxy();
+    }
+
+    private void runConcurrently(int threads, Runnable task) throws Exception {
+        runConcurrently(threads, i -> task.run());
+    }
+
+    private void runConcurrently(int threads, java.util.function.IntConsumer task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                task.accept(index);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,177 @@
+package com.tianji.common.autoconfigure.xxljob;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedBatchJobTest {
+
+    private static final int ROWS = 1000;
+
+    private JdbcTemplate jdbcTemplate;
+    private InMemoryCheckpointStore checkpointStore;
+    private Map<Long, AtomicInteger> processed;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:sharded_job;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("DROP TABLE IF EXISTS job_item");
+        jdbcTemplate.execute("CREATE TABLE job_item (id BIGINT PRIMARY KEY)");
+        // id不连续，模拟真实数据
+        List<Object[]> args = new ArrayList<>(ROWS);
+        for (long i = 1; i <= ROWS; i++) {
+            args.add(new Object[]{i * 7 + (i % 3)});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO job_item (id) VALUES (?)", args);
+        checkpointStore = new InMemoryCheckpointStore();
+        processed = new ConcurrentHashMap<>();
+    }
+
+    @Test
+    void testEveryRowProcessedOnceAcrossShards() throws Exception {
+        int shardTotal = 3;
+        ExecutorService nodes = Executors.newFixedThreadPool(shardTotal);
+        List<Future<ShardedBatchJob.JobResult>> futures = new ArrayList<>();
+        for (int i = 0; i < shardTotal; i++) {
+            int shardIndex = i;
+            futures.add(nodes.submit(() -> new DemoJob(Duration.ofMinutes(1)).execute(shardIndex, shardTotal)));
+        }
+        int total = 0;
+        for (Future<ShardedBatchJob.JobResult> future : futures) {
+            ShardedBatchJob.JobResult result = future.get();
+            assertTrue(result.isFinished());
+            total += result.getProcessed();
+        }
+        nodes.shutdown();
+
+        assertEquals(ROWS, total);
+        assertProcessedExactlyOnce();
+        // 全部完成后清除进度
+        assertTrue(checkpointStore.data.isEmpty());
+    }
+
+    @Test
+    void testResumeFromCheckpointAfterTimeBudget() {
+        // 1.时间预算耗尽，只处理了一页就中断
+        DemoJob job = new DemoJob(Duration.ofMillis(100)) {
+            @Override
+            protected List<Long> fetchChunk(long lastId, int shardIndex, int shardTotal, int limit) {
+                sleep();
+                return super.fetchChunk(lastId, shardIndex, shardTotal, limit);
+            }
+        };
+        ShardedBatchJob.JobResult first = job.execute(0, 2);
+        assertFalse(first.isFinished());
+        assertEquals(50, first.getProcessed());
+        assertEquals(1, checkpointStore.data.size());
+
+        // 2.下次执行从进度处继续
+        ShardedBatchJob.JobResult second = new DemoJob(Duration.ofMinutes(1)).execute(0, 2);
+        assertTrue(second.isFinished());
+        new DemoJob(Duration.ofMinutes(1)).execute(1, 2);
+
+        assertProcessedExactlyOnce();
+    }
+
+    @Test
+    void testFailureDoesNotStopJob() {
+        DemoJob job = new DemoJob(Duration.ofMinutes(1)) {
+            @Override
+            protected void process(Long id) {
+                if (id % 10 == 0) {
+                    throw new IllegalStateException("模拟处理失败");
+                }
+                super.process(id);
+            }
+        };
+        ShardedBatchJob.JobResult result = job.execute(0, 1);
+        assertTrue(result.isFinished());
+        int failed = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM job_item WHERE MOD(id, 10) = 0", Integer.class);
+        assertEquals(failed, result.getFailed());
+        assertEquals(ROWS - failed, result.getProcessed());
+    }
+
+    private void assertProcessedExactlyOnce() {
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM job_item", Long.class);
+        assertEquals(ids.size(), processed.size());
+        for (Long id : ids) {
+            AtomicInteger count = processed.get(id);
+            assertNotNull(count, "id " + id + "未被处理");
+            assertEquals(1, count.get(), "id " + id + "被重复处理");
+        }
+    }
+
+    private class DemoJob extends ShardedBatchJob<Long> {
+        private final Duration timeBudget;
+
+        DemoJob(Duration timeBudget) {
+            super("demo-job", checkpointStore);
+            this.timeBudget = timeBudget;
+        }
+
+        @Override
+        protected List<Long> fetchChunk(long lastId, int shardIndex, int shardTotal, int limit) {
+            return jdbcTemplate.queryForList(
+                    "SELECT id FROM job_item WHERE id > ? AND MOD(id, ?) = ? ORDER BY id LIMIT ?",
+                    Long.class, lastId, shardTotal, shardIndex, limit);
+        }
+
+        @Override
+        protected long idOf(Long item) {
+            return item;
+        }
+
+        @Override
+        protected void process(Long id) {
+            processed.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet();
+        }
+
+        @Override
+        protected int chunkSize() {
+            return 50;
+        }
+
+        @Override
+        protected Duration timeBudget() {
+            return timeBudget;
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(150);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class InMemoryCheckpointStore implements ShardCheckpointStore {
+        private final Map<String, Long> data = new ConcurrentHashMap<>();
+
+        @Override
+        public Long load(String key) {
+            return data.get(key);
+        }
+
+        @Override
+        public void save(String key, long lastId) {
+            data.put(key, lastId);
+        }
+
+        @Override
+        public void remove(String key) {
+            data.remove(key);
+        }
+    }
+}
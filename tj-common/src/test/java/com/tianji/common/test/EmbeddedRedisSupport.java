@@ -0,0 +1,59 @@
+package com.tianji.common.test;
+
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+
+/**
+ * 单元测试使用的嵌入式Redis，首次使用时启动，同一JVM内的测试共享，JVM退出时关闭
+ */
+public final class EmbeddedRedisSupport {
+
+    private static StringRedisTemplate redisTemplate;
+
+    private EmbeddedRedisSupport() {
+    }
+
+    public static synchronized StringRedisTemplate redisTemplate() {
+        if (redisTemplate != null) {
+            return redisTemplate;
+        }
+        try {
+            // 1.选择空闲端口启动Redis
+            int port;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            RedisServer server = new RedisServer(port);
+            server.start();
+            // 2.创建连接
+            LettuceConnectionFactory factory = new LettuceConnectionFactory("localhost", port);
+            factory.afterPropertiesSet();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                factory.destroy();
+                try {
+                    server.stop();
+                } catch (IOException ignored) {
+                }
+            }));
+            redisTemplate = new StringRedisTemplate(factory);
+            return redisTemplate;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 清空Redis中的所有数据
+     */
+    public static void flushAll() {
+        redisTemplate().execute(connection -> {
+            connection.flushAll();
+            return null;
+        }, true);
+    }
+}
@@ -0,0 +1,41 @@
+package com.tianji.common.test;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.core.config.GlobalConfig;
+import com.baomidou.mybatisplus.core.handlers.MybatisEnumTypeHandler;
+import com.baomidou.mybatisplus.core.toolkit.GlobalConfigUtils;
+import com.tianji.common.autoconfigure.mybatis.injector.BatchSqlInjector;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+
+/**
+ * 单元测试使用的H2数据库（MySQL模式），配置与线上一致：枚举处理器、驼峰映射、批量SQL注入器
+ */
+public final class H2MybatisSupport {
+
+    private H2MybatisSupport() {
+    }
+
+    /**
+     * 创建连接到指定内存库的SqlSession，每次调用Mapper方法自动提交
+     */
+    public static SqlSessionTemplate sqlSession(String database, Class<?>... mappers) {
+        PooledDataSource dataSource = new PooledDataSource("org.h2.Driver",
+                "jdbc:h2:mem:" + database + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        MybatisConfiguration configuration = new MybatisConfiguration(
+                new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.setDefaultEnumTypeHandler(MybatisEnumTypeHandler.class);
+        configuration.setMapUnderscoreToCamelCase(true);
+        GlobalConfig globalConfig = GlobalConfigUtils.defaults();
+        globalConfig.setBanner(false);
+        globalConfig.setSqlInjector(new BatchSqlInjector());
+        GlobalConfigUtils.setGlobalConfig(configuration, globalConfig);
+        for (Class<?> mapper : mappers) {
+            configuration.addMapper(mapper);
+        }
+        return new SqlSessionTemplate(new MybatisSqlSessionFactoryBuilder().build(configuration));
+    }
+}
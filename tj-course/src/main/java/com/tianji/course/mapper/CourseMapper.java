@@ -1,6 +1,6 @@
 package com.tianji.course.mapper;
 
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tianji.common.autoconfigure.mybatis.BatchMapper;
 import com.tianji.api.dto.IdAndNumDTO;
 import com.tianji.course.domain.po.Category3PO;
 import com.tianji.course.domain.po.Course;
@@ -17,7 +17,7 @@ import java.util.List;
  * @author wusongsong
  * @since 2022-07-22
  */
-public interface CourseMapper extends BaseMapper<Course> {
+public interface CourseMapper extends BatchMapper<Course> {
     @Select("select count(1) from course where name = #{name}")
     int countSameName(@Param("name") String name);
 
@@ -20,6 +20,7 @@ import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.exceptions.DbException;
 import com.tianji.common.utils.*;
+import com.tianji.common.autoconfigure.datasource.annotations.ReadOnlyRoute;
 import com.tianji.course.constants.CourseErrorInfo;
 import com.tianji.course.constants.CourseStatus;
 import com.tianji.course.constants.RedisContants;
@@ -366,8 +367,8 @@ CourseServiceImpl extends ServiceImpl<CourseMapper, Course> implements ICourseSe
             updateCourse.setStatus(CourseStatus.FINISHED.getStatus());
             updateCourses.add(updateCourse);
         }
-        //3.批量完结课程
-        updateBatchById(updateCourses);
+        //3.批量完结课程，每批只执行一条UPDATE
+        baseMapper.updateAllByCase(updateCourses);
         //4.发送课程完结mq
         sendFinishedCourse(courses);
         //5.清理草稿
@@ -445,6 +446,7 @@ CourseServiceImpl extends ServiceImpl<CourseMapper, Course> implements ICourseSe
     }
 
     @Override
+    @ReadOnlyRoute
     public PageDTO<CoursePageVO> queryForPage(CoursePageQuery coursePageQuery) {
         //1.课程查询条件
         LambdaQueryWrapper<Course> queryWrapper =
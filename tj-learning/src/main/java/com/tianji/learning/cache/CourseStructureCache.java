@@ -0,0 +1,102 @@
+package com.tianji.learning.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.dto.course.CatalogueDTO;
+import com.tianji.api.dto.course.CourseFullInfoDTO;
+import com.tianji.common.utils.CollUtils;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+
+/**
+ * 课程结构的本地缓存，用于学习进度判断，避免每次学完小节都远程查询课程服务。
+ * <p>
+ * 课程上下架、过期、删除时通过MQ消息失效，同时设置了有效期兜底
+ * </p>
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class CourseStructureCache {
+
+    private final Cache<Long, CourseStructure> courseStructureCaches;
+
+    private final CourseClient courseClient;
+
+    /**
+     * 查询课程结构，缓存未命中时远程查询，同一课程的并发查询只会远程调用一次
+     *
+     * @param courseId 课程id
+     * @return 课程结构，课程不存在返回null
+     */
+    public CourseStructure getCourseStructure(Long courseId) {
+        return courseStructureCaches.get(courseId, this::load);
+    }
+
+    /**
+     * 查询课程总小节数
+     *
+     * @return 课程总小节数，课程不存在返回null
+     */
+    public Integer getSectionNum(Long courseId) {
+        CourseStructure structure = getCourseStructure(courseId);
+        return structure == null ? null : structure.getSectionNum();
+    }
+
+    /**
+     * 失效指定课程的缓存
+     */
+    public void invalidate(Long courseId) {
+        courseStructureCaches.invalidate(courseId);
+    }
+
+    private CourseStructure load(Long courseId) {
+        log.debug("课程结构缓存未命中，查询课程{}", courseId);
+        // 1.查询课程及目录
+        CourseFullInfoDTO cInfo = courseClient.getCourseInfoById(courseId, true, false);
+        if (cInfo == null) {
+            // 返回null不会被缓存
+            return null;
+        }
+        // 2.收集小节和练习
+        CourseStructure structure = new CourseStructure();
+        structure.setCourseId(courseId);
+        structure.setSectionNum(cInfo.getSectionNum());
+        Map<Long, Integer> durations = new LinkedHashMap<>();
+        if (CollUtils.isNotEmpty(cInfo.getChapters())) {
+            for (CatalogueDTO chapter : cInfo.getChapters()) {
+                if (CollUtils.isEmpty(chapter.getSections())) {
+                    continue;
+                }
+                for (CatalogueDTO section : chapter.getSections()) {
+                    durations.put(section.getId(), section.getMediaDuration());
+                }
+            }
+        }
+        structure.setSectionIds(Collections.unmodifiableList(new ArrayList<>(durations.keySet())));
+        structure.setSectionDurations(Collections.unmodifiableMap(durations));
+        return structure;
+    }
+
+    @Data
+    public static class CourseStructure {
+        /**
+         * 课程id
+         */
+        private Long courseId;
+        /**
+         * 课程总小节数
+         */
+        private Integer sectionNum;
+        /**
+         * 小节和练习的id，按目录顺序排列
+         */
+        private List<Long> sectionIds;
+        /**
+         * 小节的视频时长，单位秒，key是小节id
+         */
+        private Map<Long, Integer> sectionDurations;
+    }
+}
@@ -0,0 +1,235 @@
+package com.tianji.learning.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.learning.constans.RedisConstants;
+import com.tianji.learning.domain.po.LearningLesson;
+import com.tianji.learning.mapper.LearningLessonMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * <h1>学习活跃度计数</h1>
+ * 学习记录和签到时直接累加到Redis，统计时不需要扫描学习记录表：
+ * <ol>
+ *     <li>每天一个HyperLogLog记录全平台的活跃用户，每门课程每天一个记录课程的活跃用户，12KB以内，误差约0.81%</li>
+ *     <li>周活跃是最近7天的HyperLogLog合并计数，不需要单独写入</li>
+ *     <li>学习秒数按天累加到两个hash中：field分别是用户id和课程id。有活跃用户的课程在课程hash中一定有field，用于汇总时列出课程</li>
+ *     <li>原始数据保留{@link #KEEP_DAYS}天，由定时任务汇总到数据库</li>
+ * </ol>
+ * 计数失败只记录日志，不影响学习和签到
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LearningActivityCounter {
+
+    /**
+     * 全平台的统计使用的课程id
+     */
+    public static final long PLATFORM = 0L;
+    /**
+     * 原始数据保留的天数，需要覆盖周活跃的7天和汇总任务的延迟
+     */
+    static final int KEEP_DAYS = 9;
+    /**
+     * 一次进度上报最多计入的学习秒数，拖动进度条不计入学习时长
+     */
+    static final int MAX_STEP_SECONDS = 60;
+
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final StringRedisTemplate redisTemplate;
+    private final LearningLessonMapper lessonMapper;
+
+    /**
+     * 课表id到课程id的映射，不会变化
+     */
+    private final Cache<Long, Long> lessonCourses = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(Duration.ofHours(1))
+            .build();
+
+    /**
+     * 两次上报之间的学习秒数：进度的增加量，不超过{@link #MAX_STEP_SECONDS}
+     * @param oldMoment 上次的进度，没有时为null
+     * @param moment 本次的进度
+     */
+    public static int studySeconds(Integer oldMoment, Integer moment) {
+        if (moment == null) {
+            return 0;
+        }
+        int delta = moment - (oldMoment == null ? 0 : oldMoment);
+        return Math.max(0, Math.min(delta, MAX_STEP_SECONDS));
+    }
+
+    /**
+     * 签到，计入全平台活跃用户
+     */
+    public void recordSignIn(Long userId, LocalDate date) {
+        record(userId, Collections.emptyMap(), date);
+    }
+
+    /**
+     * 学习了课表中的小节
+     * @param seconds 学习秒数，可以为0
+     */
+    public void recordLessonStudy(Long userId, Long lessonId, int seconds, LocalDate date) {
+        Long courseId;
+        try {
+            courseId = lessonCourses.get(lessonId, id -> {
+                LearningLesson lesson = lessonMapper.selectById(id);
+                return lesson == null ? null : lesson.getCourseId();
+            });
+        } catch (Exception e) {
+            log.error("查询课表{}的课程失败", lessonId, e);
+            return;
+        }
+        record(userId, courseId == null ? Collections.emptyMap() : Map.of(courseId, seconds), date);
+    }
+
+    /**
+     * 一次管道写入用户在多门课程的学习，计入全平台和课程的活跃用户
+     * @param courseSeconds 课程id到学习秒数的映射
+     */
+    public void record(Long userId, Map<Long, Integer> courseSeconds, LocalDate date) {
+        String day = date.format(DAY_FORMATTER);
+        byte[] user = bytes(userId.toString());
+        byte[] userSecondsKey = bytes(userSecondsKey(day));
+        byte[] courseSecondsKey = bytes(courseSecondsKey(day));
+        long ttl = Duration.ofDays(KEEP_DAYS).getSeconds();
+        long total = courseSeconds.values().stream().mapToLong(Integer::longValue).sum();
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                // 1.全平台活跃用户
+                byte[] platformKey = bytes(activeKey(day, PLATFORM));
+                connection.hyperLogLogCommands().pfAdd(platformKey, user);
+                connection.keyCommands().expire(platformKey, ttl);
+                // 2.课程活跃用户和学习秒数，秒数为0也写入，用于列出当天有活跃用户的课程
+                for (Map.Entry<Long, Integer> entry : courseSeconds.entrySet()) {
+                    byte[] courseKey = bytes(activeKey(day, entry.getKey()));
+                    connection.hyperLogLogCommands().pfAdd(courseKey, user);
+                    connection.keyCommands().expire(courseKey, ttl);
+                    connection.hashCommands().hIncrBy(courseSecondsKey, bytes(entry.getKey().toString()), entry.getValue());
+                }
+                if (!courseSeconds.isEmpty()) {
+                    connection.keyCommands().expire(courseSecondsKey, ttl);
+                }
+                // 3.用户学习秒数
+                if (total > 0) {
+                    connection.hashCommands().hIncrBy(userSecondsKey, user, total);
+                    connection.keyCommands().expire(userSecondsKey, ttl);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("累加用户{}的学习活跃度失败", userId, e);
+        }
+    }
+
+    /**
+     * 查询当日和最近7天的活跃用户数
+     * @param date 日期
+     * @param courseIds 课程id，{@link #PLATFORM}表示全平台
+     * @return 课程id到[日活跃, 周活跃]的映射
+     */
+    public Map<Long, long[]> countActiveUsers(LocalDate date, Collection<Long> courseIds) {
+        List<Long> ids = new ArrayList<>(courseIds);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long courseId : ids) {
+                connection.hyperLogLogCommands().pfCount(bytes(activeKey(date.format(DAY_FORMATTER), courseId)));
+                byte[][] weekKeys = new byte[7][];
+                for (int i = 0; i < 7; i++) {
+                    weekKeys[i] = bytes(activeKey(date.minusDays(i).format(DAY_FORMATTER), courseId));
+                }
+                // 多个key的PFCOUNT返回合并后的基数
+                connection.hyperLogLogCommands().pfCount(weekKeys);
+            }
+            return null;
+        });
+        Map<Long, long[]> counts = new LinkedHashMap<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            counts.put(ids.get(i), new long[]{toLong(results.get(2 * i)), toLong(results.get(2 * i + 1))});
+        }
+        return counts;
+    }
+
+    /**
+     * 查询当日各课程的学习秒数，包含有活跃用户但学习秒数为0的课程
+     */
+    public Map<Long, Long> courseSeconds(LocalDate date) {
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(courseSecondsKey(date.format(DAY_FORMATTER)));
+        Map<Long, Long> seconds = new HashMap<>(entries.size());
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            seconds.put(Long.valueOf(entry.getKey().toString()), Long.valueOf(entry.getValue().toString()));
+        }
+        return seconds;
+    }
+
+    /**
+     * 查询用户当日的学习秒数
+     */
+    public long userSeconds(Long userId, LocalDate date) {
+        Object value = redisTemplate.opsForHash().get(userSecondsKey(date.format(DAY_FORMATTER)), userId.toString());
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    /**
+     * 分批扫描当日各用户的学习秒数
+     * @param batchSize 每批数量
+     * @param consumer 接收一批用户id到学习秒数的映射
+     */
+    public void scanUserSeconds(LocalDate date, int batchSize, Consumer<Map<Long, Long>> consumer) {
+        ScanOptions options = ScanOptions.scanOptions().count(batchSize).build();
+        Map<Long, Long> batch = new HashMap<>(batchSize);
+        try (Cursor<Map.Entry<Object, Object>> cursor =
+                     redisTemplate.opsForHash().scan(userSecondsKey(date.format(DAY_FORMATTER)), options)) {
+            while (cursor.hasNext()) {
+                Map.Entry<Object, Object> entry = cursor.next();
+                batch.put(Long.valueOf(entry.getKey().toString()), Long.valueOf(entry.getValue().toString()));
+                if (batch.size() >= batchSize) {
+                    consumer.accept(batch);
+                    batch = new HashMap<>(batchSize);
+                }
+            }
+        }
+        if (CollUtils.isNotEmpty(batch)) {
+            consumer.accept(batch);
+        }
+    }
+
+    static String activeKey(String day, long courseId) {
+        return courseId == PLATFORM
+                ? RedisConstants.ACTIVE_USERS_KEY_PREFIX + day
+                : RedisConstants.ACTIVE_USERS_KEY_PREFIX + day + ":" + courseId;
+    }
+
+    private static String userSecondsKey(String day) {
+        return RedisConstants.STUDY_SECONDS_KEY_PREFIX + "user:" + day;
+    }
+
+    private static String courseSecondsKey(String day) {
+        return RedisConstants.STUDY_SECONDS_KEY_PREFIX + "course:" + day;
+    }
+
+    private static long toLong(Object value) {
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,180 @@
+package com.tianji.learning.cache;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.learning.constans.RedisConstants;
+import com.tianji.learning.domain.po.InteractionReply;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * 问题下回答的热度排序，用于回答列表的前几页，避免按频繁更新的liked_times排序查询数据库。
+ * <p>
+ * 每个问题一个ZSet，member是回答id，分数是 点赞数 * 2^32 + 创建时间（秒），
+ * 与SQL的 ORDER BY liked_times DESC, create_time DESC, id DESC 顺序一致
+ * （回答id是等长的雪花id，分数相同时ZSet按member倒序，即id倒序）。
+ * 排序在第一次查询时从数据库加载，之后由点赞数变更、新增、隐藏和删除回答更新，一天后过期
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReplyHotRanking {
+
+    /**
+     * 点赞数的权重，低32位存放创建时间
+     */
+    private static final double LIKED_WEIGHT = 1L << 32;
+
+    private static final Duration TTL = Duration.ofDays(1);
+
+    private static final RedisScript<Long> ADD_SCRIPT;
+
+    static {
+        ADD_SCRIPT = RedisScript.of(new ClassPathResource("lua/reply_hot_add.lua"), Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 分页读取热度排序
+     * @param questionId 问题id
+     * @param from 起始位置，从0开始
+     * @param size 数量
+     * @return 回答总数和这一页的回答id，排序未加载时返回null
+     */
+    public HotPage page(Long questionId, long from, long size) {
+        byte[] key = key(questionId).getBytes(StandardCharsets.UTF_8);
+        // 总数和一页数据一次往返读取
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.zSetCommands().zCard(key);
+            connection.zSetCommands().zRevRange(key, from, from + size - 1);
+            return null;
+        });
+        long total = results.get(0) == null ? 0 : ((Number) results.get(0)).longValue();
+        if (total == 0) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Collection<String> members = (Collection<String>) results.get(1);
+        List<Long> ids = new ArrayList<>(members == null ? 0 : members.size());
+        if (members != null) {
+            for (String member : members) {
+                ids.add(Long.valueOf(member));
+            }
+        }
+        return new HotPage(total, ids);
+    }
+
+    /**
+     * 加载问题下全部回答的热度排序
+     * @param answers 问题下未隐藏的回答，需要id、likedTimes、createTime
+     */
+    public void load(Long questionId, List<InteractionReply> answers) {
+        if (CollUtils.isEmpty(answers)) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(answers.size());
+        for (InteractionReply answer : answers) {
+            tuples.add(ZSetOperations.TypedTuple.of(answer.getId().toString(), score(answer)));
+        }
+        String key = key(questionId);
+        redisTemplate.opsForZSet().add(key, tuples);
+        redisTemplate.expire(key, TTL);
+    }
+
+    /**
+     * 新增回答，排序未加载时不添加，查询时会从数据库加载
+     * @param answer 回答，需要id、questionId、likedTimes、createTime
+     */
+    public void add(InteractionReply answer) {
+        redisTemplate.execute(ADD_SCRIPT, List.of(key(answer.getQuestionId())),
+                String.valueOf(score(answer)), answer.getId().toString());
+    }
+
+    /**
+     * 回答被隐藏，从排序中移除，避免总数偏大、分页不满
+     * @param answer 回答，需要id、questionId
+     */
+    public void remove(InteractionReply answer) {
+        redisTemplate.opsForZSet().remove(key(answer.getQuestionId()), answer.getId().toString());
+    }
+
+    /**
+     * 问题被删除，删除问题下全部回答的排序
+     */
+    public void removeQuestion(Long questionId) {
+        redisTemplate.delete(key(questionId));
+    }
+
+    /**
+     * 点赞数变更，只更新已加载的排序中已存在的回答，评论不参与排序
+     * @param replies 回答或评论，需要id、questionId、answerId、likedTimes、createTime
+     */
+    public void updateLikedTimes(Collection<InteractionReply> replies) {
+        if (CollUtils.isEmpty(replies)) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (InteractionReply r : replies) {
+                if (!isAnswer(r) || r.getQuestionId() == null) {
+                    continue;
+                }
+                // XX：key或回答不存在时不添加，避免只包含部分回答的排序
+                connection.zSetCommands().zAdd(
+                        key(r.getQuestionId()).getBytes(StandardCharsets.UTF_8),
+                        score(r),
+                        r.getId().toString().getBytes(StandardCharsets.UTF_8),
+                        RedisZSetCommands.ZAddArgs.ifExists());
+            }
+            return null;
+        });
+    }
+
+    public static boolean isAnswer(InteractionReply reply) {
+        return reply.getAnswerId() == null || reply.getAnswerId() == 0L;
+    }
+
+    static double score(InteractionReply reply) {
+        int likedTimes = reply.getLikedTimes() == null ? 0 : reply.getLikedTimes();
+        long createTime = reply.getCreateTime() == null ? 0
+                : reply.getCreateTime().atZone(ZoneId.systemDefault()).toEpochSecond();
+        return likedTimes * LIKED_WEIGHT + createTime;
+    }
+
+    static String key(Long questionId) {
+        return RedisConstants.REPLY_HOT_KEY_PREFIX + questionId;
+    }
+
+    /**
+     * 热度排序的一页
+     */
+    public static class HotPage {
+        private final long total;
+        private final List<Long> ids;
+
+        HotPage(long total, List<Long> ids) {
+            this.total = total;
+            this.ids = ids;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public List<Long> getIds() {
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.tianji.learning.cache;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.DateUtils;
+import com.tianji.learning.constans.RedisConstants;
+import com.tianji.learning.domain.po.LearningRecord;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.IsoFields;
+import java.util.*;
+
+/**
+ * 用户每周的学习计数，用于学习计划页面，避免每次打开页面都统计学习记录。
+ * <p>
+ * 每个用户每个ISO周一个hash：field是本周学完的 课表id:小节id，另有loaded标记已从数据库加载，
+ * 读取时按课表汇总。学完小节时总是写入，第一次查询时把数据库中本周学完的小节合并进来，
+ * 加载与学完小节并发时，同一小节只计算一次，也不会被加载覆盖。两周后过期
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WeeklyStudyCounter {
+
+    static final String LOADED_FIELD = "loaded";
+
+    private static final RedisScript<Long> INCR_SCRIPT;
+    private static final RedisScript<Long> INIT_SCRIPT;
+
+    static {
+        INCR_SCRIPT = RedisScript.of(new ClassPathResource("lua/week_study_incr.lua"), Long.class);
+        INIT_SCRIPT = RedisScript.of(new ClassPathResource("lua/week_study_init.lua"), Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 学完一个小节，记录到所在周。计数还未加载时也写入，加载时合并
+     *
+     * @param userId     用户id
+     * @param lessonId   课表id
+     * @param sectionId  小节id
+     * @param finishTime 学完的时间
+     */
+    public void incrementFinished(Long userId, Long lessonId, Long sectionId, LocalDateTime finishTime) {
+        LocalDate date = finishTime.toLocalDate();
+        redisTemplate.execute(INCR_SCRIPT, List.of(key(userId, date)),
+                field(lessonId, sectionId), String.valueOf(expireAt(date)));
+    }
+
+    /**
+     * 查询指定日期所在周的计数
+     *
+     * @return 本周计数，未加载时返回null
+     */
+    public WeekCounts get(Long userId, LocalDate date) {
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(key(userId, date));
+        if (CollUtils.isEmpty(entries) || !entries.containsKey(LOADED_FIELD)) {
+            return null;
+        }
+        WeekCounts counts = new WeekCounts();
+        for (Object field : entries.keySet()) {
+            String name = field.toString();
+            int index = name.indexOf(':');
+            if (index < 0) {
+                // loaded标记
+                continue;
+            }
+            counts.getLessons().merge(Long.valueOf(name.substring(0, index)), 1, Integer::sum);
+            counts.setTotal(counts.getTotal() + 1);
+        }
+        return counts;
+    }
+
+    /**
+     * 加载指定日期所在周的计数，与已写入的小节合并
+     *
+     * @param sections 数据库中本周学完的小节，需要lessonId、sectionId
+     * @return 合并后的计数
+     */
+    public WeekCounts init(Long userId, LocalDate date, List<LearningRecord> sections) {
+        List<String> args = new ArrayList<>(sections.size() + 1);
+        // 1.两周后过期，上周的计数在本周内仍然可以查询
+        args.add(String.valueOf(expireAt(date)));
+        for (LearningRecord section : sections) {
+            args.add(field(section.getLessonId(), section.getSectionId()));
+        }
+        // 2.按小节合并，加载期间学完的小节不会丢失
+        redisTemplate.execute(INIT_SCRIPT, List.of(key(userId, date)), args.toArray());
+        // 3.重新读取合并后的结果
+        WeekCounts counts = get(userId, date);
+        return counts == null ? new WeekCounts() : counts;
+    }
+
+    private static long expireAt(LocalDate date) {
+        return DateUtils.getWeekBeginTime(date).plusWeeks(2).atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private static String field(Long lessonId, Long sectionId) {
+        return lessonId + ":" + sectionId;
+    }
+
+    static String key(Long userId, LocalDate date) {
+        return RedisConstants.WEEK_STUDY_KEY_PREFIX + userId + ":"
+                + date.get(IsoFields.WEEK_BASED_YEAR) + "W"
+                + String.format("%02d", date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+    }
+
+    /**
+     * 一周的学习计数
+     */
+    @Data
+    public static class WeekCounts {
+        /**
+         * 本周学完的小节总数
+         */
+        private int total;
+        /**
+         * 课表id到本周学完小节数量的映射
+         */
+        private final Map<Long, Integer> lessons = new HashMap<>();
+
+        public int getLessonFinished(Long lessonId) {
+            return lessons.getOrDefault(lessonId, 0);
+        }
+    }
+}
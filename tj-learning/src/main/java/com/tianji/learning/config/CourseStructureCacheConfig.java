@@ -0,0 +1,34 @@
+package com.tianji.learning.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.api.client.course.CourseClient;
+import com.tianji.learning.cache.CourseStructureCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class CourseStructureCacheConfig {
+    /**
+     * 课程结构的caffeine缓存
+     */
+    @Bean
+    public Cache<Long, CourseStructureCache.CourseStructure> courseStructureCaches() {
+        return Caffeine.newBuilder()
+                .initialCapacity(128) // 初始容量
+                .maximumSize(10_000) // 最大缓存课程数
+                .expireAfterWrite(Duration.ofMinutes(30)) // 有效期，MQ消息丢失时兜底
+                .build();
+    }
+
+    /**
+     * 课程结构的缓存工具类
+     */
+    @Bean
+    public CourseStructureCache courseStructureCache(
+            Cache<Long, CourseStructureCache.CourseStructure> courseStructureCaches, CourseClient courseClient) {
+        return new CourseStructureCache(courseStructureCaches, courseClient);
+    }
+}
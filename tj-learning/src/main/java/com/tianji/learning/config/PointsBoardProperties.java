@@ -0,0 +1,27 @@
+package com.tianji.learning.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "tj.points.board")
+public class PointsBoardProperties {
+    /**
+     * 持久化历史榜单时，每次从Redis读取并写入数据库的名次数量
+     */
+    private int persistWindowSize = 1000;
+    /**
+     * 持久化历史榜单时，并行写入数据库的线程数
+     */
+    private int persistParallelism = 4;
+    /**
+     * 当前赛季榜单本地快照保存的名次数量
+     */
+    private int snapshotSize = 200;
+    /**
+     * 查询我的排名时，前后最多返回的人数
+     */
+    private int maxNeighbors = 50;
+}
@@ -3,9 +3,49 @@ package com.tianji.learning.constans;
 import java.time.format.DateTimeFormatter;
 
 public interface RedisConstants {
+    /**
+     * 用户每月的签到位图，第n天签到则offset n-1为1，完整key是 sign:uid:{userId}:{yyyyMM}，
+     * 已结束月份的位图由归档任务写入sign_record_archive后删除
+     */
     String SIGN_RECORD_KEY_PREFIX = "sign:uid:";
 
     String POINTS_BOARD_KEY_PREFIX = "boards:";
 
+    /**
+     * 历史榜单持久化的进度，记录已写入的名次数量，完整key是 boards:persist:{season}
+     */
+    String POINTS_BOARD_PERSIST_KEY_PREFIX = "boards:persist:";
+
+    /**
+     * 用户当日各类型的积分，完整key是 points:daily:{yyyyMMdd}:{userId}
+     */
+    String POINTS_DAILY_KEY_PREFIX = "points:daily:";
+
+    /**
+     * 用户本周学完的小节，完整key是 learning:week:{userId}:{yyyy}W{ww}（ISO周）
+     */
+    String WEEK_STUDY_KEY_PREFIX = "learning:week:";
+
+    /**
+     * 订单已退款的课程id，完整key是 learning:lesson:refund:{orderId}
+     */
+    String LESSON_REFUND_KEY_PREFIX = "learning:lesson:refund:";
+
+    /**
+     * 问题下回答的热度排序，member是回答id，完整key是 qa:reply:hot:{questionId}
+     */
+    String REPLY_HOT_KEY_PREFIX = "qa:reply:hot:";
+
+    /**
+     * 当日活跃用户的HyperLogLog，完整key是 learning:stat:active:{yyyyMMdd}，
+     * 课程的是 learning:stat:active:{yyyyMMdd}:{courseId}
+     */
+    String ACTIVE_USERS_KEY_PREFIX = "learning:stat:active:";
+
+    /**
+     * 当日学习秒数，field是用户id或课程id，完整key是 learning:stat:seconds:{user|course}:{yyyyMMdd}
+     */
+    String STUDY_SECONDS_KEY_PREFIX = "learning:stat:seconds:";
+
 
 }
@@ -0,0 +1,28 @@
+package com.tianji.learning.controller;
+
+import com.tianji.learning.service.IInteractionReplyService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@Api(tags = "互动回答或评论管理接口")
+@RequestMapping("/admin/replies")
+@RequiredArgsConstructor
+public class InteractionReplyAdminController {
+
+    private final IInteractionReplyService replyService;
+
+    @ApiOperation("管理端隐藏或显示回答、评论")
+    @PutMapping("/{id}/hidden/{hidden}")
+    public void hiddenReply(
+            @ApiParam("回答或评论id") @PathVariable("id") Long id,
+            @ApiParam("是否隐藏") @PathVariable("hidden") Boolean hidden) {
+        replyService.hiddenReply(id, hidden);
+    }
+}
@@ -0,0 +1,30 @@
+package com.tianji.learning.controller;
+
+import com.tianji.learning.service.ILearningActivityStatService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+@RestController
+@Api(tags = "学习活跃度统计管理接口")
+@RequestMapping("/admin/activity-stats")
+@RequiredArgsConstructor
+public class LearningActivityStatAdminController {
+
+    private final ILearningActivityStatService activityStatService;
+
+    @ApiOperation("管理端查询任意用户每日的学习秒数")
+    @GetMapping("/users/{userId}")
+    public Map<LocalDate, Long> queryUserStudySeconds(
+            @PathVariable("userId") Long userId,
+            @ApiParam("开始日期") @RequestParam("begin") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate begin,
+            @ApiParam("结束日期") @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end) {
+        return activityStatService.queryUserStudySeconds(userId, begin, end);
+    }
+}
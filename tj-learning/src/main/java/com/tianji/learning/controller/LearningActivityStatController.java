@@ -0,0 +1,52 @@
+package com.tianji.learning.controller;
+
+import com.tianji.common.exceptions.ForbiddenException;
+import com.tianji.common.utils.UserContext;
+import com.tianji.learning.domain.vo.ActivityStatVO;
+import com.tianji.learning.service.ILearningActivityStatService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * 学习活跃度统计 前端控制器
+ * </p>
+ */
+@RestController
+@RequestMapping("/activity-stats")
+@RequiredArgsConstructor
+@Api(tags = "学习活跃度统计接口")
+public class LearningActivityStatController {
+
+    private final ILearningActivityStatService activityStatService;
+
+    @ApiOperation("查询全平台或课程的每日活跃度")
+    @GetMapping
+    public List<ActivityStatVO> queryActivityStats(
+            @ApiParam("课程id，为空时查询全平台") @RequestParam(value = "courseId", required = false) Long courseId,
+            @ApiParam("开始日期") @RequestParam("begin") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate begin,
+            @ApiParam("结束日期") @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end) {
+        return activityStatService.queryActivityStats(courseId, begin, end);
+    }
+
+    @ApiOperation("查询自己每日的学习秒数，查询其他用户请使用管理端接口")
+    @GetMapping("/users/{userId}")
+    public Map<LocalDate, Long> queryUserStudySeconds(
+            @PathVariable("userId") Long userId,
+            @ApiParam("开始日期") @RequestParam("begin") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate begin,
+            @ApiParam("结束日期") @RequestParam("end") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate end) {
+        // 只能查询自己的学习时长
+        if (!userId.equals(UserContext.getUser())) {
+            throw new ForbiddenException("无权查看他人的学习时长");
+        }
+        return activityStatService.queryUserStudySeconds(userId, begin, end);
+    }
+}
@@ -2,13 +2,17 @@ package com.tianji.learning.controller;
 
 
 import com.tianji.api.dto.leanring.LearningLessonDTO;
+import com.tianji.learning.domain.dto.LearningRecordBatchDTO;
 import com.tianji.learning.domain.dto.LearningRecordFormDTO;
+import com.tianji.learning.domain.vo.LearningRecordBatchVO;
 import com.tianji.learning.service.ILearningRecordService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
+import javax.validation.Valid;
+
 /**
  * <p>
  * 学习记录表 前端控制器
@@ -43,4 +47,10 @@ public class LearningRecordController {
         learningRecordService.addLearningRecord(learningRecordFormDTO);
     }
 
+    @ApiOperation("批量上报视频播放进度")
+    @PostMapping("/batch")
+    public LearningRecordBatchVO addLearningRecords(@Valid @RequestBody LearningRecordBatchDTO batch) {
+        return learningRecordService.addLearningRecords(batch);
+    }
+
 }
@@ -9,6 +9,7 @@ import io.swagger.annotations.ApiOperation;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import org.springframework.web.bind.annotation.RestController;
 
@@ -32,4 +33,10 @@ public class PointsBoardController {
     public PointsBoardVO queryPointsBoardBySeason(PointsBoardQuery  query){
         return pointsBoardService.queryPointsBoardBySeason(query);
     }
+
+    @GetMapping("/neighbors")
+    @ApiOperation("查询当前赛季我的排名及前后k名用户")
+    public PointsBoardVO queryMyNeighbors(@RequestParam(value = "k", defaultValue = "5") Integer k){
+        return pointsBoardService.queryMyNeighbors(k);
+    }
 }
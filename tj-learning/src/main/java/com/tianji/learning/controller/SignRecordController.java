@@ -1,15 +1,20 @@
 package com.tianji.learning.controller;
 
+import com.tianji.learning.domain.vo.SignCalendarVO;
 import com.tianji.learning.domain.vo.SignResultVO;
 import com.tianji.learning.service.ISignRecordService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.YearMonth;
+
 @Api(tags = "签到相关接口")
 @RestController
 @RequestMapping("sign-records")
@@ -23,4 +28,11 @@ public class SignRecordController {
     public SignResultVO addSignRecords(){
         return recordService.addSignRecords();
     }
+
+    @GetMapping("calendar")
+    @ApiOperation("查询月度签到日历")
+    public SignCalendarVO querySignCalendar(
+            @ApiParam("月份，格式yyyy-MM，为空时查询本月") @RequestParam(value = "month", required = false) YearMonth month){
+        return recordService.querySignCalendar(month);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.tianji.learning.domain.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+@Data
+@ApiModel(description = "批量上报的视频播放进度")
+public class LearningRecordBatchDTO {
+
+    @ApiModelProperty("按上报顺序排列的进度，可以包含多个小节")
+    @NotEmpty(message = "上报的进度不能为空")
+    @Size(max = 200, message = "一次最多上报200条进度")
+    @Valid
+    private List<LearningRecordReportDTO> reports;
+}
@@ -0,0 +1,36 @@
+package com.tianji.learning.domain.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.time.LocalDateTime;
+
+@Data
+@ApiModel(description = "一次视频播放进度上报")
+public class LearningRecordReportDTO {
+
+    @ApiModelProperty("课表id")
+    @NotNull(message = "课表id不能为空")
+    private Long lessonId;
+
+    @ApiModelProperty("对应节的id")
+    @NotNull(message = "节的id不能为空")
+    private Long sectionId;
+
+    @ApiModelProperty("视频的当前观看时长，单位秒")
+    @NotNull(message = "观看时长不能为空")
+    @Min(value = 0, message = "观看时长不能小于0")
+    private Integer moment;
+
+    @ApiModelProperty("视频总时长，单位秒")
+    @NotNull(message = "视频总时长不能为空")
+    @Min(value = 1, message = "视频总时长必须大于0")
+    private Integer duration;
+
+    @ApiModelProperty("上报时间，同一小节只保留上报时间最新的进度，晚于服务端时间超过允许偏差的按服务端时间处理")
+    @NotNull(message = "上报时间不能为空")
+    private LocalDateTime commitTime;
+}
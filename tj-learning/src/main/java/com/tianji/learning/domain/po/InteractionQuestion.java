@@ -67,6 +67,21 @@ public class InteractionQuestion implements Serializable {
     @ApiModelProperty(value = "管理端问题状态：0-未查看，1-已查看")
     private QuestionStatus status;
 
+    @ApiModelProperty(value = "课程名称，提问时写入，课程变更时修复")
+    private String courseName;
+
+    @ApiModelProperty(value = "章名称")
+    private String chapterName;
+
+    @ApiModelProperty(value = "节名称")
+    private String sectionName;
+
+    @ApiModelProperty(value = "课程分类名称，例如：一级/二级/三级")
+    private String categoryName;
+
+    @ApiModelProperty(value = "提问学员名称，用户信息变更时修复")
+    private String userName;
+
     @ApiModelProperty(value = "提问时间")
     private LocalDateTime createTime;
 
@@ -0,0 +1,69 @@
+package com.tianji.learning.domain.po;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 每日学习活跃度汇总，(stat_date, course_id)唯一
+ * </p>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("learning_activity_stat")
+public class LearningActivityStat implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 统计日期
+     */
+    private LocalDate statDate;
+
+    /**
+     * 课程id，0表示全平台
+     */
+    private Long courseId;
+
+    /**
+     * 当日活跃用户数，HyperLogLog估算
+     */
+    private Long activeUsers;
+
+    /**
+     * 截至当日最近7天的活跃用户数，HyperLogLog估算
+     */
+    private Long weekActiveUsers;
+
+    /**
+     * 当日学习秒数
+     */
+    private Long studySeconds;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+
+
+}
@@ -47,6 +47,12 @@ public class LearningRecord implements Serializable {
     @ApiModelProperty(value = "是否完成学习，默认false")
     private Boolean finished;
 
+    @ApiModelProperty(value = "第一次学完的时间")
+    private LocalDateTime finishTime;
+
+    @ApiModelProperty(value = "最近一次上报的时间，用于拒绝乱序的上报")
+    private LocalDateTime commitTime;
+
     @ApiModelProperty(value = "第一次观看时间")
     private LocalDateTime createTime;
 
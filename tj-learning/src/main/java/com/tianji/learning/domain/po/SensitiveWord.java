@@ -0,0 +1,54 @@
+package com.tianji.learning.domain.po;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import java.time.LocalDateTime;
+import java.io.Serializable;
+
+import com.tianji.learning.enums.SensitiveAction;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+/**
+ * <p>
+ * 敏感词词库
+ * </p>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("sensitive_word")
+public class SensitiveWord implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 敏感词id
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 敏感词，拼音、谐音等变体作为单独的词录入
+     */
+    private String word;
+
+    /**
+     * 处理方式：1-替换为*，2-隐藏等待审核，3-拒绝提交
+     */
+    private SensitiveAction action;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+
+
+}
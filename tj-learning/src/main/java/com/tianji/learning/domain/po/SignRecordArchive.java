@@ -0,0 +1,53 @@
+package com.tianji.learning.domain.po;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * <p>
+ * 已归档的月度签到记录，(user_id, sign_month)唯一
+ * </p>
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("sign_record_archive")
+public class SignRecordArchive implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 用户id
+     */
+    private Long userId;
+
+    /**
+     * 签到月份，格式yyyyMM
+     */
+    private Integer signMonth;
+
+    /**
+     * 当月签到记录，第n天签到则第n-1位（从最低位数起）为1
+     */
+    private Integer bits;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+
+}
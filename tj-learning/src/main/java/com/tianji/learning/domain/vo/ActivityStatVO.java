@@ -0,0 +1,20 @@
+package com.tianji.learning.domain.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+@ApiModel(description = "每日学习活跃度")
+public class ActivityStatVO {
+    @ApiModelProperty("日期")
+    private LocalDate date;
+    @ApiModelProperty("当日活跃用户数，估算值，误差约1%")
+    private Long activeUsers;
+    @ApiModelProperty("截至当日最近7天的活跃用户数，估算值，误差约1%")
+    private Long weekActiveUsers;
+    @ApiModelProperty("当日学习秒数")
+    private Long studySeconds;
+}
@@ -0,0 +1,18 @@
+package com.tianji.learning.domain.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+@Data
+@ApiModel(description = "批量上报进度的处理结果")
+public class LearningRecordBatchVO {
+    @ApiModelProperty("更新了进度的小节数量")
+    private int accepted;
+    @ApiModelProperty("被同一小节更新的上报覆盖的上报数量")
+    private int merged;
+    @ApiModelProperty("被拒绝的上报数量：上报时间不晚于已记录的进度，或课表不属于当前用户")
+    private int rejected;
+    @ApiModelProperty("本次新学完的小节数量")
+    private int finished;
+}
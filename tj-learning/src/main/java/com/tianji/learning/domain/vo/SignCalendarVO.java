@@ -0,0 +1,16 @@
+package com.tianji.learning.domain.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@ApiModel(description = "月度签到日历")
+public class SignCalendarVO {
+    @ApiModelProperty("月份，格式yyyy-MM")
+    private String month;
+    @ApiModelProperty("已签到的日期（几号），升序")
+    private List<Integer> signedDays;
+}
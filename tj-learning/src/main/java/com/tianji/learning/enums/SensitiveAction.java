@@ -0,0 +1,40 @@
+package com.tianji.learning.enums;
+
+import com.baomidou.mybatisplus.annotation.EnumValue;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.tianji.common.enums.BaseEnum;
+import lombok.Getter;
+
+/**
+ * 命中敏感词后的处理方式，value越大越严格，一段文本命中多个敏感词时取最严格的处理方式
+ */
+@Getter
+public enum SensitiveAction implements BaseEnum {
+    MASK(1, "替换为*"),
+    REVIEW(2, "隐藏，等待人工审核"),
+    REJECT(3, "拒绝提交"),
+    ;
+    @JsonValue
+    @EnumValue
+    int value;
+    String desc;
+
+    SensitiveAction(int value, String desc) {
+        this.value = value;
+        this.desc = desc;
+    }
+
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static SensitiveAction of(Integer value){
+        if (value == null) {
+            return null;
+        }
+        for (SensitiveAction action : values()) {
+            if (action.equalsValue(value)) {
+                return action;
+            }
+        }
+        return null;
+    }
+}
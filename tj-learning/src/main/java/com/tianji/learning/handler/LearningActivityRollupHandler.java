@@ -0,0 +1,84 @@
+package com.tianji.learning.handler;
+
+import com.tianji.common.utils.StringUtils;
+import com.tianji.learning.cache.LearningActivityCounter;
+import com.tianji.learning.domain.po.LearningActivityStat;
+import com.tianji.learning.domain.po.UserStudyStat;
+import com.tianji.learning.mapper.LearningActivityStatMapper;
+import com.tianji.learning.mapper.UserStudyStatMapper;
+import com.xxl.job.core.context.XxlJobHelper;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * <h1>学习活跃度汇总任务</h1>
+ * 把Redis中一天的活跃度计数写入汇总表，默认汇总前一天，可以通过任务参数（yyyy-MM-dd）指定日期：
+ * <ol>
+ *     <li>全平台和每门课程各一行：日活跃、最近7天活跃、学习秒数</li>
+ *     <li>每个有学习时长的用户一行，分批扫描、分批写入</li>
+ *     <li>按唯一索引覆盖写入，重复执行没有影响，当天的数据可以多次汇总</li>
+ * </ol>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LearningActivityRollupHandler {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final LearningActivityCounter activityCounter;
+    private final LearningActivityStatMapper activityStatMapper;
+    private final UserStudyStatMapper userStudyStatMapper;
+
+    @XxlJob("learningActivityRollupJob")
+    public void rollupJob() {
+        String jobParam = XxlJobHelper.getJobParam();
+        LocalDate date = StringUtils.isBlank(jobParam) ? LocalDate.now().minusDays(1) : LocalDate.parse(jobParam.trim());
+        int rows = rollup(date);
+        XxlJobHelper.handleSuccess("汇总" + date + "的学习活跃度" + rows + "行");
+    }
+
+    /**
+     * 汇总指定日期的活跃度
+     * @return 写入的行数
+     */
+    public int rollup(LocalDate date) {
+        // 1.当天有活跃用户的课程和学习秒数
+        Map<Long, Long> courseSeconds = activityCounter.courseSeconds(date);
+        List<Long> courseIds = new ArrayList<>(courseSeconds.size() + 1);
+        courseIds.add(LearningActivityCounter.PLATFORM);
+        courseIds.addAll(courseSeconds.keySet());
+        // 2.一次管道查询全平台和各课程的日活跃、周活跃
+        Map<Long, long[]> activeUsers = activityCounter.countActiveUsers(date, courseIds);
+        long totalSeconds = courseSeconds.values().stream().mapToLong(Long::longValue).sum();
+        List<LearningActivityStat> stats = new ArrayList<>(courseIds.size());
+        for (Long courseId : courseIds) {
+            long[] counts = activeUsers.get(courseId);
+            stats.add(new LearningActivityStat()
+                    .setStatDate(date)
+                    .setCourseId(courseId)
+                    .setActiveUsers(counts[0])
+                    .setWeekActiveUsers(counts[1])
+                    .setStudySeconds(courseId == LearningActivityCounter.PLATFORM
+                            ? totalSeconds : courseSeconds.get(courseId)));
+        }
+        activityStatMapper.upsertAll(stats);
+        // 3.分批写入用户学习秒数
+        int[] users = new int[1];
+        activityCounter.scanUserSeconds(date, BATCH_SIZE, batch -> {
+            List<UserStudyStat> list = new ArrayList<>(batch.size());
+            for (Map.Entry<Long, Long> entry : batch.entrySet()) {
+                list.add(new UserStudyStat().setStatDate(date).setUserId(entry.getKey()).setStudySeconds(entry.getValue()));
+            }
+            userStudyStatMapper.upsertAll(list);
+            users[0] += list.size();
+        });
+        log.info("汇总{}的学习活跃度，课程{}门，用户{}个", date, courseSeconds.size(), users[0]);
+        return stats.size() + users[0];
+    }
+}
@@ -0,0 +1,97 @@
+package com.tianji.learning.handler;
+
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.autoconfigure.xxljob.ShardCheckpointStore;
+import com.tianji.common.constants.MqConstants;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.StringUtils;
+import com.tianji.learning.enums.LessonStatus;
+import com.tianji.learning.mapper.LearningLessonMapper;
+import com.tianji.learning.mq.message.LessonExpiredMessage;
+import com.xxl.job.core.context.XxlJobHelper;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * <h1>课表过期任务</h1>
+ * XXL-Job分片广播任务，每个执行器只处理 id % shardTotal == shardIndex 的课表：
+ * <ol>
+ *     <li>按id游标查询一批过期课表的id，只有id在内存中</li>
+ *     <li>用一条UPDATE把这段id范围内的过期课表改为已过期，条件中包含过期判断，重复执行没有影响</li>
+ *     <li>发送这批课表的过期事件，保存进度，循环直到没有数据</li>
+ * </ol>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LessonExpireHandler {
+
+    private static final String JOB_NAME = "lessonExpireJob";
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final LearningLessonMapper lessonMapper;
+    private final RabbitMqHelper mqHelper;
+    private final ShardCheckpointStore checkpointStore;
+
+    @XxlJob("lessonExpireJob")
+    public void expireLessons() {
+        int shardTotal = XxlJobHelper.getShardTotal();
+        int shardIndex = shardTotal <= 0 ? 0 : XxlJobHelper.getShardIndex();
+        // 每批数量，可以通过任务参数指定
+        String jobParam = XxlJobHelper.getJobParam();
+        int chunkSize = StringUtils.isNumeric(jobParam) ? Integer.parseInt(jobParam) : DEFAULT_CHUNK_SIZE;
+        int total = expireLessons(LocalDateTime.now(), shardIndex, Math.max(shardTotal, 1), chunkSize);
+        XxlJobHelper.handleSuccess("过期课表" + total + "个");
+    }
+
+    /**
+     * 把分片内已过期的课表改为已过期状态
+     * @param now 当前时间
+     * @param shardIndex 分片序号
+     * @param shardTotal 分片总数
+     * @param chunkSize 每批数量
+     * @return 更新的课表数量
+     */
+    public int expireLessons(LocalDateTime now, int shardIndex, int shardTotal, int chunkSize) {
+        // 1.读取进度
+        String key = JOB_NAME + ":" + shardTotal + ":" + shardIndex;
+        Long checkpoint = checkpointStore.load(key);
+        long lastId = checkpoint == null ? 0 : checkpoint;
+        int total = 0;
+        while (true) {
+            // 2.查询一批过期课表的id
+            List<Long> ids = lessonMapper.queryExpiredIds(
+                    now, LessonStatus.EXPIRED, lastId, shardIndex, shardTotal, chunkSize);
+            if (CollUtils.isEmpty(ids)) {
+                break;
+            }
+            // 3.按id范围批量更新
+            long toId = ids.get(ids.size() - 1);
+            int rows = lessonMapper.expireByIdRange(now, LessonStatus.EXPIRED, lastId, toId, shardIndex, shardTotal);
+            total += rows;
+            // 4.发送过期事件，失败不影响状态更新
+            try {
+                mqHelper.send(MqConstants.Exchange.LEARNING_EXCHANGE, MqConstants.Key.LESSON_EXPIRED,
+                        LessonExpiredMessage.of(ids));
+            } catch (Exception e) {
+                log.error("发送课表过期事件失败，课表id范围: ({}, {}]", lastId, toId, e);
+            }
+            // 5.保存进度，汇报执行情况
+            lastId = toId;
+            checkpointStore.save(key, lastId);
+            XxlJobHelper.log("已过期课表{}个，进度id: {}", total, lastId);
+            if (ids.size() < chunkSize) {
+                break;
+            }
+        }
+        // 6.全部处理完成，清除进度
+        checkpointStore.remove(key);
+        log.info("课表过期任务分片{}/{}执行完成，过期课表{}个", shardIndex, shardTotal, total);
+        return total;
+    }
+}
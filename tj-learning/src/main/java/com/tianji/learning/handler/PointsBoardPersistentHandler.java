@@ -4,6 +4,7 @@ import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.DateUtils;
 import com.tianji.learning.service.IPointsBoardSeasonService;
 import com.tianji.learning.service.IPointsBoardService;
+import com.tianji.learning.utils.SeasonTableRegistry;
 import com.xxl.job.core.handler.annotation.XxlJob;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -24,6 +25,8 @@ public class PointsBoardPersistentHandler {
 
     private final IPointsBoardService pointsBoardService;
 
+    private final SeasonTableRegistry seasonTableRegistry;
+
     /**
      * 自动创建未来3个月的赛季（每天凌晨1点执行）
      * 确保系统中始终有未来几个月的赛季数据
@@ -34,11 +37,14 @@ public class PointsBoardPersistentHandler {
 
         LocalDateTime now = LocalDateTime.now();
 
-        // 创建当前月及未来3个月的赛季
+        // 创建当前月及未来3个月的赛季，并提前创建当前和下个赛季的榜单表
         for (int i = 0; i < 4; i++) {
             LocalDateTime futureTime = now.plusMonths(i);
             try {
-                seasonService.createSeasonByTime(futureTime);
+                Integer season = seasonService.createSeasonByTime(futureTime);
+                if (i < 2 && season != null) {
+                    seasonTableRegistry.createTable(season);
+                }
             } catch (Exception e) {
                 log.error("创建赛季失败，时间: {}", futureTime, e);
             }
@@ -0,0 +1,82 @@
+package com.tianji.learning.handler;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.StringUtils;
+import com.tianji.learning.domain.po.InteractionQuestion;
+import com.tianji.learning.mapper.InteractionQuestionMapper;
+import com.tianji.learning.service.IInteractionQuestionService;
+import com.xxl.job.core.context.XxlJobHelper;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <h1>问题快照回填任务</h1>
+ * 新增快照列之前创建的问题没有课程、章节、分类和用户名称，上线后手动执行一次：
+ * <ol>
+ *     <li>按id游标查询一批缺少快照的问题</li>
+ *     <li>这一批涉及的课程、用户各修复一次，与{@link com.tianji.learning.mq.QuestionSnapshotListener}相同，
+ *     一条UPDATE修复课程或用户的全部问题，重复执行没有影响</li>
+ *     <li>课程或用户已不存在的问题保持为空，游标越过后不会重复处理</li>
+ * </ol>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class QuestionSnapshotBackfillHandler {
+
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final InteractionQuestionMapper questionMapper;
+    private final IInteractionQuestionService questionService;
+
+    @XxlJob("questionSnapshotBackfillJob")
+    public void backfillJob() {
+        // 每批数量，可以通过任务参数指定
+        String jobParam = XxlJobHelper.getJobParam();
+        int chunkSize = StringUtils.isNumeric(jobParam) ? Integer.parseInt(jobParam) : DEFAULT_CHUNK_SIZE;
+        int total = backfill(chunkSize);
+        XxlJobHelper.handleSuccess("回填问题快照，处理问题" + total + "个");
+    }
+
+    /**
+     * 回填全部缺少快照的问题
+     * @param chunkSize 每批数量
+     * @return 处理的问题数量
+     */
+    public int backfill(int chunkSize) {
+        long lastId = 0;
+        int total = 0;
+        Set<Long> refreshedCourses = new LinkedHashSet<>();
+        while (true) {
+            // 1.查询一批缺少快照的问题
+            List<InteractionQuestion> questions = questionMapper.queryMissingSnapshots(lastId, chunkSize);
+            if (CollUtils.isEmpty(questions)) {
+                break;
+            }
+            // 2.修复这一批涉及的课程和用户，已修复过的课程不再查询
+            Set<Long> userIds = new LinkedHashSet<>();
+            for (InteractionQuestion q : questions) {
+                if (refreshedCourses.add(q.getCourseId())) {
+                    questionService.refreshCourseSnapshot(q.getCourseId());
+                }
+                userIds.add(q.getUserId());
+            }
+            userIds.forEach(questionService::refreshUserSnapshot);
+            // 3.汇报进度
+            total += questions.size();
+            lastId = questions.get(questions.size() - 1).getId();
+            XxlJobHelper.log("已处理问题{}个，进度id: {}", total, lastId);
+            if (questions.size() < chunkSize) {
+                break;
+            }
+        }
+        log.info("问题快照回填完成，处理问题{}个，课程{}门", total, refreshedCourses.size());
+        return total;
+    }
+}
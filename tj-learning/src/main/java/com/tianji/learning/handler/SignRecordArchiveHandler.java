@@ -0,0 +1,191 @@
+package com.tianji.learning.handler;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.tianji.common.utils.CollUtils;
+import com.tianji.learning.constans.RedisConstants;
+import com.tianji.learning.domain.po.SignRecordArchive;
+import com.tianji.learning.mapper.SignRecordArchiveMapper;
+import com.xxl.job.core.context.XxlJobHelper;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * <h1>签到记录归档任务</h1>
+ * 每月初把已结束月份的签到位图从Redis转存到sign_record_archive表：
+ * <ol>
+ *     <li>SCAN遍历签到key，跳过当月的key，每{@value #BATCH_SIZE}个一批</li>
+ *     <li>一次管道读取一批位图，按唯一索引批量写入，重复执行没有影响</li>
+ *     <li>回查写入结果，与Redis一致的key才删除，不一致的留到下次执行</li>
+ * </ol>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SignRecordArchiveHandler {
+
+    static final int BATCH_SIZE = 1000;
+
+    /**
+     * 一个月最多31天，从offset 0读取31位无符号数
+     */
+    private static final BitFieldSubCommands GET_MONTH = BitFieldSubCommands.create()
+            .get(BitFieldSubCommands.BitFieldType.unsigned(31)).valueAt(0);
+
+    private final StringRedisTemplate redisTemplate;
+    private final SignRecordArchiveMapper archiveMapper;
+
+    @XxlJob("signRecordArchiveJob")
+    public void archiveJob() {
+        int rows = archive(YearMonth.now());
+        XxlJobHelper.handleSuccess("归档签到记录" + rows + "条");
+    }
+
+    /**
+     * 归档current之前所有月份的签到位图
+     * @return 归档并删除的key数量
+     */
+    public int archive(YearMonth current) {
+        int currentMonth = toMonth(current);
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(RedisConstants.SIGN_RECORD_KEY_PREFIX + "*").count(BATCH_SIZE).build();
+        int archived = 0;
+        List<String> keys = new ArrayList<>(BATCH_SIZE);
+        // 1.SCAN遍历签到key，只处理已结束的月份
+        try (Cursor<byte[]> cursor = redisTemplate.executeWithStickyConnection(
+                (RedisCallback<Cursor<byte[]>>) connection -> connection.scan(options))) {
+            while (cursor.hasNext()) {
+                String key = new String(cursor.next(), StandardCharsets.UTF_8);
+                Integer month = parseMonth(key);
+                if (month == null || month >= currentMonth) {
+                    continue;
+                }
+                keys.add(key);
+                if (keys.size() >= BATCH_SIZE) {
+                    archived += archiveBatch(keys);
+                    keys = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+        }
+        if (CollUtils.isNotEmpty(keys)) {
+            archived += archiveBatch(keys);
+        }
+        log.info("归档{}之前的签到记录{}条", current, archived);
+        return archived;
+    }
+
+    private int archiveBatch(List<String> keys) {
+        // 1.一次管道读取这一批位图
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.stringCommands().bitField(key.getBytes(StandardCharsets.UTF_8), GET_MONTH);
+            }
+            return null;
+        });
+        // 2.批量写入，key -> 归档记录
+        Map<String, SignRecordArchive> rows = new LinkedHashMap<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            int bits = toDayBits(results.get(i));
+            if (bits == 0) {
+                // 已被其它任务归档删除
+                continue;
+            }
+            String key = keys.get(i);
+            rows.put(key, new SignRecordArchive()
+                    .setUserId(parseUserId(key))
+                    .setSignMonth(parseMonth(key))
+                    .setBits(bits));
+        }
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        archiveMapper.upsertAll(new ArrayList<>(rows.values()));
+        // 3.回查写入结果，一致的才删除key
+        Set<Long> userIds = new HashSet<>(rows.size());
+        Set<Integer> months = new HashSet<>();
+        for (SignRecordArchive row : rows.values()) {
+            userIds.add(row.getUserId());
+            months.add(row.getSignMonth());
+        }
+        Map<String, Integer> saved = new HashMap<>(rows.size());
+        for (SignRecordArchive row : archiveMapper.selectList(new QueryWrapper<SignRecordArchive>()
+                .in("user_id", userIds).in("sign_month", months))) {
+            saved.put(row.getUserId() + ":" + row.getSignMonth(), row.getBits());
+        }
+        List<String> verified = new ArrayList<>(rows.size());
+        rows.forEach((key, row) -> {
+            if (row.getBits().equals(saved.get(row.getUserId() + ":" + row.getSignMonth()))) {
+                verified.add(key);
+            } else {
+                log.warn("签到记录归档校验失败，暂不删除：{}", key);
+            }
+        });
+        redisTemplate.unlink(verified);
+        return verified.size();
+    }
+
+    /**
+     * 把BITFIELD GET u31 0的结果转为归档格式：第n天签到则第n-1位为1
+     */
+    @SuppressWarnings("unchecked")
+    private static int toDayBits(Object result) {
+        if (!(result instanceof List) || CollUtils.isEmpty((List<Long>) result)) {
+            return 0;
+        }
+        return toDayBits(((List<Long>) result).get(0));
+    }
+
+    /**
+     * BITFIELD读取的31位数中第1天是最高位，反转后第1天在最低位
+     */
+    public static int toDayBits(Long value) {
+        return value == null ? 0 : Integer.reverse(value.intValue()) >>> 1;
+    }
+
+    /**
+     * 归档格式的签到记录转为已签到的日期
+     */
+    public static List<Integer> signedDays(int dayBits) {
+        List<Integer> days = new ArrayList<>(Integer.bitCount(dayBits));
+        for (int day = 1; dayBits != 0; day++, dayBits >>>= 1) {
+            if ((dayBits & 1) == 1) {
+                days.add(day);
+            }
+        }
+        return days;
+    }
+
+    public static int toMonth(YearMonth month) {
+        return month.getYear() * 100 + month.getMonthValue();
+    }
+
+    /**
+     * 解析 sign:uid:{userId}:{yyyyMM} 中的月份，用户id或月份格式不对返回null
+     */
+    static Integer parseMonth(String key) {
+        int index = key.lastIndexOf(':');
+        if (index <= RedisConstants.SIGN_RECORD_KEY_PREFIX.length() || key.length() - index != 7) {
+            return null;
+        }
+        try {
+            Long.parseLong(key.substring(RedisConstants.SIGN_RECORD_KEY_PREFIX.length(), index));
+            return Integer.valueOf(key.substring(index + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Long parseUserId(String key) {
+        return Long.valueOf(key.substring(RedisConstants.SIGN_RECORD_KEY_PREFIX.length(), key.lastIndexOf(':')));
+    }
+}
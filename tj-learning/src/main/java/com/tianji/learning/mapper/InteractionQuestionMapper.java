@@ -1,7 +1,11 @@
 package com.tianji.learning.mapper;
 
+import com.tianji.api.dto.course.CataSimpleInfoDTO;
 import com.tianji.learning.domain.po.InteractionQuestion;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +17,40 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface InteractionQuestionMapper extends BaseMapper<InteractionQuestion> {
 
+    /**
+     * 查询课程下问题关联的章、节id
+     * @param courseId 课程id
+     * @return 去重后的章、节id
+     */
+    List<Long> queryCatalogueIds(@Param("courseId") Long courseId);
+
+    /**
+     * 修复课程下所有问题的课程名称和分类名称
+     * @return 更新的行数
+     */
+    int updateCourseSnapshot(@Param("courseId") Long courseId,
+                             @Param("courseName") String courseName,
+                             @Param("categoryName") String categoryName);
+
+    /**
+     * 修复课程下所有问题的章、节名称，一条UPDATE完成
+     * @param courseId 课程id
+     * @param catas 章、节的最新名称
+     * @return 更新的行数
+     */
+    int updateCatalogueSnapshot(@Param("courseId") Long courseId, @Param("catas") List<CataSimpleInfoDTO> catas);
+
+    /**
+     * 修复用户所有问题的用户名称
+     * @return 更新的行数
+     */
+    int updateUserSnapshot(@Param("userId") Long userId, @Param("userName") String userName);
+
+    /**
+     * 按id游标查询一批缺少课程或用户快照的问题，只查询id、course_id和user_id
+     * @param lastId 上一批最后一个问题的id
+     * @param limit 每批数量
+     * @return 按id升序的问题
+     */
+    List<InteractionQuestion> queryMissingSnapshots(@Param("lastId") long lastId, @Param("limit") int limit);
 }
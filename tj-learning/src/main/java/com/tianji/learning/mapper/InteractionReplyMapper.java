@@ -1,7 +1,10 @@
 package com.tianji.learning.mapper;
 
+import com.tianji.common.autoconfigure.mybatis.BatchMapper;
 import com.tianji.learning.domain.po.InteractionReply;
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -11,6 +14,12 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  * @author author
  * @since 2025-10-22
  */
-public interface InteractionReplyMapper extends BaseMapper<InteractionReply> {
+public interface InteractionReplyMapper extends BatchMapper<InteractionReply> {
 
+    /**
+     * 查询问题下未隐藏的回答的热度数据，用于加载热度排序
+     * @param questionId 问题id
+     * @return 回答的id、likedTimes、createTime
+     */
+    List<InteractionReply> queryHotScores(@Param("questionId") Long questionId);
 }
@@ -0,0 +1,13 @@
+package com.tianji.learning.mapper;
+
+import com.tianji.common.autoconfigure.mybatis.BatchMapper;
+import com.tianji.learning.domain.po.LearningActivityStat;
+
+/**
+ * <p>
+ * 每日学习活跃度汇总 Mapper 接口
+ * </p>
+ */
+public interface LearningActivityStatMapper extends BatchMapper<LearningActivityStat> {
+
+}
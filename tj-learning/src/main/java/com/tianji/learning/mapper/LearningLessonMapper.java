@@ -1,7 +1,14 @@
 package com.tianji.learning.mapper;
 
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tianji.common.autoconfigure.mybatis.BatchMapper;
 import com.tianji.learning.domain.po.LearningLesson;
+import com.tianji.learning.enums.LessonStatus;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
@@ -11,6 +18,49 @@ import com.tianji.learning.domain.po.LearningLesson;
  * @author author
  * @since 2025-10-07
  */
-public interface LearningLessonMapper extends BaseMapper<LearningLesson> {
+public interface LearningLessonMapper extends BatchMapper<LearningLesson> {
+
+    /**
+     * 批量报名，一条多行INSERT ... ON DUPLICATE KEY UPDATE。
+     * 已报名的课程不重复插入，只延长过期时间（永久有效为null）
+     * @param list 课表，需要id、userId、courseId、expireTime
+     * @return 影响行数
+     */
+    int insertOrRenewBatch(@Param("list") Collection<LearningLesson> list);
+
+    /**
+     * 学习中但已学完全部小节的课表改为已学完，用于重新购买已学完、已过期的课程
+     * @param userId 用户id
+     * @param sectionNums 课程id到小节数量
+     * @return 影响行数
+     */
+    int finishLearnedLessons(@Param("userId") Long userId, @Param("sectionNums") Map<Long, Integer> sectionNums);
+
+    /**
+     * 按id游标查询分片内已过期但状态未更新的课表id
+     * @param now 当前时间
+     * @param expired 过期状态
+     * @param lastId 上一批的最大id，第一批为0
+     * @param shardIndex 分片序号
+     * @param shardTotal 分片总数
+     * @param limit 每批数量
+     * @return 按id升序排列的课表id
+     */
+    List<Long> queryExpiredIds(@Param("now") LocalDateTime now,
+                               @Param("expired") LessonStatus expired,
+                               @Param("lastId") long lastId,
+                               @Param("shardIndex") int shardIndex,
+                               @Param("shardTotal") int shardTotal,
+                               @Param("limit") int limit);
 
+    /**
+     * 把分片内 (fromId, toId] 范围内已过期的课表改为过期状态
+     * @return 更新的行数
+     */
+    int expireByIdRange(@Param("now") LocalDateTime now,
+                        @Param("expired") LessonStatus expired,
+                        @Param("fromId") long fromId,
+                        @Param("toId") long toId,
+                        @Param("shardIndex") int shardIndex,
+                        @Param("shardTotal") int shardTotal);
 }
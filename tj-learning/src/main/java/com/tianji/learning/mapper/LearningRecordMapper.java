@@ -2,7 +2,7 @@ package com.tianji.learning.mapper;
 
 import com.tianji.api.dto.IdAndNumDTO;
 import com.tianji.learning.domain.po.LearningRecord;
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tianji.common.autoconfigure.mybatis.BatchMapper;
 import org.apache.ibatis.annotations.Param;
 
 import java.time.LocalDateTime;
@@ -16,10 +16,18 @@ import java.util.List;
  * @author author
  * @since 2025-10-17
  */
-public interface LearningRecordMapper extends BaseMapper<LearningRecord> {
+public interface LearningRecordMapper extends BatchMapper<LearningRecord> {
     List<IdAndNumDTO> countLearnedSections(
             @Param("userId") Long userId,
             @Param("begin") LocalDateTime begin,
             @Param("end") LocalDateTime end);
 
+    /**
+     * 查询时间范围内学完的小节
+     * @return 学习记录，只有lessonId和sectionId
+     */
+    List<LearningRecord> queryFinishedSections(
+            @Param("userId") Long userId,
+            @Param("begin") LocalDateTime begin,
+            @Param("end") LocalDateTime end);
 }
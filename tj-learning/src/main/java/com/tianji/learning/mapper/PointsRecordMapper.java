@@ -1,13 +1,14 @@
 package com.tianji.learning.mapper;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Constants;
 import com.tianji.learning.domain.po.PointsRecord;
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tianji.common.autoconfigure.mybatis.BatchMapper;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -18,10 +19,15 @@ import java.util.List;
  * @author author
  * @since 2025-10-30
  */
-public interface PointsRecordMapper extends BaseMapper<PointsRecord> {
-    @Select("SELECT SUM(points) FROM points_record ${ew.customSqlSegment}")
-    Integer queryUserPointsByTypeAndDate(@Param(Constants.WRAPPER) QueryWrapper<PointsRecord> wrapper);
-
+public interface PointsRecordMapper extends BatchMapper<PointsRecord> {
     @Select("SELECT type, SUM(points) AS points FROM points_record ${ew.customSqlSegment} GROUP BY type")
     List<PointsRecord> queryUserPointsByDate(@Param(Constants.WRAPPER) LambdaQueryWrapper<PointsRecord> wrapper);
+
+    /**
+     * 多行插入积分记录，与insertAll不同，create_time写入事件发生的时间
+     */
+    @Insert("<script>INSERT INTO points_record (user_id, type, points, create_time) VALUES " +
+            "<foreach collection='list' item='r' separator=','>" +
+            "(#{r.userId}, #{r.type.value}, #{r.points}, #{r.createTime})</foreach></script>")
+    int insertWithCreateTime(@Param("list") Collection<PointsRecord> list);
 }
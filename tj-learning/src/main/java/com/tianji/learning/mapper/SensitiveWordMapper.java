@@ -0,0 +1,19 @@
+package com.tianji.learning.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tianji.learning.domain.po.SensitiveWord;
+import org.apache.ibatis.annotations.Select;
+
+/**
+ * <p>
+ * 敏感词词库 Mapper 接口
+ * </p>
+ */
+public interface SensitiveWordMapper extends BaseMapper<SensitiveWord> {
+
+    /**
+     * 词库版本：词的数量和最后更新时间，增删改都会改变版本
+     */
+    @Select("SELECT CONCAT(COUNT(*), ':', IFNULL(MAX(update_time), '')) FROM sensitive_word")
+    String queryVersion();
+}
@@ -0,0 +1,13 @@
+package com.tianji.learning.mapper;
+
+import com.tianji.common.autoconfigure.mybatis.BatchMapper;
+import com.tianji.learning.domain.po.SignRecordArchive;
+
+/**
+ * <p>
+ * 月度签到归档 Mapper 接口
+ * </p>
+ */
+public interface SignRecordArchiveMapper extends BatchMapper<SignRecordArchive> {
+
+}
@@ -0,0 +1,13 @@
+package com.tianji.learning.mapper;
+
+import com.tianji.common.autoconfigure.mybatis.BatchMapper;
+import com.tianji.learning.domain.po.UserStudyStat;
+
+/**
+ * <p>
+ * 用户每日学习时长汇总 Mapper 接口
+ * </p>
+ */
+public interface UserStudyStatMapper extends BatchMapper<UserStudyStat> {
+
+}
@@ -0,0 +1,326 @@
+package com.tianji.learning.moderation;
+
+import java.util.*;
+
+/**
+ * <h1>双数组Aho-Corasick自动机</h1>
+ * 一次扫描文本即可找出所有命中的词，耗时与文本长度和命中数量相关，与词库大小无关：
+ * <ol>
+ *     <li>字符先映射为连续的编码，编码按字符在词库中出现的次数从高到低分配，数组更紧凑</li>
+ *     <li>转移用双数组表示：状态s经过编码c转移到 t = base[s] + c，当且仅当 check[t] == s</li>
+ *     <li>失败指针指向当前状态最长的、也在自动机中的后缀状态，output指向后缀链上最近的词尾状态</li>
+ * </ol>
+ * 构建完成后只读，可以被多个线程同时使用
+ */
+public final class DoubleArrayAhoCorasick {
+
+    private static final int ROOT = 0;
+
+    /**
+     * 字符到编码的映射，0表示字符不在词库中
+     */
+    private final char[] codes;
+    private final int[] base;
+    private final int[] check;
+    private final int[] fail;
+    /**
+     * 以该状态结尾的词的下标，-1表示不是词尾
+     */
+    private final int[] word;
+    /**
+     * 失败链上最近的词尾状态，-1表示没有
+     */
+    private final int[] output;
+    /**
+     * 每个词的长度（字符数）
+     */
+    private final int[] lengths;
+
+    /**
+     * 构建自动机
+     * @param words 词，不能包含空字符串，重复的词以第一次出现的下标为准
+     */
+    public DoubleArrayAhoCorasick(List<String> words) {
+        // 1.字符编码
+        this.codes = buildCodes(words);
+        this.lengths = new int[words.size()];
+        // 2.先构建普通的字典树，再转换为双数组
+        Trie trie = new Trie();
+        for (int i = 0; i < words.size(); i++) {
+            String w = words.get(i);
+            if (w.isEmpty()) {
+                throw new IllegalArgumentException("敏感词不能为空");
+            }
+            lengths[i] = w.length();
+            trie.add(w, i, codes);
+        }
+        Builder builder = new Builder(trie.size() + 2);
+        int[] index = builder.build(trie);
+        this.base = Arrays.copyOf(builder.base, builder.size);
+        this.check = Arrays.copyOf(builder.check, builder.size);
+        // 3.按层次计算失败指针和输出链
+        this.fail = new int[base.length];
+        this.word = new int[base.length];
+        this.output = new int[base.length];
+        Arrays.fill(word, -1);
+        Arrays.fill(output, -1);
+        buildFailure(trie, index);
+    }
+
+    /**
+     * 匹配文本中的所有词，包括重叠的词
+     * @param text 文本
+     * @param length 只匹配text的前length个字符
+     * @param consumer 接收命中的词下标、在文本中的起始和结束位置（包含）
+     */
+    public void match(char[] text, int length, HitConsumer consumer) {
+        int state = ROOT;
+        for (int i = 0; i < length; i++) {
+            int code = codes[text[i]];
+            if (code == 0) {
+                state = ROOT;
+                continue;
+            }
+            int next;
+            while ((next = transition(state, code)) < 0 && state != ROOT) {
+                state = fail[state];
+            }
+            state = next < 0 ? ROOT : next;
+            for (int s = word[state] >= 0 ? state : output[state]; s >= 0; s = output[s]) {
+                int w = word[s];
+                consumer.accept(w, i - lengths[w] + 1, i);
+            }
+        }
+    }
+
+    /**
+     * 状态数量，即双数组的大小
+     */
+    public int size() {
+        return base.length;
+    }
+
+    private int transition(int state, int code) {
+        int t = base[state] + code;
+        return t < check.length && check[t] == state ? t : -1;
+    }
+
+    private static char[] buildCodes(List<String> words) {
+        int[] freq = new int[65536];
+        for (String w : words) {
+            for (int i = 0; i < w.length(); i++) {
+                freq[w.charAt(i)]++;
+            }
+        }
+        List<Integer> chars = new ArrayList<>();
+        for (int c = 0; c < freq.length; c++) {
+            if (freq[c] > 0) {
+                chars.add(c);
+            }
+        }
+        chars.sort((a, b) -> freq[b] - freq[a]);
+        char[] codes = new char[65536];
+        for (int i = 0; i < chars.size(); i++) {
+            codes[chars.get(i)] = (char) (i + 1);
+        }
+        return codes;
+    }
+
+    private void buildFailure(Trie trie, int[] index) {
+        Deque<Integer> queue = new ArrayDeque<>();
+        // 第一层的失败指针指向根
+        for (Map.Entry<Integer, Integer> e : trie.children(ROOT).entrySet()) {
+            int child = e.getValue();
+            fail[index[child]] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            // 按层次遍历，失败指针指向的状态更浅，已经处理过
+            int node = queue.poll();
+            int s = index[node];
+            word[s] = trie.word(node);
+            int f = fail[s];
+            output[s] = word[f] >= 0 ? f : output[f];
+            for (Map.Entry<Integer, Integer> e : trie.children(node).entrySet()) {
+                int code = e.getKey();
+                int child = e.getValue();
+                // 沿父节点的失败链找到第一个有该转移的状态
+                int state = f;
+                int next;
+                while ((next = transition(state, code)) < 0 && state != ROOT) {
+                    state = fail[state];
+                }
+                fail[index[child]] = next < 0 ? ROOT : next;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * 接收命中结果
+     */
+    @FunctionalInterface
+    public interface HitConsumer {
+        void accept(int wordIndex, int start, int end);
+    }
+
+    /**
+     * 构建用的字典树，节点的子节点按编码排序
+     */
+    private static final class Trie {
+        private final List<TreeMap<Integer, Integer>> children = new ArrayList<>();
+        private final List<Integer> words = new ArrayList<>();
+
+        Trie() {
+            newNode();
+        }
+
+        void add(String w, int wordIndex, char[] codes) {
+            int node = ROOT;
+            for (int i = 0; i < w.length(); i++) {
+                int code = codes[w.charAt(i)];
+                Integer child = children.get(node).get(code);
+                if (child == null) {
+                    child = newNode();
+                    children.get(node).put(code, child);
+                }
+                node = child;
+            }
+            if (words.get(node) < 0) {
+                words.set(node, wordIndex);
+            }
+        }
+
+        int size() {
+            return children.size();
+        }
+
+        TreeMap<Integer, Integer> children(int node) {
+            return children.get(node);
+        }
+
+        int word(int node) {
+            return words.get(node);
+        }
+
+        private int newNode() {
+            children.add(new TreeMap<>());
+            words.add(-1);
+            return children.size() - 1;
+        }
+    }
+
+    /**
+     * 把字典树转换为双数组
+     */
+    private static final class Builder {
+        private int[] base;
+        private int[] check;
+        private boolean[] used;
+        /**
+         * 空闲位置的并查集：nextFree[i] == i 表示位置i空闲，否则沿着指针找到i之后第一个空闲位置
+         */
+        private int[] nextFree;
+        private int size = 1;
+
+        Builder(int capacity) {
+            base = new int[0];
+            check = new int[0];
+            used = new boolean[0];
+            nextFree = new int[0];
+            ensureCapacity(capacity);
+        }
+
+        /**
+         * @return 字典树节点到双数组状态的映射
+         */
+        int[] build(Trie trie) {
+            int[] index = new int[trie.size()];
+            index[ROOT] = ROOT;
+            occupy(ROOT, ROOT);
+            Deque<Integer> queue = new ArrayDeque<>();
+            queue.add(ROOT);
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                TreeMap<Integer, Integer> children = trie.children(node);
+                if (children.isEmpty()) {
+                    continue;
+                }
+                int s = index[node];
+                int[] codes = children.keySet().stream().mapToInt(Integer::intValue).toArray();
+                int b = findBase(codes);
+                base[s] = b;
+                for (Map.Entry<Integer, Integer> e : children.entrySet()) {
+                    int t = b + e.getKey();
+                    occupy(t, s);
+                    index[e.getValue()] = t;
+                    queue.add(e.getValue());
+                }
+            }
+            return index;
+        }
+
+        /**
+         * 从第一个子节点可以放下的空闲位置开始，依次尝试每个空闲位置
+         */
+        private int findBase(int[] codes) {
+            int first = codes[0];
+            int last = codes[codes.length - 1];
+            for (int pos = findFree(first + 1); ; pos = findFree(pos + 1)) {
+                int b = pos - first;
+                ensureCapacity(b + last + 1);
+                if (fits(b, codes)) {
+                    return b;
+                }
+            }
+        }
+
+        private boolean fits(int b, int[] codes) {
+            for (int code : codes) {
+                if (used[b + code]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void occupy(int t, int parent) {
+            check[t] = parent;
+            used[t] = true;
+            nextFree[t] = t + 1;
+            size = Math.max(size, t + 1);
+        }
+
+        private int findFree(int pos) {
+            ensureCapacity(pos + 1);
+            int root = pos;
+            while (nextFree[root] != root) {
+                root = nextFree[root];
+                ensureCapacity(root + 1);
+            }
+            // 路径压缩
+            while (nextFree[pos] != root) {
+                int next = nextFree[pos];
+                nextFree[pos] = root;
+                pos = next;
+            }
+            return root;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= base.length) {
+                return;
+            }
+            int newCapacity = Math.max(capacity, base.length + (base.length >> 1));
+            int oldCapacity = base.length;
+            base = Arrays.copyOf(base, newCapacity);
+            check = Arrays.copyOf(check, newCapacity);
+            used = Arrays.copyOf(used, newCapacity);
+            nextFree = Arrays.copyOf(nextFree, newCapacity);
+            Arrays.fill(check, oldCapacity, newCapacity, -1);
+            for (int i = oldCapacity; i < newCapacity; i++) {
+                nextFree[i] = i;
+            }
+        }
+    }
+}
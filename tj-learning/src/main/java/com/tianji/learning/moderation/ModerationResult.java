@@ -0,0 +1,45 @@
+package com.tianji.learning.moderation;
+
+import com.tianji.learning.enums.SensitiveAction;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 一段文本的敏感词检查结果
+ */
+@Getter
+public class ModerationResult {
+
+    /**
+     * 最严格的处理方式，未命中时为null
+     */
+    private final SensitiveAction action;
+    /**
+     * 命中的敏感词（归一化后）
+     */
+    private final Set<String> hits;
+    /**
+     * 处理后的文本：处理方式为替换时是替换后的文本，否则是原文
+     */
+    private final String text;
+
+    ModerationResult(SensitiveAction action, Set<String> hits, String text) {
+        this.action = action;
+        this.hits = hits;
+        this.text = text;
+    }
+
+    static ModerationResult pass(String text) {
+        return new ModerationResult(null, Collections.emptySet(), text);
+    }
+
+    public boolean isRejected() {
+        return action == SensitiveAction.REJECT;
+    }
+
+    public boolean needsReview() {
+        return action == SensitiveAction.REVIEW;
+    }
+}
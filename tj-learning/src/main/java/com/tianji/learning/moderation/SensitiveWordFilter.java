@@ -0,0 +1,150 @@
+package com.tianji.learning.moderation;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.StringUtils;
+import com.tianji.learning.domain.po.SensitiveWord;
+import com.tianji.learning.enums.SensitiveAction;
+import com.tianji.learning.mapper.SensitiveWordMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+/**
+ * <h1>敏感词过滤</h1>
+ * 用户提交的问题、回答在保存前检查敏感词：
+ * <ol>
+ *     <li>词库保存在数据库，启动时加载，之后定时检查词库版本，有变化时重新构建自动机并整体替换，检查时不需要加锁</li>
+ *     <li>词和文本都先经过{@link TextNormalizer}归一化，再用{@link DoubleArrayAhoCorasick}一次扫描找出所有命中的词</li>
+ *     <li>命中多个词时取最严格的处理方式：拒绝提交、隐藏等待审核、替换为*</li>
+ * </ol>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SensitiveWordFilter {
+
+    private final SensitiveWordMapper wordMapper;
+
+    private volatile Dictionary dictionary = Dictionary.EMPTY;
+
+    @PostConstruct
+    public void init() {
+        scheduledReload();
+    }
+
+    /**
+     * 定时检查词库是否变化
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void scheduledReload() {
+        try {
+            reload();
+        } catch (Exception e) {
+            // 加载失败时继续使用旧的词库
+            log.error("加载敏感词词库发生异常", e);
+        }
+    }
+
+    /**
+     * 词库版本变化时重新加载
+     * @return 是否重新加载
+     */
+    public boolean reload() {
+        String version = wordMapper.queryVersion();
+        if (Objects.equals(version, dictionary.version)) {
+            return false;
+        }
+        List<SensitiveWord> words = wordMapper.selectList(null);
+        long begin = System.currentTimeMillis();
+        Dictionary newDictionary = Dictionary.build(version, words);
+        dictionary = newDictionary;
+        log.info("加载敏感词{}个，耗时{}ms", newDictionary.words.length, System.currentTimeMillis() - begin);
+        return true;
+    }
+
+    /**
+     * 检查文本
+     * @param text 文本，可以为null
+     * @return 检查结果
+     */
+    public ModerationResult check(String text) {
+        Dictionary dict = dictionary;
+        if (StringUtils.isEmpty(text) || dict.automaton == null) {
+            return ModerationResult.pass(text);
+        }
+        // 1.归一化
+        char[] chars = new char[text.length()];
+        int[] positions = new int[text.length()];
+        int length = TextNormalizer.normalize(text, chars, positions);
+        // 2.匹配，记录最严格的处理方式和需要替换的原文范围
+        SensitiveAction[] action = new SensitiveAction[1];
+        Set<String> hits = new LinkedHashSet<>();
+        boolean[] masked = new boolean[text.length()];
+        dict.automaton.match(chars, length, (w, start, end) -> {
+            SensitiveAction a = dict.actions[w];
+            if (action[0] == null || a.getValue() > action[0].getValue()) {
+                action[0] = a;
+            }
+            hits.add(dict.words[w]);
+            Arrays.fill(masked, positions[start], positions[end] + 1, true);
+        });
+        if (action[0] == null) {
+            return ModerationResult.pass(text);
+        }
+        if (action[0] != SensitiveAction.MASK) {
+            return new ModerationResult(action[0], hits, text);
+        }
+        // 3.替换为*，夹在敏感词中间的符号也一起替换
+        char[] result = text.toCharArray();
+        for (int i = 0; i < result.length; i++) {
+            if (masked[i]) {
+                result[i] = '*';
+            }
+        }
+        return new ModerationResult(action[0], hits, new String(result));
+    }
+
+    /**
+     * 一个版本的词库，构建后只读
+     */
+    private static final class Dictionary {
+        private static final Dictionary EMPTY = new Dictionary(null, new String[0], new SensitiveAction[0], null);
+
+        private final String version;
+        private final String[] words;
+        private final SensitiveAction[] actions;
+        private final DoubleArrayAhoCorasick automaton;
+
+        private Dictionary(String version, String[] words, SensitiveAction[] actions, DoubleArrayAhoCorasick automaton) {
+            this.version = version;
+            this.words = words;
+            this.actions = actions;
+            this.automaton = automaton;
+        }
+
+        static Dictionary build(String version, List<SensitiveWord> list) {
+            // 归一化后相同的词合并，取最严格的处理方式
+            Map<String, SensitiveAction> map = new LinkedHashMap<>();
+            if (CollUtils.isNotEmpty(list)) {
+                for (SensitiveWord sw : list) {
+                    if (sw.getWord() == null || sw.getAction() == null) {
+                        continue;
+                    }
+                    String word = TextNormalizer.normalize(sw.getWord());
+                    if (word.isEmpty()) {
+                        continue;
+                    }
+                    map.merge(word, sw.getAction(), (a, b) -> a.getValue() >= b.getValue() ? a : b);
+                }
+            }
+            String[] words = map.keySet().toArray(new String[0]);
+            SensitiveAction[] actions = map.values().toArray(new SensitiveAction[0]);
+            DoubleArrayAhoCorasick automaton = words.length == 0 ? null : new DoubleArrayAhoCorasick(Arrays.asList(words));
+            return new Dictionary(version, words, actions, automaton);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.tianji.learning.moderation;
+
+/**
+ * 敏感词匹配前的文本归一化，处理常见的规避写法：
+ * <ol>
+ *     <li>全角字符转半角，大写字母转小写</li>
+ *     <li>形近字符（西里尔、希腊字母等）转为对应的拉丁字母</li>
+ *     <li>去掉空白、标点和符号，例如“敏 感”“敏*感”</li>
+ * </ol>
+ * 归一化后的每个字符记录原文中的位置，用于把命中的片段在原文中替换为*
+ */
+public final class TextNormalizer {
+
+    /**
+     * 形近字符到拉丁字母的映射，成对存放
+     */
+    private static final String HOMOGLYPHS =
+            // 西里尔字母
+            "аaвbеeкkмmнhоoрpсcтtуyхxіiјjѕsԁdɡgһh"
+            // 希腊字母
+            + "αaβbεeιiκkνvοoρpτtυuχx"
+            // 数字和符号中常见的替代写法
+            + "0o1l3e4a5s7t@a$s";
+
+    private static final char[] MAPPING = new char[65536];
+
+    static {
+        for (int c = 0; c < MAPPING.length; c++) {
+            MAPPING[c] = (char) c;
+        }
+        // 全角转半角
+        MAPPING['　'] = ' ';
+        for (int c = '！'; c <= '～'; c++) {
+            MAPPING[c] = (char) (c - 0xFEE0);
+        }
+        for (int c = 0; c < MAPPING.length; c++) {
+            MAPPING[c] = Character.toLowerCase(MAPPING[c]);
+        }
+        for (int i = 0; i < HOMOGLYPHS.length(); i += 2) {
+            MAPPING[HOMOGLYPHS.charAt(i)] = HOMOGLYPHS.charAt(i + 1);
+            MAPPING[Character.toUpperCase(HOMOGLYPHS.charAt(i))] = HOMOGLYPHS.charAt(i + 1);
+        }
+    }
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * 归一化单个字符
+     * @return 归一化后的字符，需要忽略的字符返回0
+     */
+    public static char normalize(char c) {
+        char n = MAPPING[c];
+        return isIgnored(n) ? 0 : n;
+    }
+
+    /**
+     * 归一化词库中的词
+     */
+    public static String normalize(String word) {
+        StringBuilder sb = new StringBuilder(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            char n = normalize(word.charAt(i));
+            if (n != 0) {
+                sb.append(n);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 归一化待检查的文本
+     * @param positions 输出参数，长度不小于text.length()，记录归一化后每个字符在原文中的位置
+     * @return 归一化后的字符数量，结果写在chars中
+     */
+    public static int normalize(String text, char[] chars, int[] positions) {
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = normalize(text.charAt(i));
+            if (c != 0) {
+                chars[n] = c;
+                positions[n] = i;
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static boolean isIgnored(char c) {
+        if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+            return true;
+        }
+        switch (Character.getType(c)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+            case Character.MATH_SYMBOL:
+            case Character.CURRENCY_SYMBOL:
+            case Character.MODIFIER_SYMBOL:
+            case Character.OTHER_SYMBOL:
+            case Character.FORMAT:
+            case Character.CONTROL:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
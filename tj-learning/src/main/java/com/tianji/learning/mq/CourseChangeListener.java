@@ -0,0 +1,40 @@
+package com.tianji.learning.mq;
+
+import com.tianji.common.constants.MqConstants;
+import com.tianji.learning.cache.CourseStructureCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CourseChangeListener {
+
+    private final CourseStructureCache courseStructureCache;
+
+    /**
+     * 监听课程变更的消息，失效本地的课程结构缓存。
+     * 本地缓存每个实例都需要失效，因此使用匿名队列（排他、自动删除），每个实例各自绑定一个
+     * @param courseId 课程id
+     */
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(exclusive = "true", autoDelete = "true"),
+            exchange = @Exchange(name = MqConstants.Exchange.COURSE_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = {MqConstants.Key.COURSE_UP_KEY, MqConstants.Key.COURSE_DOWN_KEY,
+                    MqConstants.Key.COURSE_EXPIRE_KEY, MqConstants.Key.COURSE_DELETE_KEY}
+    ))
+    public void listenCourseChange(Long courseId) {
+        if (courseId == null) {
+            log.error("接收到MQ消息有误，课程id为空");
+            return;
+        }
+        log.debug("监听到课程{}变更，失效课程结构缓存", courseId);
+        courseStructureCache.invalidate(courseId);
+    }
+}
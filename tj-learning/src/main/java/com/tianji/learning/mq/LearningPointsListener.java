@@ -1,29 +1,53 @@
 package com.tianji.learning.mq;
 
+import cn.hutool.core.lang.UUID;
 import com.tianji.common.constants.MqConstants;
+import com.tianji.learning.domain.po.PointsRecord;
 import com.tianji.learning.enums.PointsRecordType;
 import com.tianji.learning.mq.message.SignInMessage;
 import com.tianji.learning.service.IPointsRecordService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.annotation.Exchange;
 import org.springframework.amqp.rabbit.annotation.Queue;
 import org.springframework.amqp.rabbit.annotation.QueueBinding;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.retry.MessageRecoverer;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 积分事件的批量监听器，每批消息合并后一次写入Redis和数据库，整批确认。
+ * 单条消息转换失败或数据有误时，投递到失败消息队列，不影响同批的其它消息
+ */
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class LearningPointsListener {
     private final IPointsRecordService recordService;
+    private final MessageConverter messageConverter;
+    private final MessageRecoverer messageRecoverer;
+
     // 监听新增互动问答事件
     @RabbitListener(bindings = @QueueBinding(
             value = @Queue(name = "qa.points.queue", durable = "true"),
             exchange = @Exchange(name = MqConstants.Exchange.LEARNING_EXCHANGE, type = ExchangeTypes.TOPIC),
             key = MqConstants.Key.WRITE_REPLY
-    ))
-    public void listenWriteReplyMessage(Long userId){
-        recordService.addPointsRecord(userId, 5, PointsRecordType.QA);
+    ), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listenWriteReplyMessage(List<Message> messages){
+        handleBatch(messages, userId -> newRecord(((Number) userId).longValue(), 5, PointsRecordType.QA));
     }
 
     // 监听签到事件
@@ -31,9 +55,55 @@ public class LearningPointsListener {
             value = @Queue(name = "sign.points.queue", durable = "true"),
             exchange = @Exchange(name = MqConstants.Exchange.LEARNING_EXCHANGE, type = ExchangeTypes.TOPIC),
             key = MqConstants.Key.SIGN_IN
-    ))
-    public void listenSignInMessage(SignInMessage message){
-        recordService.addPointsRecord(message.getUserId(), message.getPoints(), PointsRecordType.SIGN);
+    ), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listenSignInMessage(List<Message> messages){
+        handleBatch(messages, body -> {
+            SignInMessage message = (SignInMessage) body;
+            return newRecord(message.getUserId(), message.getPoints(), PointsRecordType.SIGN);
+        });
     }
 
+    /**
+     * 逐条转换消息，再批量添加积分
+     * @param messages 一批消息
+     * @param converter 消息体到积分记录的转换
+     * @return 有效的消息数量
+     */
+    int handleBatch(List<Message> messages, Function<Object, PointsRecord> converter) {
+        // 1.逐条转换，隔离有问题的消息，以消息id作为积分事件的id
+        Map<String, PointsRecord> records = new LinkedHashMap<>(messages.size());
+        List<Message> failed = new ArrayList<>();
+        List<Exception> causes = new ArrayList<>();
+        for (Message message : messages) {
+            try {
+                PointsRecord record = converter.apply(messageConverter.fromMessage(message));
+                if (record.getUserId() == null || record.getPoints() == null || record.getPoints() <= 0) {
+                    throw new IllegalArgumentException("积分数据有误：" + record);
+                }
+                // 积分按消息发送的时间计入当天，消息没有发送时间时取当前时间
+                MessageProperties properties = message.getMessageProperties();
+                Date timestamp = properties.getTimestamp();
+                if (timestamp != null) {
+                    record.setCreateTime(LocalDateTime.ofInstant(timestamp.toInstant(), ZoneId.systemDefault()));
+                }
+                String eventId = properties.getMessageId();
+                records.put(eventId == null ? UUID.randomUUID().toString(true) : eventId, record);
+            } catch (Exception e) {
+                failed.add(message);
+                causes.add(e);
+            }
+        }
+        // 2.批量添加积分，失败时抛出异常，整批消息重新投递
+        recordService.addPointsRecords(records);
+        // 3.整批处理成功后再投递失败消息，避免重新投递时重复投递
+        for (int i = 0; i < failed.size(); i++) {
+            log.error("积分消息处理失败，投递到失败消息队列", causes.get(i));
+            messageRecoverer.recover(failed.get(i), causes.get(i));
+        }
+        return records.size();
+    }
+
+    private PointsRecord newRecord(Long userId, Integer points, PointsRecordType type) {
+        return new PointsRecord().setUserId(userId).setPoints(points).setType(type);
+    }
 }
@@ -37,7 +37,7 @@ public class LessionChangeListener {
         }
         // 2.添加课程
         log.debug("监听到用户{}的订单{}，需要添加课程{}到课表中", order.getUserId(), order.getOrderId(), order.getCourseIds());
-        lessonService.addUserLessons(order.getUserId(), order.getCourseIds());
+        lessonService.addUserLessons(order.getUserId(), order.getCourseIds(), order.getFinishTime());
 
 
     }
@@ -48,14 +48,14 @@ public class LessionChangeListener {
             key = MqConstants.Key.ORDER_REFUND_KEY
     ))
     public void handleOrderRefundMessage(OrderBasicDTO order) {
-        if(order==null||order.getUserId()==null|| CollUtils.isEmpty(order.getCourseIds())){
+        if(order==null||order.getOrderId()==null||order.getUserId()==null|| CollUtils.isEmpty(order.getCourseIds())){
             // 数据有误，无需处理
             log.error("接收到MQ消息有误，订单数据为空");
             return;
         }
         // 2.删除课程
         log.debug("监听到用户{}的订单{}退款，需要删除课程{}", order.getUserId(), order.getOrderId(), order.getCourseIds());
-        lessonService.deleteUserLessons(order.getUserId(), order.getCourseIds());
+        lessonService.refundUserLessons(order.getOrderId(), order.getUserId(), order.getCourseIds());
     }
 
 
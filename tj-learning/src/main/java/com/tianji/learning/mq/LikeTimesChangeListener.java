@@ -2,8 +2,9 @@ package com.tianji.learning.mq;
 
 import com.tianji.api.dto.remark.LikedTimesDTO;
 import com.tianji.common.utils.CollUtils;
+import com.tianji.learning.cache.ReplyHotRanking;
 import com.tianji.learning.domain.po.InteractionReply;
-import com.tianji.learning.service.IInteractionReplyService;
+import com.tianji.learning.mapper.InteractionReplyMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.ExchangeTypes;
@@ -15,6 +16,7 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static com.tianji.common.constants.MqConstants.Exchange.LIKE_RECORD_EXCHANGE;
 import static com.tianji.common.constants.MqConstants.Key.QA_LIKED_TIMES_KEY;
@@ -24,7 +26,9 @@ import static com.tianji.common.constants.MqConstants.Key.QA_LIKED_TIMES_KEY;
 @RequiredArgsConstructor
 public class LikeTimesChangeListener {
 
-    private final IInteractionReplyService replyService;
+    private final InteractionReplyMapper replyMapper;
+
+    private final ReplyHotRanking replyHotRanking;
 
     /**
      * 监听点赞数变更消息 - 批量处理
@@ -52,10 +56,19 @@ public class LikeTimesChangeListener {
             replyList.add(r);
         }
 
-        // 批量更新数据库
-        replyService.updateBatchById(replyList);
+        // 批量更新数据库，每批只执行一条UPDATE
+        replyMapper.updateAllByCase(replyList);
 
         log.info("批量更新 {} 条点赞数据完成", replyList.size());
+
+        // 更新回答的热度排序，失败时等待排序过期后重新加载
+        try {
+            List<InteractionReply> replies = replyMapper.selectBatchIds(
+                    replyList.stream().map(InteractionReply::getId).collect(Collectors.toList()));
+            replyHotRanking.updateLikedTimes(replies);
+        } catch (Exception e) {
+            log.error("更新回答热度排序失败", e);
+        }
     }
 }
 
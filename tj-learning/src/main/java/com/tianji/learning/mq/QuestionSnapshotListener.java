@@ -0,0 +1,60 @@
+package com.tianji.learning.mq;
+
+import com.tianji.common.constants.MqConstants;
+import com.tianji.learning.service.IInteractionQuestionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 修复问题表中的展示快照（课程、章节、分类、用户名称）。
+ * 每次都按最新数据整体覆盖，消息重复消费或乱序消费的结果相同
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class QuestionSnapshotListener {
+
+    private final IInteractionQuestionService questionService;
+
+    /**
+     * 监听课程上架的消息，课程编辑后重新上架时名称、目录可能变化
+     * @param courseId 课程id
+     */
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(name = "qa.course.snapshot.queue", durable = "true"),
+            exchange = @Exchange(name = MqConstants.Exchange.COURSE_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = MqConstants.Key.COURSE_UP_KEY
+    ))
+    public void listenCourseChange(Long courseId) {
+        if (courseId == null) {
+            log.error("接收到MQ消息有误，课程id为空");
+            return;
+        }
+        log.debug("监听到课程{}变更，修复问题快照", courseId);
+        questionService.refreshCourseSnapshot(courseId);
+    }
+
+    /**
+     * 监听用户信息变更的消息
+     * @param userId 用户id
+     */
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(name = "qa.user.snapshot.queue", durable = "true"),
+            exchange = @Exchange(name = MqConstants.Exchange.USER_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = MqConstants.Key.USER_UPDATE_KEY
+    ))
+    public void listenUserChange(Long userId) {
+        if (userId == null) {
+            log.error("接收到MQ消息有误，用户id为空");
+            return;
+        }
+        log.debug("监听到用户{}信息变更，修复问题快照", userId);
+        questionService.refreshUserSnapshot(userId);
+    }
+}
@@ -0,0 +1,17 @@
+package com.tianji.learning.mq.message;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 课表过期事件，只携带一批过期的课表id，用于各服务清理本地缓存
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor(staticName = "of")
+public class LessonExpiredMessage {
+    private List<Long> lessonIds;
+}
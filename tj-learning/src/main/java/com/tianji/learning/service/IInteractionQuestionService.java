@@ -54,4 +54,16 @@ public interface IInteractionQuestionService extends IService<InteractionQuestio
      * @return
      */
     PageDTO<QuestionAdminVO> queryQuestionPageAdmin(QuestionAdminPageQuery query);
+
+    /**
+     * 课程变更后，修复课程下所有问题的课程、分类、章节名称
+     * @param courseId 课程id
+     */
+    void refreshCourseSnapshot(Long courseId);
+
+    /**
+     * 用户信息变更后，修复用户所有问题的用户名称
+     * @param userId 用户id
+     */
+    void refreshUserSnapshot(Long userId);
 }
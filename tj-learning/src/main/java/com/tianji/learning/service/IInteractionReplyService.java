@@ -28,4 +28,11 @@ public interface IInteractionReplyService extends IService<InteractionReply> {
      * @return
      */
     PageDTO<ReplyVO> queryReplysByPage(ReplyPageQuery query);
+
+    /**
+     * 管理端隐藏或显示回答、评论
+     * @param id 回答或评论id
+     * @param hidden 是否隐藏
+     */
+    void hiddenReply(Long id, Boolean hidden);
 }
@@ -0,0 +1,32 @@
+package com.tianji.learning.service;
+
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.tianji.learning.domain.po.LearningActivityStat;
+import com.tianji.learning.domain.vo.ActivityStatVO;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * 学习活跃度统计 服务类
+ * </p>
+ */
+public interface ILearningActivityStatService extends IService<LearningActivityStat> {
+
+    /**
+     * 查询每日活跃度，历史数据来自汇总表，当天的数据实时读取Redis
+     * @param courseId 课程id，为空时查询全平台
+     * @param begin 开始日期，包含
+     * @param end 结束日期，包含
+     * @return 按日期排列的活跃度，没有数据的日期不返回
+     */
+    List<ActivityStatVO> queryActivityStats(Long courseId, LocalDate begin, LocalDate end);
+
+    /**
+     * 查询用户每日的学习秒数，当天的数据实时读取Redis
+     * @return 日期到学习秒数的映射，按日期排列，没有学习的日期不返回
+     */
+    Map<LocalDate, Long> queryUserStudySeconds(Long userId, LocalDate begin, LocalDate end);
+}
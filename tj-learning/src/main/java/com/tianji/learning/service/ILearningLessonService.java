@@ -9,6 +9,7 @@ import com.tianji.learning.domain.vo.LearningPlanPageVO;
 import com.tianji.learning.domain.vo.LearningPlanVO;
 import com.tianji.learning.domain.vo.UserLessonStatusVO;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -21,7 +22,13 @@ import java.util.List;
  */
 public interface ILearningLessonService extends IService<LearningLesson> {
 
-    void addUserLessons(Long userId, List<Long> courseIds);
+    /**
+     * 订单支付后为用户报名课程，重复调用时不会重复报名
+     * @param userId 用户id
+     * @param courseIds 课程id
+     * @param payTime 支付时间，用于计算课程过期时间，为null时使用当前时间
+     */
+    void addUserLessons(Long userId, List<Long> courseIds, LocalDateTime payTime);
 
 
     PageDTO<LearningLessonVO> queryMyLessons(PageQuery pageQuery);
@@ -35,6 +42,14 @@ public interface ILearningLessonService extends IService<LearningLesson> {
      */
     void deleteUserLessons(Long userId, List<Long> courseIds);
 
+    /**
+     * 订单退款后删除用户的课程，同一订单的同一课程只会删除一次
+     * @param orderId 订单id
+     * @param userId 用户id
+     * @param courseIds 退款的课程id
+     */
+    void refundUserLessons(Long orderId, Long userId, List<Long> courseIds);
+
 
     void deleteMyLesson(Long courseId);
 
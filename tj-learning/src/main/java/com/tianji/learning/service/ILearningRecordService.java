@@ -1,8 +1,10 @@
 package com.tianji.learning.service;
 
 import com.tianji.api.dto.leanring.LearningLessonDTO;
+import com.tianji.learning.domain.dto.LearningRecordBatchDTO;
 import com.tianji.learning.domain.dto.LearningRecordFormDTO;
 import com.tianji.learning.domain.po.LearningRecord;
+import com.tianji.learning.domain.vo.LearningRecordBatchVO;
 import com.baomidou.mybatisplus.extension.service.IService;
 
 /**
@@ -22,4 +24,12 @@ public interface ILearningRecordService extends IService<LearningRecord> {
      * @param learningRecordFormDTO
      */
     void addLearningRecord(LearningRecordFormDTO learningRecordFormDTO);
+
+    /**
+     * 批量上报视频播放进度，用于同时观看多个小节或断线重连后补报。
+     * 同一小节只保留上报时间最新的一条，上报时间不晚于已记录进度的上报会被拒绝
+     * @param batch 按上报顺序排列的进度
+     * @return 处理结果
+     */
+    LearningRecordBatchVO addLearningRecords(LearningRecordBatchDTO batch);
 }
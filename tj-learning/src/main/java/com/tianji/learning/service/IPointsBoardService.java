@@ -17,6 +17,13 @@ public interface IPointsBoardService extends IService<PointsBoard> {
 
     PointsBoardVO queryPointsBoardBySeason(PointsBoardQuery query);
 
+    /**
+     * 查询当前赛季我的排名，以及排在我前后各k名的用户
+     * @param k 前后各多少名
+     * @return 我的排名和积分，boardList按名次升序，包含我自己
+     */
+    PointsBoardVO queryMyNeighbors(Integer k);
+
     void createPointsBoardTableBySeason(Integer season);
 
     /**
@@ -3,9 +3,9 @@ package com.tianji.learning.service;
 import com.tianji.learning.domain.po.PointsRecord;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.tianji.learning.domain.vo.PointsStatisticsVO;
-import com.tianji.learning.enums.PointsRecordType;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
@@ -17,7 +17,13 @@ import java.util.List;
  */
 public interface IPointsRecordService extends IService<PointsRecord> {
 
-    void addPointsRecord(Long userId, int i, PointsRecordType pointsRecordType);
+    /**
+     * 批量添加积分，同一用户同一类型同一天的积分合并后判断上限，积分记录同步写入。
+     * 按事件id去重，写入数据库失败后重新投递的事件不会重复累加每日积分和排行榜
+     * @param records 事件id到积分事件，需要userId、type、points，createTime是事件发生的时间，为空时取当前时间
+     * @return 本次写入数据库的积分总数
+     */
+    int addPointsRecords(Map<String, PointsRecord> records);
 
     /**
      * 查询我的今日积分
@@ -1,7 +1,16 @@
 package com.tianji.learning.service;
 
+import com.tianji.learning.domain.vo.SignCalendarVO;
 import com.tianji.learning.domain.vo.SignResultVO;
 
+import java.time.YearMonth;
+
 public interface ISignRecordService {
     SignResultVO addSignRecords();
+
+    /**
+     * 查询当前用户某个月的签到日历，已归档的月份从数据库读取
+     * @param month 月份，为空时查询本月
+     */
+    SignCalendarVO querySignCalendar(YearMonth month);
 }
\ No newline at end of file
@@ -16,7 +16,10 @@ import com.tianji.common.exceptions.ForbiddenException;
 import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.StringUtils;
+import com.tianji.common.utils.TransactionUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.common.autoconfigure.datasource.annotations.ReadOnlyRoute;
+import com.tianji.learning.cache.ReplyHotRanking;
 import com.tianji.learning.domain.dto.QuestionFormDTO;
 import com.tianji.learning.domain.dto.QuestionUpdateDTO;
 import com.tianji.learning.domain.po.InteractionQuestion;
@@ -27,9 +30,12 @@ import com.tianji.learning.domain.vo.QuestionAdminVO;
 import com.tianji.learning.domain.vo.QuestionVO;
 import com.tianji.learning.mapper.InteractionQuestionMapper;
 import com.tianji.learning.mapper.InteractionReplyMapper;
+import com.tianji.learning.moderation.ModerationResult;
+import com.tianji.learning.moderation.SensitiveWordFilter;
 import com.tianji.learning.service.IInteractionQuestionService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -44,6 +50,7 @@ import java.util.stream.Collectors;
  * @author author
  * @since 2025-10-22
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuestionMapper, InteractionQuestion> implements IInteractionQuestionService {
@@ -59,14 +66,106 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
 
     private final CategoryCache categoryCache;
 
+    private final SensitiveWordFilter sensitiveWordFilter;
+
+    private final ReplyHotRanking replyHotRanking;
+
     @Override
     public void saveQuestion(QuestionFormDTO questionFormDTO) {
         Long useId = UserContext.getUser();
         InteractionQuestion question = BeanUtils.copyBean(questionFormDTO, InteractionQuestion.class);
         question.setUserId(useId);
+        // 检查敏感词
+        moderate(question);
+        // 写入展示用的快照，管理端分页不再查询课程、目录和用户服务
+        fillSnapshot(question);
         save(question);
     }
 
+    /**
+     * 检查标题和描述中的敏感词：需要拒绝时抛出异常，需要审核时隐藏问题，需要替换时写入替换后的文本
+     */
+    private void moderate(InteractionQuestion question) {
+        ModerationResult title = sensitiveWordFilter.check(question.getTitle());
+        ModerationResult description = sensitiveWordFilter.check(question.getDescription());
+        if (title.isRejected() || description.isRejected()) {
+            throw new BadRequestException("内容包含敏感词，请修改后再提交");
+        }
+        question.setTitle(title.getText());
+        question.setDescription(description.getText());
+        if (title.needsReview() || description.needsReview()) {
+            log.info("问题包含待审核的敏感词，隐藏等待审核，用户：{}，敏感词：{}{}",
+                    question.getUserId(), title.getHits(), description.getHits());
+            question.setHidden(true);
+        }
+    }
+
+    private void fillSnapshot(InteractionQuestion question) {
+        // 1.课程名称和分类名称
+        List<CourseSimpleInfoDTO> courses = courseClient.getSimpleInfoList(List.of(question.getCourseId()));
+        if (CollUtils.isNotEmpty(courses)) {
+            CourseSimpleInfoDTO course = courses.get(0);
+            question.setCourseName(course.getName());
+            question.setCategoryName(categoryCache.getCategoryNames(course.getCategoryIds()));
+        }
+        // 2.章节名称
+        List<CataSimpleInfoDTO> catas = catalogueClient.batchQueryCatalogue(
+                List.of(question.getChapterId(), question.getSectionId()));
+        if (CollUtils.isNotEmpty(catas)) {
+            for (CataSimpleInfoDTO cata : catas) {
+                if (cata.getId().equals(question.getChapterId())) {
+                    question.setChapterName(cata.getName());
+                }
+                if (cata.getId().equals(question.getSectionId())) {
+                    question.setSectionName(cata.getName());
+                }
+            }
+        }
+        // 3.用户名称
+        UserDTO user = userClient.queryUserById(question.getUserId());
+        if (user != null) {
+            question.setUserName(user.getName());
+        }
+    }
+
+    @Override
+    public void refreshCourseSnapshot(Long courseId) {
+        // 1.查询课程最新信息，修复课程名称和分类名称
+        List<CourseSimpleInfoDTO> courses = courseClient.getSimpleInfoList(List.of(courseId));
+        if (CollUtils.isEmpty(courses)) {
+            log.warn("课程{}不存在，无需修复问题快照", courseId);
+            return;
+        }
+        CourseSimpleInfoDTO course = courses.get(0);
+        int rows = getBaseMapper().updateCourseSnapshot(
+                courseId, course.getName(), categoryCache.getCategoryNames(course.getCategoryIds()));
+        if (rows == 0) {
+            // 课程下没有问题
+            return;
+        }
+        // 2.查询问题关联的章节最新名称，一条UPDATE修复
+        List<Long> cataIds = getBaseMapper().queryCatalogueIds(courseId);
+        if (CollUtils.isEmpty(cataIds)) {
+            return;
+        }
+        List<CataSimpleInfoDTO> catas = catalogueClient.batchQueryCatalogue(cataIds);
+        if (CollUtils.isNotEmpty(catas)) {
+            getBaseMapper().updateCatalogueSnapshot(courseId, catas);
+        }
+        log.debug("修复课程{}的问题快照{}条", courseId, rows);
+    }
+
+    @Override
+    public void refreshUserSnapshot(Long userId) {
+        UserDTO user = userClient.queryUserById(userId);
+        if (user == null) {
+            log.warn("用户{}不存在，无需修复问题快照", userId);
+            return;
+        }
+        int rows = getBaseMapper().updateUserSnapshot(userId, user.getName());
+        log.debug("修复用户{}的问题快照{}条", userId, rows);
+    }
+
     @Override
     public void updateQuestion(QuestionUpdateDTO questionUpdateDTO, Long id) {
         // 1. 根据ID从数据库查询原始数据
@@ -87,6 +186,7 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
         question.setTitle(questionUpdateDTO.getTitle());
         question.setDescription(questionUpdateDTO.getDescription());
         question.setAnonymity(questionUpdateDTO.getAnonymity());
+        moderate(question);
 
         // 4. 执行更新
         boolean success = this.updateById(question);
@@ -96,6 +196,7 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
     }
 
     @Override
+    @ReadOnlyRoute
     public PageDTO<QuestionVO> queryQuestionByPage(QuestionPageQuery query) {
         Long courseId = query.getCourseId();
         Long sectionId = query.getSectionId();
@@ -228,25 +329,28 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
         }
         // 4.如果是则删除问题
         removeById(id);
-        // 5.然后删除问题下的回答及评论
+        // 5.然后删除问题下的回答及评论，提交后删除回答的热度排序
         replyMapper.delete(new LambdaQueryWrapper<InteractionReply>().eq(InteractionReply::getQuestionId, id));
+        TransactionUtils.afterCommit(() -> replyHotRanking.removeQuestion(id));
     }
 
     @Override
+    @ReadOnlyRoute
     public PageDTO<QuestionAdminVO> queryQuestionPageAdmin(QuestionAdminPageQuery query) {
-        //根据课程名称查询课程id
-        List<Long> courseIds=null;
-        if (StringUtils.isNotBlank(query.getCourseName())){
+        // 1.根据课程名称查询课程id，按course_id过滤
+        List<Long> courseIds = null;
+        if (StringUtils.isNotBlank(query.getCourseName())) {
             courseIds = searchClient.queryCoursesIdByName(query.getCourseName());
-            if (CollUtils.isEmpty(courseIds)){
-                return null;
+            if (CollUtils.isEmpty(courseIds)) {
+                return PageDTO.empty(0L, 0L);
             }
         }
-        //分页查询
+        // 2.分页查询，课程名称、章节名称、用户名称等都来自问题表的快照，不需要远程调用
         Integer status = query.getStatus();
         LocalDateTime beginTime = query.getBeginTime();
         LocalDateTime endTime = query.getEndTime();
-        Page<InteractionQuestion> page = lambdaQuery().in(courseIds != null, InteractionQuestion::getCourseId, courseIds)
+        Page<InteractionQuestion> page = lambdaQuery()
+                .in(courseIds != null, InteractionQuestion::getCourseId, courseIds)
                 .eq(status != null, InteractionQuestion::getStatus, status)
                 .gt(beginTime != null, InteractionQuestion::getCreateTime, beginTime)
                 .lt(endTime != null, InteractionQuestion::getCreateTime, endTime)
@@ -255,58 +359,7 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
         if (CollUtils.isEmpty(records)){
             return PageDTO.empty(page);
         }
-
-        //为什么用Set来存储呢:去重
-        Set<Long> userIds = new HashSet<>();
-        Set<Long> cIds = new HashSet<>();
-        Set<Long> chapterIds = new HashSet<>();
-        //获取各种id的集合
-        for (InteractionQuestion r : records){
-            userIds.add(r.getUserId());
-            cIds.add(r.getCourseId());
-            chapterIds.add(r.getChapterId());
-            chapterIds.add(r.getSectionId());
-        }
-
-        List<UserDTO> users = userClient.queryUserByIds(userIds);
-        Map<Long, UserDTO> userMap=new HashMap<>(users.size()); //使用Map可以在随后瞬时查找
-        if (CollUtils.isNotEmpty(users)){
-            userMap = users.stream().collect(Collectors.toMap(UserDTO::getId, u -> u));
-        }
-
-        List<CourseSimpleInfoDTO> courses = courseClient.getSimpleInfoList(cIds);
-        Map<Long, CourseSimpleInfoDTO> courseMap=new HashMap<>(courses.size());
-        if (CollUtils.isNotEmpty(courses)){
-            courseMap = courses.stream().collect(Collectors.toMap(CourseSimpleInfoDTO::getId, c -> c));
-        }
-
-        List<CataSimpleInfoDTO> catas = catalogueClient.batchQueryCatalogue(chapterIds);
-        Map<Long, String> cataMap=new HashMap<>(catas.size());
-        if (CollUtils.isNotEmpty(catas)){
-            cataMap = catas.stream().collect(Collectors.toMap(CataSimpleInfoDTO::getId,CataSimpleInfoDTO::getName ));
-
-        }
-
-        List<QuestionAdminVO> voList=new ArrayList<>(records.size());
-        for (InteractionQuestion r : records){
-            QuestionAdminVO vo = BeanUtils.copyBean(r, QuestionAdminVO.class);
-            voList.add(vo);
-
-            UserDTO user = userMap.get(r.getUserId());
-            if (user != null) {
-                vo.setUserName(user.getName());
-            }
-
-            CourseSimpleInfoDTO course = courseMap.get(r.getCourseId());
-            if (course != null) {
-                vo.setCourseName(course.getName());//理解下面这个
-                vo.setCategoryName(categoryCache.getCategoryNames(course.getCategoryIds()));
-
-            }
-
-            vo.setChapterName(cataMap.getOrDefault(r.getChapterId(), ""));
-            vo.setChapterName(cataMap.getOrDefault(r.getSectionId(), ""));
-        }
-        return PageDTO.of(page, voList);
+        // 3.封装VO
+        return PageDTO.of(page, BeanUtils.copyList(records, QuestionAdminVO.class));
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.tianji.learning.service.impl;
 
+import com.baomidou.mybatisplus.core.metadata.OrderItem;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.api.client.remark.RemarkClient;
@@ -9,7 +10,10 @@ import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.StringUtils;
+import com.tianji.common.utils.TransactionUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.learning.cache.ReplyHotRanking;
 import com.tianji.learning.domain.dto.ReplyDTO;
 import com.tianji.learning.domain.po.InteractionQuestion;
 import com.tianji.learning.domain.po.InteractionReply;
@@ -17,12 +21,16 @@ import com.tianji.learning.domain.query.ReplyPageQuery;
 import com.tianji.learning.domain.vo.ReplyVO;
 import com.tianji.learning.enums.QuestionStatus;
 import com.tianji.learning.mapper.InteractionReplyMapper;
+import com.tianji.learning.moderation.ModerationResult;
+import com.tianji.learning.moderation.SensitiveWordFilter;
 import com.tianji.learning.service.IInteractionQuestionService;
 import com.tianji.learning.service.IInteractionReplyService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -41,6 +49,18 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
     private final IInteractionQuestionService questionService;
     private final UserClient userClient;
     private final RemarkClient remarkClient;
+    private final ReplyHotRanking replyHotRanking;
+    private final SensitiveWordFilter sensitiveWordFilter;
+
+    /**
+     * 热度排序只用于回答列表的前几页，更深的分页查询数据库
+     */
+    static final int HOT_PAGES = 5;
+
+    /**
+     * 问答在点赞服务中的业务类型
+     */
+    private static final String LIKED_BIZ_TYPE = "QA";
 
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -81,9 +101,17 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
         // 3. 构建回答对象
         InteractionReply reply = BeanUtils.copyBean(replyDTO, InteractionReply.class);
         reply.setUserId(userId);
+        moderate(reply);
+        reply.setAnswerId(0L);
+        reply.setLikedTimes(0);
+        // 创建时间精确到秒，与热度排序的分数一致
+        reply.setCreateTime(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
 
-        // 4. 保存回答
+        // 4. 保存回答，提交后加入热度排序，等待审核的回答不加入
         this.save(reply);
+        if (!Boolean.TRUE.equals(reply.getHidden())) {
+            TransactionUtils.afterCommit(() -> replyHotRanking.add(reply));
+        }
 
         // 5. 更新问题表
         InteractionQuestion question = new InteractionQuestion();
@@ -105,6 +133,41 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
         questionService.updateById(question);
     }
 
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void hiddenReply(Long id, Boolean hidden) {
+        // 1.查询回答或评论
+        InteractionReply reply = getById(id);
+        if (reply == null) {
+            throw new BadRequestException("回答或评论不存在");
+        }
+        // 2.更新隐藏状态
+        updateById(new InteractionReply().setId(id).setHidden(hidden));
+        // 3.提交后更新热度排序，隐藏的回答移除，重新显示的回答加入，评论不参与排序
+        if (!ReplyHotRanking.isAnswer(reply)) {
+            return;
+        }
+        if (Boolean.TRUE.equals(hidden)) {
+            TransactionUtils.afterCommit(() -> replyHotRanking.remove(reply));
+        } else {
+            TransactionUtils.afterCommit(() -> replyHotRanking.add(reply));
+        }
+    }
+
+    /**
+     * 检查内容中的敏感词：需要拒绝时抛出异常，需要审核时隐藏，需要替换时写入替换后的内容
+     */
+    private void moderate(InteractionReply reply) {
+        ModerationResult result = sensitiveWordFilter.check(reply.getContent());
+        if (result.isRejected()) {
+            throw new BadRequestException("内容包含敏感词，请修改后再提交");
+        }
+        reply.setContent(result.getText());
+        if (result.needsReview()) {
+            reply.setHidden(true);
+        }
+    }
+
     /**
      * 保存评论并更新回答表
      * @param replyDTO 评论DTO
@@ -120,6 +183,7 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
         // 2. 构建评论对象
         InteractionReply reply = BeanUtils.copyBean(replyDTO, InteractionReply.class);
         reply.setUserId(userId);
+        moderate(reply);
 
         // 3. 保存评论
         this.save(reply);
@@ -151,11 +215,17 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
 
         // 2. 分页查询回答或评论
         //目的：从 interaction_reply 表中获取原始的回复或评论数据。
-        Page<InteractionReply> page = lambdaQuery()
-                .eq(query.getQuestionId() != null, InteractionReply::getQuestionId, query.getQuestionId())
-                .eq(query.getAnswerId() != null, InteractionReply::getAnswerId, query.getAnswerId())
-                .eq(InteractionReply::getHidden, false) // 不查询被隐藏的
-                .page(query.toMpPageDefaultSortByCreateTimeDesc());
+        boolean hot = isHotQuery(query);
+        Page<InteractionReply> page = hot ? queryHotPage(query) : null;
+        if (page == null) {
+            page = lambdaQuery()
+                    .eq(query.getQuestionId() != null, InteractionReply::getQuestionId, query.getQuestionId())
+                    .eq(query.getAnswerId() != null, InteractionReply::getAnswerId, query.getAnswerId())
+                    .eq(hot, InteractionReply::getAnswerId, 0L)
+                    .eq(InteractionReply::getHidden, false) // 不查询被隐藏的
+                    .page(hot ? query.toMpPage(OrderItem.desc("liked_times"), OrderItem.desc("create_time"),
+                            OrderItem.desc("id")) : query.toMpPageDefaultSortByCreateTimeDesc());
+        }
 
         List<InteractionReply> records = page.getRecords();//从分页结果中获取查询到的数据列表
         if (CollUtils.isEmpty(records)) {
@@ -197,7 +267,7 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
                 .collect(Collectors.toSet());
         // 5.2 批量查询当前用户点赞过的回答ID
         if (CollUtils.isNotEmpty(replyIds)) {
-            bizLikedIds = remarkClient.isBizLiked(replyIds);
+            bizLikedIds = remarkClient.isBizLiked(LIKED_BIZ_TYPE, replyIds);
         }
 
         // 6. 封装VO
@@ -232,4 +302,52 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
 
         return PageDTO.of(page, voList);
     }
+
+    /**
+     * 问题下的回答列表，未指定排序字段时按热度排序
+     */
+    private boolean isHotQuery(ReplyPageQuery query) {
+        return query.getQuestionId() != null && query.getAnswerId() == null && StringUtils.isBlank(query.getSortBy());
+    }
+
+    /**
+     * 从热度排序中读取前几页回答，再批量查询回答数据
+     * @return 分页结果，超出热度排序的页数时返回null，由调用方查询数据库
+     */
+    private Page<InteractionReply> queryHotPage(ReplyPageQuery query) {
+        if (query.getPageNo() > HOT_PAGES) {
+            return null;
+        }
+        // 1.读取热度排序，未加载时从数据库加载
+        Long questionId = query.getQuestionId();
+        ReplyHotRanking.HotPage hotPage = replyHotRanking.page(questionId, query.from(), query.getPageSize());
+        if (hotPage == null) {
+            List<InteractionReply> answers = getBaseMapper().queryHotScores(questionId);
+            if (CollUtils.isEmpty(answers)) {
+                return new Page<>(query.getPageNo(), query.getPageSize(), 0);
+            }
+            replyHotRanking.load(questionId, answers);
+            hotPage = replyHotRanking.page(questionId, query.from(), query.getPageSize());
+            if (hotPage == null) {
+                return null;
+            }
+        }
+        // 2.批量查询回答，按热度排序的顺序返回
+        Page<InteractionReply> page = new Page<>(query.getPageNo(), query.getPageSize(), hotPage.getTotal());
+        List<Long> ids = hotPage.getIds();
+        if (CollUtils.isEmpty(ids)) {
+            return page;
+        }
+        Map<Long, InteractionReply> replyMap = listByIds(ids).stream()
+                .collect(Collectors.toMap(InteractionReply::getId, r -> r));
+        List<InteractionReply> records = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            InteractionReply reply = replyMap.get(id);
+            if (reply != null && !reply.getHidden()) {
+                records.add(reply);
+            }
+        }
+        page.setRecords(records);
+        return page;
+    }
 }
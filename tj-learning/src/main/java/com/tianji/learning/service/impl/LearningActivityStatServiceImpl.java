@@ -0,0 +1,105 @@
+package com.tianji.learning.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.tianji.common.exceptions.BadRequestException;
+import com.tianji.learning.cache.LearningActivityCounter;
+import com.tianji.learning.domain.po.LearningActivityStat;
+import com.tianji.learning.domain.po.UserStudyStat;
+import com.tianji.learning.domain.vo.ActivityStatVO;
+import com.tianji.learning.mapper.LearningActivityStatMapper;
+import com.tianji.learning.mapper.UserStudyStatMapper;
+import com.tianji.learning.service.ILearningActivityStatService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * <p>
+ * 学习活跃度统计 服务实现类
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+public class LearningActivityStatServiceImpl extends ServiceImpl<LearningActivityStatMapper, LearningActivityStat>
+        implements ILearningActivityStatService {
+
+    /**
+     * 一次最多查询的天数
+     */
+    static final int MAX_DAYS = 92;
+
+    private final UserStudyStatMapper userStudyStatMapper;
+
+    private final LearningActivityCounter activityCounter;
+
+    @Override
+    public List<ActivityStatVO> queryActivityStats(Long courseId, LocalDate begin, LocalDate end) {
+        checkRange(begin, end);
+        long cid = courseId == null ? LearningActivityCounter.PLATFORM : courseId;
+        LocalDate today = LocalDate.now();
+        // 1.查询汇总表中今天之前的数据
+        Map<LocalDate, ActivityStatVO> stats = new TreeMap<>();
+        List<LearningActivityStat> list = list(new QueryWrapper<LearningActivityStat>()
+                .eq("course_id", cid)
+                .between("stat_date", begin, end)
+                .lt("stat_date", today));
+        for (LearningActivityStat stat : list) {
+            ActivityStatVO vo = new ActivityStatVO();
+            vo.setDate(stat.getStatDate());
+            vo.setActiveUsers(stat.getActiveUsers());
+            vo.setWeekActiveUsers(stat.getWeekActiveUsers());
+            vo.setStudySeconds(stat.getStudySeconds());
+            stats.put(vo.getDate(), vo);
+        }
+        // 2.包含今天时，实时读取Redis
+        if (!today.isBefore(begin) && !today.isAfter(end)) {
+            long[] counts = activityCounter.countActiveUsers(today, List.of(cid)).get(cid);
+            if (counts[0] > 0) {
+                Map<Long, Long> courseSeconds = activityCounter.courseSeconds(today);
+                ActivityStatVO vo = new ActivityStatVO();
+                vo.setDate(today);
+                vo.setActiveUsers(counts[0]);
+                vo.setWeekActiveUsers(counts[1]);
+                vo.setStudySeconds(cid == LearningActivityCounter.PLATFORM
+                        ? courseSeconds.values().stream().mapToLong(Long::longValue).sum()
+                        : courseSeconds.getOrDefault(cid, 0L));
+                stats.put(today, vo);
+            }
+        }
+        return new ArrayList<>(stats.values());
+    }
+
+    @Override
+    public Map<LocalDate, Long> queryUserStudySeconds(Long userId, LocalDate begin, LocalDate end) {
+        checkRange(begin, end);
+        LocalDate today = LocalDate.now();
+        Map<LocalDate, Long> seconds = new TreeMap<>();
+        List<UserStudyStat> list = userStudyStatMapper.selectList(new QueryWrapper<UserStudyStat>()
+                .eq("user_id", userId)
+                .between("stat_date", begin, end)
+                .lt("stat_date", today));
+        for (UserStudyStat stat : list) {
+            seconds.put(stat.getStatDate(), stat.getStudySeconds());
+        }
+        if (!today.isBefore(begin) && !today.isAfter(end)) {
+            long todaySeconds = activityCounter.userSeconds(userId, today);
+            if (todaySeconds > 0) {
+                seconds.put(today, todaySeconds);
+            }
+        }
+        return seconds;
+    }
+
+    private void checkRange(LocalDate begin, LocalDate end) {
+        if (begin == null || end == null || begin.isAfter(end)) {
+            throw new BadRequestException("查询日期范围有误");
+        }
+        if (ChronoUnit.DAYS.between(begin, end) >= MAX_DAYS) {
+            throw new BadRequestException("一次最多查询" + MAX_DAYS + "天");
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.tianji.learning.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.conditions.query.LambdaQueryChainWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -17,9 +18,11 @@ import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.DateUtils;
+import com.tianji.common.utils.TransactionUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.learning.cache.WeeklyStudyCounter;
+import com.tianji.learning.constans.RedisConstants;
 import com.tianji.learning.domain.po.LearningLesson;
-import com.tianji.learning.domain.po.LearningRecord;
 import com.tianji.learning.domain.vo.LearningLessonVO;
 import com.tianji.learning.domain.vo.LearningPlanPageVO;
 import com.tianji.learning.domain.vo.LearningPlanVO;
@@ -31,17 +34,20 @@ import com.tianji.learning.mapper.LearningRecordMapper;
 import com.tianji.learning.service.ILearningLessonService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
-import org.springframework.scheduling.annotation.Scheduled;
 
 /**
  * <p>
@@ -62,35 +68,53 @@ public class LearningLessonServiceImpl extends ServiceImpl<LearningLessonMapper,
 
     private final LearningRecordMapper recordMapper;
 
+    private final WeeklyStudyCounter weeklyStudyCounter;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private static final Duration LESSON_REFUND_TTL = Duration.ofDays(30);
+
+    private static final RedisScript<Long> REFUND_MARK_SCRIPT;
+
+    static {
+        REFUND_MARK_SCRIPT = RedisScript.of(new ClassPathResource("lua/lesson_refund_mark.lua"), Long.class);
+    }
+
 
     @Override
-    public void addUserLessons(Long userId, List<Long> courseIds) {
+    public void addUserLessons(Long userId, List<Long> courseIds, LocalDateTime payTime) {
         log.debug("开始处理报名，用户: {}, 课程Ids: {}", userId, courseIds);
-        // 查询课程信息
+        // 1.一次查询全部课程信息
         List<CourseSimpleInfoDTO> simpleInfoList = courseClient.getSimpleInfoList(courseIds);
-        log.debug("从课程服务查询到课程信息: {}", simpleInfoList);
-
-        if (simpleInfoList == null || simpleInfoList.isEmpty()) {
+        if (CollUtils.isEmpty(simpleInfoList)) {
             log.warn("课程信息查询为空，无法为用户添加课表。用户: {}, 课程Ids: {}", userId, courseIds);
             return;
         }
 
-        //封装po实体类，填充过期时间
-        List<LearningLesson> list=new ArrayList<>();
+        // 2.封装po实体类，过期时间从支付时间计算，重复消费时结果相同
+        LocalDateTime begin = payTime == null ? LocalDateTime.now() : payTime;
+        List<LearningLesson> list = new ArrayList<>(simpleInfoList.size());
+        Map<Long, Integer> sectionNums = new HashMap<>(simpleInfoList.size());
         for (CourseSimpleInfoDTO cinfo : simpleInfoList) {
             LearningLesson lesson = new LearningLesson();
+            lesson.setId(IdWorker.getId());
             lesson.setUserId(userId);
             lesson.setCourseId(cinfo.getId());
-            if(cinfo.getValidDuration()!= null){
-                LocalDateTime now = LocalDateTime.now();
-                lesson.setCreateTime(now);
-                lesson.setExpireTime(now.plusMonths(cinfo.getValidDuration()));
+            if (cinfo.getValidDuration() != null) {
+                lesson.setExpireTime(begin.plusMonths(cinfo.getValidDuration()));
             }
             list.add(lesson);
+            if (cinfo.getSectionNum() != null) {
+                sectionNums.put(cinfo.getId(), cinfo.getSectionNum());
+            }
+        }
+
+        // 3.一条SQL批量报名，已报名的课程不会重复插入
+        baseMapper.insertOrRenewBatch(list);
+        // 4.重新购买已过期的课程时，已学完全部小节的课表仍然是已学完
+        if (!sectionNums.isEmpty()) {
+            baseMapper.finishLearnedLessons(userId, sectionNums);
         }
-        log.debug("准备批量保存到数据库的课表数量: {}", list.size());
-        // 批量保存
-        saveBatch(list);
         log.info("成功为用户 {} 添加 {} 门课程到课表。", userId, list.size());
     }
 
@@ -167,26 +191,39 @@ public class LearningLessonServiceImpl extends ServiceImpl<LearningLessonMapper,
     //TODO 当用户退款时异步自动删除用户课程
     @Override
     public void deleteUserLessons(Long userId, List<Long> courseIds) {
-        // 1.根据用户id和课程id查询课程
-        List<LearningLesson> lessons = lambdaQuery()
-                .eq(LearningLesson::getUserId, userId)
-                .in(LearningLesson::getCourseId, courseIds)
-                .list();
-        if (CollUtils.isEmpty(lessons)) {
+        // 一条DELETE删除用户的课表
+        boolean removed = remove(new QueryWrapper<LearningLesson>()
+                .eq("user_id", userId)
+                .in("course_id", courseIds));
+        log.debug("删除用户{}的课程{}，结果: {}", userId, courseIds, removed);
+    }
+
+    @Override
+    public void refundUserLessons(Long orderId, Long userId, List<Long> courseIds) {
+        // 1.跳过订单已退款的课程，避免重复消费时删除用户重新购买的课程
+        String key = RedisConstants.LESSON_REFUND_KEY_PREFIX + orderId;
+        Set<String> refunded = redisTemplate.opsForSet().members(key);
+        List<Long> refundCourseIds = courseIds.stream()
+                .filter(id -> CollUtils.isEmpty(refunded) || !refunded.contains(id.toString()))
+                .collect(Collectors.toList());
+        if (refundCourseIds.isEmpty()) {
+            log.debug("订单{}的课程{}已经退款，无需重复处理", orderId, courseIds);
             return;
         }
-        log.debug("查询到用户{}的课程信息{}条", userId, lessons.size());
-
-        // 2.获取课表id
-        List<Long> lessonIds = lessons.stream().map(LearningLesson::getId).collect(Collectors.toList());
-
-
-        // 4.根据id删除课表
-        removeByIds(lessonIds);
-        log.debug("删除用户{}的课表{}条", userId, lessonIds.size());
+        // 2.删除课表，提交后再记录已退款的课程，删除失败或提交前进程退出时，重新投递后再次处理
+        deleteUserLessons(userId, refundCourseIds);
+        TransactionUtils.afterCommit(() -> redisTemplate.execute(REFUND_MARK_SCRIPT, List.of(key),
+                toArgs(LESSON_REFUND_TTL.getSeconds(), refundCourseIds)));
     }
 
-
+    private Object[] toArgs(long ttl, List<Long> courseIds) {
+        Object[] args = new Object[courseIds.size() + 1];
+        args[0] = String.valueOf(ttl);
+        for (int i = 0; i < courseIds.size(); i++) {
+            args[i + 1] = courseIds.get(i).toString();
+        }
+        return args;
+    }
 
     @Override
     public void deleteMyLesson(Long courseId) {
@@ -276,27 +313,6 @@ public class LearningLessonServiceImpl extends ServiceImpl<LearningLessonMapper,
     }
 
 
-    /**
-     * 定时任务，检查课表状态
-     */
-    @Scheduled(cron = "0 0 12-18 * * ?")
-    public void checkLessonStatus(){
-        // 1.查询所有已过期但状态未更新的课程
-        List<LearningLesson> lessons = lambdaQuery()
-                .lt(LearningLesson::getExpireTime, LocalDateTime.now())
-                .ne(LearningLesson::getStatus, LessonStatus.EXPIRED)
-                .list();
-        if (CollUtils.isEmpty(lessons)) {
-            return;
-        }
-        // 2.更新状态
-        for (LearningLesson lesson : lessons) {
-            lesson.setStatus(LessonStatus.EXPIRED);
-        }
-        // 3.批量更新
-        updateBatchById(lessons);
-    }
-
     private Map<Long, CourseSimpleInfoDTO> queryCourseSimpleInfoList(List<LearningLesson> records) {
         // 3.1.获取课程id
         Set<Long> cIds = records.stream().map(LearningLesson::getCourseId).collect(Collectors.toSet());
@@ -325,16 +341,14 @@ public class LearningLessonServiceImpl extends ServiceImpl<LearningLessonMapper,
         // 获取本周起始时间
         LocalDate now = LocalDate.now();
         LocalDateTime begin = DateUtils.getWeekBeginTime(now);
-        LocalDateTime end = DateUtils.getWeekEndTime(now);
 
-        // 查询本周总的已学习小节数量
-        Integer weekFinished = recordMapper.selectCount(new LambdaQueryWrapper<LearningRecord>()
-                .eq(LearningRecord::getUserId, userId)
-                .eq(LearningRecord::getFinished, true)
-                .gt(LearningRecord::getCreateTime, begin)
-                .lt(LearningRecord::getCreateTime, end)
-        );
-        pageVO.setWeekFinished(weekFinished);
+        // 查询本周已学习小节数量，优先读取Redis中的计数，未命中时从数据库统计并写入Redis
+        WeeklyStudyCounter.WeekCounts weekCounts = weeklyStudyCounter.get(userId, now);
+        if (weekCounts == null) {
+            weekCounts = weeklyStudyCounter.init(userId, now,
+                    recordMapper.queryFinishedSections(userId, begin, begin.plusWeeks(1)));
+        }
+        pageVO.setWeekFinished(weekCounts.getTotal());
 
         // 查询本周总的计划学习数量
         // 1. 构建查询条件，查询出所有运行中的学习计划
@@ -371,6 +385,7 @@ public class LearningLessonServiceImpl extends ServiceImpl<LearningLessonMapper,
         List<LearningPlanVO> voList = new ArrayList<>();
         for (LearningLesson r : records) {
             LearningPlanVO vo = BeanUtils.copyBean(r, LearningPlanVO.class);
+            vo.setWeekLearnedSections(weekCounts.getLessonFinished(r.getId()));
             CourseSimpleInfoDTO cInfo = courseMap.get(r.getCourseId());
             if (cInfo != null) {
                 vo.setCourseName(cInfo.getName());
@@ -1,16 +1,24 @@
 package com.tianji.learning.service.impl;
 
-import com.tianji.api.client.course.CourseClient;
-import com.tianji.api.dto.course.CourseFullInfoDTO;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.tianji.api.dto.leanring.LearningLessonDTO;
 import com.tianji.api.dto.leanring.LearningRecordDTO;
 import com.tianji.common.exceptions.BizIllegalException;
 import com.tianji.common.exceptions.DbException;
 import com.tianji.common.utils.BeanUtils;
+import com.tianji.common.utils.TransactionUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.learning.cache.CourseStructureCache;
+import com.tianji.learning.cache.LearningActivityCounter;
+import com.tianji.learning.cache.WeeklyStudyCounter;
+import com.tianji.learning.domain.dto.LearningRecordBatchDTO;
 import com.tianji.learning.domain.dto.LearningRecordFormDTO;
+import com.tianji.learning.domain.dto.LearningRecordReportDTO;
 import com.tianji.learning.domain.po.LearningLesson;
 import com.tianji.learning.domain.po.LearningRecord;
+import com.tianji.learning.domain.vo.LearningRecordBatchVO;
 import com.tianji.learning.enums.LessonStatus;
 import com.tianji.learning.enums.SectionType;
 import com.tianji.learning.mapper.LearningRecordMapper;
@@ -22,9 +30,11 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -38,12 +48,22 @@ import java.util.List;
 @RequiredArgsConstructor
 public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper, LearningRecord> implements ILearningRecordService {
 
+    /**
+     * 客户端与服务端允许的时钟偏差，上报时间晚于当前时间超过这个范围的，按当前时间处理，
+     * 避免一次错误的未来时间让之后正常的上报都被当作乱序拒绝
+     */
+    static final Duration MAX_CLOCK_SKEW = Duration.ofMinutes(1);
+
     private final ILearningLessonService lessonService;
 
-    private final CourseClient courseClient;
+    private final CourseStructureCache courseStructureCache;
 
     private final LearningRecordDelayTaskHandler delayTaskHandler;
 
+    private final WeeklyStudyCounter weeklyStudyCounter;
+
+    private final LearningActivityCounter activityCounter;
+
     @Override
     public LearningLessonDTO queryLearningRecordByCourse(Long courseId) {
         Long userId = UserContext.getUser();
@@ -71,6 +91,9 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
     @Override
     public void addLearningRecord(LearningRecordFormDTO learningRecordFormDTO) {
         Long userId = UserContext.getUser();
+        if (learningRecordFormDTO.getCommitTime() != null) {
+            learningRecordFormDTO.setCommitTime(limitCommitTime(learningRecordFormDTO.getCommitTime(), LocalDateTime.now()));
+        }
 
         boolean finished = false;//是否完成学习
         //判断是否完成学习
@@ -90,6 +113,179 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
         // 3.处理课表数据
         handleLearningLessonsChanges(learningRecordFormDTO, finished);
 
+        // 4.事务提交后累加本周学习计数
+        Long lessonId = learningRecordFormDTO.getLessonId();
+        Long sectionId = learningRecordFormDTO.getSectionId();
+        LocalDateTime finishTime = finishTimeOf(learningRecordFormDTO);
+        TransactionUtils.afterCommit(() -> weeklyStudyCounter.incrementFinished(userId, lessonId, sectionId, finishTime));
+    }
+
+    @Transactional
+    @Override
+    public LearningRecordBatchVO addLearningRecords(LearningRecordBatchDTO batch) {
+        Long userId = UserContext.getUser();
+        LearningRecordBatchVO vo = new LearningRecordBatchVO();
+        // 1.同一小节只保留上报时间最新的一条，时间相同时保留后上报的
+        Map<String, LearningRecordReportDTO> latest = new LinkedHashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (LearningRecordReportDTO report : batch.getReports()) {
+            report.setCommitTime(limitCommitTime(report.getCommitTime(), now));
+            String key = LearningRecordDelayTaskHandler.flushMember(report.getLessonId(), report.getSectionId());
+            LearningRecordReportDTO old = latest.get(key);
+            if (old != null && report.getCommitTime().isBefore(old.getCommitTime())) {
+                // 比同一批中已有的上报更早，是乱序的上报
+                vo.setRejected(vo.getRejected() + 1);
+                continue;
+            }
+            if (old != null) {
+                vo.setMerged(vo.getMerged() + 1);
+            }
+            latest.put(key, report);
+        }
+        // 2.只处理当前用户的课表
+        Set<Long> lessonIds = latest.values().stream()
+                .map(LearningRecordReportDTO::getLessonId).collect(Collectors.toSet());
+        Map<Long, LearningLesson> lessons = lessonService.listByIds(lessonIds).stream()
+                .filter(l -> userId.equals(l.getUserId()))
+                .collect(Collectors.toMap(LearningLesson::getId, l -> l));
+        latest.values().removeIf(r -> {
+            boolean invalid = !lessons.containsKey(r.getLessonId());
+            if (invalid) {
+                vo.setRejected(vo.getRejected() + 1);
+            }
+            return invalid;
+        });
+        if (latest.isEmpty()) {
+            return vo;
+        }
+        // 3.查询旧的学习记录：一次管道读取缓存，未命中的一次查询数据库
+        Map<String, LearningRecord> olds = queryOldRecords(latest.values());
+        // 4.逐个小节判断：新建、首次学完、只更新进度
+        List<LearningRecord> inserted = new ArrayList<>();
+        List<LearningRecord> updated = new ArrayList<>();
+        List<LearningRecord> delayed = new ArrayList<>();
+        List<LearningRecord> finished = new ArrayList<>();
+        Map<Long, Integer> courseSeconds = new HashMap<>();
+        for (Map.Entry<String, LearningRecordReportDTO> entry : latest.entrySet()) {
+            LearningRecordReportDTO report = entry.getValue();
+            LearningRecord old = olds.get(entry.getKey());
+            if (old != null && old.getCommitTime() != null && !report.getCommitTime().isAfter(old.getCommitTime())) {
+                // 4.1.不晚于已记录的进度，是乱序或重复的上报
+                vo.setRejected(vo.getRejected() + 1);
+                continue;
+            }
+            vo.setAccepted(vo.getAccepted() + 1);
+            courseSeconds.merge(lessons.get(report.getLessonId()).getCourseId(),
+                    LearningActivityCounter.studySeconds(old == null ? null : old.getMoment(), report.getMoment()),
+                    Integer::sum);
+            boolean overHalf = report.getMoment() * 2 >= report.getDuration();
+            LearningRecord record = new LearningRecord();
+            record.setLessonId(report.getLessonId());
+            record.setSectionId(report.getSectionId());
+            record.setMoment(report.getMoment());
+            record.setCommitTime(report.getCommitTime());
+            if (old == null) {
+                // 4.2.第一次上报，补报的进度可能已经超过一半
+                record.setId(IdWorker.getId());
+                record.setUserId(userId);
+                record.setFinished(overHalf);
+                record.setFinishTime(overHalf ? report.getCommitTime() : null);
+                inserted.add(record);
+                if (overHalf) {
+                    finished.add(record);
+                }
+                continue;
+            }
+            record.setId(old.getId());
+            if (!old.getFinished() && overHalf) {
+                // 4.3.第一次学完，直接更新数据库
+                record.setFinished(true);
+                record.setFinishTime(report.getCommitTime());
+                updated.add(record);
+                finished.add(record);
+            } else {
+                // 4.4.只更新进度，延迟写入数据库
+                record.setFinished(old.getFinished());
+                delayed.add(record);
+            }
+        }
+        vo.setFinished(finished.size());
+        // 5.一条多行INSERT写入新记录，一条UPDATE写入新学完的记录
+        getBaseMapper().insertAll(inserted);
+        getBaseMapper().updateAllByCase(updated);
+        // 6.更新课表的已学小节数量和状态
+        if (!finished.isEmpty()) {
+            updateLessonsFinished(userId, lessons, finished);
+        }
+        // 7.事务提交后，一次管道写入缓存和延迟任务
+        List<LearningRecord> cached = inserted.stream()
+                .filter(r -> !r.getFinished()).collect(Collectors.toList());
+        TransactionUtils.afterCommit(() -> delayTaskHandler.writeRecordChanges(cached, delayed, finished));
+        // 8.事务提交后累加学习活跃度
+        if (!courseSeconds.isEmpty()) {
+            TransactionUtils.afterCommit(() -> activityCounter.record(userId, courseSeconds, LocalDate.now()));
+        }
+        return vo;
+    }
+
+    private Map<String, LearningRecord> queryOldRecords(Collection<LearningRecordReportDTO> reports) {
+        List<LearningRecord> keys = new ArrayList<>(reports.size());
+        for (LearningRecordReportDTO report : reports) {
+            LearningRecord key = new LearningRecord();
+            key.setLessonId(report.getLessonId());
+            key.setSectionId(report.getSectionId());
+            keys.add(key);
+        }
+        Map<String, LearningRecord> olds = new HashMap<>(delayTaskHandler.readRecordCaches(keys));
+        List<LearningRecord> misses = keys.stream()
+                .filter(k -> !olds.containsKey(LearningRecordDelayTaskHandler.flushMember(k.getLessonId(), k.getSectionId())))
+                .collect(Collectors.toList());
+        if (misses.isEmpty()) {
+            return olds;
+        }
+        // 未命中的记录按课表和小节一次查询，多查出的记录在内存中过滤
+        List<LearningRecord> records = list(new QueryWrapper<LearningRecord>()
+                .in("lesson_id", misses.stream().map(LearningRecord::getLessonId).collect(Collectors.toSet()))
+                .in("section_id", misses.stream().map(LearningRecord::getSectionId).collect(Collectors.toSet())));
+        for (LearningRecord record : records) {
+            olds.putIfAbsent(LearningRecordDelayTaskHandler.flushMember(record.getLessonId(), record.getSectionId()), record);
+        }
+        return olds;
+    }
+
+    private void updateLessonsFinished(Long userId, Map<Long, LearningLesson> lessons, List<LearningRecord> finished) {
+        Map<Long, List<LearningRecord>> finishedOfLesson = finished.stream()
+                .collect(Collectors.groupingBy(LearningRecord::getLessonId));
+        for (Map.Entry<Long, List<LearningRecord>> entry : finishedOfLesson.entrySet()) {
+            LearningLesson lesson = lessons.get(entry.getKey());
+            int num = entry.getValue().size();
+            Integer sectionNum = courseStructureCache.getSectionNum(lesson.getCourseId());
+            if (sectionNum == null) {
+                throw new BizIllegalException("课程不存在，无法更新数据！");
+            }
+            boolean allLearned = lesson.getLearnedSections() + num >= sectionNum;
+            lessonService.update(new UpdateWrapper<LearningLesson>()
+                    .set(lesson.getLearnedSections() == 0 && !allLearned, "status", LessonStatus.LEARNING.getValue())
+                    .set(allLearned, "status", LessonStatus.FINISHED.getValue())
+                    .setSql("learned_sections = learned_sections + " + num)
+                    .eq("id", lesson.getId()));
+            // 事务提交后累加本周学习计数
+            for (LearningRecord record : entry.getValue()) {
+                TransactionUtils.afterCommit(() -> weeklyStudyCounter.incrementFinished(
+                        userId, lesson.getId(), record.getSectionId(), record.getFinishTime()));
+            }
+        }
+    }
+
+    /**
+     * 超出允许时钟偏差的未来时间按当前时间处理
+     */
+    static LocalDateTime limitCommitTime(LocalDateTime commitTime, LocalDateTime now) {
+        return commitTime.isAfter(now.plus(MAX_CLOCK_SKEW)) ? now : commitTime;
+    }
+
+    private LocalDateTime finishTimeOf(LearningRecordFormDTO learningRecordFormDTO) {
+        return learningRecordFormDTO.getCommitTime() == null ? LocalDateTime.now() : learningRecordFormDTO.getCommitTime();
     }
 
     private void handleLearningLessonsChanges(LearningRecordFormDTO learningRecordFormDTO, boolean finished) {
@@ -99,13 +295,13 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
         }
         boolean allLearned = false;
         if(finished){
-            // 3.如果有新完成的小节，则需要查询课程数据
-            CourseFullInfoDTO cInfo = courseClient.getCourseInfoById(lesson.getCourseId(), false, false);
-            if (cInfo == null) {
+            // 3.如果有新完成的小节，则需要查询课程数据，优先读取本地缓存
+            Integer sectionNum = courseStructureCache.getSectionNum(lesson.getCourseId());
+            if (sectionNum == null) {
                 throw new BizIllegalException("课程不存在，无法更新数据！");
             }
             // 4.比较课程是否全部学完：已学习小节 >= 课程总小节
-            allLearned = lesson.getLearnedSections() + 1 >= cInfo.getSectionNum();
+            allLearned = lesson.getLearnedSections() + 1 >= sectionNum;
         }
         //更新课表数据
         lessonService.lambdaUpdate()
@@ -125,10 +321,15 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
         LearningRecord learningRecord = BeanUtils.copyBean(learningRecordFormDTO, LearningRecord.class);
         learningRecord.setUserId(userId);
         learningRecord.setCreateTime(LocalDateTime.now());
+        // 考试提交即学完
+        learningRecord.setFinished(true);
+        learningRecord.setFinishTime(finishTimeOf(learningRecordFormDTO));
         boolean success = save(learningRecord);
         if (!success){
             throw new DbException("新增学习记录失败！");
         }
+        // 事务提交后累加学习活跃度，考试不计入学习时长
+        TransactionUtils.afterCommit(() -> activityCounter.recordLessonStudy(userId, learningRecordFormDTO.getLessonId(), 0, LocalDate.now()));
         return true;
 
     }
@@ -137,6 +338,9 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
 
         // 1.查询旧的学习记录
         LearningRecord old = queryOldRecord(learningRecordFormDTO.getLessonId(), learningRecordFormDTO.getSectionId());
+        // 事务提交后累加学习活跃度
+        int seconds = LearningActivityCounter.studySeconds(old == null ? null : old.getMoment(), learningRecordFormDTO.getMoment());
+        TransactionUtils.afterCommit(() -> activityCounter.recordLessonStudy(userId, learningRecordFormDTO.getLessonId(), seconds, LocalDate.now()));
 
         //如果没有记录，就新建记录，否则更新记录
         if (old == null) {
@@ -159,6 +363,8 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
             record1.setMoment(learningRecordFormDTO.getMoment());
             record1.setId(old.getId());
             record1.setFinished(old.getFinished());
+            // 记录上报时间，批量上报时据此拒绝乱序的进度
+            record1.setCommitTime(learningRecordFormDTO.getCommitTime());
             delayTaskHandler.addLearningRecordTask(record1);
             return false;
         }
@@ -167,14 +373,17 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
                 .set(LearningRecord::getMoment, learningRecordFormDTO.getMoment())
                 .set(finished, LearningRecord::getFinished, true)//finished为true就把getFinished设置为true否则跳过
                 .set(finished, LearningRecord::getUpdateTime, learningRecordFormDTO.getCommitTime())
+                .set(finished, LearningRecord::getCommitTime, learningRecordFormDTO.getCommitTime())
+                .set(finished, LearningRecord::getFinishTime, finishTimeOf(learningRecordFormDTO))
                 .eq(LearningRecord::getId, old.getId())
                 .update();
 
         if (!update){
             throw new DbException("更新学习记录失败！");
         }
-        // 4.3.清理缓存
-        delayTaskHandler.cleanRecordCache(learningRecordFormDTO.getLessonId(),learningRecordFormDTO.getSectionId());
+        // 4.3.事务提交后清理缓存
+        TransactionUtils.afterCommit(() -> delayTaskHandler.cleanRecordCache(
+                learningRecordFormDTO.getLessonId(), learningRecordFormDTO.getSectionId()));
         return true;
 
     }
@@ -1,11 +1,14 @@
 package com.tianji.learning.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.tianji.api.client.user.UserClient;
 import com.tianji.api.dto.user.UserDTO;
+import com.tianji.common.exceptions.DbException;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.DateUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.learning.config.PointsBoardProperties;
 import com.tianji.learning.constans.RedisConstants;
 import com.tianji.learning.domain.po.PointsBoard;
 import com.tianji.learning.domain.query.PointsBoardQuery;
@@ -13,6 +16,8 @@ import com.tianji.learning.domain.vo.PointsBoardItemVO;
 import com.tianji.learning.domain.vo.PointsBoardVO;
 import com.tianji.learning.mapper.PointsBoardMapper;
 import com.tianji.learning.service.IPointsBoardService;
+import com.tianji.learning.utils.PointsBoardSnapshot;
+import com.tianji.learning.utils.SeasonTableRegistry;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -21,8 +26,13 @@ import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 /**
@@ -39,10 +49,18 @@ import java.util.stream.Collectors;
 public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, PointsBoard> implements IPointsBoardService {
 
     private static final String POINTS_BOARD_TABLE_PREFIX = "points_board_";
+    private static final Duration PERSIST_CHECKPOINT_TTL = Duration.ofDays(7);
+
     private final StringRedisTemplate redisTemplate;
 
     private final UserClient userClient;
 
+    private final SeasonTableRegistry seasonTableRegistry;
+
+    private final PointsBoardProperties pointsBoardProperties;
+
+    private final PointsBoardSnapshot pointsBoardSnapshot;
+
     @Override
     public PointsBoardVO queryPointsBoardBySeason(PointsBoardQuery query) {
         // 1. 判断查询当前赛季还是历史赛季（season为null或0表示当前赛季）
@@ -68,10 +86,66 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
             vo.setPoints(board.getPoints());
         }
 
-        //4.2查询用户名称
-        //4.1.1提取所有用户id
+        //4.2封装榜单列表
+        vo.setBoardList(toItemVOs(list));
+        return vo;
+    }
+
+    @Override
+    public PointsBoardVO queryMyNeighbors(Integer k) {
+        // 1.校验参数
+        int max = pointsBoardProperties.getMaxNeighbors();
+        int size = k == null ? 0 : Math.max(0, Math.min(k, max));
+        PointsBoardVO vo = new PointsBoardVO();
+        vo.setBoardList(CollUtils.emptyList());
+
+        // 2.查询我的排名（从0开始）
+        String key = RedisConstants.POINTS_BOARD_KEY_PREFIX
+                + LocalDateTime.now().format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
+        String userId = UserContext.getUser().toString();
+        Long index = redisTemplate.opsForZSet().reverseRank(key, userId);
+        if (index == null) {
+            // 不在榜单中
+            return vo;
+        }
+
+        // 3.一次查询前后各k名，名次根据起始位置计算，与我的排名一致
+        long start = Math.max(0, index - size);
+        Set<ZSetOperations.TypedTuple<String>> tuples =
+                redisTemplate.opsForZSet().reverseRangeWithScores(key, start, index + size);
+        if (CollUtils.isEmpty(tuples)) {
+            return vo;
+        }
+        List<PointsBoard> list = new ArrayList<>(tuples.size());
+        int rank = (int) start;
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            rank++;
+            if (tuple.getValue() == null || tuple.getScore() == null) {
+                continue;
+            }
+            PointsBoard board = new PointsBoard();
+            board.setUserId(Long.valueOf(tuple.getValue()));
+            board.setPoints(tuple.getScore().intValue());
+            board.setRank(rank);
+            list.add(board);
+            if (tuple.getValue().equals(userId)) {
+                vo.setRank(rank);
+                vo.setPoints(board.getPoints());
+            }
+        }
+
+        // 4.封装榜单列表
+        vo.setBoardList(toItemVOs(list));
+        return vo;
+    }
+
+    /**
+     * 查询用户名称，转换为榜单VO
+     */
+    private List<PointsBoardItemVO> toItemVOs(List<PointsBoard> list) {
+        //1.1提取所有用户id
         Set<Long> userIds = list.stream().map(PointsBoard::getUserId).collect(Collectors.toSet());
-       //4.1.2 批量查询用户信息并转为Map
+        //1.2 批量查询用户信息并转为Map
         Map<Long, UserDTO> userMap=new HashMap<>();
         if (CollUtils.isNotEmpty(userIds)){
             List<UserDTO> users = userClient.queryUserByIds(userIds);
@@ -79,8 +153,8 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
         }
         Map<Long, UserDTO> finalUserMap = userMap; // 用于lambda中使用
 
-        //4.1.3封装BoardList数据
-        vo.setBoardList(list.stream().map(b -> {
+        //2.封装BoardList数据
+        return list.stream().map(b -> {
             PointsBoardItemVO item = new PointsBoardItemVO();
             item.setPoints(b.getPoints());
             item.setRank(b.getRank());
@@ -89,8 +163,7 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
                 item.setName(userDTO.getName());
             }
             return item;
-        }).collect(Collectors.toList()));
-        return vo;
+        }).collect(Collectors.toList());
     }
 
     /**
@@ -135,7 +208,7 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
         validateTableName(tableName, season.intValue());
 
         // 3. 检查表是否存在
-        if (!checkTableExists(tableName)) {
+        if (!seasonTableRegistry.exists(season.intValue())) {
             log.warn("历史榜单表不存在，表名: {}，赛季ID: {}。请先执行定时任务创建表并持久化数据。", tableName, season);
             return null;
         }
@@ -160,16 +233,22 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
         int start = (pageNo - 1) * pageSize;
         int end = start + pageSize - 1;
 
-        // 3. 从Redis ZSet按score降序分页查询（reverseRangeWithScores：降序+score）
+        // 3. 优先从本地快照读取榜单头部
+        List<PointsBoard> cached = pointsBoardSnapshot.range(key, start, end);
+        if (cached != null) {
+            return cached;
+        }
+
+        // 4. 快照无法满足，从Redis ZSet按score降序分页查询（reverseRangeWithScores：降序+score）
         Set<ZSetOperations.TypedTuple<String>> tuples =
             redisTemplate.opsForZSet().reverseRangeWithScores(key, start, end);
 
-        // 4. 判空
+        // 5. 判空
         if (CollUtils.isEmpty(tuples)) {
             return CollUtils.emptyList();
         }
 
-        // 5. 封装结果
+        // 6. 封装结果
         int rank = start + 1; // 排名从1开始
         List<PointsBoard> list = new ArrayList<>(tuples.size());
         for (ZSetOperations.TypedTuple<String> tuple : tuples) {
@@ -205,7 +284,7 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
         validateTableName(tableName, season.intValue());
 
         // 3. 检查表是否存在
-        if (!checkTableExists(tableName)) {
+        if (!seasonTableRegistry.exists(season.intValue())) {
             log.warn("历史榜单表不存在，表名: {}，赛季ID: {}。请先执行定时任务创建表并持久化数据。", tableName, season);
             return CollUtils.emptyList();
         }
@@ -225,14 +304,19 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
      */
     @Override
     public void createPointsBoardTableBySeason(Integer season) {
-        String tableName = POINTS_BOARD_TABLE_PREFIX + season;
         // 校验表名安全性
-        validateTableName(tableName, season);
-        getBaseMapper().createPointsBoardTable(tableName);
+        validateTableName(POINTS_BOARD_TABLE_PREFIX + season, season);
+        // 已存在则跳过，并发建表只执行一次
+        seasonTableRegistry.createTable(season);
     }
 
     /**
-     * 持久化上月榜单数据到历史表
+     * 持久化上月的完整榜单到历史表
+     * <ol>
+     *     <li>按窗口顺序读取ZSet（ZREVRANGE），根据偏移量计算名次</li>
+     *     <li>每轮读取多个窗口，并行多行插入，整轮成功后记录进度，中断后从进度处继续</li>
+     *     <li>全部写入后核对数据库中的行数与ZSet的成员数，一致才删除Redis中的榜单</li>
+     * </ol>
      * @param season 赛季ID
      */
     @Override
@@ -251,43 +335,106 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
         String redisKey = RedisConstants.POINTS_BOARD_KEY_PREFIX +
                          lastMonth.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
 
-        // 4. 从Redis读取前100名数据
-        Set<ZSetOperations.TypedTuple<String>> top100 =
-            redisTemplate.opsForZSet().reverseRangeWithScores(redisKey, 0, 99);
-
-        // 5. 判空：如果没有数据，直接返回
-        if (CollUtils.isEmpty(top100)) {
+        // 4. 查询榜单总人数，没有数据直接返回
+        Long total = redisTemplate.opsForZSet().zCard(redisKey);
+        if (total == null || total == 0) {
             log.warn("Redis中没有上月榜单数据，key: {}", redisKey);
             return;
         }
+        seasonTableRegistry.createTable(season);
+
+        // 5. 读取进度，删除上次中断时已写入但未记录进度的数据
+        String checkpointKey = RedisConstants.POINTS_BOARD_PERSIST_KEY_PREFIX + season;
+        String checkpoint = redisTemplate.opsForValue().get(checkpointKey);
+        long offset = checkpoint == null ? 0 : Long.parseLong(checkpoint);
+        long from = offset;
+        seasonTableRegistry.withSeasonTable(season, () -> getBaseMapper().delete(
+                new QueryWrapper<PointsBoard>().eq("season", season).gt("`rank`", from)));
+        if (offset > 0) {
+            log.info("继续持久化榜单数据，赛季: {}, 已完成: {}/{}", season, offset, total);
+        }
 
-        // 6. 转换数据：构建PointsBoard列表（包含rank和season）
-        List<PointsBoard> boardList = new ArrayList<>(top100.size());
-        int rank = 1;
-        for (ZSetOperations.TypedTuple<String> tuple : top100) {
-            String userIdStr = tuple.getValue();
-            Double score = tuple.getScore();
-
-            if (userIdStr != null && score != null) {
-                PointsBoard board = new PointsBoard();
-                board.setUserId(Long.valueOf(userIdStr));
-                board.setPoints(score.intValue());
-                board.setRank(rank++);
-                board.setSeason(season);
-                boardList.add(board);
+        // 6. 分窗口读取，并行写入
+        int windowSize = pointsBoardProperties.getPersistWindowSize();
+        int parallelism = pointsBoardProperties.getPersistParallelism();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            while (offset < total) {
+                // 6.1. 顺序读取一轮窗口，提交写入
+                List<Future<?>> futures = new ArrayList<>(parallelism);
+                long end = offset;
+                for (int i = 0; i < parallelism && end < total; i++) {
+                    List<PointsBoard> window = readBoardWindow(redisKey, season, end, windowSize);
+                    if (window.isEmpty()) {
+                        break;
+                    }
+                    futures.add(executor.submit(() -> getBaseMapper().batchInsertToTable(tableName, window)));
+                    end += window.size();
+                }
+                if (futures.isEmpty()) {
+                    break;
+                }
+                // 6.2. 等待本轮写入完成，记录进度
+                awaitAll(futures);
+                offset = end;
+                redisTemplate.opsForValue().set(checkpointKey, String.valueOf(offset), PERSIST_CHECKPOINT_TTL);
             }
+        } finally {
+            executor.shutdownNow();
         }
 
-        // 7. 批量插入到历史表
-        if (CollUtils.isNotEmpty(boardList)) {
-            getBaseMapper().batchInsertToTable(tableName, boardList);
-            log.info("持久化榜单数据成功，赛季: {}, 表名: {}, 数据量: {}",
-                    season, tableName, boardList.size());
+        // 7. 核对写入的数量
+        long count = seasonTableRegistry.withSeasonTable(season, () -> (long) getBaseMapper().selectCount(
+                new QueryWrapper<PointsBoard>().eq("season", season)));
+        if (count != total) {
+            log.error("持久化榜单数据数量不一致，保留Redis数据，赛季: {}, Redis: {}, 数据库: {}", season, total, count);
+            throw new DbException("持久化榜单数据数量不一致");
         }
+        log.info("持久化榜单数据成功，赛季: {}, 表名: {}, 数据量: {}", season, tableName, count);
 
-        // 8. ：清理Redis中的旧数据（节省内存）
-         redisTemplate.delete(redisKey);
-         log.info("清理Redis旧数据，key: {}", redisKey);
+        // 8. 清理Redis中的旧数据（节省内存）
+        redisTemplate.delete(List.of(redisKey, checkpointKey));
+        log.info("清理Redis旧数据，key: {}", redisKey);
+    }
+
+    /**
+     * 读取一个窗口的榜单数据，名次 = 偏移量 + 窗口内序号 + 1
+     */
+    private List<PointsBoard> readBoardWindow(String redisKey, Integer season, long offset, int windowSize) {
+        Set<ZSetOperations.TypedTuple<String>> tuples =
+                redisTemplate.opsForZSet().reverseRangeWithScores(redisKey, offset, offset + windowSize - 1);
+        if (CollUtils.isEmpty(tuples)) {
+            return CollUtils.emptyList();
+        }
+        List<PointsBoard> list = new ArrayList<>(tuples.size());
+        long rank = offset;
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            rank++;
+            if (tuple.getValue() == null || tuple.getScore() == null) {
+                continue;
+            }
+            PointsBoard board = new PointsBoard();
+            board.setUserId(Long.valueOf(tuple.getValue()));
+            board.setPoints(tuple.getScore().intValue());
+            board.setRank((int) rank);
+            board.setSeason(season);
+            list.add(board);
+        }
+        return list;
+    }
+
+    private void awaitAll(List<Future<?>> futures) {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbException("持久化榜单数据被中断");
+        } catch (ExecutionException e) {
+            log.error("持久化榜单数据失败", e.getCause());
+            throw new DbException("持久化榜单数据失败");
+        }
     }
 
     /**
@@ -322,14 +469,4 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
             throw new IllegalArgumentException("表名与赛季ID不匹配");
         }
     }
-
-    /**
-     * 检查表是否存在
-     * @param tableName 表名
-     * @return true-存在，false-不存在
-     */
-    private boolean checkTableExists(String tableName) {
-        Integer count = getBaseMapper().checkTableExists(tableName);
-        return count != null && count > 0;
-    }
 }
@@ -1,23 +1,29 @@
 package com.tianji.learning.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.DateUtils;
 import com.tianji.common.utils.UserContext;
 import com.tianji.learning.constans.RedisConstants;
 import com.tianji.learning.domain.po.PointsRecord;
 import com.tianji.learning.domain.vo.PointsStatisticsVO;
-import com.tianji.learning.enums.PointsRecordType;
 import com.tianji.learning.mapper.PointsRecordMapper;
 import com.tianji.learning.service.IPointsRecordService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.List;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -34,56 +40,146 @@ public class PointsRecordServiceImpl extends ServiceImpl<PointsRecordMapper, Poi
 
     private final StringRedisTemplate redisTemplate;
 
+    private static final RedisScript<Long> ADD_POINTS_SCRIPT;
     /**
-     * 异步处理添加积分
-     * @param userId
-     * @param points
-     * @param type
+     * 当日积分hash中记录每个事件获得积分的字段前缀，值为p表示已写入数据库
      */
+    private static final String EVENT_FIELD_PREFIX = "m:";
+    private static final byte[] SAVED = bytes("p");
+
+    static {
+        ADD_POINTS_SCRIPT = RedisScript.of(new ClassPathResource("lua/points_add.lua"), Long.class);
+    }
+
     @Override
-    public void addPointsRecord(Long userId, int points, PointsRecordType type) {
-        int maxPoints = type.getMaxPoints();
+    public int addPointsRecords(Map<String, PointsRecord> records) {
+        if (CollUtils.isEmpty(records)) {
+            return 0;
+        }
+        // 1.同一用户同一类型同一天的积分合并，日期按事件发生的时间，跨零点缓冲的事件不会计入第二天
         LocalDateTime now = LocalDateTime.now();
-        int realPoints = points;
-        //判断积分是否有上限
-        if (maxPoints > 0){
-            //如果有上限就去查询今日已得的积分
-            LocalDateTime begin= DateUtils.getDayStartTime( now);
-            LocalDateTime end = DateUtils.getDayEndTime(now);
-            int currentPoints = queryUserPointsByTypeAndDate(userId, type, begin, end);
-
-            //判断积分是否超出上限
-            if(currentPoints>=maxPoints){
-                return;
+        Map<String, PointsGroup> merged = new LinkedHashMap<>();
+        records.forEach((eventId, record) -> {
+            LocalDateTime time = record.getCreateTime() == null ? now : record.getCreateTime();
+            merged.computeIfAbsent(
+                    record.getUserId() + ":" + record.getType().getValue() + ":" + time.toLocalDate(),
+                    k -> new PointsGroup(new PointsRecord().setUserId(record.getUserId()).setType(record.getType())
+                            .setPoints(0).setCreateTime(time)))
+                    .events.put(eventId, record.getPoints());
+        });
+        List<PointsGroup> groups = new ArrayList<>(merged.values());
+        // 2.管道批量执行积分脚本，判断每日上限并累加排行榜积分，按事件id去重，重复投递的事件不会重复累加；
+        // 每日上限按事件发生的日期，排行榜积分计入当前赛季，月初才处理的上月事件不会写入正在持久化或已删除的上月榜单
+        List<Object> results;
+        try {
+            results = executeAddScripts(groups);
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            // Redis重启后脚本缓存丢失，加载后重试，已执行的脚本按事件id去重
+            redisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.scriptingCommands().scriptLoad(bytes(ADD_POINTS_SCRIPT.getScriptAsString())));
+            results = executeAddScripts(groups);
+        }
+        // 3.一次多行插入实际获得的积分，积分记录的时间是事件发生的时间
+        List<PointsGroup> toSave = new ArrayList<>(groups.size());
+        int total = 0;
+        for (int i = 0; i < groups.size(); i++) {
+            long realPoints = results.get(i) == null ? 0 : ((Number) results.get(i)).longValue();
+            if (realPoints <= 0) {
+                // 已达上限，或者已写入数据库
+                continue;
+            }
+            PointsGroup group = groups.get(i);
+            group.record.setPoints((int) realPoints);
+            toSave.add(group);
+            total += realPoints;
+        }
+        if (toSave.isEmpty()) {
+            return 0;
+        }
+        getBaseMapper().insertWithCreateTime(toSave.stream().map(g -> g.record).collect(Collectors.toList()));
+        // 4.标记事件已写入数据库，重复投递时不再写入
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (PointsGroup group : toSave) {
+                Map<byte[], byte[]> saved = new HashMap<>(group.events.size());
+                for (String eventId : group.events.keySet()) {
+                    saved.put(bytes(EVENT_FIELD_PREFIX + eventId), SAVED);
+                }
+                byte[] dailyKey = bytes(dailyKey(group.record));
+                connection.hashCommands().hMSet(dailyKey, saved);
+                // 脚本执行之后当日积分可能刚好过期，标记不能留下没有过期时间的KEY
+                connection.keyCommands().expireAt(dailyKey, dailyExpireAt(group.record.getCreateTime().toLocalDate()));
             }
+            return null;
+        });
+        return total;
+    }
 
-            // 2.4.没超过，保存积分记录
-            if(currentPoints + points > maxPoints){
-                realPoints = maxPoints - currentPoints;
+    /**
+     * 管道中按SHA执行积分脚本，每组返回需要写入数据库的积分
+     */
+    private List<Object> executeAddScripts(List<PointsGroup> groups) {
+        byte[] boardKey = bytes(RedisConstants.POINTS_BOARD_KEY_PREFIX
+                + DateUtils.POINTS_BOARD_SUFFIX_FORMATTER.format(LocalDate.now()));
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (PointsGroup group : groups) {
+                PointsRecord r = group.record;
+                LocalDate day = r.getCreateTime().toLocalDate();
+                byte[][] keysAndArgs = new byte[6 + group.events.size() * 2][];
+                keysAndArgs[0] = bytes(dailyKey(r));
+                keysAndArgs[1] = boardKey;
+                keysAndArgs[2] = bytes(String.valueOf(r.getType().getValue()));
+                keysAndArgs[3] = bytes(String.valueOf(r.getType().getMaxPoints()));
+                keysAndArgs[4] = bytes(r.getUserId().toString());
+                keysAndArgs[5] = bytes(String.valueOf(dailyExpireAt(day)));
+                int i = 6;
+                for (Map.Entry<String, Integer> event : group.events.entrySet()) {
+                    keysAndArgs[i++] = bytes(event.getKey());
+                    keysAndArgs[i++] = bytes(String.valueOf(event.getValue()));
+                }
+                connection.scriptingCommands().evalSha(ADD_POINTS_SCRIPT.getSha1(), ReturnType.INTEGER, 2, keysAndArgs);
+            }
+            return null;
+        });
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
             }
         }
-        //如果没上限就保存积分记录
-        PointsRecord p = new PointsRecord();
-        p.setPoints(realPoints);
-        p.setUserId(userId);
-        p.setType(type);
-        save(p);
-
-        String key= RedisConstants.POINTS_BOARD_KEY_PREFIX+DateUtils.POINTS_BOARD_SUFFIX_FORMATTER.format(now);
-        redisTemplate.opsForZSet().incrementScore(key, userId.toString(), realPoints);
+        return false;
+    }
+
+    /**
+     * 当日积分的过期时间：事件当天之后的第二个零点（秒）
+     */
+    private static long dailyExpireAt(LocalDate day) {
+        return day.plusDays(2).atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private static String dailyKey(PointsRecord r) {
+        return RedisConstants.POINTS_DAILY_KEY_PREFIX + r.getCreateTime().format(DateTimeFormatter.BASIC_ISO_DATE)
+                + ":" + r.getUserId();
     }
 
-    private int queryUserPointsByTypeAndDate(Long userId, PointsRecordType type, LocalDateTime begin, LocalDateTime end) {
-            // 1.查询条件
-            QueryWrapper<PointsRecord> wrapper = new QueryWrapper<>();
-            wrapper.lambda()
-                    .eq(PointsRecord::getUserId, userId)
-                    .eq(type != null, PointsRecord::getType, type)
-                    .between(begin != null && end != null, PointsRecord::getCreateTime, begin, end);
-            // 2.调用mapper，查询结果
-            Integer points = getBaseMapper().queryUserPointsByTypeAndDate(wrapper);
-            // 3.判断并返回
-            return points == null ? 0 : points;
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 同一用户同一类型同一天的积分事件，事件id到积分
+     */
+    private static class PointsGroup {
+        private final PointsRecord record;
+        private final Map<String, Integer> events = new LinkedHashMap<>();
+
+        private PointsGroup(PointsRecord record) {
+            this.record = record;
+        }
     }
 
     @Override
@@ -1,5 +1,6 @@
 package com.tianji.learning.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.constants.MqConstants;
 import com.tianji.common.exceptions.BizIllegalException;
@@ -7,8 +8,13 @@ import com.tianji.common.utils.BooleanUtils;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.DateUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.learning.cache.LearningActivityCounter;
 import com.tianji.learning.constans.RedisConstants;
+import com.tianji.learning.domain.po.SignRecordArchive;
+import com.tianji.learning.domain.vo.SignCalendarVO;
 import com.tianji.learning.domain.vo.SignResultVO;
+import com.tianji.learning.handler.SignRecordArchiveHandler;
+import com.tianji.learning.mapper.SignRecordArchiveMapper;
 import com.tianji.learning.mq.message.SignInMessage;
 import com.tianji.learning.service.ISignRecordService;
 import lombok.RequiredArgsConstructor;
@@ -17,6 +23,7 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.List;
 
 @Service
@@ -27,6 +34,10 @@ public class SignRecordServiceImpl implements ISignRecordService {
 
     private final RabbitMqHelper mqHelper;
 
+    private final LearningActivityCounter activityCounter;
+
+    private final SignRecordArchiveMapper archiveMapper;
+
     @Override
     public SignResultVO addSignRecords() {
        Long userId = UserContext.getUser();
@@ -37,6 +48,8 @@ public class SignRecordServiceImpl implements ISignRecordService {
         if (BooleanUtils.isTrue( success)) {
             throw new BizIllegalException("不允许重复签到");
         }
+        // 1.签到计入当日活跃用户
+        activityCounter.recordSignIn(userId, now);
         // 2.计算连续签到天数
         int signDays = countSignDays(key, now.getDayOfMonth());
         // 3.计算签到得分
@@ -66,6 +79,38 @@ public class SignRecordServiceImpl implements ISignRecordService {
 
     }
 
+    @Override
+    public SignCalendarVO querySignCalendar(YearMonth month) {
+        Long userId = UserContext.getUser();
+        YearMonth current = YearMonth.now();
+        if (month == null) {
+            month = current;
+        }
+        SignCalendarVO vo = new SignCalendarVO();
+        vo.setMonth(month.toString());
+        if (month.isAfter(current)) {
+            vo.setSignedDays(CollUtils.emptyList());
+            return vo;
+        }
+        // 1.优先查询Redis，未归档和正在归档的月份都还在Redis中
+        String key = RedisConstants.SIGN_RECORD_KEY_PREFIX + userId + month.format(DateUtils.SIGN_DATE_SUFFIX_FORMATTER);
+        List<Long> result = redisTemplate.opsForValue()
+                .bitField(key, BitFieldSubCommands.create().get(
+                        BitFieldSubCommands.BitFieldType.unsigned(31)).valueAt(0));
+        int bits = CollUtils.isEmpty(result) ? 0 : SignRecordArchiveHandler.toDayBits(result.get(0));
+        // 2.Redis中没有，已结束的月份再查询归档
+        if (bits == 0 && month.isBefore(current)) {
+            SignRecordArchive archive = archiveMapper.selectOne(new QueryWrapper<SignRecordArchive>()
+                    .eq("user_id", userId)
+                    .eq("sign_month", SignRecordArchiveHandler.toMonth(month)));
+            if (archive != null) {
+                bits = archive.getBits();
+            }
+        }
+        vo.setSignedDays(SignRecordArchiveHandler.signedDays(bits));
+        return vo;
+    }
+
     private int countSignDays(String key, int len) {
         // 1.获取本月从第一天开始，到今天为止的所有签到记录
         List<Long> result = redisTemplate.opsForValue()
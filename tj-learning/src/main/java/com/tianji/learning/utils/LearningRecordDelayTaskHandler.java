@@ -1,28 +1,41 @@
 package com.tianji.learning.utils;
 
+import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.JsonUtils;
 import com.tianji.common.utils.StringUtils;
 import com.tianji.learning.domain.po.LearningLesson;
 import com.tianji.learning.domain.po.LearningRecord;
+import com.tianji.learning.mapper.LearningLessonMapper;
 import com.tianji.learning.mapper.LearningRecordMapper;
-import com.tianji.learning.service.ILearningLessonService;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.PostConstruct;
-import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.util.*;
 
+/**
+ * <h1>学习记录延迟持久化</h1>
+ * 视频播放进度先写入Redis缓存，停止提交一段时间后再批量写入数据库：
+ * <ol>
+ *     <li>待刷新任务保存在Redis的ZSet中，score是到期时间，重复提交会推迟到期时间</li>
+ *     <li>各实例定时通过Lua脚本原子领取到期任务，领取的任务移入处理中队列并设置租约</li>
+ *     <li>每批任务合并为一条学习记录UPDATE和一条课表UPDATE，成功后确认任务</li>
+ *     <li>实例在刷新中宕机时任务不会被确认，租约过期后由其它实例重新领取。更新是幂等的，重复执行没有影响</li>
+ * </ol>
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
@@ -30,66 +43,142 @@ public class LearningRecordDelayTaskHandler {
 
     private final StringRedisTemplate redisTemplate;
     private final LearningRecordMapper recordMapper;
-    private final ILearningLessonService lessonService;
-    private final DelayQueue<DelayTask<RecordTaskData>> queue = new DelayQueue<>();
+    private final LearningLessonMapper lessonMapper;
     private final static String RECORD_KEY_TEMPLATE = "learning:record:{}";
-    private static volatile boolean begin = true;
-    // 创建线程池
-    private final static ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-
-
-    @PostConstruct
-    public void init(){
-        EXECUTOR.submit(this::handleDelayTask);
-    }
-    @PreDestroy
-    public void destroy(){
-        begin = false;
-        EXECUTOR.shutdown();
-        log.debug("延迟任务停止执行！");
-    }
-
-    public void handleDelayTask(){
-        while (begin) {
-            try {
-                // 1.获取到期的延迟任务
-                DelayTask<RecordTaskData> task = queue.take();
-                // 2.提交任务到线程池
-                EXECUTOR.submit(() -> {
-                    RecordTaskData data = task.getData();
-                    // 3.查询Redis缓存
-                    LearningRecord record = readRecordCache(data.getLessonId(), data.getSectionId());
-                    if (record == null) {
-                        return;
-                    }
-                    // 4.比较数据，moment值
-                    if(!Objects.equals(data.getMoment(), record.getMoment())) {
-                        // 不一致，说明用户还在持续提交播放进度，放弃旧数据
-                        return;
-                    }
-
-                    // 5.一致，持久化播放进度数据到数据库
-                    // 5.1.更新学习记录的moment
-                    record.setFinished(null);
-                    recordMapper.updateById(record);
-                    // 5.2.更新课表最近学习信息
-                    LearningLesson lesson = new LearningLesson();
-                    lesson.setId(data.getLessonId());
-                    lesson.setLatestSectionId(data.getSectionId());
-                    lesson.setLatestLearnTime(LocalDateTime.now());
-                    lessonService.updateById(lesson);
-                });
-            } catch (Exception e) {
-                log.error("处理延迟任务发生异常", e);
+    /**
+     * 待刷新队列，member是lessonId:sectionId，score是到期时间
+     */
+    public final static String FLUSH_QUEUE_KEY = "learning:record:flush:queue";
+    /**
+     * 处理中队列，score是租约到期时间
+     */
+    public final static String FLUSH_PROCESSING_KEY = "learning:record:flush:processing";
+    /**
+     * 待刷新的数据，不设置过期时间，确认后删除
+     */
+    public final static String FLUSH_DATA_KEY = "learning:record:flush:data";
+    public final static Duration FLUSH_DELAY = Duration.ofSeconds(20);
+    public final static Duration FLUSH_LEASE = Duration.ofSeconds(60);
+    private final static int FLUSH_BATCH_SIZE = 200;
+
+    private static final RedisScript<Long> ENQUEUE_SCRIPT;
+    private static final RedisScript<List> CLAIM_SCRIPT;
+    private static final RedisScript<Long> ACK_SCRIPT;
+
+    static {
+        ENQUEUE_SCRIPT = RedisScript.of(new ClassPathResource("lua/record_flush_enqueue.lua"), Long.class);
+        CLAIM_SCRIPT = RedisScript.of(new ClassPathResource("lua/record_flush_claim.lua"), List.class);
+        ACK_SCRIPT = RedisScript.of(new ClassPathResource("lua/record_flush_ack.lua"), Long.class);
+    }
+
+    /**
+     * 定时刷新到期的学习记录
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void flushDueRecords() {
+        try {
+            drain(System.currentTimeMillis());
+        } catch (Exception e) {
+            log.error("刷新学习记录发生异常", e);
+        }
+    }
+
+    /**
+     * 领取并持久化截至指定时间到期的全部任务
+     *
+     * @param now 当前时间的毫秒值
+     * @return 持久化的任务数量
+     */
+    public int drain(long now) {
+        int total = 0;
+        while (true) {
+            // 1.领取一批到期任务
+            Map<String, String> batch = claim(now, FLUSH_BATCH_SIZE);
+            if (batch.isEmpty()) {
+                return total;
+            }
+            // 2.批量持久化，失败则不确认，等待租约过期后重试
+            persist(batch.values());
+            // 3.确认任务
+            ack(batch.keySet());
+            total += batch.size();
+            if (batch.size() < FLUSH_BATCH_SIZE) {
+                return total;
+            }
+        }
+    }
+
+    /**
+     * 原子领取到期任务，同时回收租约已过期的任务
+     *
+     * @return key是任务标识，value是任务数据，数据丢失时为空字符串
+     */
+    Map<String, String> claim(long now, int limit) {
+        List<?> result = redisTemplate.execute(
+                CLAIM_SCRIPT,
+                List.of(FLUSH_QUEUE_KEY, FLUSH_PROCESSING_KEY, FLUSH_DATA_KEY),
+                String.valueOf(now), String.valueOf(now + FLUSH_LEASE.toMillis()), String.valueOf(limit));
+        if (CollUtils.isEmpty(result)) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> batch = new LinkedHashMap<>(result.size());
+        for (int i = 0; i + 1 < result.size(); i += 2) {
+            batch.put(String.valueOf(result.get(i)), String.valueOf(result.get(i + 1)));
+        }
+        return batch;
+    }
+
+    void ack(Collection<String> members) {
+        redisTemplate.execute(ACK_SCRIPT, List.of(FLUSH_QUEUE_KEY, FLUSH_PROCESSING_KEY, FLUSH_DATA_KEY),
+                members.toArray());
+    }
+
+    private void persist(Collection<String> batch) {
+        // 1.解析任务数据
+        List<LearningRecord> records = new ArrayList<>(batch.size());
+        Map<Long, RecordTaskData> latestOfLesson = new HashMap<>();
+        for (String json : batch) {
+            if (StringUtils.isBlank(json)) {
+                continue;
             }
+            RecordTaskData data = JsonUtils.toBean(json, RecordTaskData.class);
+            // 1.1.学习记录只更新moment和上报时间
+            LearningRecord record = new LearningRecord();
+            record.setId(data.getId());
+            record.setMoment(data.getMoment());
+            record.setCommitTime(toLocalDateTime(data.getReportTime()));
+            records.add(record);
+            // 1.2.同一课表只保留最近提交的小节
+            latestOfLesson.merge(data.getLessonId(), data,
+                    (o, n) -> n.getCommitTime() >= o.getCommitTime() ? n : o);
+        }
+        if (records.isEmpty()) {
+            return;
         }
+        // 2.批量更新学习记录的moment和上报时间
+        recordMapper.updateAllByCase(records);
+        // 3.批量更新课表最近学习信息
+        List<LearningLesson> lessons = new ArrayList<>(latestOfLesson.size());
+        for (RecordTaskData data : latestOfLesson.values()) {
+            LearningLesson lesson = new LearningLesson();
+            lesson.setId(data.getLessonId());
+            lesson.setLatestSectionId(data.getSectionId());
+            lesson.setLatestLearnTime(toLocalDateTime(data.getCommitTime()));
+            lessons.add(lesson);
+        }
+        lessonMapper.updateAllByCase(lessons);
+        log.debug("持久化学习记录{}条，课表{}条", records.size(), lessons.size());
     }
 
     public void addLearningRecordTask(LearningRecord record){
         // 1.添加数据到Redis缓存
         writeRecordCache(record);
-        // 2.提交延迟任务到延迟队列 DelayQueue
-        queue.add(new DelayTask<>(new RecordTaskData(record), Duration.ofSeconds(20)));
+        // 2.提交延迟任务到Redis待刷新队列
+        long now = System.currentTimeMillis();
+        redisTemplate.execute(ENQUEUE_SCRIPT, List.of(FLUSH_QUEUE_KEY, FLUSH_DATA_KEY),
+                flushMember(record.getLessonId(), record.getSectionId()),
+                JsonUtils.toJsonStr(new RecordTaskData(record, now)),
+                String.valueOf(now + FLUSH_DELAY.toMillis()));
     }
 
     public void writeRecordCache(LearningRecord record) {
@@ -116,17 +205,124 @@ public class LearningRecordDelayTaskHandler {
                 return null;
             }
             // 2.数据检查和转换
-            return JsonUtils.toBean(cacheData.toString(), LearningRecord.class);
+            return toRecord(lessonId, sectionId, JsonUtils.toBean(cacheData.toString(), RecordCacheData.class));
         } catch (Exception e) {
             log.error("缓存读取异常", e);
             return null;
         }
     }
 
+    /**
+     * 管道批量读取学习记录的缓存
+     *
+     * @param keys 需要lessonId和sectionId
+     * @return key是lessonId:sectionId，只包含命中的记录
+     */
+    public Map<String, LearningRecord> readRecordCaches(Collection<LearningRecord> keys) {
+        if (CollUtils.isEmpty(keys)) {
+            return Collections.emptyMap();
+        }
+        List<LearningRecord> list = new ArrayList<>(keys);
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (LearningRecord r : list) {
+                connection.hashCommands().hGet(bytes(StringUtils.format(RECORD_KEY_TEMPLATE, r.getLessonId())),
+                        bytes(r.getSectionId().toString()));
+            }
+            return null;
+        });
+        Map<String, LearningRecord> records = new HashMap<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            Object cacheData = results.get(i);
+            if (cacheData == null) {
+                continue;
+            }
+            LearningRecord key = list.get(i);
+            RecordCacheData data = JsonUtils.toBean(cacheData.toString(), RecordCacheData.class);
+            records.put(flushMember(key.getLessonId(), key.getSectionId()),
+                    toRecord(key.getLessonId(), key.getSectionId(), data));
+        }
+        return records;
+    }
+
+    /**
+     * 一次管道写入一批学习记录的变化
+     *
+     * @param cached   只更新缓存的记录，例如刚插入数据库的记录
+     * @param delayed  更新缓存并提交延迟任务的记录，与{@link #addLearningRecordTask(LearningRecord)}相同
+     * @param finished 已直接写入数据库的记录，与{@link #cleanRecordCache(Long, Long)}相同
+     */
+    public void writeRecordChanges(Collection<LearningRecord> cached, Collection<LearningRecord> delayed,
+                                   Collection<LearningRecord> finished) {
+        long now = System.currentTimeMillis();
+        byte[] expire = bytes(String.valueOf(now + FLUSH_DELAY.toMillis()));
+        byte[] script = bytes(ENQUEUE_SCRIPT.getScriptAsString());
+        long ttl = Duration.ofMinutes(1).getSeconds();
+        List<LearningRecord> toCache = new ArrayList<>(cached.size() + delayed.size());
+        toCache.addAll(cached);
+        toCache.addAll(delayed);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            // 1.写入缓存
+            for (LearningRecord r : toCache) {
+                byte[] key = bytes(StringUtils.format(RECORD_KEY_TEMPLATE, r.getLessonId()));
+                connection.hashCommands().hSet(key, bytes(r.getSectionId().toString()),
+                        bytes(JsonUtils.toJsonStr(new RecordCacheData(r))));
+                connection.keyCommands().expire(key, ttl);
+            }
+            // 2.提交延迟任务
+            for (LearningRecord r : delayed) {
+                connection.scriptingCommands().eval(script, ReturnType.INTEGER, 2,
+                        bytes(FLUSH_QUEUE_KEY), bytes(FLUSH_DATA_KEY),
+                        bytes(flushMember(r.getLessonId(), r.getSectionId())),
+                        bytes(JsonUtils.toJsonStr(new RecordTaskData(r, now))),
+                        expire);
+            }
+            // 3.清理已写入数据库的记录
+            for (LearningRecord r : finished) {
+                byte[] member = bytes(flushMember(r.getLessonId(), r.getSectionId()));
+                connection.hashCommands().hDel(bytes(StringUtils.format(RECORD_KEY_TEMPLATE, r.getLessonId())),
+                        bytes(r.getSectionId().toString()));
+                connection.zSetCommands().zRem(bytes(FLUSH_QUEUE_KEY), member);
+                connection.hashCommands().hDel(bytes(FLUSH_DATA_KEY), member);
+            }
+            return null;
+        });
+    }
+
     public void cleanRecordCache(Long lessonId, Long sectionId){
-        // 删除数据
+        // 1.删除数据
         String key = StringUtils.format(RECORD_KEY_TEMPLATE, lessonId);
         redisTemplate.opsForHash().delete(key, sectionId.toString());
+        // 2.进度已直接写入数据库，取消待刷新任务
+        String member = flushMember(lessonId, sectionId);
+        redisTemplate.opsForZSet().remove(FLUSH_QUEUE_KEY, member);
+        redisTemplate.opsForHash().delete(FLUSH_DATA_KEY, member);
+    }
+
+    public static String flushMember(Long lessonId, Long sectionId) {
+        return lessonId + ":" + sectionId;
+    }
+
+    private static LearningRecord toRecord(Long lessonId, Long sectionId, RecordCacheData data) {
+        LearningRecord record = new LearningRecord();
+        record.setId(data.getId());
+        record.setLessonId(lessonId);
+        record.setSectionId(sectionId);
+        record.setMoment(data.getMoment());
+        record.setFinished(data.getFinished());
+        record.setCommitTime(toLocalDateTime(data.getCommitTime()));
+        return record;
+    }
+
+    private static LocalDateTime toLocalDateTime(Long millis) {
+        return millis == null ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private static Long toMillis(LocalDateTime time) {
+        return time == null ? null : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
     }
 
     @Data
@@ -135,24 +331,41 @@ public class LearningRecordDelayTaskHandler {
         private Long id;
         private Integer moment;
         private Boolean finished;
+        /**
+         * 最近一次上报的时间的毫秒值，用于拒绝乱序的上报
+         */
+        private Long commitTime;
 
         public RecordCacheData(LearningRecord record) {
             this.id = record.getId();
             this.moment = record.getMoment();
             this.finished = record.getFinished();
+            this.commitTime = toMillis(record.getCommitTime());
         }
     }
     @Data
     @NoArgsConstructor
     private static class RecordTaskData{
+        private Long id;
         private Long lessonId;
         private Long sectionId;
         private Integer moment;
+        /**
+         * 提交时间的毫秒值，作为课表的最近学习时间
+         */
+        private Long commitTime;
+        /**
+         * 客户端上报时间的毫秒值，写入学习记录的commit_time
+         */
+        private Long reportTime;
 
-        public RecordTaskData(LearningRecord record) {
+        public RecordTaskData(LearningRecord record, long commitTime) {
+            this.id = record.getId();
             this.lessonId = record.getLessonId();
             this.sectionId = record.getSectionId();
             this.moment = record.getMoment();
+            this.commitTime = commitTime;
+            this.reportTime = toMillis(record.getCommitTime());
         }
     }
-}
\ No newline at end of file
+}
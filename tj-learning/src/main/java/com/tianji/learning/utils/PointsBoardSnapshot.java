@@ -0,0 +1,114 @@
+package com.tianji.learning.utils;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.common.utils.DateUtils;
+import com.tianji.learning.config.PointsBoardProperties;
+import com.tianji.learning.constans.RedisConstants;
+import com.tianji.learning.domain.po.PointsBoard;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <h1>当前赛季榜单前N名的本地快照</h1>
+ * 榜单头部是访问最多的Redis key，每次分页都查询ZSet会让请求量直接打到同一个key上：
+ * <ol>
+ *     <li>由定时任务每秒读取一次前N名，请求线程只读快照，不访问Redis</li>
+ *     <li>快照整体替换，读取时不需要加锁</li>
+ *     <li>快照不是当前赛季（跨月）或分页超出快照范围时返回null，由调用方查询Redis</li>
+ * </ol>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PointsBoardSnapshot {
+
+    private final StringRedisTemplate redisTemplate;
+    private final PointsBoardProperties properties;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * 刷新快照
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // 刷新失败时保留旧快照
+            log.error("刷新榜单快照发生异常", e);
+        }
+    }
+
+    /**
+     * 读取当前赛季榜单的前N名，替换快照
+     */
+    public void refresh() {
+        String key = RedisConstants.POINTS_BOARD_KEY_PREFIX
+                + LocalDateTime.now().format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
+        int size = properties.getSnapshotSize();
+        Set<ZSetOperations.TypedTuple<String>> tuples =
+                redisTemplate.opsForZSet().reverseRangeWithScores(key, 0, size - 1);
+        List<PointsBoard> top = new ArrayList<>(size);
+        if (CollUtils.isNotEmpty(tuples)) {
+            int rank = 0;
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                rank++;
+                if (tuple.getValue() == null || tuple.getScore() == null) {
+                    continue;
+                }
+                PointsBoard board = new PointsBoard();
+                board.setUserId(Long.valueOf(tuple.getValue()));
+                board.setPoints(tuple.getScore().intValue());
+                board.setRank(rank);
+                top.add(board);
+            }
+        }
+        // 读取到的数量小于N，说明快照已包含整个榜单
+        snapshot = new Snapshot(key, top, top.size() < size);
+    }
+
+    /**
+     * 从快照中读取榜单的一段
+     * @param key 当前赛季榜单的key
+     * @param start 起始位置，从0开始
+     * @param end 结束位置，包含
+     * @return 榜单数据，快照无法满足时返回null
+     */
+    public List<PointsBoard> range(String key, int start, int end) {
+        Snapshot current = snapshot;
+        if (current == null || !current.key.equals(key) || start < 0 || end < start) {
+            return null;
+        }
+        List<PointsBoard> top = current.top;
+        if (end >= top.size() && !current.complete) {
+            // 超出快照范围
+            return null;
+        }
+        if (start >= top.size()) {
+            return CollUtils.emptyList();
+        }
+        return top.subList(start, Math.min(end + 1, top.size()));
+    }
+
+    private static class Snapshot {
+        private final String key;
+        private final List<PointsBoard> top;
+        private final boolean complete;
+
+        private Snapshot(String key, List<PointsBoard> top, boolean complete) {
+            this.key = key;
+            this.top = top;
+            this.complete = complete;
+        }
+    }
+}
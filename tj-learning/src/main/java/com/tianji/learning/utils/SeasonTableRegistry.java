@@ -0,0 +1,144 @@
+package com.tianji.learning.utils;
+
+import com.tianji.learning.mapper.PointsBoardMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * <h1>赛季榜单表注册表</h1>
+ * 缓存已存在的历史榜单表（points_board_{season}），避免每次查询历史榜单都查询information_schema：
+ * <ol>
+ *     <li>启动时加载数据库中已有的赛季表</li>
+ *     <li>通过{@link #createTable(Integer)}建表后加入缓存，同一赛季并发建表只会执行一次</li>
+ *     <li>缓存未命中时（其它实例刚建表）再查询一次数据库，不存在的表不缓存</li>
+ * </ol>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SeasonTableRegistry {
+
+    public static final String TABLE_PREFIX = "points_board_";
+
+    private final DataSource dataSource;
+    private final PointsBoardMapper pointsBoardMapper;
+
+    /**
+     * 已存在的赛季表，key是赛季id
+     */
+    private final Map<Integer, Boolean> tables = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        try {
+            loadTables();
+            log.info("加载赛季榜单表{}张", tables.size());
+        } catch (SQLException e) {
+            // 加载失败不影响启动，后续按需查询数据库
+            log.error("加载赛季榜单表失败", e);
+        }
+    }
+
+    public static String tableName(Integer season) {
+        return TABLE_PREFIX + season;
+    }
+
+    /**
+     * 判断赛季表是否存在
+     */
+    public boolean exists(Integer season) {
+        if (tables.containsKey(season)) {
+            return true;
+        }
+        // 缓存未命中，可能是其它实例创建的，再查询一次数据库
+        try {
+            if (tableExists(tableName(season))) {
+                tables.put(season, Boolean.TRUE);
+                return true;
+            }
+        } catch (SQLException e) {
+            log.error("查询赛季榜单表{}失败", tableName(season), e);
+        }
+        return false;
+    }
+
+    /**
+     * 创建赛季表，已存在则直接返回。同一赛季的并发调用只有一个线程执行建表，其它线程等待建表完成
+     */
+    public void createTable(Integer season) {
+        if (season == null || season < 1) {
+            throw new IllegalArgumentException("赛季ID无效: " + season);
+        }
+        tables.computeIfAbsent(season, s -> {
+            // 建表语句是CREATE TABLE IF NOT EXISTS，多实例重复执行没有影响
+            pointsBoardMapper.createPointsBoardTable(tableName(s));
+            log.info("创建赛季榜单表{}", tableName(s));
+            return Boolean.TRUE;
+        });
+    }
+
+    /**
+     * 在指定赛季表上执行操作：通过{@link TableInfoContext}把points_board替换为赛季表，执行后一定清理
+     */
+    public <T> T withSeasonTable(Integer season, Supplier<T> supplier) {
+        TableInfoContext.setInfo(tableName(season));
+        try {
+            return supplier.get();
+        } finally {
+            TableInfoContext.remove();
+        }
+    }
+
+    private void loadTables() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            DatabaseMetaData metaData = conn.getMetaData();
+            // 下划线是通配符，需要转义
+            String pattern = TABLE_PREFIX.replace("_", metaData.getSearchStringEscape() + "_") + "%";
+            if (metaData.storesUpperCaseIdentifiers()) {
+                pattern = pattern.toUpperCase();
+            }
+            try (ResultSet rs = metaData.getTables(conn.getCatalog(), null, pattern, new String[]{"TABLE"})) {
+                while (rs.next()) {
+                    Integer season = parseSeason(rs.getString("TABLE_NAME"));
+                    if (season != null) {
+                        tables.put(season, Boolean.TRUE);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean tableExists(String tableName) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            DatabaseMetaData metaData = conn.getMetaData();
+            String name = tableName.replace("_", metaData.getSearchStringEscape() + "_");
+            if (metaData.storesUpperCaseIdentifiers()) {
+                name = name.toUpperCase();
+            }
+            try (ResultSet rs = metaData.getTables(conn.getCatalog(), null, name, new String[]{"TABLE"})) {
+                return rs.next();
+            }
+        }
+    }
+
+    private Integer parseSeason(String tableName) {
+        String suffix = tableName.substring(TABLE_PREFIX.length());
+        try {
+            return Integer.valueOf(suffix);
+        } catch (NumberFormatException e) {
+            // 不是赛季表，例如points_board_bak
+            return null;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+-- KEYS[1]：订单已退款的课程(set)
+-- ARGV[1]：过期时间（秒），ARGV[2...]：已删除课表的课程id
+-- 课表删除提交后才记录，记录之前进程退出时，重新投递的退款消息会再次删除
+for i = 2, #ARGV do
+    redis.call('sadd', KEYS[1], ARGV[i])
+end
+redis.call('expire', KEYS[1], ARGV[1])
+return 1
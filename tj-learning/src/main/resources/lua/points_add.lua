@@ -0,0 +1,36 @@
+-- KEYS[1]：用户当日各类型积分(hash)，同时以 m:{消息id} 记录每条消息获得的积分，KEYS[2]：当前赛季的积分排行榜(zset)，迟到的事件也计入当前赛季
+-- ARGV[1]：积分类型，ARGV[2]：每日上限（0表示不限），ARGV[3]：用户id，ARGV[4]：过期时间戳（事件当天之后的第二个零点，秒）
+-- ARGV[5..]：消息id、本次积分交替排列
+-- 返回：需要写入数据库的积分，包括此前已累加、还没有写入数据库的消息，消息写入数据库后标记为p
+local max = tonumber(ARGV[2])
+local current = tonumber(redis.call('hget', KEYS[1], ARGV[1]) or '0')
+local added = 0
+local unsaved = 0
+for i = 5, #ARGV, 2 do
+    local field = 'm:' .. ARGV[i]
+    local applied = redis.call('hget', KEYS[1], field)
+    if applied then
+        -- 1.重复投递的消息不再累加，只返回还没有写入数据库的积分
+        if applied ~= 'p' then
+            unsaved = unsaved + tonumber(applied)
+        end
+    else
+        -- 2.新消息判断每日上限，超出部分截断
+        local points = tonumber(ARGV[i + 1])
+        if max > 0 and current + points > max then
+            points = math.max(max - current, 0)
+        end
+        current = current + points
+        added = added + points
+        unsaved = unsaved + points
+        -- 没有获得积分的消息不需要写入数据库
+        redis.call('hset', KEYS[1], field, points == 0 and 'p' or points)
+    end
+end
+-- 3.累加当日积分和排行榜积分，多保留一天，零点前发生、零点后才处理的事件仍按当天的上限截断
+if added > 0 then
+    redis.call('hincrby', KEYS[1], ARGV[1], added)
+    redis.call('zincrby', KEYS[2], added, ARGV[3])
+end
+redis.call('expireat', KEYS[1], ARGV[4])
+return unsaved
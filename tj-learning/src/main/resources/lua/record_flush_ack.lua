@@ -0,0 +1,10 @@
+-- KEYS[1]：待刷新队列(zset)，KEYS[2]：处理中队列(zset)，KEYS[3]：待刷新数据(hash)
+-- ARGV：已持久化的任务标识
+for _, member in ipairs(ARGV) do
+    redis.call('zrem', KEYS[2], member)
+    -- 刷新期间有新的提交，数据留给下一次刷新
+    if not redis.call('zscore', KEYS[1], member) then
+        redis.call('hdel', KEYS[3], member)
+    end
+end
+return #ARGV
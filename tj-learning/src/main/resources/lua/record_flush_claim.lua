@@ -0,0 +1,21 @@
+-- KEYS[1]：待刷新队列(zset)，KEYS[2]：处理中队列(zset)，KEYS[3]：待刷新数据(hash)
+-- ARGV[1]：当前时间，ARGV[2]：租约到期时间，ARGV[3]：最多领取的数量
+-- 返回：[任务标识1, 任务数据1, 任务标识2, 任务数据2, ...]
+local now = tonumber(ARGV[1])
+-- 1.租约过期的任务（领取者宕机），放回待刷新队列，已有更新的提交则保留其到期时间
+local expired = redis.call('zrangebyscore', KEYS[2], '-inf', now)
+for _, member in ipairs(expired) do
+    redis.call('zrem', KEYS[2], member)
+    redis.call('zadd', KEYS[1], 'NX', now, member)
+end
+-- 2.领取到期任务，移入处理中队列
+local members = redis.call('zrangebyscore', KEYS[1], '-inf', now, 'LIMIT', 0, tonumber(ARGV[3]))
+local result = {}
+for _, member in ipairs(members) do
+    redis.call('zrem', KEYS[1], member)
+    redis.call('zadd', KEYS[2], ARGV[2], member)
+    local data = redis.call('hget', KEYS[3], member)
+    table.insert(result, member)
+    table.insert(result, data or '')
+end
+return result
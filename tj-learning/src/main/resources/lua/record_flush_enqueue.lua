@@ -0,0 +1,6 @@
+-- KEYS[1]：待刷新队列(zset)，KEYS[2]：待刷新数据(hash)
+-- ARGV[1]：任务标识，ARGV[2]：任务数据，ARGV[3]：到期时间
+-- 重复提交会覆盖数据并推迟到期时间，只有停止提交后才会刷新
+redis.call('hset', KEYS[2], ARGV[1], ARGV[2])
+redis.call('zadd', KEYS[1], ARGV[3], ARGV[1])
+return 1
@@ -0,0 +1,8 @@
+-- KEYS[1]：问题下回答的热度排序(zset)
+-- ARGV[1]：分数，ARGV[2]：回答id
+-- 返回：1表示已添加，0表示排序未加载（由查询方从数据库加载）
+if redis.call('exists', KEYS[1]) == 0 then
+    return 0
+end
+redis.call('zadd', KEYS[1], ARGV[1], ARGV[2])
+return 1
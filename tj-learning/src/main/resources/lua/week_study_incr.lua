@@ -0,0 +1,6 @@
+-- KEYS[1]：用户本周学完的小节(hash)，field是 课表id:小节id，另有loaded标记已从数据库加载
+-- ARGV[1]：课表id:小节id，ARGV[2]：过期时间戳（秒）
+-- 计数未加载时也写入，加载时与数据库的结果按小节合并，不会丢失也不会重复计算
+redis.call('hset', KEYS[1], ARGV[1], 1)
+redis.call('expireat', KEYS[1], ARGV[2])
+return 1
@@ -0,0 +1,9 @@
+-- KEYS[1]：用户本周学完的小节(hash)，field是 课表id:小节id，另有loaded标记已从数据库加载
+-- ARGV[1]：过期时间戳（秒），ARGV[2...]：数据库中本周学完的 课表id:小节id
+-- 与加载期间写入的小节合并，同一小节只计算一次
+for i = 2, #ARGV do
+    redis.call('hset', KEYS[1], ARGV[i], 1)
+end
+redis.call('hset', KEYS[1], 'loaded', 1)
+redis.call('expireat', KEYS[1], ARGV[1])
+return 1
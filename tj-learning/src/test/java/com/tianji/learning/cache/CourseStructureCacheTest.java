@@ -0,0 +1,136 @@
+package com.tianji.learning.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.dto.course.CatalogueDTO;
+import com.tianji.api.dto.course.CourseFullInfoDTO;
+import com.tianji.learning.mq.CourseChangeListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CourseStructureCacheTest {
+
+    private static final Duration TTL = Duration.ofMinutes(30);
+
+    private final AtomicInteger feignCalls = new AtomicInteger();
+    private final AtomicLong nanos = new AtomicLong();
+    private CourseStructureCache cache;
+
+    @BeforeEach
+    void setUp() {
+        CourseClient courseClient = mock(CourseClient.class);
+        when(courseClient.getCourseInfoById(anyLong(), anyBoolean(), anyBoolean())).thenAnswer(invocation -> {
+            feignCalls.incrementAndGet();
+            // 模拟远程调用耗时
+            Thread.sleep(50);
+            Long courseId = invocation.getArgument(0);
+            return courseId > 100 ? null : course(courseId);
+        });
+        cache = new CourseStructureCache(Caffeine.newBuilder()
+                .expireAfterWrite(TTL)
+                .ticker(nanos::get)
+                .build(), courseClient);
+    }
+
+    @Test
+    void testCompletionBurst() throws Exception {
+        // 1.晚高峰：3门课程的200次完成判断同时到达
+        int requests = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            long courseId = i % 3 + 1;
+            futures.add(pool.submit(() -> {
+                start.await();
+                return cache.getSectionNum(courseId);
+            }));
+        }
+        start.countDown();
+        for (int i = 0; i < requests; i++) {
+            assertEquals(4, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        // 2.每门课程只远程查询一次
+        assertEquals(3, feignCalls.get());
+        for (int i = 0; i < 100; i++) {
+            cache.getSectionNum(1L);
+        }
+        assertEquals(3, feignCalls.get());
+    }
+
+    @Test
+    void testInvalidateByMessage() {
+        cache.getSectionNum(1L);
+        cache.getSectionNum(2L);
+        assertEquals(2, feignCalls.get());
+
+        // 1.课程变更消息只失效对应课程
+        new CourseChangeListener(cache).listenCourseChange(1L);
+        cache.getSectionNum(1L);
+        cache.getSectionNum(2L);
+        assertEquals(3, feignCalls.get());
+    }
+
+    @Test
+    void testExpireAfterTtl() {
+        cache.getSectionNum(1L);
+        nanos.addAndGet(TTL.minusSeconds(1).toNanos());
+        cache.getSectionNum(1L);
+        assertEquals(1, feignCalls.get());
+
+        // 1.消息丢失时，有效期过后重新查询
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        cache.getSectionNum(1L);
+        assertEquals(2, feignCalls.get());
+    }
+
+    @Test
+    void testStructure() {
+        CourseStructureCache.CourseStructure structure = cache.getCourseStructure(1L);
+        assertEquals(List.of(11L, 12L, 21L, 22L), structure.getSectionIds());
+        assertEquals(120, structure.getSectionDurations().get(12L));
+
+        // 1.课程不存在不缓存
+        assertNull(cache.getSectionNum(101L));
+        assertNull(cache.getSectionNum(101L));
+        assertEquals(3, feignCalls.get());
+    }
+
+    private CourseFullInfoDTO course(Long courseId) {
+        CourseFullInfoDTO dto = new CourseFullInfoDTO();
+        dto.setId(courseId);
+        dto.setSectionNum(4);
+        List<CatalogueDTO> chapters = new ArrayList<>();
+        for (long c = 1; c <= 2; c++) {
+            CatalogueDTO chapter = new CatalogueDTO();
+            chapter.setId(c);
+            chapter.setType(1);
+            List<CatalogueDTO> sections = new ArrayList<>();
+            for (long s = 1; s <= 2; s++) {
+                CatalogueDTO section = new CatalogueDTO();
+                section.setId(c * 10 + s);
+                section.setType(2);
+                section.setMediaDuration((int) s * 60);
+                sections.add(section);
+            }
+            chapter.setSections(sections);
+            chapters.add(chapter);
+        }
+        dto.setChapters(chapters);
+        return dto;
+    }
+}
@@ -0,0 +1,118 @@
+package com.tianji.learning.cache;
+
+import com.tianji.learning.domain.po.LearningLesson;
+import com.tianji.learning.mapper.LearningLessonMapper;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@Slf4j
+class LearningActivityCounterTest {
+
+    private static StringRedisTemplate redisTemplate;
+
+    private LearningLessonMapper lessonMapper;
+    private LearningActivityCounter counter;
+    private final LocalDate date = LocalDate.of(2025, 3, 10);
+
+    @BeforeAll
+    static void init() {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+    }
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedisSupport.flushAll();
+        lessonMapper = mock(LearningLessonMapper.class);
+        // 课表id为n的课表属于课程n * 10
+        when(lessonMapper.selectById(anyLong())).thenAnswer(i -> {
+            Long lessonId = i.getArgument(0);
+            LearningLesson lesson = new LearningLesson();
+            lesson.setId(lessonId);
+            lesson.setCourseId(lessonId * 10);
+            return lesson;
+        });
+        counter = new LearningActivityCounter(redisTemplate, lessonMapper);
+    }
+
+    @Test
+    void testStudySeconds() {
+        assertEquals(0, LearningActivityCounter.studySeconds(null, 0));
+        assertEquals(30, LearningActivityCounter.studySeconds(10, 40));
+        // 拖动进度条
+        assertEquals(LearningActivityCounter.MAX_STEP_SECONDS, LearningActivityCounter.studySeconds(10, 500));
+        assertEquals(0, LearningActivityCounter.studySeconds(100, 50));
+        assertEquals(0, LearningActivityCounter.studySeconds(100, null));
+    }
+
+    @Test
+    void testRecordStudyAndSignIn() {
+        counter.recordLessonStudy(1L, 1L, 30, date);
+        counter.recordLessonStudy(1L, 1L, 20, date);
+        counter.recordLessonStudy(2L, 1L, 0, date);
+        counter.recordLessonStudy(2L, 2L, 15, date);
+        counter.recordSignIn(3L, date);
+        // 课表到课程的映射只查询一次
+        verify(lessonMapper, times(1)).selectById(1L);
+
+        assertEquals(Map.of(10L, 50L, 20L, 15L), counter.courseSeconds(date));
+        assertEquals(50, counter.userSeconds(1L, date));
+        assertEquals(15, counter.userSeconds(2L, date));
+        assertEquals(0, counter.userSeconds(3L, date));
+        Map<Long, long[]> counts = counter.countActiveUsers(date, List.of(LearningActivityCounter.PLATFORM, 10L, 20L));
+        assertArrayEquals(new long[]{3, 3}, counts.get(LearningActivityCounter.PLATFORM));
+        assertArrayEquals(new long[]{2, 2}, counts.get(10L));
+        assertArrayEquals(new long[]{1, 1}, counts.get(20L));
+        // 第二天的日活跃不包含前一天，周活跃包含
+        counter.recordSignIn(4L, date.plusDays(1));
+        assertArrayEquals(new long[]{1, 4},
+                counter.countActiveUsers(date.plusDays(1), List.of(LearningActivityCounter.PLATFORM))
+                        .get(LearningActivityCounter.PLATFORM));
+        // 第8天的周活跃不再包含第1天
+        assertArrayEquals(new long[]{0, 1},
+                counter.countActiveUsers(date.plusDays(7), List.of(LearningActivityCounter.PLATFORM))
+                        .get(LearningActivityCounter.PLATFORM));
+    }
+
+    /**
+     * 10万用户的日活跃、7天内有重叠的周活跃，HyperLogLog的误差在标准误差0.81%的3倍以内
+     */
+    @Test
+    void testHyperLogLogErrorBound() {
+        // 第i天的活跃用户是[i * 20000, i * 20000 + 100000)，7天合计220000个用户
+        int daily = 100_000;
+        for (int day = 0; day < 7; day++) {
+            String key = LearningActivityCounter.activeKey(
+                    date.plusDays(day).format(DateTimeFormatter.BASIC_ISO_DATE), LearningActivityCounter.PLATFORM);
+            String[] users = new String[1000];
+            for (int from = day * 20000; from < day * 20000 + daily; from += users.length) {
+                for (int i = 0; i < users.length; i++) {
+                    users[i] = String.valueOf(from + i);
+                }
+                redisTemplate.opsForHyperLogLog().add(key, users);
+            }
+        }
+        // 通过计数器写入的用户与上面的写入方式一致
+        counter.recordSignIn(0L, date.plusDays(6));
+
+        long[] counts = counter.countActiveUsers(date.plusDays(6), List.of(LearningActivityCounter.PLATFORM))
+                .get(LearningActivityCounter.PLATFORM);
+        double dayError = Math.abs(counts[0] - (daily + 1)) / (double) (daily + 1);
+        double weekError = Math.abs(counts[1] - 220_000) / 220_000.0;
+        log.info("日活跃估算{}，误差{}；周活跃估算{}，误差{}", counts[0], dayError, counts[1], weekError);
+        assertTrue(dayError < 0.0243, "日活跃误差" + dayError);
+        assertTrue(weekError < 0.0243, "周活跃误差" + weekError);
+    }
+}
@@ -0,0 +1,243 @@
+package com.tianji.learning.cache;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.tianji.api.client.remark.RemarkClient;
+import com.tianji.api.client.user.UserClient;
+import com.tianji.api.dto.remark.LikedTimesDTO;
+import com.tianji.common.domain.dto.PageDTO;
+import com.tianji.learning.domain.po.InteractionReply;
+import com.tianji.learning.domain.query.ReplyPageQuery;
+import com.tianji.learning.domain.vo.ReplyVO;
+import com.tianji.learning.mapper.InteractionReplyMapper;
+import com.tianji.learning.mapper.SensitiveWordMapper;
+import com.tianji.learning.moderation.SensitiveWordFilter;
+import com.tianji.learning.mq.LikeTimesChangeListener;
+import com.tianji.learning.service.IInteractionQuestionService;
+import com.tianji.learning.service.impl.InteractionReplyServiceImpl;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import com.tianji.common.test.H2MybatisSupport;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplyHotRankingTest {
+
+    private static final long QUESTION_ID = 1L;
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS interaction_reply")
+        void drop();
+
+        @Update("CREATE TABLE interaction_reply (id BIGINT PRIMARY KEY, question_id BIGINT, answer_id BIGINT DEFAULT 0, " +
+                "user_id BIGINT, content VARCHAR(255), target_user_id BIGINT, target_reply_id BIGINT, " +
+                "reply_times INT DEFAULT 0, liked_times INT DEFAULT 0, hidden BIT DEFAULT 0, anonymity BIT DEFAULT 0, " +
+                "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, update_time DATETIME DEFAULT CURRENT_TIMESTAMP)")
+        void create();
+
+        @Select("SELECT id FROM interaction_reply WHERE question_id = #{questionId} AND answer_id = 0 AND hidden = 0 " +
+                "ORDER BY liked_times DESC, create_time DESC, id DESC")
+        List<Long> queryHotOrder(@Param("questionId") long questionId);
+    }
+
+    private static StringRedisTemplate redisTemplate;
+    private static SqlSessionTemplate sqlSession;
+
+    private SchemaMapper schema;
+    private InteractionReplyMapper replyMapper;
+    private ReplyHotRanking ranking;
+    private LikeTimesChangeListener listener;
+    private InteractionReplyServiceImpl service;
+
+    @BeforeAll
+    static void init() throws Exception {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+        sqlSession = H2MybatisSupport.sqlSession("interaction_reply", SchemaMapper.class, InteractionReplyMapper.class);
+        Configuration configuration = sqlSession.getConfiguration();
+        String resource = "mapper/InteractionReplyMapper.xml";
+        try (InputStream in = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.drop();
+        schema.create();
+        EmbeddedRedisSupport.flushAll();
+        replyMapper = sqlSession.getMapper(InteractionReplyMapper.class);
+        ranking = new ReplyHotRanking(redisTemplate);
+        listener = new LikeTimesChangeListener(replyMapper, ranking);
+
+        UserClient userClient = mock(UserClient.class);
+        when(userClient.queryUserByIds(any())).thenReturn(Collections.emptyList());
+        RemarkClient remarkClient = mock(RemarkClient.class);
+        when(remarkClient.isBizLiked(eq("QA"), any())).thenReturn(Collections.emptySet());
+        service = new InteractionReplyServiceImpl(mock(IInteractionQuestionService.class),
+                userClient, remarkClient, ranking, new SensitiveWordFilter(mock(SensitiveWordMapper.class)));
+        ReflectionTestUtils.setField(service, "baseMapper", replyMapper);
+    }
+
+    @Test
+    void testOrderMatchesSqlAfterRandomLikes() {
+        Random random = new Random(42);
+        List<Long> answerIds = prepare(random, 300);
+
+        // 1.第一次查询加载热度排序
+        assertEquals(schema.queryHotOrder(QUESTION_ID), hotOrder());
+
+        // 2.随机的点赞数变更，分批投递，每个回答可能被多次修改
+        Map<Long, Integer> likes = new HashMap<>();
+        for (int batch = 0; batch < 50; batch++) {
+            List<LikedTimesDTO> dtoList = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                Long id = answerIds.get(random.nextInt(answerIds.size()));
+                int liked = Math.max(0, likes.getOrDefault(id, 0) + random.nextInt(7) - 3);
+                likes.put(id, liked);
+                dtoList.add(LikedTimesDTO.of(id, liked));
+            }
+            listener.listenReplyLikedTimesChange(dtoList);
+        }
+
+        // 3.热度排序与SQL排序一致
+        List<Long> expected = schema.queryHotOrder(QUESTION_ID);
+        assertEquals(expected, hotOrder());
+
+        // 4.前几页从热度排序读取，结果与SQL分页一致
+        for (int pageNo = 1; pageNo <= 3; pageNo++) {
+            ReplyPageQuery query = new ReplyPageQuery();
+            query.setQuestionId(QUESTION_ID);
+            query.setPageNo(pageNo);
+            query.setPageSize(20);
+            PageDTO<ReplyVO> page = service.queryReplysByPage(query);
+            assertEquals(expected.size(), page.getTotal());
+            assertEquals(expected.subList((pageNo - 1) * 20, pageNo * 20),
+                    page.getList().stream().map(ReplyVO::getId).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void testCommentLikesAndUnloadedQuestionIgnored() {
+        Random random = new Random(7);
+        prepare(random, 50);
+        List<Long> before = hotOrder();
+        // 问题2的排序未加载，评论不参与排序
+        InteractionReply otherAnswer = reply(2L, 0L, LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
+        InteractionReply comment = reply(QUESTION_ID, before.get(0), LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
+        replyMapper.insert(otherAnswer);
+        replyMapper.insert(comment);
+
+        listener.listenReplyLikedTimesChange(List.of(
+                LikedTimesDTO.of(otherAnswer.getId(), 100), LikedTimesDTO.of(comment.getId(), 100)));
+
+        assertEquals(before, hotOrder());
+        assertFalse(redisTemplate.hasKey(ReplyHotRanking.key(2L)));
+    }
+
+    @Test
+    void testNewAnswerAddedToLoadedRanking() {
+        Random random = new Random(3);
+        prepare(random, 30);
+        InteractionReply answer = reply(QUESTION_ID, 0L, LocalDateTime.now().plusDays(1).truncatedTo(ChronoUnit.SECONDS));
+        replyMapper.insert(answer);
+        ranking.add(answer);
+        List<Long> expected = schema.queryHotOrder(QUESTION_ID);
+        assertEquals(expected, hotOrder());
+    }
+
+    /**
+     * 隐藏的回答从热度排序中移除，总数和分页与SQL一致，重新显示后回到排序中
+     */
+    @Test
+    void testHiddenAnswerRemoved() {
+        Random random = new Random(5);
+        List<Long> answerIds = prepare(random, 30);
+        Long hiddenId = hotOrder().get(0);
+        service.hiddenReply(hiddenId, true);
+        // 评论不在排序中，隐藏评论不影响排序
+        Long commentId = replyMapper.selectList(null).stream()
+                .filter(r -> r.getAnswerId() != 0L).findFirst().orElseThrow().getId();
+        service.hiddenReply(commentId, true);
+
+        List<Long> expected = schema.queryHotOrder(QUESTION_ID);
+        assertFalse(expected.contains(hiddenId));
+        assertEquals(expected, hotOrder());
+        ReplyPageQuery query = new ReplyPageQuery();
+        query.setQuestionId(QUESTION_ID);
+        query.setPageSize(answerIds.size());
+        PageDTO<ReplyVO> page = service.queryReplysByPage(query);
+        assertEquals(expected.size(), page.getTotal());
+        assertEquals(expected, page.getList().stream().map(ReplyVO::getId).collect(Collectors.toList()));
+
+        service.hiddenReply(hiddenId, false);
+        assertEquals(schema.queryHotOrder(QUESTION_ID), hotOrder());
+        assertEquals(answerIds.size(), hotOrder().size());
+    }
+
+    /**
+     * 准备问题1的回答和评论，另有一个隐藏的回答，并加载热度排序
+     */
+    private List<Long> prepare(Random random, int answers) {
+        // 创建时间只取少量的值，让点赞数和创建时间都有相同的情况
+        LocalDateTime base = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).minusDays(1);
+        List<Long> ids = new ArrayList<>(answers);
+        for (int i = 0; i < answers; i++) {
+            InteractionReply answer = reply(QUESTION_ID, 0L, base.plusMinutes(random.nextInt(10)));
+            answer.setLikedTimes(random.nextInt(5));
+            replyMapper.insert(answer);
+            ids.add(answer.getId());
+            if (i % 10 == 0) {
+                replyMapper.insert(reply(QUESTION_ID, answer.getId(), base));
+            }
+        }
+        InteractionReply hidden = reply(QUESTION_ID, 0L, base);
+        hidden.setHidden(true);
+        replyMapper.insert(hidden);
+
+        ReplyPageQuery query = new ReplyPageQuery();
+        query.setQuestionId(QUESTION_ID);
+        service.queryReplysByPage(query);
+        return ids;
+    }
+
+    private InteractionReply reply(Long questionId, Long answerId, LocalDateTime createTime) {
+        InteractionReply reply = new InteractionReply();
+        reply.setId(IdWorker.getId());
+        reply.setQuestionId(questionId);
+        reply.setAnswerId(answerId);
+        reply.setUserId(1L);
+        reply.setContent("回答");
+        reply.setLikedTimes(0);
+        reply.setHidden(false);
+        reply.setAnonymity(false);
+        reply.setCreateTime(createTime);
+        return reply;
+    }
+
+    private List<Long> hotOrder() {
+        Set<String> members = redisTemplate.opsForZSet().reverseRange(ReplyHotRanking.key(QUESTION_ID), 0, -1);
+        assertNotNull(members);
+        return members.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,204 @@
+package com.tianji.learning.cache;
+
+import com.tianji.api.dto.IdAndNumDTO;
+import com.tianji.common.utils.DateUtils;
+import com.tianji.learning.domain.po.LearningRecord;
+import com.tianji.learning.mapper.LearningRecordMapper;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import com.tianji.common.test.H2MybatisSupport;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WeeklyStudyCounterTest {
+
+    private static final long USER_ID = 1L;
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS learning_record")
+        void drop();
+
+        @Update("CREATE TABLE learning_record (id BIGINT PRIMARY KEY, lesson_id BIGINT, section_id BIGINT, " +
+                "user_id BIGINT, moment INT DEFAULT 0, finished BIT DEFAULT 0, finish_time DATETIME, commit_time DATETIME, " +
+                "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, update_time DATETIME DEFAULT CURRENT_TIMESTAMP)")
+        void create();
+    }
+
+    private static StringRedisTemplate redisTemplate;
+    private static SqlSessionTemplate sqlSession;
+
+    private LearningRecordMapper recordMapper;
+    private WeeklyStudyCounter counter;
+    private LocalDate today;
+    private LocalDateTime weekBegin;
+    private long nextId;
+
+    @BeforeAll
+    static void init() throws Exception {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+        sqlSession = H2MybatisSupport.sqlSession("week_study", SchemaMapper.class, LearningRecordMapper.class);
+        Configuration configuration = sqlSession.getConfiguration();
+        String resource = "mapper/LearningRecordMapper.xml";
+        try (InputStream in = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        SchemaMapper schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.drop();
+        schema.create();
+        EmbeddedRedisSupport.flushAll();
+        recordMapper = sqlSession.getMapper(LearningRecordMapper.class);
+        counter = new WeeklyStudyCounter(redisTemplate);
+        today = LocalDate.now();
+        weekBegin = DateUtils.getWeekBeginTime(today);
+        nextId = 1;
+    }
+
+    @Test
+    void testConsistentWithDb() {
+        Random random = new Random(7);
+        // 1.计数加载前学完的小节，只写入数据库
+        for (int i = 0; i < 20; i++) {
+            finish(1 + random.nextInt(5), weekBegin.plusMinutes(1 + random.nextInt(60)));
+        }
+        assertNull(counter.get(USER_ID, today));
+        WeeklyStudyCounter.WeekCounts loaded = counter.init(USER_ID, today, dbSections());
+        assertEquals(20, loaded.getTotal());
+
+        // 2.加载后学完的小节同时累加计数，包括上周学完但提交较晚的小节
+        for (int i = 0; i < 100; i++) {
+            finish(1 + random.nextInt(5), weekBegin.plusHours(2).plusMinutes(random.nextInt(600)));
+        }
+        finish(1, weekBegin.minusHours(1));
+
+        // 3.计数与数据库统计一致
+        WeeklyStudyCounter.WeekCounts counts = counter.get(USER_ID, today);
+        Map<Long, Integer> expected = dbCounts();
+        assertEquals(expected, counts.getLessons());
+        assertEquals(120, counts.getTotal());
+        assertEquals(expected.values().stream().mapToInt(Integer::intValue).sum(), counts.getTotal());
+    }
+
+    @Test
+    void testInitNotOverwrite() {
+        List<LearningRecord> snapshot = List.of(section(1L, 1L), section(1L, 2L), section(1L, 3L));
+        counter.init(USER_ID, today, snapshot);
+        counter.incrementFinished(USER_ID, 1L, 4L, weekBegin.plusHours(1));
+        // 其它请求使用旧的统计结果再次加载，不覆盖已累加的计数
+        counter.init(USER_ID, today, snapshot);
+        WeeklyStudyCounter.WeekCounts counts = counter.get(USER_ID, today);
+        assertEquals(4, counts.getLessonFinished(1L));
+        assertEquals(4, counts.getTotal());
+        assertEquals(0, counts.getLessonFinished(2L));
+    }
+
+    /**
+     * 统计数据库之后、加载之前学完的小节不会丢失，统计时已包含的小节不会重复计算
+     */
+    @Test
+    void testFinishDuringLoad() {
+        finish(1, weekBegin.plusMinutes(1));
+        // 1.查询页面统计数据库
+        List<LearningRecord> snapshot = dbSections();
+        // 2.统计之后学完的小节先于加载写入Redis，统计之前学完、提交后才写入Redis的小节也在统计结果中
+        finish(1, weekBegin.plusMinutes(2));
+        counter.incrementFinished(USER_ID, 1L, 1L, weekBegin.plusMinutes(1));
+        assertNull(counter.get(USER_ID, today));
+        // 3.用统计结果加载
+        WeeklyStudyCounter.WeekCounts loaded = counter.init(USER_ID, today, snapshot);
+        assertEquals(2, loaded.getTotal());
+        assertEquals(2, loaded.getLessonFinished(1L));
+        assertEquals(loaded, counter.get(USER_ID, today));
+    }
+
+    /**
+     * 上线前学完的小节没有finish_time，按创建时间统计
+     */
+    @Test
+    void testLegacyRecordsWithoutFinishTime() {
+        LearningRecord legacy = new LearningRecord();
+        legacy.setId(nextId);
+        legacy.setLessonId(2L);
+        legacy.setSectionId(nextId++);
+        legacy.setUserId(USER_ID);
+        legacy.setFinished(true);
+        legacy.setCreateTime(weekBegin.plusHours(1));
+        recordMapper.insert(legacy);
+        finish(1, weekBegin.plusHours(2));
+
+        WeeklyStudyCounter.WeekCounts loaded = counter.init(USER_ID, today, dbSections());
+        assertEquals(2, loaded.getTotal());
+        assertEquals(1, loaded.getLessonFinished(2L));
+    }
+
+    @Test
+    void testEmptyWeekAndExpire() {
+        // 1.本周没有学习记录，也会缓存为0，不会每次都查询数据库
+        counter.init(USER_ID, today, List.of());
+        WeeklyStudyCounter.WeekCounts counts = counter.get(USER_ID, today);
+        assertNotNull(counts);
+        assertEquals(0, counts.getTotal());
+
+        // 2.两周后过期
+        Long ttl = redisTemplate.getExpire(WeeklyStudyCounter.key(USER_ID, today));
+        long expected = weekBegin.plusWeeks(2).atZone(ZoneId.systemDefault()).toEpochSecond()
+                - System.currentTimeMillis() / 1000;
+        assertTrue(Math.abs(ttl - expected) <= 2, "ttl: " + ttl + ", expected: " + expected);
+    }
+
+    @Test
+    void testWeekKey() {
+        // ISO周：2021-01-03属于2020年第53周
+        assertEquals("learning:week:1:2020W53", WeeklyStudyCounter.key(1L, LocalDate.of(2021, 1, 3)));
+        assertEquals("learning:week:1:2021W01", WeeklyStudyCounter.key(1L, LocalDate.of(2021, 1, 4)));
+    }
+
+    /**
+     * 学完一个小节：与学习记录服务一致，先写数据库，再累加计数
+     */
+    private void finish(long lessonId, LocalDateTime finishTime) {
+        LearningRecord record = new LearningRecord();
+        record.setId(nextId);
+        record.setLessonId(lessonId);
+        record.setSectionId(nextId++);
+        record.setUserId(USER_ID);
+        record.setFinished(true);
+        record.setFinishTime(finishTime);
+        recordMapper.insert(record);
+        counter.incrementFinished(USER_ID, lessonId, record.getSectionId(), finishTime);
+    }
+
+    private LearningRecord section(Long lessonId, Long sectionId) {
+        LearningRecord record = new LearningRecord();
+        record.setLessonId(lessonId);
+        record.setSectionId(sectionId);
+        return record;
+    }
+
+    private List<LearningRecord> dbSections() {
+        return recordMapper.queryFinishedSections(USER_ID, weekBegin, weekBegin.plusWeeks(1));
+    }
+
+    private Map<Long, Integer> dbCounts() {
+        List<IdAndNumDTO> counts = recordMapper.countLearnedSections(USER_ID, weekBegin, weekBegin.plusWeeks(1));
+        return counts.stream().collect(Collectors.toMap(IdAndNumDTO::getId, IdAndNumDTO::getNum));
+    }
+}
@@ -0,0 +1,188 @@
+package com.tianji.learning.handler;
+
+import com.tianji.learning.cache.LearningActivityCounter;
+import com.tianji.learning.domain.po.LearningActivityStat;
+import com.tianji.learning.domain.po.UserStudyStat;
+import com.tianji.learning.domain.vo.ActivityStatVO;
+import com.tianji.learning.mapper.LearningActivityStatMapper;
+import com.tianji.learning.mapper.LearningLessonMapper;
+import com.tianji.learning.mapper.UserStudyStatMapper;
+import com.tianji.learning.service.impl.LearningActivityStatServiceImpl;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import com.tianji.common.test.H2MybatisSupport;
+import org.apache.ibatis.annotations.Update;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class LearningActivityRollupHandlerTest {
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS learning_activity_stat")
+        void dropActivity();
+
+        @Update("CREATE TABLE learning_activity_stat (id BIGINT AUTO_INCREMENT PRIMARY KEY, stat_date DATE NOT NULL, " +
+                "course_id BIGINT NOT NULL, active_users BIGINT, week_active_users BIGINT, study_seconds BIGINT, " +
+                "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, update_time DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                "CONSTRAINT uk_date_course UNIQUE (stat_date, course_id))")
+        void createActivity();
+
+        @Update("DROP TABLE IF EXISTS user_study_stat")
+        void dropUser();
+
+        @Update("CREATE TABLE user_study_stat (id BIGINT AUTO_INCREMENT PRIMARY KEY, stat_date DATE NOT NULL, " +
+                "user_id BIGINT NOT NULL, study_seconds BIGINT, " +
+                "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, update_time DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                "CONSTRAINT uk_date_user UNIQUE (stat_date, user_id))")
+        void createUser();
+    }
+
+    private static StringRedisTemplate redisTemplate;
+    private static SqlSessionTemplate sqlSession;
+
+    private LearningActivityStatMapper activityStatMapper;
+    private UserStudyStatMapper userStudyStatMapper;
+    private LearningActivityCounter counter;
+    private LearningActivityRollupHandler handler;
+    private LearningActivityStatServiceImpl statService;
+
+    /**
+     * 模拟数据的精确值：日期 -> 课程id -> 用户id集合、学习秒数
+     */
+    private final Map<LocalDate, Map<Long, Set<Long>>> exactUsers = new HashMap<>();
+    private final Map<LocalDate, Map<Long, Long>> exactCourseSeconds = new HashMap<>();
+    private final Map<LocalDate, Map<Long, Long>> exactUserSeconds = new HashMap<>();
+
+    @BeforeAll
+    static void init() {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+        sqlSession = H2MybatisSupport.sqlSession("learning_activity_stat",
+                SchemaMapper.class, LearningActivityStatMapper.class, UserStudyStatMapper.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        SchemaMapper schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.dropActivity();
+        schema.createActivity();
+        schema.dropUser();
+        schema.createUser();
+        EmbeddedRedisSupport.flushAll();
+        activityStatMapper = sqlSession.getMapper(LearningActivityStatMapper.class);
+        userStudyStatMapper = sqlSession.getMapper(UserStudyStatMapper.class);
+        counter = new LearningActivityCounter(redisTemplate, mock(LearningLessonMapper.class));
+        handler = new LearningActivityRollupHandler(counter, activityStatMapper, userStudyStatMapper);
+        statService = new LearningActivityStatServiceImpl(userStudyStatMapper, counter);
+        ReflectionTestUtils.setField(statService, "baseMapper", activityStatMapper);
+    }
+
+    @Test
+    void testRollupMatchesExactCounts() {
+        LocalDate date = LocalDate.now().minusDays(1);
+        simulate(date.minusDays(1), new Random(1));
+        simulate(date, new Random(2));
+
+        int rows = handler.rollup(date);
+        Map<Long, Long> courseSeconds = exactCourseSeconds.get(date);
+        Map<Long, Long> userSeconds = exactUserSeconds.get(date);
+        assertEquals(1 + courseSeconds.size() + userSeconds.size(), rows);
+
+        // 1.学习秒数精确，活跃用户数在HyperLogLog的误差范围内
+        List<LearningActivityStat> stats = activityStatMapper.selectList(null);
+        assertEquals(1 + courseSeconds.size(), stats.size());
+        for (LearningActivityStat stat : stats) {
+            long courseId = stat.getCourseId();
+            assertEquals(date, stat.getStatDate());
+            assertEquals(courseId == LearningActivityCounter.PLATFORM
+                    ? courseSeconds.values().stream().mapToLong(Long::longValue).sum()
+                    : courseSeconds.get(courseId), stat.getStudySeconds());
+            assertWithinError(exactUsers.get(date).get(courseId).size(), stat.getActiveUsers());
+            Set<Long> week = new HashSet<>(exactUsers.get(date).get(courseId));
+            week.addAll(exactUsers.get(date.minusDays(1)).getOrDefault(courseId, Collections.emptySet()));
+            assertWithinError(week.size(), stat.getWeekActiveUsers());
+        }
+        List<UserStudyStat> users = userStudyStatMapper.selectList(null);
+        assertEquals(userSeconds.size(), users.size());
+        for (UserStudyStat user : users) {
+            assertEquals(userSeconds.get(user.getUserId()), user.getStudySeconds());
+        }
+
+        // 2.重复执行结果不变
+        assertEquals(rows, handler.rollup(date));
+        assertEquals(stats.size(), activityStatMapper.selectCount(null));
+        assertEquals(users.size(), userStudyStatMapper.selectCount(null));
+    }
+
+    @Test
+    void testQueryMergesTodayFromRedis() {
+        LocalDate today = LocalDate.now();
+        LocalDate yesterday = today.minusDays(1);
+        simulate(yesterday, new Random(3));
+        handler.rollup(yesterday);
+        counter.record(1L, Map.of(7L, 40), today);
+        counter.record(2L, Map.of(7L, 20, 8L, 10), today);
+
+        List<ActivityStatVO> platform = statService.queryActivityStats(null, yesterday.minusDays(5), today);
+        assertEquals(2, platform.size());
+        assertEquals(yesterday, platform.get(0).getDate());
+        assertEquals(exactCourseSeconds.get(yesterday).values().stream().mapToLong(Long::longValue).sum(),
+                platform.get(0).getStudySeconds());
+        ActivityStatVO todayStat = platform.get(1);
+        assertEquals(today, todayStat.getDate());
+        assertEquals(2, todayStat.getActiveUsers());
+        assertEquals(70, todayStat.getStudySeconds());
+
+        List<ActivityStatVO> course = statService.queryActivityStats(8L, today, today);
+        assertEquals(1, course.size());
+        assertEquals(1, course.get(0).getActiveUsers());
+        assertEquals(10, course.get(0).getStudySeconds());
+
+        Map<LocalDate, Long> user = statService.queryUserStudySeconds(2L, yesterday, today);
+        assertEquals(30, user.get(today));
+        assertEquals(exactUserSeconds.get(yesterday).get(2L), user.get(yesterday));
+    }
+
+    /**
+     * 模拟一天的学习：3000个用户随机学习5门课程，部分用户只签到
+     */
+    private void simulate(LocalDate date, Random random) {
+        Map<Long, Set<Long>> users = exactUsers.computeIfAbsent(date, d -> new HashMap<>());
+        Map<Long, Long> courseSeconds = exactCourseSeconds.computeIfAbsent(date, d -> new HashMap<>());
+        Map<Long, Long> userSeconds = exactUserSeconds.computeIfAbsent(date, d -> new HashMap<>());
+        for (long userId = 1; userId <= 3000; userId++) {
+            users.computeIfAbsent(LearningActivityCounter.PLATFORM, k -> new HashSet<>()).add(userId);
+            if (random.nextInt(10) == 0) {
+                counter.recordSignIn(userId, date);
+                continue;
+            }
+            Map<Long, Integer> studies = new HashMap<>();
+            for (int i = 1 + random.nextInt(2); i > 0; i--) {
+                long courseId = 1 + random.nextInt(5);
+                int seconds = random.nextInt(60);
+                studies.merge(courseId, seconds, Integer::sum);
+            }
+            counter.record(userId, studies, date);
+            for (Map.Entry<Long, Integer> entry : studies.entrySet()) {
+                users.computeIfAbsent(entry.getKey(), k -> new HashSet<>()).add(userId);
+                courseSeconds.merge(entry.getKey(), (long) entry.getValue(), Long::sum);
+                if (entry.getValue() > 0) {
+                    userSeconds.merge(userId, (long) entry.getValue(), Long::sum);
+                }
+            }
+        }
+    }
+
+    private void assertWithinError(long expected, long actual) {
+        // 标准误差0.81%的3倍
+        assertTrue(Math.abs(actual - expected) <= expected * 0.0243, "期望" + expected + "，实际" + actual);
+    }
+}
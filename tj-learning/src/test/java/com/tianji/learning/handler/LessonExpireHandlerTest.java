@@ -0,0 +1,174 @@
+package com.tianji.learning.handler;
+
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.autoconfigure.xxljob.ShardCheckpointStore;
+import com.tianji.common.constants.MqConstants;
+import com.tianji.learning.mapper.LearningLessonMapper;
+import com.tianji.learning.mq.message.LessonExpiredMessage;
+import com.tianji.common.test.H2MybatisSupport;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class LessonExpireHandlerTest {
+
+    private static final int LESSONS = 100_000;
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS learning_lesson")
+        void drop();
+
+        @Update("CREATE TABLE learning_lesson (id BIGINT PRIMARY KEY, user_id BIGINT, course_id BIGINT, " +
+                "status TINYINT DEFAULT 0, week_freq TINYINT, plan_status TINYINT DEFAULT 0, " +
+                "learned_sections INT DEFAULT 0, latest_section_id BIGINT, latest_learn_time DATETIME, " +
+                "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, expire_time DATETIME, " +
+                "update_time DATETIME DEFAULT CURRENT_TIMESTAMP)")
+        void create();
+
+        /**
+         * id是3的倍数的课表未过期，id是10的倍数的课表已经是过期状态，其它课表已过期但状态未更新
+         */
+        @Update("INSERT INTO learning_lesson (id, user_id, course_id, status, expire_time) " +
+                "SELECT X, MOD(X, 1000), X, CASE WHEN MOD(X, 10) = 0 THEN 3 ELSE 1 END, " +
+                "CASE WHEN MOD(X, 3) = 0 THEN CAST(#{future} AS TIMESTAMP) ELSE CAST(#{past} AS TIMESTAMP) END " +
+                "FROM SYSTEM_RANGE(1, #{total})")
+        void fill(@Param("past") LocalDateTime past, @Param("future") LocalDateTime future, @Param("total") int total);
+
+        @Select("SELECT COUNT(*) FROM learning_lesson WHERE status = 3")
+        long countExpired();
+
+        @Select("SELECT COUNT(*) FROM learning_lesson WHERE status = 3 AND MOD(id, 3) = 0 AND MOD(id, 10) <> 0")
+        long countWrongExpired();
+    }
+
+    private static SqlSessionTemplate sqlSession;
+
+    private final Map<String, Long> checkpoints = new ConcurrentHashMap<>();
+    private final List<List<Long>> events = Collections.synchronizedList(new ArrayList<>());
+    private LearningLessonMapper lessonMapper;
+    private LessonExpireHandler handler;
+    private LocalDateTime now;
+
+    @BeforeAll
+    static void init() throws Exception {
+        sqlSession = H2MybatisSupport.sqlSession("lesson_expire", SchemaMapper.class, LearningLessonMapper.class);
+        Configuration configuration = sqlSession.getConfiguration();
+        String resource = "mapper/LearningLessonMapper.xml";
+        try (InputStream in = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        now = LocalDateTime.now();
+        SchemaMapper schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.drop();
+        schema.create();
+        schema.fill(now.minusDays(1), now.plusDays(1), LESSONS);
+        checkpoints.clear();
+        events.clear();
+
+        lessonMapper = sqlSession.getMapper(LearningLessonMapper.class);
+        RabbitMqHelper mqHelper = mock(RabbitMqHelper.class);
+        doAnswer(invocation -> {
+            events.add(invocation.<LessonExpiredMessage>getArgument(2).getLessonIds());
+            return null;
+        }).when(mqHelper).send(eq(MqConstants.Exchange.LEARNING_EXCHANGE), eq(MqConstants.Key.LESSON_EXPIRED), any());
+        handler = new LessonExpireHandler(lessonMapper, mqHelper, new InMemoryCheckpointStore());
+    }
+
+    @Test
+    void testExpireAllShards() {
+        int expected = expectedExpired();
+        SchemaMapper schema = sqlSession.getMapper(SchemaMapper.class);
+        long before = schema.countExpired();
+
+        // 1.4个分片分别执行
+        int total = 0;
+        for (int shard = 0; shard < 4; shard++) {
+            total += handler.expireLessons(now, shard, 4, 1000);
+        }
+
+        // 2.只更新已过期且状态未更新的课表
+        assertEquals(expected, total);
+        assertEquals(before + expected, schema.countExpired());
+        assertEquals(0, schema.countWrongExpired());
+        // 3.每批一个事件，覆盖全部更新的课表且没有重复
+        Set<Long> ids = new HashSet<>();
+        for (List<Long> event : events) {
+            assertTrue(event.size() <= 1000);
+            ids.addAll(event);
+        }
+        assertEquals(expected, ids.size());
+        assertTrue(ids.stream().allMatch(id -> id % 3 != 0 && id % 10 != 0));
+        // 4.完成后清除进度，再次执行没有数据
+        assertTrue(checkpoints.isEmpty());
+        assertEquals(0, handler.expireLessons(now, 0, 4, 1000));
+    }
+
+    @Test
+    void testResumeFromCheckpoint() {
+        // 1.模拟上次执行到id 50000时中断
+        checkpoints.put("lessonExpireJob:1:0", 50_000L);
+
+        // 2.从进度处继续，只处理之后的课表
+        int total = handler.expireLessons(now, 0, 1, 500);
+        int expected = 0;
+        for (long id = 50_001; id <= LESSONS; id++) {
+            if (id % 3 != 0 && id % 10 != 0) {
+                expected++;
+            }
+        }
+        assertEquals(expected, total);
+        assertTrue(events.stream().flatMap(List::stream).allMatch(id -> id > 50_000));
+
+        // 3.进度清除后，下次执行处理剩余的课表
+        assertEquals(expectedExpired() - expected, handler.expireLessons(now, 0, 1, 500));
+    }
+
+    private int expectedExpired() {
+        int count = 0;
+        for (long id = 1; id <= LESSONS; id++) {
+            if (id % 3 != 0 && id % 10 != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private class InMemoryCheckpointStore implements ShardCheckpointStore {
+        @Override
+        public Long load(String key) {
+            return checkpoints.get(key);
+        }
+
+        @Override
+        public void save(String key, long lastId) {
+            checkpoints.put(key, lastId);
+        }
+
+        @Override
+        public void remove(String key) {
+            checkpoints.remove(key);
+        }
+    }
+}
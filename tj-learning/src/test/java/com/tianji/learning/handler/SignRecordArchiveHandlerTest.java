@@ -0,0 +1,171 @@
+package com.tianji.learning.handler;
+
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.utils.DateUtils;
+import com.tianji.common.utils.UserContext;
+import com.tianji.learning.cache.LearningActivityCounter;
+import com.tianji.learning.constans.RedisConstants;
+import com.tianji.learning.domain.po.SignRecordArchive;
+import com.tianji.learning.domain.vo.SignCalendarVO;
+import com.tianji.learning.mapper.SignRecordArchiveMapper;
+import com.tianji.learning.service.impl.SignRecordServiceImpl;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import com.tianji.common.test.H2MybatisSupport;
+import org.apache.ibatis.annotations.Update;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class SignRecordArchiveHandlerTest {
+
+    private static final int USERS = 2500;
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS sign_record_archive")
+        void drop();
+
+        @Update("CREATE TABLE sign_record_archive (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id BIGINT NOT NULL, " +
+                "sign_month INT NOT NULL, bits INT NOT NULL, create_time DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                "CONSTRAINT uk_user_month UNIQUE (user_id, sign_month))")
+        void create();
+    }
+
+    private static StringRedisTemplate redisTemplate;
+    private static SqlSessionTemplate sqlSession;
+
+    private SignRecordArchiveMapper archiveMapper;
+    private SignRecordArchiveHandler handler;
+    private SignRecordServiceImpl signService;
+    private final YearMonth current = YearMonth.now();
+
+    /**
+     * 模拟数据：userId:yyyyMM -> 第n天签到则第n-1位为1
+     */
+    private final Map<String, Integer> expected = new HashMap<>();
+
+    @BeforeAll
+    static void init() {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+        sqlSession = H2MybatisSupport.sqlSession("sign_record_archive", SchemaMapper.class, SignRecordArchiveMapper.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        SchemaMapper schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.drop();
+        schema.create();
+        EmbeddedRedisSupport.flushAll();
+        archiveMapper = sqlSession.getMapper(SignRecordArchiveMapper.class);
+        handler = new SignRecordArchiveHandler(redisTemplate, archiveMapper);
+        signService = new SignRecordServiceImpl(redisTemplate, mock(RabbitMqHelper.class),
+                mock(LearningActivityCounter.class), archiveMapper);
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserContext.removeUser();
+    }
+
+    @Test
+    void testArchiveClosedMonths() {
+        // 1.两个已结束的月份和本月，每个用户随机签到，包含1号和31号
+        Random random = new Random(1);
+        for (int i = 2; i >= 0; i--) {
+            simulate(current.minusMonths(i), random);
+        }
+        redisTemplate.opsForValue().setBit(RedisConstants.SIGN_RECORD_KEY_PREFIX + "abc:202001", 0, true);
+
+        int archived = handler.archive(current);
+        long closed = expected.keySet().stream().filter(k -> !k.endsWith(":" + SignRecordArchiveHandler.toMonth(current))).count();
+        assertEquals(closed, archived);
+
+        // 2.归档的内容与位图一致，已结束月份的key被删除，本月和格式不对的key保留
+        List<SignRecordArchive> rows = archiveMapper.selectList(null);
+        assertEquals(closed, rows.size());
+        for (SignRecordArchive row : rows) {
+            assertEquals(expected.get(row.getUserId() + ":" + row.getSignMonth()), row.getBits());
+        }
+        Set<String> keys = redisTemplate.keys(RedisConstants.SIGN_RECORD_KEY_PREFIX + "*");
+        assertNotNull(keys);
+        assertEquals(expected.size() - closed + 1, keys.size());
+        assertTrue(keys.contains(RedisConstants.SIGN_RECORD_KEY_PREFIX + "abc:202001"));
+        assertTrue(keys.stream().allMatch(k -> k.endsWith(current.format(DateUtils.SIGN_DATE_SUFFIX_FORMATTER))
+                || k.endsWith("abc:202001")));
+
+        // 3.重复执行没有可归档的key
+        assertEquals(0, handler.archive(current));
+        assertEquals(closed, (long) archiveMapper.selectCount(null));
+    }
+
+    @Test
+    void testCalendarReadsArchivedMonths() {
+        Random random = new Random(2);
+        YearMonth last = current.minusMonths(1);
+        simulate(last, random);
+        simulate(current, random);
+        long userId = 7L;
+        UserContext.setUser(userId);
+        SignCalendarVO before = signService.querySignCalendar(last);
+
+        handler.archive(current);
+        SignCalendarVO after = signService.querySignCalendar(last);
+        assertEquals(before, after);
+        assertEquals(last.toString(), after.getMonth());
+        assertEquals(SignRecordArchiveHandler.signedDays(expected.get(userId + ":" + SignRecordArchiveHandler.toMonth(last))),
+                after.getSignedDays());
+        // 本月仍然从Redis读取
+        assertEquals(SignRecordArchiveHandler.signedDays(expected.get(userId + ":" + SignRecordArchiveHandler.toMonth(current))),
+                signService.querySignCalendar(null).getSignedDays());
+        // 没有签到的月份和未来的月份
+        assertTrue(signService.querySignCalendar(current.minusMonths(5)).getSignedDays().isEmpty());
+        assertTrue(signService.querySignCalendar(current.plusMonths(1)).getSignedDays().isEmpty());
+    }
+
+    @Test
+    void testDayBits() {
+        // 1号和31号签到
+        assertEquals(1 | 1 << 30, SignRecordArchiveHandler.toDayBits(1L << 30 | 1L));
+        assertEquals(List.of(1, 3, 31), SignRecordArchiveHandler.signedDays(1 | 1 << 2 | 1 << 30));
+        assertNull(SignRecordArchiveHandler.parseMonth("sign:uid::202401"));
+        assertNull(SignRecordArchiveHandler.parseMonth("sign:uid:1:2024"));
+        assertEquals(202401, SignRecordArchiveHandler.parseMonth("sign:uid:1:202401"));
+    }
+
+    /**
+     * 每个用户在这个月随机签到，id大于10的部分用户当月没有签到
+     */
+    private void simulate(YearMonth month, Random random) {
+        int days = month.lengthOfMonth();
+        Map<String, Integer> bitmaps = new HashMap<>();
+        for (long userId = 1; userId <= USERS; userId++) {
+            if (userId > 10 && random.nextInt(5) == 0) {
+                continue;
+            }
+            int bits = (int) (random.nextLong() & ((1L << days) - 1));
+            bits |= 1 | 1 << (days - 1);
+            bitmaps.put(RedisConstants.SIGN_RECORD_KEY_PREFIX + userId + month.format(DateUtils.SIGN_DATE_SUFFIX_FORMATTER), bits);
+            expected.put(userId + ":" + SignRecordArchiveHandler.toMonth(month), bits);
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            bitmaps.forEach((key, bits) -> {
+                for (int day = 0; day < days; day++) {
+                    if ((bits >>> day & 1) == 1) {
+                        connection.stringCommands().setBit(key.getBytes(StandardCharsets.UTF_8), day, true);
+                    }
+                }
+            });
+            return null;
+        });
+    }
+}
@@ -0,0 +1,125 @@
+package com.tianji.learning.moderation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class DoubleArrayAhoCorasickTest {
+
+    @Test
+    void testOverlappingMatches() {
+        List<String> words = List.of("he", "she", "his", "hers", "敏感", "敏感词", "感词");
+        DoubleArrayAhoCorasick automaton = new DoubleArrayAhoCorasick(words);
+
+        assertEquals(Set.of("she@1", "he@2", "hers@2"), hits(automaton, words, "ushers"));
+        assertEquals(Set.of("敏感@1", "敏感词@1", "感词@2"), hits(automaton, words, "有敏感词"));
+        assertEquals(Set.of(), hits(automaton, words, "没有命中"));
+    }
+
+    @Test
+    void testRandomAgainstNaive() {
+        Random random = new Random(1);
+        // 小字母表，让词之间大量共享前缀和后缀
+        String alphabet = "abcd敏感词";
+        for (int round = 0; round < 50; round++) {
+            Set<String> dict = new LinkedHashSet<>();
+            int size = 1 + random.nextInt(200);
+            while (dict.size() < size) {
+                dict.add(randomText(random, alphabet, 1 + random.nextInt(6)));
+            }
+            List<String> words = new ArrayList<>(dict);
+            DoubleArrayAhoCorasick automaton = new DoubleArrayAhoCorasick(words);
+            for (int t = 0; t < 20; t++) {
+                String text = randomText(random, alphabet + "xyz", random.nextInt(100));
+                assertEquals(naive(words, text), hits(automaton, words, text));
+            }
+        }
+    }
+
+    /**
+     * 5万个词的词库，匹配结果与逐词查找一致，并对比两者的耗时
+     */
+    @Test
+    void testLargeDictionary() {
+        Random random = new Random(2);
+        // 常用汉字范围内随机组词
+        Set<String> dict = new LinkedHashSet<>();
+        while (dict.size() < 50_000) {
+            dict.add(randomChinese(random, 2 + random.nextInt(4)));
+        }
+        List<String> words = new ArrayList<>(dict);
+        long begin = System.nanoTime();
+        DoubleArrayAhoCorasick automaton = new DoubleArrayAhoCorasick(words);
+        long buildMs = (System.nanoTime() - begin) / 1_000_000;
+
+        // 1万字的文本，随机插入词库中的词
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 10_000) {
+            sb.append(random.nextInt(10) == 0 ? words.get(random.nextInt(words.size())) : randomChinese(random, 5));
+        }
+        String text = sb.toString();
+
+        Set<String> expected = naive(words, text);
+        assertEquals(expected, hits(automaton, words, text));
+        assertTrue(expected.size() > 100);
+
+        // 预热后分别计时
+        char[] chars = text.toCharArray();
+        int[] count = new int[1];
+        for (int i = 0; i < 20; i++) {
+            automaton.match(chars, chars.length, (w, s, e) -> count[0]++);
+        }
+        int rounds = 200;
+        begin = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            automaton.match(chars, chars.length, (w, s, e) -> count[0]++);
+        }
+        long acNanos = (System.nanoTime() - begin) / rounds;
+        begin = System.nanoTime();
+        naive(words, text);
+        long naiveNanos = System.nanoTime() - begin;
+        log.info("词库{}个词，状态数{}，构建{}ms；匹配{}字：自动机{}us，逐词查找{}us",
+                words.size(), automaton.size(), buildMs, text.length(), acNanos / 1000, naiveNanos / 1000);
+        assertTrue(acNanos < naiveNanos);
+    }
+
+    private static Set<String> hits(DoubleArrayAhoCorasick automaton, List<String> words, String text) {
+        Set<String> hits = new HashSet<>();
+        char[] chars = text.toCharArray();
+        automaton.match(chars, chars.length, (w, start, end) -> {
+            assertEquals(words.get(w), text.substring(start, end + 1));
+            hits.add(words.get(w) + "@" + start);
+        });
+        return hits;
+    }
+
+    private static Set<String> naive(List<String> words, String text) {
+        Set<String> hits = new HashSet<>();
+        for (String w : words) {
+            for (int i = text.indexOf(w); i >= 0; i = text.indexOf(w, i + 1)) {
+                hits.add(w + "@" + i);
+            }
+        }
+        return hits;
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    private static String randomChinese(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) (0x4E00 + random.nextInt(3000)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package com.tianji.learning.moderation;
+
+import com.tianji.learning.enums.SensitiveAction;
+import com.tianji.learning.mapper.SensitiveWordMapper;
+import com.tianji.common.test.H2MybatisSupport;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SensitiveWordFilterTest {
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS sensitive_word")
+        void drop();
+
+        @Update("CREATE TABLE sensitive_word (id BIGINT AUTO_INCREMENT PRIMARY KEY, word VARCHAR(64) NOT NULL, " +
+                "action TINYINT NOT NULL, create_time DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                "update_time DATETIME DEFAULT CURRENT_TIMESTAMP)")
+        void create();
+
+        @Update("INSERT INTO sensitive_word (word, action, update_time) VALUES (#{word}, #{action}, #{updateTime})")
+        void insert(@Param("word") String word, @Param("action") int action, @Param("updateTime") String updateTime);
+
+        @Update("DELETE FROM sensitive_word WHERE word = #{word}")
+        void delete(@Param("word") String word);
+    }
+
+    private static SqlSessionTemplate sqlSession;
+
+    private SchemaMapper schemaMapper;
+    private SensitiveWordFilter filter;
+
+    @BeforeAll
+    static void init() {
+        sqlSession = H2MybatisSupport.sqlSession("sensitive_word", SchemaMapper.class, SensitiveWordMapper.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        schemaMapper = sqlSession.getMapper(SchemaMapper.class);
+        schemaMapper.drop();
+        schemaMapper.create();
+        schemaMapper.insert("spam", SensitiveAction.MASK.getValue(), "2025-01-01 00:00:00");
+        schemaMapper.insert("广告", SensitiveAction.MASK.getValue(), "2025-01-01 00:00:00");
+        schemaMapper.insert("赌博", SensitiveAction.REVIEW.getValue(), "2025-01-01 00:00:00");
+        // 拼音变体作为单独的词录入
+        schemaMapper.insert("dubo", SensitiveAction.REVIEW.getValue(), "2025-01-01 00:00:00");
+        schemaMapper.insert("代开发票", SensitiveAction.REJECT.getValue(), "2025-01-01 00:00:00");
+        filter = new SensitiveWordFilter(sqlSession.getMapper(SensitiveWordMapper.class));
+        assertTrue(filter.reload());
+    }
+
+    @Test
+    void testActions() {
+        ModerationResult pass = filter.check("这个问题怎么解决");
+        assertNull(pass.getAction());
+        assertEquals("这个问题怎么解决", pass.getText());
+
+        ModerationResult mask = filter.check("加群看广告啦");
+        assertEquals(SensitiveAction.MASK, mask.getAction());
+        assertEquals("加群看**啦", mask.getText());
+
+        ModerationResult review = filter.check("这里可以赌博");
+        assertTrue(review.needsReview());
+        assertEquals("这里可以赌博", review.getText());
+
+        assertTrue(filter.check("代开发票找我").isRejected());
+        // 命中多个词时取最严格的处理方式
+        ModerationResult mixed = filter.check("广告、赌博、代开发票");
+        assertTrue(mixed.isRejected());
+        assertEquals(Set.of("广告", "赌博", "代开发票"), mixed.getHits());
+
+        assertNull(filter.check(null).getAction());
+        assertNull(filter.check("").getAction());
+    }
+
+    @Test
+    void testNormalizationEvasions() {
+        // 全角
+        assertEquals("不要发****", filter.check("不要发ＳＰＡＭ").getText());
+        // 夹杂空白和符号，中间的符号一起替换
+        assertEquals("看*****吧", filter.check("看广 * 告吧").getText());
+        assertEquals("a*******b", filter.check("as-p a_mb").getText());
+        // 西里尔字母和数字替代
+        assertEquals("****", filter.check("ѕраm").getText());
+        assertEquals("****", filter.check("5PAM").getText());
+        // 拼音变体
+        assertTrue(filter.check("一起 Du Bo 吗").needsReview());
+        assertTrue(filter.check("代.开.发.票").isRejected());
+    }
+
+    @Test
+    void testReloadOnlyWhenVersionChanges() {
+        assertFalse(filter.reload());
+        assertNull(filter.check("刷单").getAction());
+
+        // 新增的词在重新加载后生效
+        schemaMapper.insert("刷单", SensitiveAction.REJECT.getValue(), "2025-01-02 00:00:00");
+        assertTrue(filter.reload());
+        assertTrue(filter.check("兼职刷单").isRejected());
+        assertFalse(filter.reload());
+
+        // 删除的词在重新加载后失效
+        schemaMapper.delete("广告");
+        assertTrue(filter.reload());
+        assertNull(filter.check("广告").getAction());
+        assertEquals("****", filter.check("spam").getText());
+    }
+}
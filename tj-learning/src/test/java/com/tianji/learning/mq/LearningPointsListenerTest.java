@@ -0,0 +1,214 @@
+package com.tianji.learning.mq;
+
+import com.tianji.common.utils.DateUtils;
+import com.tianji.learning.constans.RedisConstants;
+import com.tianji.learning.mapper.PointsRecordMapper;
+import com.tianji.learning.mq.message.SignInMessage;
+import com.tianji.learning.service.impl.PointsRecordServiceImpl;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import com.tianji.common.test.H2MybatisSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class LearningPointsListenerTest {
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS points_record")
+        void drop();
+
+        @Update("CREATE TABLE points_record (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id BIGINT, type TINYINT, " +
+                "points INT, create_time DATETIME DEFAULT CURRENT_TIMESTAMP)")
+        void create();
+
+        @Select("SELECT COALESCE(SUM(points), 0) FROM points_record")
+        long sumPoints();
+
+        @Select("SELECT COUNT(*) FROM points_record")
+        long count();
+    }
+
+    /**
+     * 进程内的消息队列替身：按批投递消息，监听器正常返回则整批确认，抛出异常则整批重新入队
+     */
+    static class InProcessQueue {
+        private final BlockingQueue<Message> queue = new LinkedBlockingQueue<>();
+        private int acks;
+
+        void publish(Message message) {
+            queue.add(message);
+        }
+
+        void consume(int batchSize, Consumer<List<Message>> listener) {
+            List<Message> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                try {
+                    listener.accept(batch);
+                    acks++;
+                } catch (RuntimeException e) {
+                    queue.addAll(batch);
+                    throw e;
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private static SqlSessionTemplate sqlSession;
+
+    private final Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter();
+    private final List<Message> recovered = new ArrayList<>();
+    private SchemaMapper schema;
+    private LearningPointsListener listener;
+
+    @BeforeAll
+    static void init() {
+        EmbeddedRedisSupport.redisTemplate();
+        sqlSession = H2MybatisSupport.sqlSession("points_listener", SchemaMapper.class, PointsRecordMapper.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.drop();
+        schema.create();
+        EmbeddedRedisSupport.flushAll();
+        recovered.clear();
+        converter.setCreateMessageIds(true);
+        PointsRecordMapper recordMapper = sqlSession.getMapper(PointsRecordMapper.class);
+        PointsRecordServiceImpl recordService = new PointsRecordServiceImpl(EmbeddedRedisSupport.redisTemplate());
+        ReflectionTestUtils.setField(recordService, "baseMapper", recordMapper);
+        listener = new LearningPointsListener(recordService, converter, (message, cause) -> recovered.add(message));
+    }
+
+    @Test
+    void testBatchAggregate() {
+        // 1.100个用户各签到3次，每次1分
+        InProcessQueue queue = new InProcessQueue();
+        for (int i = 0; i < 3; i++) {
+            for (long userId = 1; userId <= 100; userId++) {
+                queue.publish(converter.toMessage(SignInMessage.of(userId, 1), new MessageProperties()));
+            }
+        }
+        queue.consume(100, listener::listenSignInMessage);
+
+        // 2.3批消息，3次确认；每批内同一用户合并为一行
+        assertEquals(3, queue.acks);
+        assertEquals(300, schema.count());
+        assertEquals(300, schema.sumPoints());
+        assertTrue(recovered.isEmpty());
+    }
+
+    @Test
+    void testCapAcrossBatch() {
+        // 1.同一用户一批内发布10次问答，每次5分，上限20分
+        InProcessQueue queue = new InProcessQueue();
+        for (int i = 0; i < 10; i++) {
+            queue.publish(converter.toMessage(1L, new MessageProperties()));
+        }
+        queue.consume(100, listener::listenWriteReplyMessage);
+        assertEquals(1, schema.count());
+        assertEquals(20, schema.sumPoints());
+    }
+
+    @Test
+    void testBadMessageIsolated() {
+        InProcessQueue queue = new InProcessQueue();
+        queue.publish(converter.toMessage(SignInMessage.of(1L, 1), new MessageProperties()));
+        // 1.无法解析的消息
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setHeader("__TypeId__", SignInMessage.class.getName());
+        Message broken = new Message("{not json".getBytes(StandardCharsets.UTF_8), properties);
+        queue.publish(broken);
+        // 2.数据有误的消息
+        Message invalid = converter.toMessage(SignInMessage.of(null, 1), new MessageProperties());
+        queue.publish(invalid);
+        queue.publish(converter.toMessage(SignInMessage.of(2L, 1), new MessageProperties()));
+
+        queue.consume(100, listener::listenSignInMessage);
+
+        // 3.只有问题消息进入失败队列，其它消息正常处理，整批确认
+        assertEquals(List.of(broken, invalid), recovered);
+        assertEquals(2, schema.sumPoints());
+        assertEquals(1, queue.acks);
+    }
+
+    /**
+     * 写入数据库失败后整批重新投递，积分不会重复累加，问题消息只进入一次失败队列
+     */
+    @Test
+    void testRedeliveryAfterFailure() {
+        InProcessQueue queue = new InProcessQueue();
+        for (int i = 0; i < 10; i++) {
+            queue.publish(converter.toMessage(1L, new MessageProperties()));
+        }
+        Message invalid = converter.toMessage("not a user id", new MessageProperties());
+        queue.publish(invalid);
+
+        // 1.积分表不可用，Redis已累加积分，整批重新入队
+        schema.drop();
+        assertThrows(RuntimeException.class, () -> queue.consume(100, listener::listenWriteReplyMessage));
+        assertEquals(0, queue.acks);
+        assertTrue(recovered.isEmpty());
+
+        // 2.恢复后重新投递，每日上限和排行榜只累加一次
+        schema.create();
+        queue.consume(100, listener::listenWriteReplyMessage);
+        assertEquals(1, queue.acks);
+        assertEquals(1, schema.count());
+        assertEquals(20, schema.sumPoints());
+        String boardKey = RedisConstants.POINTS_BOARD_KEY_PREFIX
+                + DateUtils.POINTS_BOARD_SUFFIX_FORMATTER.format(LocalDateTime.now());
+        assertEquals(20D, EmbeddedRedisSupport.redisTemplate().opsForZSet().score(boardKey, "1"));
+        assertEquals(List.of(invalid), recovered);
+    }
+
+    @Test
+    void testThroughput() {
+        int messages = 500;
+        // 1.逐条消费：每条消息单独调用一次监听器
+        InProcessQueue single = new InProcessQueue();
+        for (int i = 0; i < messages; i++) {
+            single.publish(converter.toMessage(SignInMessage.of((long) i % 200, 1), new MessageProperties()));
+        }
+        long begin = System.nanoTime();
+        single.consume(1, listener::listenSignInMessage);
+        long singleNanos = System.nanoTime() - begin;
+
+        // 2.批量消费
+        EmbeddedRedisSupport.flushAll();
+        InProcessQueue batch = new InProcessQueue();
+        for (int i = 0; i < messages; i++) {
+            batch.publish(converter.toMessage(SignInMessage.of((long) i % 200 + 1000, 1), new MessageProperties()));
+        }
+        begin = System.nanoTime();
+        batch.consume(100, listener::listenSignInMessage);
+        long batchNanos = System.nanoTime() - begin;
+
+        log.info("{}条积分消息，逐条消费耗时{}ms，批量消费耗时{}ms", messages, singleNanos / 1_000_000, batchNanos / 1_000_000);
+        assertEquals(messages, single.acks);
+        assertEquals(messages / 100, batch.acks);
+        assertEquals(2L * messages, schema.sumPoints());
+        assertTrue(batchNanos < singleNanos, "批量消费应当快于逐条消费");
+    }
+}
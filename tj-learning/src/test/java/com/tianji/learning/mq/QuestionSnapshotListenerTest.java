@@ -0,0 +1,277 @@
+package com.tianji.learning.mq;
+
+import com.tianji.api.cache.CategoryCache;
+import com.tianji.api.client.course.CatalogueClient;
+import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.client.search.SearchClient;
+import com.tianji.api.client.user.UserClient;
+import com.tianji.api.dto.course.CataSimpleInfoDTO;
+import com.tianji.api.dto.course.CourseSimpleInfoDTO;
+import com.tianji.api.dto.user.UserDTO;
+import com.tianji.common.utils.UserContext;
+import com.tianji.learning.cache.ReplyHotRanking;
+import com.tianji.learning.domain.dto.QuestionFormDTO;
+import com.tianji.learning.domain.po.InteractionQuestion;
+import com.tianji.learning.handler.QuestionSnapshotBackfillHandler;
+import com.tianji.learning.mapper.InteractionQuestionMapper;
+import com.tianji.learning.mapper.InteractionReplyMapper;
+import com.tianji.learning.mapper.SensitiveWordMapper;
+import com.tianji.learning.moderation.SensitiveWordFilter;
+import com.tianji.learning.service.impl.InteractionQuestionServiceImpl;
+import com.tianji.common.test.H2MybatisSupport;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class QuestionSnapshotListenerTest {
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS interaction_question")
+        void drop();
+
+        @Update("CREATE TABLE interaction_question (id BIGINT PRIMARY KEY, title VARCHAR(255), description VARCHAR(2048), " +
+                "course_id BIGINT, chapter_id BIGINT, section_id BIGINT, user_id BIGINT, latest_answer_id BIGINT, " +
+                "answer_times INT DEFAULT 0, anonymity BIT DEFAULT 0, hidden BIT DEFAULT 0, status TINYINT DEFAULT 0, " +
+                "course_name VARCHAR(64), chapter_name VARCHAR(64), section_name VARCHAR(64), " +
+                "category_name VARCHAR(64), user_name VARCHAR(64), " +
+                "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, update_time DATETIME DEFAULT CURRENT_TIMESTAMP)")
+        void create();
+    }
+
+    private static SqlSessionTemplate sqlSession;
+
+    private InteractionQuestionMapper questionMapper;
+    private CourseClient courseClient;
+    private CatalogueClient catalogueClient;
+    private UserClient userClient;
+    private QuestionSnapshotListener listener;
+    private InteractionQuestionServiceImpl service;
+
+    /**
+     * 课程、目录、用户服务的“最新”数据
+     */
+    private final Map<Long, String> courseNames = new HashMap<>();
+    private final Map<Long, String> cataNames = new HashMap<>();
+    private final Map<Long, String> userNames = new HashMap<>();
+
+    @BeforeAll
+    static void init() throws Exception {
+        sqlSession = H2MybatisSupport.sqlSession("interaction_question", SchemaMapper.class, InteractionQuestionMapper.class);
+        Configuration configuration = sqlSession.getConfiguration();
+        String resource = "mapper/InteractionQuestionMapper.xml";
+        try (InputStream in = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        SchemaMapper schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.drop();
+        schema.create();
+        questionMapper = sqlSession.getMapper(InteractionQuestionMapper.class);
+
+        courseNames.clear();
+        cataNames.clear();
+        userNames.clear();
+        courseClient = mock(CourseClient.class);
+        when(courseClient.getSimpleInfoList(any())).thenAnswer(invocation -> {
+            List<CourseSimpleInfoDTO> list = new ArrayList<>();
+            for (Long id : invocation.<Iterable<Long>>getArgument(0)) {
+                if (courseNames.containsKey(id)) {
+                    CourseSimpleInfoDTO dto = new CourseSimpleInfoDTO();
+                    dto.setId(id);
+                    dto.setName(courseNames.get(id));
+                    dto.setFirstCateId(1L);
+                    dto.setSecondCateId(2L);
+                    dto.setThirdCateId(3L);
+                    list.add(dto);
+                }
+            }
+            return list;
+        });
+        catalogueClient = mock(CatalogueClient.class);
+        when(catalogueClient.batchQueryCatalogue(any())).thenAnswer(invocation -> {
+            List<CataSimpleInfoDTO> list = new ArrayList<>();
+            for (Long id : invocation.<Iterable<Long>>getArgument(0)) {
+                if (cataNames.containsKey(id)) {
+                    CataSimpleInfoDTO dto = new CataSimpleInfoDTO();
+                    dto.setId(id);
+                    dto.setName(cataNames.get(id));
+                    list.add(dto);
+                }
+            }
+            return list;
+        });
+        userClient = mock(UserClient.class);
+        when(userClient.queryUserById(anyLong())).thenAnswer(invocation -> {
+            Long id = invocation.getArgument(0);
+            if (!userNames.containsKey(id)) {
+                return null;
+            }
+            UserDTO user = new UserDTO();
+            user.setId(id);
+            user.setName(userNames.get(id));
+            return user;
+        });
+        CategoryCache categoryCache = mock(CategoryCache.class);
+        when(categoryCache.getCategoryNames(any())).thenReturn("后端/Java/框架");
+
+        service = new InteractionQuestionServiceImpl(mock(InteractionReplyMapper.class),
+                userClient, courseClient, mock(SearchClient.class), catalogueClient, categoryCache,
+                new SensitiveWordFilter(mock(SensitiveWordMapper.class)), mock(ReplyHotRanking.class));
+        ReflectionTestUtils.setField(service, "baseMapper", questionMapper);
+        listener = new QuestionSnapshotListener(service);
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserContext.removeUser();
+    }
+
+    @Test
+    void testSnapshotWrittenOnCreate() {
+        courseNames.put(1L, "Java入门");
+        cataNames.put(11L, "第一章");
+        cataNames.put(111L, "第一节");
+        userNames.put(7L, "张三");
+        UserContext.setUser(7L);
+
+        QuestionFormDTO form = new QuestionFormDTO();
+        form.setCourseId(1L);
+        form.setChapterId(11L);
+        form.setSectionId(111L);
+        form.setTitle("问题");
+        form.setAnonymity(false);
+        service.saveQuestion(form);
+
+        InteractionQuestion q = questionMapper.selectList(null).get(0);
+        assertEquals("Java入门", q.getCourseName());
+        assertEquals("第一章", q.getChapterName());
+        assertEquals("第一节", q.getSectionName());
+        assertEquals("后端/Java/框架", q.getCategoryName());
+        assertEquals("张三", q.getUserName());
+    }
+
+    @Test
+    void testCourseChangeReplayRepairsSnapshot() {
+        insert(1L, 1L, 11L, 111L, 7L);
+        insert(2L, 1L, 12L, 121L, 8L);
+        insert(3L, 2L, 21L, 211L, 7L);
+
+        // 1.课程1改名，目录改名，课程2不变
+        courseNames.put(1L, "Java进阶");
+        courseNames.put(2L, "旧课程2");
+        cataNames.put(11L, "新第一章");
+        cataNames.put(111L, "新第一节");
+        cataNames.put(12L, "新第二章");
+        cataNames.put(121L, "新第二节");
+
+        // 2.同一条消息重复投递
+        listener.listenCourseChange(1L);
+        listener.listenCourseChange(1L);
+
+        InteractionQuestion q1 = questionMapper.selectById(1L);
+        assertEquals("Java进阶", q1.getCourseName());
+        assertEquals("后端/Java/框架", q1.getCategoryName());
+        assertEquals("新第一章", q1.getChapterName());
+        assertEquals("新第一节", q1.getSectionName());
+        InteractionQuestion q2 = questionMapper.selectById(2L);
+        assertEquals("新第二章", q2.getChapterName());
+        assertEquals("新第二节", q2.getSectionName());
+        // 其它课程的问题不受影响
+        InteractionQuestion q3 = questionMapper.selectById(3L);
+        assertEquals("旧课程", q3.getCourseName());
+        assertEquals("旧章", q3.getChapterName());
+
+        // 3.旧消息在课程再次改名后才被重复消费，仍然按最新数据修复
+        courseNames.put(1L, "Java高级");
+        listener.listenCourseChange(1L);
+        assertEquals("Java高级", questionMapper.selectById(1L).getCourseName());
+        // 每次修复只批量查询一次目录
+        verify(catalogueClient, times(3)).batchQueryCatalogue(any());
+    }
+
+    @Test
+    void testCourseMissingKeepsSnapshot() {
+        insert(1L, 1L, 11L, 111L, 7L);
+        // 课程已删除，保留原来的快照
+        listener.listenCourseChange(1L);
+        assertEquals("旧课程", questionMapper.selectById(1L).getCourseName());
+        verify(catalogueClient, never()).batchQueryCatalogue(any());
+    }
+
+    @Test
+    void testUserChangeReplayRepairsSnapshot() {
+        insert(1L, 1L, 11L, 111L, 7L);
+        insert(2L, 2L, 21L, 211L, 7L);
+        insert(3L, 1L, 11L, 111L, 8L);
+
+        userNames.put(7L, "李四");
+        listener.listenUserChange(7L);
+        listener.listenUserChange(7L);
+
+        assertEquals("李四", questionMapper.selectById(1L).getUserName());
+        assertEquals("李四", questionMapper.selectById(2L).getUserName());
+        assertEquals("旧用户", questionMapper.selectById(3L).getUserName());
+    }
+
+    @Test
+    void testBackfillLegacyQuestions() {
+        // 1.上线前创建的问题没有快照，问题4的课程和用户已不存在
+        for (long id = 1; id <= 4; id++) {
+            questionMapper.insert(new InteractionQuestion().setId(id).setTitle("问题" + id)
+                    .setCourseId(id == 4 ? 9L : 1L).setChapterId(11L).setSectionId(111L)
+                    .setUserId(id == 4 ? 9L : 6L + id % 2).setAnonymity(false).setHidden(false));
+        }
+        courseNames.put(1L, "Java入门");
+        cataNames.put(11L, "第一章");
+        cataNames.put(111L, "第一节");
+        userNames.put(6L, "张三");
+        userNames.put(7L, "李四");
+
+        // 2.每批2个，第一批修复了课程1的全部问题，第二批只剩问题4，同一课程只修复一次
+        QuestionSnapshotBackfillHandler handler = new QuestionSnapshotBackfillHandler(questionMapper, service);
+        assertEquals(3, handler.backfill(2));
+        for (long id = 1; id <= 3; id++) {
+            InteractionQuestion q = questionMapper.selectById(id);
+            assertEquals("Java入门", q.getCourseName());
+            assertEquals("第一章", q.getChapterName());
+            assertEquals("第一节", q.getSectionName());
+            assertEquals("后端/Java/框架", q.getCategoryName());
+            assertEquals(id % 2 == 0 ? "张三" : "李四", q.getUserName());
+        }
+        verify(courseClient, times(2)).getSimpleInfoList(any());
+        assertNull(questionMapper.selectById(4L).getCourseName());
+
+        // 3.再次执行只剩下无法修复的问题
+        assertEquals(1, handler.backfill(2));
+    }
+
+    private void insert(Long id, Long courseId, Long chapterId, Long sectionId, Long userId) {
+        InteractionQuestion q = new InteractionQuestion()
+                .setId(id).setTitle("问题" + id).setCourseId(courseId).setChapterId(chapterId)
+                .setSectionId(sectionId).setUserId(userId).setAnonymity(false).setHidden(false)
+                .setCourseName("旧课程").setChapterName("旧章").setSectionName("旧节")
+                .setCategoryName("旧分类").setUserName("旧用户");
+        questionMapper.insert(q);
+    }
+}
@@ -0,0 +1,227 @@
+package com.tianji.learning.service.impl;
+
+import com.tianji.api.client.course.CatalogueClient;
+import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.dto.course.CourseSimpleInfoDTO;
+import com.tianji.learning.cache.WeeklyStudyCounter;
+import com.tianji.learning.constans.RedisConstants;
+import com.tianji.learning.domain.po.LearningLesson;
+import com.tianji.learning.enums.LessonStatus;
+import com.tianji.learning.mapper.LearningLessonMapper;
+import com.tianji.learning.mapper.LearningRecordMapper;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import com.tianji.common.test.H2MybatisSupport;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LearningLessonServiceImplTest {
+
+    private static final long USER_ID = 1L;
+    private static final int SECTION_NUM = 10;
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS learning_lesson")
+        void drop();
+
+        @Update("CREATE TABLE learning_lesson (id BIGINT PRIMARY KEY, user_id BIGINT, course_id BIGINT, " +
+                "status TINYINT DEFAULT 0, week_freq TINYINT, plan_status TINYINT DEFAULT 0, " +
+                "learned_sections INT DEFAULT 0, latest_section_id BIGINT, latest_learn_time DATETIME, " +
+                "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, expire_time DATETIME, " +
+                "update_time DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                "CONSTRAINT uk_user_course UNIQUE (user_id, course_id))")
+        void create();
+    }
+
+    private static StringRedisTemplate redisTemplate;
+    private static SqlSessionTemplate sqlSession;
+
+    private LearningLessonMapper lessonMapper;
+    private LearningLessonServiceImpl service;
+
+    @BeforeAll
+    static void init() throws Exception {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+        sqlSession = H2MybatisSupport.sqlSession("learning_lesson", SchemaMapper.class, LearningLessonMapper.class);
+        Configuration configuration = sqlSession.getConfiguration();
+        String resource = "mapper/LearningLessonMapper.xml";
+        try (InputStream in = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        SchemaMapper schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.drop();
+        schema.create();
+        EmbeddedRedisSupport.flushAll();
+
+        CourseClient courseClient = mock(CourseClient.class);
+        // 课程id为n的课程有效期为n个月，课程100永久有效，每门课程10个小节
+        when(courseClient.getSimpleInfoList(any())).thenAnswer(invocation -> {
+            List<CourseSimpleInfoDTO> list = new ArrayList<>();
+            for (Long id : invocation.<Iterable<Long>>getArgument(0)) {
+                CourseSimpleInfoDTO dto = new CourseSimpleInfoDTO();
+                dto.setId(id);
+                dto.setValidDuration(id == 100 ? null : id.intValue());
+                dto.setSectionNum(SECTION_NUM);
+                list.add(dto);
+            }
+            return list;
+        });
+        lessonMapper = sqlSession.getMapper(LearningLessonMapper.class);
+        service = new LearningLessonServiceImpl(courseClient, mock(CatalogueClient.class),
+                mock(LearningRecordMapper.class), new WeeklyStudyCounter(redisTemplate), redisTemplate);
+        ReflectionTestUtils.setField(service, "baseMapper", lessonMapper);
+    }
+
+    @Test
+    void testConcurrentReplayEnrollOnce() throws Exception {
+        LocalDateTime payTime = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        List<Long> courseIds = List.of(1L, 2L, 3L, 100L);
+
+        // 1.同一条支付消息被16个消费者同时重复消费
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                service.addUserLessons(USER_ID, courseIds, payTime);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        // 2.每门课程只有一行，过期时间从支付时间计算
+        List<LearningLesson> lessons = lessonMapper.selectList(null);
+        assertEquals(courseIds.size(), lessons.size());
+        assertEquals(courseIds, lessons.stream().map(LearningLesson::getCourseId).sorted().collect(Collectors.toList()));
+        for (LearningLesson lesson : lessons) {
+            if (lesson.getCourseId() == 100L) {
+                assertNull(lesson.getExpireTime());
+            } else {
+                assertEquals(payTime.plusMonths(lesson.getCourseId()), lesson.getExpireTime());
+            }
+            assertEquals(LessonStatus.NOT_BEGIN, lesson.getStatus());
+        }
+    }
+
+    @Test
+    void testRenewKeepsProgress() {
+        LocalDateTime firstPay = LocalDateTime.now().minusMonths(3).truncatedTo(ChronoUnit.SECONDS);
+        service.addUserLessons(USER_ID, List.of(1L), firstPay);
+        // 1.学习了2个小节后过期
+        LearningLesson lesson = lessonMapper.selectList(null).get(0);
+        lessonMapper.updateById(new LearningLesson().setId(lesson.getId())
+                .setLearnedSections(2).setStatus(LessonStatus.EXPIRED));
+
+        // 2.重新购买：保留进度，延长有效期，恢复为学习中
+        LocalDateTime secondPay = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        service.addUserLessons(USER_ID, List.of(1L), secondPay);
+        lesson = lessonMapper.selectById(lesson.getId());
+        assertEquals(2, lesson.getLearnedSections());
+        assertEquals(LessonStatus.LEARNING, lesson.getStatus());
+        assertEquals(secondPay.plusMonths(1), lesson.getExpireTime());
+
+        // 3.第一次支付的消息重复投递，不会缩短有效期
+        service.addUserLessons(USER_ID, List.of(1L), firstPay);
+        lesson = lessonMapper.selectById(lesson.getId());
+        assertEquals(secondPay.plusMonths(1), lesson.getExpireTime());
+        assertEquals(1, lessonMapper.selectCount(null));
+    }
+
+    @Test
+    void testRenewKeepsFinished() {
+        LocalDateTime firstPay = LocalDateTime.now().minusMonths(3).truncatedTo(ChronoUnit.SECONDS);
+        service.addUserLessons(USER_ID, List.of(1L, 2L), firstPay);
+        // 1.课程1学完全部小节，课程2学了一部分，之后都过期
+        for (LearningLesson lesson : lessonMapper.selectList(null)) {
+            lessonMapper.updateById(new LearningLesson().setId(lesson.getId()).setStatus(LessonStatus.EXPIRED)
+                    .setLearnedSections(lesson.getCourseId() == 1L ? SECTION_NUM : 2));
+        }
+
+        // 2.重新购买：学完的课程仍然是已学完，未学完的恢复为学习中
+        service.addUserLessons(USER_ID, List.of(1L, 2L), LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
+        for (LearningLesson lesson : lessonMapper.selectList(null)) {
+            assertEquals(lesson.getCourseId() == 1L ? LessonStatus.FINISHED : LessonStatus.LEARNING, lesson.getStatus());
+        }
+    }
+
+    @Test
+    void testRefundIdempotentPerOrder() {
+        LocalDateTime payTime = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        service.addUserLessons(USER_ID, List.of(1L, 2L, 3L), payTime);
+
+        // 1.订单1退款课程1和2，一条DELETE删除
+        service.refundUserLessons(1L, USER_ID, List.of(1L, 2L));
+        assertEquals(List.of(3L), courseIds());
+
+        // 2.用户重新购买课程1（订单2），之后订单1的退款消息重复投递，不会删除新购买的课程
+        service.addUserLessons(USER_ID, List.of(1L), payTime.plusMinutes(1));
+        service.refundUserLessons(1L, USER_ID, List.of(1L, 2L));
+        assertEquals(List.of(1L, 3L), courseIds());
+
+        // 3.订单2退款课程1
+        service.refundUserLessons(2L, USER_ID, List.of(1L));
+        assertEquals(List.of(3L), courseIds());
+    }
+
+    /**
+     * 删除课表的事务提交前进程退出，不会记录已退款，重新投递的退款消息仍然删除课表
+     */
+    @Test
+    void testRefundMarkedAfterCommit() {
+        LocalDateTime payTime = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        service.addUserLessons(USER_ID, List.of(1L, 2L), payTime);
+        String key = RedisConstants.LESSON_REFUND_KEY_PREFIX + 1;
+
+        // 1.在事务中退款，提交前退出
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            service.refundUserLessons(1L, USER_ID, List.of(1L));
+            assertFalse(redisTemplate.hasKey(key));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertFalse(redisTemplate.hasKey(key));
+
+        // 2.重新投递，删除后记录已退款
+        service.addUserLessons(USER_ID, List.of(1L), payTime);
+        service.refundUserLessons(1L, USER_ID, List.of(1L));
+        assertEquals(List.of(2L), courseIds());
+        assertEquals(Set.of("1"), redisTemplate.opsForSet().members(key));
+    }
+
+    private List<Long> courseIds() {
+        return lessonMapper.selectList(null).stream()
+                .map(LearningLesson::getCourseId).sorted().collect(Collectors.toList());
+    }
+}
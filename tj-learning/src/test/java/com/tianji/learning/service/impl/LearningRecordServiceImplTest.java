@@ -0,0 +1,273 @@
+package com.tianji.learning.service.impl;
+
+import com.tianji.api.client.course.CatalogueClient;
+import com.tianji.api.client.course.CourseClient;
+import com.tianji.common.utils.UserContext;
+import com.tianji.learning.cache.CourseStructureCache;
+import com.tianji.learning.cache.LearningActivityCounter;
+import com.tianji.learning.cache.WeeklyStudyCounter;
+import com.tianji.learning.domain.dto.LearningRecordBatchDTO;
+import com.tianji.learning.domain.dto.LearningRecordReportDTO;
+import com.tianji.learning.domain.po.LearningLesson;
+import com.tianji.learning.domain.po.LearningRecord;
+import com.tianji.learning.domain.vo.LearningRecordBatchVO;
+import com.tianji.learning.enums.LessonStatus;
+import com.tianji.learning.mapper.LearningLessonMapper;
+import com.tianji.learning.mapper.LearningRecordMapper;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import com.tianji.common.test.H2MybatisSupport;
+import com.tianji.learning.utils.LearningRecordDelayTaskHandler;
+import org.apache.ibatis.annotations.Update;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LearningRecordServiceImplTest {
+
+    private static final long USER_ID = 1L;
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS learning_record")
+        void dropRecord();
+
+        @Update("CREATE TABLE learning_record (id BIGINT PRIMARY KEY, lesson_id BIGINT, section_id BIGINT, " +
+                "user_id BIGINT, moment INT DEFAULT 0, finished BIT DEFAULT 0, finish_time DATETIME, commit_time DATETIME, " +
+                "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, update_time DATETIME DEFAULT CURRENT_TIMESTAMP)")
+        void createRecord();
+
+        @Update("DROP TABLE IF EXISTS learning_lesson")
+        void dropLesson();
+
+        @Update("CREATE TABLE learning_lesson (id BIGINT PRIMARY KEY, user_id BIGINT, course_id BIGINT, " +
+                "status TINYINT DEFAULT 0, week_freq TINYINT, plan_status TINYINT DEFAULT 0, " +
+                "learned_sections INT DEFAULT 0, latest_section_id BIGINT, latest_learn_time DATETIME, " +
+                "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, expire_time DATETIME, " +
+                "update_time DATETIME DEFAULT CURRENT_TIMESTAMP)")
+        void createLesson();
+    }
+
+    private static StringRedisTemplate redisTemplate;
+    private static SqlSessionTemplate sqlSession;
+
+    private LearningRecordMapper recordMapper;
+    private LearningLessonMapper lessonMapper;
+    private LearningRecordDelayTaskHandler delayTaskHandler;
+    private WeeklyStudyCounter weeklyStudyCounter;
+    private LearningRecordServiceImpl service;
+    private LocalDateTime base;
+
+    @BeforeAll
+    static void init() {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+        sqlSession = H2MybatisSupport.sqlSession("learning_record_batch",
+                SchemaMapper.class, LearningRecordMapper.class, LearningLessonMapper.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        SchemaMapper schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.dropRecord();
+        schema.createRecord();
+        schema.dropLesson();
+        schema.createLesson();
+        EmbeddedRedisSupport.flushAll();
+        recordMapper = sqlSession.getMapper(LearningRecordMapper.class);
+        lessonMapper = sqlSession.getMapper(LearningLessonMapper.class);
+
+        // 课表1、3属于当前用户，课表2属于其它用户；课程1有10个小节，课程3只有1个小节
+        insertLesson(1L, USER_ID, 1L);
+        insertLesson(2L, 2L, 1L);
+        insertLesson(3L, USER_ID, 3L);
+        LearningRecord record = new LearningRecord();
+        record.setId(100L);
+        record.setLessonId(1L);
+        record.setSectionId(10L);
+        record.setUserId(USER_ID);
+        record.setMoment(0);
+        record.setFinished(false);
+        recordMapper.insert(record);
+
+        LearningLessonServiceImpl lessonService = new LearningLessonServiceImpl(mock(CourseClient.class),
+                mock(CatalogueClient.class), recordMapper, mock(WeeklyStudyCounter.class), redisTemplate);
+        ReflectionTestUtils.setField(lessonService, "baseMapper", lessonMapper);
+        CourseStructureCache courseStructureCache = mock(CourseStructureCache.class);
+        when(courseStructureCache.getSectionNum(any())).thenAnswer(i -> i.<Long>getArgument(0) == 3L ? 1 : 10);
+        delayTaskHandler = new LearningRecordDelayTaskHandler(redisTemplate, recordMapper, lessonMapper);
+        weeklyStudyCounter = mock(WeeklyStudyCounter.class);
+        service = new LearningRecordServiceImpl(lessonService, courseStructureCache, delayTaskHandler, weeklyStudyCounter,
+                new LearningActivityCounter(redisTemplate, lessonMapper));
+        ReflectionTestUtils.setField(service, "baseMapper", recordMapper);
+
+        base = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        UserContext.setUser(USER_ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserContext.removeUser();
+    }
+
+    @Test
+    void testOutOfOrderReportsRejected() {
+        // 1.同一批中比已有上报更早的上报被拒绝
+        LearningRecordBatchVO vo = service.addLearningRecords(batch(
+                report(1, 10, 30, 3), report(1, 10, 10, 1), report(1, 10, 20, 2)));
+        assertEquals(1, vo.getAccepted());
+        assertEquals(2, vo.getRejected());
+        assertEquals(0, vo.getFinished());
+
+        // 2.不晚于已记录进度的上报被拒绝，例如断线重连后补报的旧进度
+        vo = service.addLearningRecords(batch(report(1, 10, 25, 2)));
+        assertEquals(0, vo.getAccepted());
+        assertEquals(1, vo.getRejected());
+
+        // 3.延迟写入数据库的是最新的进度
+        vo = service.addLearningRecords(batch(report(1, 10, 40, 4)));
+        assertEquals(1, vo.getAccepted());
+        delayTaskHandler.drain(System.currentTimeMillis() + LearningRecordDelayTaskHandler.FLUSH_DELAY.toMillis() + 1);
+        assertEquals(40, recordMapper.selectById(100L).getMoment());
+        assertEquals(10L, lessonMapper.selectById(1L).getLatestSectionId());
+    }
+
+    /**
+     * 缓存过期后按数据库中的上报时间拒绝乱序的上报，例如离线一段时间后补报的旧进度
+     */
+    @Test
+    void testOutOfOrderRejectedAfterCacheExpired() {
+        // 1.只更新进度的上报延迟写入数据库，新小节的上报直接插入
+        LearningRecordBatchVO vo = service.addLearningRecords(batch(report(1, 10, 30, 5), report(1, 20, 10, 5)));
+        assertEquals(2, vo.getAccepted());
+        delayTaskHandler.drain(System.currentTimeMillis() + LearningRecordDelayTaskHandler.FLUSH_DELAY.toMillis() + 1);
+        assertEquals(base.plusSeconds(5), recordMapper.selectById(100L).getCommitTime());
+
+        // 2.缓存过期后补报更早的进度，被拒绝
+        EmbeddedRedisSupport.flushAll();
+        vo = service.addLearningRecords(batch(report(1, 10, 20, 4), report(1, 20, 5, 5)));
+        assertEquals(0, vo.getAccepted());
+        assertEquals(2, vo.getRejected());
+        assertEquals(30, recordMapper.selectById(100L).getMoment());
+    }
+
+    /**
+     * 未来的上报时间按当前时间处理，不会让之后正常的上报被当作乱序拒绝，学完时间也不会在未来
+     */
+    @Test
+    void testFutureCommitTimeLimited() {
+        int oneDay = 24 * 3600;
+        LearningRecordBatchVO vo = service.addLearningRecords(batch(report(1, 10, 30, oneDay), report(1, 20, 60, oneDay)));
+        assertEquals(2, vo.getAccepted());
+        LocalDateTime limit = LocalDateTime.now().plus(LearningRecordServiceImpl.MAX_CLOCK_SKEW);
+        LearningRecord finished = recordMapper.selectList(null).stream()
+                .filter(r -> r.getSectionId() == 20L).findFirst().orElseThrow();
+        assertFalse(finished.getFinishTime().isAfter(limit));
+        assertFalse(finished.getCommitTime().isAfter(limit));
+
+        // 之后正常的上报被接受
+        vo = service.addLearningRecords(batch(report(1, 10, 40, 10)));
+        assertEquals(1, vo.getAccepted());
+        delayTaskHandler.drain(System.currentTimeMillis() + LearningRecordDelayTaskHandler.FLUSH_DELAY.toMillis() + 1);
+        assertEquals(40, recordMapper.selectById(100L).getMoment());
+        assertEquals(base.plusSeconds(10), recordMapper.selectById(100L).getCommitTime());
+    }
+
+    @Test
+    void testDuplicateReportsMerged() {
+        // 1.重复的上报合并为一条，新小节只插入一条记录
+        LearningRecordBatchVO vo = service.addLearningRecords(batch(
+                report(1, 20, 5, 1), report(1, 20, 5, 1), report(1, 10, 8, 1)));
+        assertEquals(2, vo.getAccepted());
+        assertEquals(1, vo.getMerged());
+        assertEquals(0, vo.getRejected());
+        List<LearningRecord> records = recordMapper.selectList(null);
+        assertEquals(2, records.size());
+        LearningRecord inserted = records.stream().filter(r -> r.getSectionId() == 20L).findFirst().orElseThrow();
+        assertEquals(USER_ID, inserted.getUserId());
+        assertEquals(5, inserted.getMoment());
+        assertFalse(inserted.getFinished());
+
+        // 2.再次补报同样的进度被拒绝
+        vo = service.addLearningRecords(batch(report(1, 20, 5, 1), report(1, 10, 8, 1)));
+        assertEquals(0, vo.getAccepted());
+        assertEquals(2, vo.getRejected());
+        assertEquals(2, recordMapper.selectCount(null));
+    }
+
+    @Test
+    void testCompletionTransition() {
+        // 1.已有小节超过一半、新小节补报时已超过一半，都是第一次学完；其它用户的课表被拒绝
+        LearningRecordBatchVO vo = service.addLearningRecords(batch(
+                report(1, 10, 40, 1), report(1, 10, 60, 2), report(1, 20, 80, 1),
+                report(2, 10, 90, 1), report(3, 30, 10, 1)));
+        assertEquals(3, vo.getAccepted());
+        assertEquals(1, vo.getMerged());
+        assertEquals(1, vo.getRejected());
+        assertEquals(2, vo.getFinished());
+
+        LearningRecord record = recordMapper.selectById(100L);
+        assertTrue(record.getFinished());
+        assertEquals(60, record.getMoment());
+        assertEquals(base.plusSeconds(2), record.getFinishTime());
+        LearningLesson lesson = lessonMapper.selectById(1L);
+        assertEquals(2, lesson.getLearnedSections());
+        assertEquals(LessonStatus.LEARNING, lesson.getStatus());
+        assertEquals(0, lessonMapper.selectById(2L).getLearnedSections());
+        verify(weeklyStudyCounter, times(2)).incrementFinished(eq(USER_ID), eq(1L), any(), any());
+        // 学完的小节不再有待刷新的任务
+        assertNull(redisTemplate.opsForHash().get(LearningRecordDelayTaskHandler.FLUSH_DATA_KEY, "1:10"));
+
+        // 2.学完后继续观看只更新进度，不重复累加
+        vo = service.addLearningRecords(batch(report(1, 10, 90, 3)));
+        assertEquals(1, vo.getAccepted());
+        assertEquals(0, vo.getFinished());
+        assertEquals(2, lessonMapper.selectById(1L).getLearnedSections());
+
+        // 3.学完课程的最后一个小节，课表状态变为已学完
+        vo = service.addLearningRecords(batch(report(3, 30, 60, 2)));
+        assertEquals(1, vo.getFinished());
+        lesson = lessonMapper.selectById(3L);
+        assertEquals(1, lesson.getLearnedSections());
+        assertEquals(LessonStatus.FINISHED, lesson.getStatus());
+    }
+
+    private void insertLesson(Long id, Long userId, Long courseId) {
+        LearningLesson lesson = new LearningLesson();
+        lesson.setId(id);
+        lesson.setUserId(userId);
+        lesson.setCourseId(courseId);
+        lesson.setLearnedSections(0);
+        lessonMapper.insert(lesson);
+    }
+
+    private LearningRecordBatchDTO batch(LearningRecordReportDTO... reports) {
+        LearningRecordBatchDTO batch = new LearningRecordBatchDTO();
+        batch.setReports(List.of(reports));
+        return batch;
+    }
+
+    /**
+     * 视频总时长100秒的进度上报
+     * @param seconds 上报时间，相对base的秒数
+     */
+    private LearningRecordReportDTO report(long lessonId, long sectionId, int moment, int seconds) {
+        LearningRecordReportDTO report = new LearningRecordReportDTO();
+        report.setLessonId(lessonId);
+        report.setSectionId(sectionId);
+        report.setMoment(moment);
+        report.setDuration(100);
+        report.setCommitTime(base.plusSeconds(seconds));
+        return report;
+    }
+}
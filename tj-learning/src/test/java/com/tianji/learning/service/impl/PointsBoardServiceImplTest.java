@@ -0,0 +1,328 @@
+package com.tianji.learning.service.impl;
+
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.inner.DynamicTableNameInnerInterceptor;
+import com.tianji.api.client.user.UserClient;
+import com.tianji.common.exceptions.DbException;
+import com.tianji.common.utils.DateUtils;
+import com.tianji.common.utils.UserContext;
+import com.tianji.learning.config.PointsBoardProperties;
+import com.tianji.learning.constans.RedisConstants;
+import com.tianji.learning.domain.query.PointsBoardQuery;
+import com.tianji.learning.domain.vo.PointsBoardItemVO;
+import com.tianji.learning.domain.vo.PointsBoardVO;
+import com.tianji.learning.mapper.PointsBoardMapper;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import com.tianji.common.test.H2MybatisSupport;
+import com.tianji.learning.utils.PointsBoardSnapshot;
+import com.tianji.learning.utils.SeasonTableRegistry;
+import com.tianji.learning.utils.TableInfoContext;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.data.redis.connection.DefaultTuple;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+@Slf4j
+class PointsBoardServiceImplTest {
+
+    private static final int SEASON = 5;
+    private static final String TABLE = "points_board_" + SEASON;
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS " + TABLE)
+        void drop();
+
+        @Update("DROP SEQUENCE IF EXISTS points_board_seq")
+        void dropSequence();
+
+        @Update("CREATE SEQUENCE points_board_seq")
+        void createSequence();
+
+        // H2并发多行插入时自增主键会重复，改用序列生成主键
+        @Update("CREATE TABLE " + TABLE + " (id BIGINT DEFAULT NEXT VALUE FOR points_board_seq PRIMARY KEY, user_id BIGINT NOT NULL, " +
+                "points INT NOT NULL, `rank` INT NOT NULL, season INT NOT NULL)")
+        void create();
+
+        @Insert("INSERT INTO " + TABLE + " (user_id, points, `rank`, season) VALUES (#{userId}, 0, #{rank}, " + SEASON + ")")
+        void insert(@Param("userId") long userId,
+                    @Param("rank") int rank);
+
+        @Select("SELECT COUNT(*) FROM " + TABLE)
+        long count();
+
+        @Select("SELECT COUNT(DISTINCT `rank`) FROM " + TABLE)
+        long countDistinctRank();
+
+        @Select("SELECT user_id AS userId, points, `rank` FROM " + TABLE + " WHERE `rank` IN (1, #{rank})")
+        List<Map<String, Object>> selectRanks(@Param("rank") int rank);
+    }
+
+    private static StringRedisTemplate redisTemplate;
+    private static SqlSessionTemplate sqlSession;
+
+    private SchemaMapper schema;
+    private PointsBoardProperties properties;
+    private PointsBoardSnapshot snapshot;
+    private PointsBoardServiceImpl service;
+    private String boardKey;
+    private String currentKey;
+    private String checkpointKey;
+
+    @BeforeAll
+    static void init() throws Exception {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+        sqlSession = H2MybatisSupport.sqlSession("points_board", SchemaMapper.class, PointsBoardMapper.class);
+        Configuration configuration = sqlSession.getConfiguration();
+        // 动态表名与线上配置一致
+        MybatisPlusInterceptor interceptor = new MybatisPlusInterceptor();
+        interceptor.addInnerInterceptor(new DynamicTableNameInnerInterceptor(Map.of("points_board",
+                (sql, tableName) -> TableInfoContext.getInfo() == null ? tableName : TableInfoContext.getInfo())));
+        configuration.addInterceptor(interceptor);
+        // 批量插入语句在XML中
+        String resource = "mapper/PointsBoardMapper.xml";
+        try (InputStream in = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.drop();
+        schema.dropSequence();
+        schema.createSequence();
+        // 建表语句是MySQL语法，提前建好赛季表，注册表启动时会加载
+        schema.create();
+        EmbeddedRedisSupport.flushAll();
+
+        PointsBoardMapper mapper = sqlSession.getMapper(PointsBoardMapper.class);
+        SeasonTableRegistry registry = new SeasonTableRegistry(
+                sqlSession.getConfiguration().getEnvironment().getDataSource(), mapper);
+        registry.init();
+        properties = new PointsBoardProperties();
+        snapshot = new PointsBoardSnapshot(redisTemplate, properties);
+        service = new PointsBoardServiceImpl(redisTemplate, mock(UserClient.class), registry, properties, snapshot);
+        ReflectionTestUtils.setField(service, "baseMapper", mapper);
+
+        boardKey = RedisConstants.POINTS_BOARD_KEY_PREFIX
+                + LocalDateTime.now().minusMonths(1).format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
+        checkpointKey = RedisConstants.POINTS_BOARD_PERSIST_KEY_PREFIX + SEASON;
+        currentKey = RedisConstants.POINTS_BOARD_KEY_PREFIX
+                + LocalDateTime.now().format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
+        UserContext.setUser(1L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserContext.removeUser();
+    }
+
+    @Test
+    void testPersistMillionMembers() {
+        int total = 1_000_000;
+        fillBoard(boardKey, total);
+
+        long begin = System.currentTimeMillis();
+        service.persistPointsBoardToHistory(SEASON);
+        log.info("持久化{}名用户耗时{}ms", total, System.currentTimeMillis() - begin);
+
+        // 1.全部名次写入且不重复
+        assertEquals(total, schema.count());
+        assertEquals(total, schema.countDistinctRank());
+        // 2.名次与积分对应：积分越高名次越靠前
+        for (Map<String, Object> row : schema.selectRanks(total)) {
+            int rank = ((Number) row.get("RANK")).intValue();
+            long userId = ((Number) row.get("USERID")).longValue();
+            assertEquals(rank == 1 ? total : 1, userId);
+        }
+        // 3.核对一致后才删除Redis中的榜单和进度
+        assertFalse(redisTemplate.hasKey(boardKey));
+        assertFalse(redisTemplate.hasKey(checkpointKey));
+    }
+
+    @Test
+    void testResumeFromCheckpoint() {
+        properties.setPersistWindowSize(100);
+        properties.setPersistParallelism(2);
+        fillBoard(boardKey, 10_000);
+        // 1.模拟上次中断：进度记录到3000名，之后的一轮已部分写入
+        for (int rank = 1; rank <= 3500; rank++) {
+            schema.insert(10_001 - rank, rank);
+        }
+        redisTemplate.opsForValue().set(checkpointKey, "3000");
+
+        service.persistPointsBoardToHistory(SEASON);
+
+        // 2.部分写入的数据被清理后重写，没有重复名次
+        assertEquals(10_000, schema.count());
+        assertEquals(10_000, schema.countDistinctRank());
+        assertFalse(redisTemplate.hasKey(boardKey));
+    }
+
+    @Test
+    void testKeepBoardWhenCountMismatch() {
+        properties.setPersistWindowSize(100);
+        fillBoard(boardKey, 1000);
+        // 进度显示前100名已写入，但数据库中并没有这些数据
+        redisTemplate.opsForValue().set(checkpointKey, "100");
+
+        assertThrows(DbException.class, () -> service.persistPointsBoardToHistory(SEASON));
+
+        assertEquals(900, schema.count());
+        assertEquals(1000, redisTemplate.opsForZSet().zCard(boardKey));
+        assertEquals("1000", redisTemplate.opsForValue().get(checkpointKey));
+    }
+
+    @Test
+    void testPageServedFromSnapshot() {
+        fillBoard(currentKey, 1000);
+        snapshot.refresh();
+        resetStats();
+
+        // 1.快照范围内的分页与Redis中的数据一致，不查询ZSet
+        List<PointsBoardVO> pages = new ArrayList<>();
+        for (int pageNo = 1; pageNo <= 10; pageNo++) {
+            pages.add(service.queryPointsBoardBySeason(query(pageNo, 20)));
+        }
+        assertEquals(0, commandCalls("zrevrange"));
+        for (int pageNo = 1; pageNo <= 10; pageNo++) {
+            assertPageMatchesRedis(pageNo, 20, pages.get(pageNo - 1));
+        }
+
+        // 2.超出快照范围时查询Redis
+        resetStats();
+        PointsBoardVO vo = service.queryPointsBoardBySeason(query(11, 20));
+        assertEquals(1, commandCalls("zrevrange"));
+        assertPageMatchesRedis(11, 20, vo);
+    }
+
+    @Test
+    void testSnapshotOfSmallBoard() {
+        fillBoard(currentKey, 30);
+        snapshot.refresh();
+        resetStats();
+
+        // 榜单人数少于快照大小，快照即完整榜单，超出范围的分页直接返回空
+        assertEquals(10, service.queryPointsBoardBySeason(query(3, 10)).getBoardList().size());
+        assertTrue(service.queryPointsBoardBySeason(query(4, 10)).getBoardList().isEmpty());
+        assertEquals(0, commandCalls("zrevrange"));
+    }
+
+    @Test
+    void testNeighborsRankConsistent() {
+        fillBoard(currentKey, 1000);
+        for (long userId : new long[]{1, 2, 500, 999, 1000}) {
+            UserContext.setUser(userId);
+            resetStats();
+            PointsBoardVO vo = service.queryMyNeighbors(5);
+
+            // 1.每次查询只访问两次Redis
+            assertEquals(1, commandCalls("zrevrank"));
+            assertEquals(1, commandCalls("zrevrange"));
+            // 2.我的排名与ZREVRANK一致
+            long expected = redisTemplate.opsForZSet().reverseRank(currentKey, String.valueOf(userId)) + 1;
+            assertEquals(expected, (long) vo.getRank());
+            assertEquals((int) userId, vo.getPoints());
+            // 3.前后各5名，名次连续，靠近榜首或榜尾时截断
+            List<PointsBoardItemVO> list = vo.getBoardList();
+            int first = (int) Math.max(1, expected - 5);
+            int last = (int) Math.min(1000, expected + 5);
+            assertEquals(last - first + 1, list.size());
+            for (int i = 0; i < list.size(); i++) {
+                assertEquals(first + i, list.get(i).getRank());
+                assertEquals(1001 - (first + i), list.get(i).getPoints());
+            }
+        }
+    }
+
+    @Test
+    void testNeighborsNotOnBoard() {
+        fillBoard(currentKey, 10);
+        UserContext.setUser(2000L);
+        PointsBoardVO vo = service.queryMyNeighbors(5);
+        assertNull(vo.getRank());
+        assertTrue(vo.getBoardList().isEmpty());
+    }
+
+    private PointsBoardQuery query(int pageNo, int pageSize) {
+        PointsBoardQuery query = new PointsBoardQuery();
+        query.setPageNo(pageNo);
+        query.setPageSize(pageSize);
+        return query;
+    }
+
+    private void assertPageMatchesRedis(int pageNo, int pageSize, PointsBoardVO vo) {
+        int start = (pageNo - 1) * pageSize;
+        List<ZSetOperations.TypedTuple<String>> expected = new ArrayList<>(
+                redisTemplate.opsForZSet().reverseRangeWithScores(currentKey, start, start + pageSize - 1));
+        List<PointsBoardItemVO> list = vo.getBoardList();
+        assertEquals(expected.size(), list.size());
+        for (int i = 0; i < list.size(); i++) {
+            assertEquals(start + i + 1, list.get(i).getRank());
+            assertEquals(expected.get(i).getScore().intValue(), list.get(i).getPoints());
+        }
+    }
+
+    private void resetStats() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().resetConfigStats();
+            return null;
+        });
+    }
+
+    /**
+     * 从INFO commandstats中读取命令的调用次数
+     */
+    private long commandCalls(String command) {
+        Properties stats = redisTemplate.execute(
+                (RedisCallback<Properties>) connection -> connection.serverCommands().info("commandstats"));
+        String value = stats == null ? null : stats.getProperty("cmdstat_" + command);
+        if (value == null) {
+            return 0;
+        }
+        // calls=1,usec=...
+        return Long.parseLong(value.substring("calls=".length(), value.indexOf(',')));
+    }
+
+    /**
+     * 使用管道写入榜单，userId为i的用户积分为i
+     */
+    private void fillBoard(String boardKey, int total) {
+        byte[] key = boardKey.getBytes(StandardCharsets.UTF_8);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int from = 1; from <= total; from += 10_000) {
+                Set<RedisZSetCommands.Tuple> tuples = new HashSet<>();
+                for (int i = from; i < from + 10_000 && i <= total; i++) {
+                    tuples.add(new DefaultTuple(
+                            String.valueOf(i).getBytes(StandardCharsets.UTF_8), (double) i));
+                }
+                connection.zSetCommands().zAdd(key, tuples);
+            }
+            return null;
+        });
+        assertEquals(total, redisTemplate.opsForZSet().zCard(boardKey));
+    }
+}
@@ -0,0 +1,233 @@
+package com.tianji.learning.service.impl;
+
+import com.tianji.common.utils.DateUtils;
+import com.tianji.learning.constans.RedisConstants;
+import com.tianji.learning.domain.po.PointsRecord;
+import com.tianji.learning.enums.PointsRecordType;
+import com.tianji.learning.mapper.PointsRecordMapper;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import com.tianji.common.test.H2MybatisSupport;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PointsRecordServiceImplTest {
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS points_record")
+        void drop();
+
+        @Update("CREATE TABLE points_record (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id BIGINT, type TINYINT, " +
+                "points TINYINT, create_time DATETIME DEFAULT CURRENT_TIMESTAMP)")
+        void create();
+
+        @Select("SELECT COALESCE(SUM(points), 0) FROM points_record WHERE user_id = #{userId} AND type = #{type}")
+        int sumPoints(long userId, int type);
+    }
+
+    private static StringRedisTemplate redisTemplate;
+    private static SqlSessionTemplate sqlSession;
+
+    private SchemaMapper schema;
+    private PointsRecordMapper recordMapper;
+    private PointsRecordServiceImpl service;
+
+    @BeforeAll
+    static void init() {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+        sqlSession = H2MybatisSupport.sqlSession("points_record", SchemaMapper.class, PointsRecordMapper.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.drop();
+        schema.create();
+        EmbeddedRedisSupport.flushAll();
+        recordMapper = sqlSession.getMapper(PointsRecordMapper.class);
+        service = new PointsRecordServiceImpl(redisTemplate);
+        ReflectionTestUtils.setField(service, "baseMapper", recordMapper);
+    }
+
+    @Test
+    void testConcurrentEventsCapExact() throws Exception {
+        // 1.200个并发的问答积分事件，每次5分，每日上限20分，另一用户同时签到不受上限限制
+        int events = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(events * 2);
+        for (int i = 0; i < events; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                add(1L, 5, PointsRecordType.QA);
+                return null;
+            }));
+            futures.add(pool.submit(() -> {
+                start.await();
+                add(2L, 1, PointsRecordType.SIGN);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        // 2.Redis中当日积分和排行榜积分恰好等于上限
+        LocalDateTime now = LocalDateTime.now();
+        assertEquals("20", redisTemplate.opsForHash().get(dailyKey(1L), String.valueOf(PointsRecordType.QA.getValue())));
+        String boardKey = RedisConstants.POINTS_BOARD_KEY_PREFIX + DateUtils.POINTS_BOARD_SUFFIX_FORMATTER.format(now);
+        assertEquals(20D, redisTemplate.opsForZSet().score(boardKey, "1"));
+        assertEquals(200D, redisTemplate.opsForZSet().score(boardKey, "2"));
+
+        // 3.数据库中的积分与Redis一致
+        assertEquals(4 + events, recordMapper.selectCount(null).intValue());
+        assertEquals(20, schema.sumPoints(1L, PointsRecordType.QA.getValue()));
+        assertEquals(200, schema.sumPoints(2L, PointsRecordType.SIGN.getValue()));
+    }
+
+    @Test
+    void testClampToCap() {
+        add(1L, 15, PointsRecordType.QA);
+        add(1L, 15, PointsRecordType.QA);
+        add(1L, 15, PointsRecordType.QA);
+
+        // 1.第二次只得到剩余的5分，第三次不得分
+        List<PointsRecord> records = recordMapper.selectList(null);
+        assertEquals(2, records.size());
+        assertEquals(5, records.get(1).getPoints());
+        assertEquals(20, schema.sumPoints(1L, PointsRecordType.QA.getValue()));
+    }
+
+    /**
+     * 零点前发生、零点后才处理的事件，计入事件当天的上限，积分记录的时间是事件的时间
+     */
+    @Test
+    void testEventTimeDecidesDay() {
+        LocalDateTime beforeMidnight = LocalDate.now().atStartOfDay().minusSeconds(1);
+        Map<String, PointsRecord> records = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            records.put(UUID.randomUUID().toString(), new PointsRecord().setUserId(1L).setType(PointsRecordType.QA).setPoints(5)
+                    .setCreateTime(beforeMidnight));
+        }
+        records.put(UUID.randomUUID().toString(), new PointsRecord().setUserId(1L).setType(PointsRecordType.QA).setPoints(5));
+        assertEquals(25, service.addPointsRecords(records));
+
+        // 1.前一天和当天分别计算上限
+        String yesterdayKey = RedisConstants.POINTS_DAILY_KEY_PREFIX
+                + beforeMidnight.format(DateTimeFormatter.BASIC_ISO_DATE) + ":1";
+        assertEquals("20", redisTemplate.opsForHash().get(yesterdayKey, String.valueOf(PointsRecordType.QA.getValue())));
+        assertEquals("5", redisTemplate.opsForHash().get(dailyKey(1L), String.valueOf(PointsRecordType.QA.getValue())));
+        // 2.排行榜积分计入当前赛季
+        String boardKey = RedisConstants.POINTS_BOARD_KEY_PREFIX
+                + DateUtils.POINTS_BOARD_SUFFIX_FORMATTER.format(LocalDateTime.now());
+        assertEquals(25D, redisTemplate.opsForZSet().score(boardKey, "1"));
+        // 3.积分记录保留事件的时间
+        List<PointsRecord> saved = recordMapper.selectList(null);
+        assertEquals(2, saved.size());
+        assertEquals(beforeMidnight, saved.get(0).getCreateTime());
+        assertEquals(20, saved.get(0).getPoints());
+        assertEquals(LocalDate.now(), saved.get(1).getCreateTime().toLocalDate());
+    }
+
+    /**
+     * 月初才处理的上月事件计入当前赛季，不写入正在持久化或已删除的上月榜单，也不留下没有过期时间的KEY
+     */
+    @Test
+    void testLateEventCreditedToCurrentSeason() {
+        LocalDateTime lastMonth = LocalDateTime.now().minusMonths(1).withNano(0);
+        Map<String, PointsRecord> records = new LinkedHashMap<>();
+        records.put(UUID.randomUUID().toString(), new PointsRecord().setUserId(1L).setType(PointsRecordType.QA).setPoints(5)
+                .setCreateTime(lastMonth));
+        assertEquals(5, service.addPointsRecords(records));
+
+        String lastBoardKey = RedisConstants.POINTS_BOARD_KEY_PREFIX + DateUtils.POINTS_BOARD_SUFFIX_FORMATTER.format(lastMonth);
+        String boardKey = RedisConstants.POINTS_BOARD_KEY_PREFIX
+                + DateUtils.POINTS_BOARD_SUFFIX_FORMATTER.format(LocalDateTime.now());
+        assertEquals(Boolean.FALSE, redisTemplate.hasKey(lastBoardKey));
+        assertEquals(5D, redisTemplate.opsForZSet().score(boardKey, "1"));
+        // 事件当天的积分已过期，不留下没有过期时间的当日积分
+        String lastDailyKey = RedisConstants.POINTS_DAILY_KEY_PREFIX
+                + lastMonth.format(DateTimeFormatter.BASIC_ISO_DATE) + ":1";
+        assertEquals(Boolean.FALSE, redisTemplate.hasKey(lastDailyKey));
+        assertEquals(lastMonth, recordMapper.selectList(null).get(0).getCreateTime());
+    }
+
+    /**
+     * 写入数据库失败后重新投递同一批事件，Redis中的积分不重复累加，数据库补上积分记录，再次投递不重复写入
+     */
+    @Test
+    void testRedeliveredEventsCountOnce() {
+        Map<String, PointsRecord> events = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++) {
+            events.put("msg-" + i, new PointsRecord().setUserId(1L).setType(PointsRecordType.QA).setPoints(5));
+        }
+        schema.drop();
+        assertThrows(RuntimeException.class, () -> service.addPointsRecords(events));
+
+        schema.create();
+        // 1.重新投递的事件与新事件在同一批
+        Map<String, PointsRecord> redelivered = new LinkedHashMap<>(events);
+        redelivered.put("msg-3", new PointsRecord().setUserId(1L).setType(PointsRecordType.QA).setPoints(15));
+        assertEquals(20, service.addPointsRecords(redelivered));
+        assertEquals(0, service.addPointsRecords(redelivered));
+
+        // 2.当日积分、排行榜和数据库都只累加一次
+        assertEquals("20", redisTemplate.opsForHash().get(dailyKey(1L), String.valueOf(PointsRecordType.QA.getValue())));
+        String boardKey = RedisConstants.POINTS_BOARD_KEY_PREFIX
+                + DateUtils.POINTS_BOARD_SUFFIX_FORMATTER.format(LocalDateTime.now());
+        assertEquals(20D, redisTemplate.opsForZSet().score(boardKey, "1"));
+        assertEquals(1, recordMapper.selectCount(null).intValue());
+        assertEquals(20, schema.sumPoints(1L, PointsRecordType.QA.getValue()));
+    }
+
+    /**
+     * Redis重启后脚本缓存丢失，加载脚本后重试
+     */
+    @Test
+    void testReloadScriptAfterFlush() {
+        add(1L, 5, PointsRecordType.QA);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.scriptingCommands().scriptFlush();
+            return null;
+        });
+        add(1L, 5, PointsRecordType.QA);
+        assertEquals(10, schema.sumPoints(1L, PointsRecordType.QA.getValue()));
+    }
+
+    @Test
+    void testDailyCounterExpireAfterNextDay() {
+        add(1L, 5, PointsRecordType.QA);
+        Long ttl = redisTemplate.getExpire(dailyKey(1L), TimeUnit.SECONDS);
+        long untilMidnight = LocalDate.now().plusDays(2).atStartOfDay(ZoneId.systemDefault()).toEpochSecond()
+                - System.currentTimeMillis() / 1000;
+        assertNotNull(ttl);
+        assertTrue(ttl > 0 && Math.abs(ttl - untilMidnight) <= 2, "ttl=" + ttl + ", untilMidnight=" + untilMidnight);
+    }
+
+    private void add(Long userId, int points, PointsRecordType type) {
+        service.addPointsRecords(Map.of(UUID.randomUUID().toString(),
+                new PointsRecord().setUserId(userId).setPoints(points).setType(type)));
+    }
+
+    private String dailyKey(Long userId) {
+        return RedisConstants.POINTS_DAILY_KEY_PREFIX + LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE)
+                + ":" + userId;
+    }
+}
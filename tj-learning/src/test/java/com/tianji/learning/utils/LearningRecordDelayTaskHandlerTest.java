@@ -0,0 +1,197 @@
+package com.tianji.learning.utils;
+
+import com.tianji.learning.domain.po.LearningLesson;
+import com.tianji.learning.domain.po.LearningRecord;
+import com.tianji.learning.mapper.LearningLessonMapper;
+import com.tianji.learning.mapper.LearningRecordMapper;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import com.tianji.common.test.H2MybatisSupport;
+import org.apache.ibatis.annotations.Update;
+import org.junit.jupiter.api.*;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Collection;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LearningRecordDelayTaskHandlerTest {
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS learning_record")
+        void dropRecord();
+
+        @Update("CREATE TABLE learning_record (id BIGINT PRIMARY KEY, lesson_id BIGINT, section_id BIGINT, " +
+                "user_id BIGINT, moment INT DEFAULT 0, finished BIT DEFAULT 0, finish_time DATETIME, commit_time DATETIME, " +
+                "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, update_time DATETIME DEFAULT CURRENT_TIMESTAMP)")
+        void createRecord();
+
+        @Update("DROP TABLE IF EXISTS learning_lesson")
+        void dropLesson();
+
+        @Update("CREATE TABLE learning_lesson (id BIGINT PRIMARY KEY, user_id BIGINT, course_id BIGINT, " +
+                "status TINYINT DEFAULT 0, week_freq TINYINT, plan_status TINYINT DEFAULT 0, " +
+                "learned_sections INT DEFAULT 0, latest_section_id BIGINT, latest_learn_time DATETIME, " +
+                "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, expire_time DATETIME, " +
+                "update_time DATETIME DEFAULT CURRENT_TIMESTAMP)")
+        void createLesson();
+    }
+
+    private static StringRedisTemplate redisTemplate;
+    private static SqlSessionTemplate sqlSession;
+
+    private LearningRecordMapper recordMapper;
+    private LearningLessonMapper lessonMapper;
+    private LearningRecordDelayTaskHandler handler;
+
+    @BeforeAll
+    static void init() {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+        sqlSession = H2MybatisSupport.sqlSession("learning_record",
+                SchemaMapper.class, LearningRecordMapper.class, LearningLessonMapper.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        SchemaMapper schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.dropRecord();
+        schema.createRecord();
+        schema.dropLesson();
+        schema.createLesson();
+        EmbeddedRedisSupport.flushAll();
+
+        recordMapper = sqlSession.getMapper(LearningRecordMapper.class);
+        lessonMapper = sqlSession.getMapper(LearningLessonMapper.class);
+        handler = new LearningRecordDelayTaskHandler(redisTemplate, recordMapper, lessonMapper);
+        for (long i = 1; i <= 10; i++) {
+            LearningLesson lesson = new LearningLesson();
+            lesson.setId(i);
+            lesson.setUserId(1L);
+            lesson.setCourseId(i);
+            lessonMapper.insert(lesson);
+            LearningRecord record = new LearningRecord();
+            record.setId(i * 100);
+            record.setLessonId(i);
+            record.setSectionId(i * 10);
+            record.setUserId(1L);
+            record.setMoment(0);
+            recordMapper.insert(record);
+        }
+    }
+
+    @Test
+    void testFlushAfterDelay() {
+        long now = System.currentTimeMillis();
+        handler.addLearningRecordTask(submit(1, 30));
+
+        // 1.未到期不刷新
+        assertEquals(0, handler.drain(now));
+        assertEquals(0, recordMapper.selectById(100L).getMoment());
+        // 2.到期后批量刷新
+        assertEquals(1, handler.drain(dueTime()));
+        assertEquals(30, recordMapper.selectById(100L).getMoment());
+        LearningLesson lesson = lessonMapper.selectById(1L);
+        assertEquals(10L, lesson.getLatestSectionId());
+        assertNotNull(lesson.getLatestLearnTime());
+        // 3.确认后队列和数据都被清理
+        assertQueueEmpty();
+    }
+
+    @Test
+    void testRepeatedSubmitFlushOnce() {
+        for (int moment = 10; moment <= 50; moment += 10) {
+            handler.addLearningRecordTask(submit(1, moment));
+        }
+        assertEquals(1, redisTemplate.opsForZSet().size(LearningRecordDelayTaskHandler.FLUSH_QUEUE_KEY));
+        assertEquals(1, handler.drain(dueTime()));
+        assertEquals(50, recordMapper.selectById(100L).getMoment());
+    }
+
+    @Test
+    void testFlushInBatch() {
+        for (long i = 1; i <= 10; i++) {
+            handler.addLearningRecordTask(submit(i, (int) i * 7));
+        }
+        assertEquals(10, handler.drain(dueTime()));
+        for (long i = 1; i <= 10; i++) {
+            assertEquals((int) i * 7, recordMapper.selectById(i * 100).getMoment());
+            assertEquals(i * 10, lessonMapper.selectById(i).getLatestSectionId());
+        }
+        assertQueueEmpty();
+    }
+
+    @Test
+    void testRecoverAfterCrash() {
+        handler.addLearningRecordTask(submit(1, 30));
+        handler.addLearningRecordTask(submit(2, 40));
+        long due = dueTime();
+
+        // 1.模拟刷新中途宕机：学习记录已写入，课表更新失败，任务没有确认
+        LearningLessonMapper brokenLessonMapper = mock(LearningLessonMapper.class);
+        when(brokenLessonMapper.updateAllByCase(anyCollection())).thenThrow(new IllegalStateException("crash"));
+        LearningRecordDelayTaskHandler crashed =
+                new LearningRecordDelayTaskHandler(redisTemplate, recordMapper, brokenLessonMapper);
+        assertThrows(IllegalStateException.class, () -> crashed.drain(due));
+        assertEquals(30, recordMapper.selectById(100L).getMoment());
+        assertNull(lessonMapper.selectById(1L).getLatestSectionId());
+
+        // 2.租约未过期，其它实例领取不到
+        assertEquals(0, handler.drain(due));
+        assertEquals(2, redisTemplate.opsForZSet().size(LearningRecordDelayTaskHandler.FLUSH_PROCESSING_KEY));
+
+        // 3.租约过期后被重新领取并完成刷新
+        assertEquals(2, handler.drain(due + LearningRecordDelayTaskHandler.FLUSH_LEASE.toMillis() + 1));
+        assertEquals(10L, lessonMapper.selectById(1L).getLatestSectionId());
+        assertEquals(40, recordMapper.selectById(200L).getMoment());
+        assertQueueEmpty();
+    }
+
+    @Test
+    void testSubmitDuringFlushNotLost() {
+        handler.addLearningRecordTask(submit(1, 30));
+        long due = dueTime();
+        // 1.领取任务后，确认前用户又提交了新进度
+        Map<String, String> batch = handler.claim(due, 10);
+        assertEquals(1, batch.size());
+        handler.addLearningRecordTask(submit(1, 60));
+        handler.ack(batch.keySet());
+
+        // 2.新进度没有因为旧任务的确认而丢失
+        assertEquals(1, handler.drain(dueTime()));
+        assertEquals(60, recordMapper.selectById(100L).getMoment());
+        assertQueueEmpty();
+    }
+
+    @Test
+    void testCleanCancelsFlush() {
+        handler.addLearningRecordTask(submit(1, 30));
+        handler.cleanRecordCache(1L, 10L);
+        assertNull(handler.readRecordCache(1L, 10L));
+        assertEquals(0, handler.drain(dueTime()));
+        assertEquals(0, recordMapper.selectById(100L).getMoment());
+        assertQueueEmpty();
+    }
+
+    private LearningRecord submit(long lessonId, int moment) {
+        LearningRecord record = new LearningRecord();
+        record.setId(lessonId * 100);
+        record.setLessonId(lessonId);
+        record.setSectionId(lessonId * 10);
+        record.setMoment(moment);
+        record.setFinished(false);
+        return record;
+    }
+
+    private long dueTime() {
+        return System.currentTimeMillis() + LearningRecordDelayTaskHandler.FLUSH_DELAY.toMillis() + 1;
+    }
+
+    private void assertQueueEmpty() {
+        Collection<String> keys = redisTemplate.keys("learning:record:flush:*");
+        assertTrue(keys == null || keys.isEmpty(), "残留的刷新任务：" + keys);
+    }
+}
@@ -0,0 +1,125 @@
+package com.tianji.learning.utils;
+
+import com.tianji.learning.mapper.PointsBoardMapper;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class SeasonTableRegistryTest {
+
+    private PooledDataSource dataSource;
+    private PointsBoardMapper mapper;
+    private final AtomicInteger ddlCount = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dataSource = new PooledDataSource("org.h2.Driver",
+                "jdbc:h2:mem:season_table;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        execute("DROP ALL OBJECTS");
+        execute("CREATE TABLE points_board (id BIGINT PRIMARY KEY, user_id BIGINT, points INT)");
+        execute("CREATE TABLE points_board_bak (id BIGINT PRIMARY KEY)");
+        // 建表语句在XML中，使用H2可以执行的等价语句代替
+        mapper = mock(PointsBoardMapper.class);
+        doAnswer(invocation -> {
+            ddlCount.incrementAndGet();
+            // 模拟建表耗时，放大并发窗口
+            Thread.sleep(50);
+            execute("CREATE TABLE IF NOT EXISTS " + invocation.getArgument(0) +
+                    " (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id BIGINT, points INT, `rank` INT, season INT)");
+            return null;
+        }).when(mapper).createPointsBoardTable(anyString());
+    }
+
+    @Test
+    void testConcurrentFirstAccessCreateOnce() throws Exception {
+        SeasonTableRegistry registry = new SeasonTableRegistry(dataSource, mapper);
+        registry.init();
+        assertFalse(registry.exists(7));
+
+        // 1.64个线程同时首次访问同一赛季
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                registry.createTable(7);
+                // 返回时表一定已经创建完成
+                return registry.exists(7);
+            }));
+        }
+        start.countDown();
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get(10, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        // 2.只执行了一次建表
+        assertEquals(1, ddlCount.get());
+    }
+
+    @Test
+    void testLoadExistingTablesAtStartup() throws SQLException {
+        execute("CREATE TABLE points_board_3 (id BIGINT PRIMARY KEY)");
+        execute("CREATE TABLE points_board_12 (id BIGINT PRIMARY KEY)");
+        SeasonTableRegistry registry = new SeasonTableRegistry(dataSource, mapper);
+        registry.init();
+
+        // 1.已有的表不再建表，非赛季表被忽略
+        registry.createTable(3);
+        registry.createTable(12);
+        assertEquals(0, ddlCount.get());
+        assertFalse(registry.exists(4));
+    }
+
+    @Test
+    void testTableCreatedByOtherInstance() throws SQLException {
+        SeasonTableRegistry registry = new SeasonTableRegistry(dataSource, mapper);
+        registry.init();
+        assertFalse(registry.exists(5));
+
+        // 1.其它实例建表后，未命中缓存时查询数据库发现
+        execute("CREATE TABLE points_board_5 (id BIGINT PRIMARY KEY)");
+        assertTrue(registry.exists(5));
+        registry.createTable(5);
+        assertEquals(0, ddlCount.get());
+    }
+
+    @Test
+    void testWithSeasonTableAlwaysClear() {
+        SeasonTableRegistry registry = new SeasonTableRegistry(dataSource, mapper);
+        assertEquals("points_board_9", registry.withSeasonTable(9, TableInfoContext::getInfo));
+        assertNull(TableInfoContext.getInfo());
+
+        assertThrows(IllegalStateException.class, () -> registry.withSeasonTable(9, () -> {
+            throw new IllegalStateException("query failed");
+        }));
+        assertNull(TableInfoContext.getInfo());
+    }
+
+    @Test
+    void testInvalidSeason() {
+        SeasonTableRegistry registry = new SeasonTableRegistry(dataSource, mapper);
+        assertThrows(IllegalArgumentException.class, () -> registry.createTable(0));
+        assertThrows(IllegalArgumentException.class, () -> registry.createTable(null));
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
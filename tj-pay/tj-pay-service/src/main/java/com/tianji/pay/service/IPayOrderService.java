@@ -1,12 +1,12 @@
 package com.tianji.pay.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
-import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.pay.domain.po.PayOrder;
 import com.tianji.pay.sdk.dto.PayApplyDTO;
 import com.tianji.pay.sdk.dto.PayResultDTO;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * <p>
@@ -28,7 +28,15 @@ public interface IPayOrderService extends IService<PayOrder> {
 
     boolean markPayOrderSuccess(Long id, LocalDateTime successTime);
 
-    PageDTO<PayOrder> queryPayingOrderByPage(int page, int size);
+    /**
+     * 按id游标查询当前分片内待支付的支付单
+     *
+     * @param lastId     上一页的最大id
+     * @param shardIndex 分片序号
+     * @param shardTotal 分片总数
+     * @param limit      每页数量
+     */
+    List<PayOrder> queryPayingOrders(long lastId, int shardIndex, int shardTotal, int limit);
 
     void checkPayOrder(PayOrder payOrder);
 }
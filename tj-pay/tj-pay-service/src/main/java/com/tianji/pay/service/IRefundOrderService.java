@@ -1,11 +1,12 @@
 package com.tianji.pay.service;
 
-import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.pay.domain.po.RefundOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.tianji.pay.sdk.dto.RefundApplyDTO;
 import com.tianji.pay.sdk.dto.RefundResultDTO;
 
+import java.util.List;
+
 /**
  * <p>
  * 退款订单 服务类
@@ -22,7 +23,15 @@ public interface IRefundOrderService extends IService<RefundOrder> {
 
     RefundOrder queryByRefundOrderNo(Long refundOrderNo);
 
-    PageDTO<RefundOrder> queryRefundingOrderByPage(int pageNo, int size);
+    /**
+     * 按id游标查询当前分片内退款状态未知的退款单
+     *
+     * @param lastId     上一页的最大id
+     * @param shardIndex 分片序号
+     * @param shardTotal 分片总数
+     * @param limit      每页数量
+     */
+    List<RefundOrder> queryRefundingOrders(long lastId, int shardIndex, int shardTotal, int limit);
 
     void checkRefundOrder(RefundOrder refundOrder);
 
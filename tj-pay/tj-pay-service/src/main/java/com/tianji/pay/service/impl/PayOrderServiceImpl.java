@@ -1,14 +1,11 @@
 package com.tianji.pay.service.impl;
 
-import com.baomidou.mybatisplus.core.metadata.OrderItem;
 import com.baomidou.mybatisplus.core.toolkit.IdWorker;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.autoconfigure.redisson.annotations.Lock;
 import com.tianji.common.autoconfigure.redisson.enums.LockStrategy;
 import com.tianji.common.constants.MqConstants;
-import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.exceptions.BizIllegalException;
 import com.tianji.common.utils.BeanUtils;
@@ -31,6 +28,7 @@ import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 import static com.tianji.pay.sdk.constants.PayErrorInfo.*;
@@ -53,7 +51,7 @@ public class PayOrderServiceImpl extends ServiceImpl<PayOrderMapper, PayOrder> i
     private final RabbitMqHelper rabbitMqHelper;
 
     @Override
-    @Lock(name = PayConstants.RedisKeyFormatter.PAY_APPLY, leaseTime = 3, autoUnlock = false)
+    @Lock(name = PayConstants.RedisKeyFormatter.PAY_APPLY, leaseTime = 3, autoUnlock = false, localFirst = true)
     public String applyPayOrder(PayApplyDTO payApplyDTO) {
         log.debug("准备创建支付单，业务订单号：{}", payApplyDTO.getBizOrderNo());
         // 1.选择支付渠道
@@ -200,15 +198,15 @@ public class PayOrderServiceImpl extends ServiceImpl<PayOrderMapper, PayOrder> i
     }
 
     @Override
-    public PageDTO<PayOrder> queryPayingOrderByPage(int pageNo, int size) {
-        // 1.分页和排序条件
-        Page<PayOrder> page = new Page<>(pageNo, size);
-        page.addOrder(new OrderItem("id", true));
-        // 2.查询
-        Page<PayOrder> result = lambdaQuery()
+    public List<PayOrder> queryPayingOrders(long lastId, int shardIndex, int shardTotal, int limit) {
+        // 按id游标分页，只查询当前分片的数据
+        return lambdaQuery()
                 .eq(PayOrder::getStatus, PayStatus.WAIT_BUYER_PAY.getValue())
-                .page(page);
-        return PageDTO.of(result);
+                .gt(PayOrder::getId, lastId)
+                .apply("MOD(id, {0}) = {1}", shardTotal, shardIndex)
+                .orderByAsc(PayOrder::getId)
+                .last("LIMIT " + limit)
+                .list();
     }
 
     @Override
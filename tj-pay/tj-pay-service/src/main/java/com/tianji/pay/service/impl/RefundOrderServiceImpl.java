@@ -1,13 +1,10 @@
 package com.tianji.pay.service.impl;
 
-import com.baomidou.mybatisplus.core.metadata.OrderItem;
 import com.baomidou.mybatisplus.core.toolkit.IdWorker;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.autoconfigure.redisson.annotations.Lock;
 import com.tianji.common.constants.MqConstants;
-import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.exceptions.BizIllegalException;
 import com.tianji.common.utils.BeanUtils;
@@ -28,6 +25,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.List;
 import java.util.Map;
 
 import static com.tianji.pay.sdk.constants.PayErrorInfo.INVALID_PAY_CHANNEL;
@@ -204,15 +202,15 @@ public class RefundOrderServiceImpl extends ServiceImpl<RefundOrderMapper, Refun
     }
 
     @Override
-    public PageDTO<RefundOrder> queryRefundingOrderByPage(int pageNo, int size) {
-        // 1.分页和排序条件
-        Page<RefundOrder> page = new Page<>(pageNo, size);
-        page.addOrder(new OrderItem("id", true));
-        // 2.查询
-        Page<RefundOrder> result = lambdaQuery()
+    public List<RefundOrder> queryRefundingOrders(long lastId, int shardIndex, int shardTotal, int limit) {
+        // 按id游标分页，只查询当前分片的数据
+        return lambdaQuery()
                 .eq(RefundOrder::getStatus, RefundStatus.UN_KNOWN.getValue())
-                .page(page);
-        return PageDTO.of(result);
+                .gt(RefundOrder::getId, lastId)
+                .apply("MOD(id, {0}) = {1}", shardTotal, shardIndex)
+                .orderByAsc(RefundOrder::getId)
+                .last("LIMIT " + limit)
+                .list();
     }
 
     @Override
@@ -1,40 +1,53 @@
 package com.tianji.pay.tasks;
 
-import com.tianji.common.domain.dto.PageDTO;
+import com.tianji.common.autoconfigure.xxljob.ShardCheckpointStore;
+import com.tianji.common.autoconfigure.xxljob.ShardedBatchJob;
 import com.tianji.common.utils.StringUtils;
 import com.tianji.pay.domain.po.PayOrder;
 import com.tianji.pay.service.IPayOrderService;
 import com.xxl.job.core.context.XxlJobHelper;
 import com.xxl.job.core.handler.annotation.XxlJob;
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-@Slf4j
+import java.util.List;
+
 @Component
-@RequiredArgsConstructor
-public class PayOrderCheckTask {
+public class PayOrderCheckTask extends ShardedBatchJob<PayOrder> {
 
     private final IPayOrderService payOrderService;
 
+    public PayOrderCheckTask(IPayOrderService payOrderService, ShardCheckpointStore checkpointStore) {
+        super("payOrderCheckJob", checkpointStore);
+        this.payOrderService = payOrderService;
+    }
+
     @XxlJob("payOrderCheckHandler")
     public void checkPayOrderStatus() {
-        // 1.获取分片信息
-        int index = XxlJobHelper.getShardIndex() + 1;
+        // 按分片逐个检查所有待支付的支付单，单个支付单的异常由模板记录日志
+        execute();
+    }
+
+    @Override
+    protected List<PayOrder> fetchChunk(long lastId, int shardIndex, int shardTotal, int limit) {
+        return payOrderService.queryPayingOrders(lastId, shardIndex, shardTotal, limit);
+    }
+
+    @Override
+    protected long idOf(PayOrder item) {
+        return item.getId();
+    }
+
+    @Override
+    protected void process(PayOrder payOrder) {
+        payOrderService.checkPayOrder(payOrder);
+    }
+
+    /**
+     * 每页数量，可以通过任务参数指定，默认50
+     */
+    @Override
+    protected int chunkSize() {
         String jobParam = XxlJobHelper.getJobParam();
-        int size = StringUtils.isNumeric(jobParam) ? Integer.parseInt(jobParam) : 10;
-        // 2.查询需要处理的支付订单
-        PageDTO<PayOrder> result = payOrderService.queryPayingOrderByPage(index, size);
-        if (result.isEmpty()) {
-            return;
-        }
-        // 3.逐个检查支付单
-        for (PayOrder payOrder : result.getList()) {
-            try {
-                payOrderService.checkPayOrder(payOrder);
-            } catch (Exception e) {
-                log.error("处理订单支付状态异常：", e);
-            }
-        }
+        return StringUtils.isNumeric(jobParam) ? Integer.parseInt(jobParam) : 50;
     }
 }
@@ -1,40 +1,53 @@
 package com.tianji.pay.tasks;
 
-import com.tianji.common.domain.dto.PageDTO;
+import com.tianji.common.autoconfigure.xxljob.ShardCheckpointStore;
+import com.tianji.common.autoconfigure.xxljob.ShardedBatchJob;
 import com.tianji.common.utils.StringUtils;
 import com.tianji.pay.domain.po.RefundOrder;
 import com.tianji.pay.service.IRefundOrderService;
 import com.xxl.job.core.context.XxlJobHelper;
 import com.xxl.job.core.handler.annotation.XxlJob;
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-@Slf4j
+import java.util.List;
+
 @Component
-@RequiredArgsConstructor
-public class RefundOrderCheckTask {
+public class RefundOrderCheckTask extends ShardedBatchJob<RefundOrder> {
 
     private final IRefundOrderService refundOrderService;
 
+    public RefundOrderCheckTask(IRefundOrderService refundOrderService, ShardCheckpointStore checkpointStore) {
+        super("refundOrderCheckJob", checkpointStore);
+        this.refundOrderService = refundOrderService;
+    }
+
     @XxlJob("refundOrderCheckHandler")
     public void checkRefundOrderStatus() {
-        // 1.获取分片信息
-        int index = XxlJobHelper.getShardIndex() + 1;
+        // 按分片逐个检查所有退款状态未知的退款单，单个退款单的异常由模板记录日志
+        execute();
+    }
+
+    @Override
+    protected List<RefundOrder> fetchChunk(long lastId, int shardIndex, int shardTotal, int limit) {
+        return refundOrderService.queryRefundingOrders(lastId, shardIndex, shardTotal, limit);
+    }
+
+    @Override
+    protected long idOf(RefundOrder item) {
+        return item.getId();
+    }
+
+    @Override
+    protected void process(RefundOrder refundOrder) {
+        refundOrderService.checkRefundOrder(refundOrder);
+    }
+
+    /**
+     * 每页数量，可以通过任务参数指定，默认50
+     */
+    @Override
+    protected int chunkSize() {
         String jobParam = XxlJobHelper.getJobParam();
-        int size = StringUtils.isNumeric(jobParam) ? Integer.parseInt(jobParam) : 10;
-        // 2.查询需要处理的退款订单
-        PageDTO<RefundOrder> result = refundOrderService.queryRefundingOrderByPage(index, size);
-        if (result.isEmpty()) {
-            return;
-        }
-        // 3.逐个检查退款单
-        for (RefundOrder refundOrder : result.getList()) {
-            try {
-                refundOrderService.checkRefundOrder(refundOrder);
-            } catch (Exception e) {
-                log.error("处理退款订单状态异常：", e);
-            }
-        }
+        return StringUtils.isNumeric(jobParam) ? Integer.parseInt(jobParam) : 50;
     }
 }
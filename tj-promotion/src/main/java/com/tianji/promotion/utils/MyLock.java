@@ -18,4 +18,9 @@ public @interface MyLock {
     TimeUnit unit() default TimeUnit.SECONDS;
 
     MyLockType lockType() default MyLockType.RE_ENTRANT_LOCK;
+
+    /**
+     * 是否先获取本地锁，同一个JVM内的竞争者先在本地排队，只有获取到本地锁的线程才去Redis加锁。读锁不支持
+     */
+    boolean localFirst() default false;
 }
@@ -1,6 +1,6 @@
 package com.tianji.promotion.utils;
 
-import com.tianji.common.autoconfigure.redisson.annotations.Lock;
+import com.tianji.common.autoconfigure.redisson.LocalLocks;
 import com.tianji.common.exceptions.BizIllegalException;
 import lombok.RequiredArgsConstructor;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -9,6 +9,10 @@ import org.aspectj.lang.annotation.Aspect;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.core.Ordered;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
 @Aspect
 @RequiredArgsConstructor
 public class MyLockAspect implements Ordered {
@@ -17,26 +21,55 @@ public class MyLockAspect implements Ordered {
 
     private final MyLockFactory myLockFactory;
 
+    private final LocalLocks localLocks = new LocalLocks();
+
     @Around("@annotation(myLock)")
     public Object tryLock(ProceedingJoinPoint pjp, MyLock myLock) throws Throwable {
         // 1.创建锁对象
         RLock lock = myLockFactory.getLock(myLock.lockType(), myLock.name());
-        // 2.尝试获取锁
-        boolean isLock = lock.tryLock(myLock.waitTime(), myLock.leaseTime(), myLock.unit());
-        // 3.判断是否成功
-        if(!isLock) {
-            // 3.1.失败，快速结束
-            throw new BizIllegalException("请求太频繁");
+        // 2.需要先获取本地锁
+        ReentrantLock localLock = null;
+        long waitTime = myLock.waitTime();
+        if (myLock.localFirst() && myLock.lockType() != MyLockType.READ_LOCK) {
+            localLock = localLocks.acquire(myLock.name());
+            long begin = System.nanoTime();
+            if (!localLock.tryLock(waitTime, myLock.unit())) {
+                localLocks.release(myLock.name());
+                throw new BizIllegalException("请求太频繁");
+            }
+            // 分布式锁只能使用剩余的等待时间
+            waitTime = Math.max(0, myLock.unit().toMillis(waitTime) - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
         }
         try {
-            // 3.2.成功，执行业务
-            return pjp.proceed();
+            // 3.尝试获取锁
+            boolean isLock = localLock == null ?
+                    lock.tryLock(waitTime, myLock.leaseTime(), myLock.unit()) :
+                    lock.tryLock(waitTime, toMillis(myLock.leaseTime(), myLock.unit()), TimeUnit.MILLISECONDS);
+            // 4.判断是否成功
+            if (!isLock) {
+                // 4.1.失败，快速结束
+                throw new BizIllegalException("请求太频繁");
+            }
+            try {
+                // 4.2.成功，执行业务
+                return pjp.proceed();
+            } finally {
+                // 5.释放锁
+                lock.unlock();
+            }
         } finally {
-            // 4.释放锁
-            lock.unlock();
+            if (localLock != null) {
+                localLock.unlock();
+                localLocks.release(myLock.name());
+            }
         }
     }
-    
+
+    private long toMillis(long leaseTime, TimeUnit unit) {
+        // 小于等于0表示使用看门狗续期，原样返回
+        return leaseTime > 0 ? unit.toMillis(leaseTime) : leaseTime;
+    }
+
     @Override
     public int getOrder() {
         return 0;
@@ -0,0 +1,649 @@
+package com.tianji.remark.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.remark.constants.RedisConstants;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <h1>热点业务的点赞用户分片</h1>
+ * 热门的回答、笔记的点赞都写入同一个Set，成为Redis的热点KEY。检测到热点后把点赞用户拆分为{@value #SHARD_COUNT}个分片，
+ * 业务冷却后再合并回业务的Set：
+ * <ol>
+ *     <li>点赞数据按{@value #PARTITION_COUNT}个分区组织，hash tag是分区号。业务的Set、每个分片各在一个分区，
+ *     同一业务的分片和业务的Set在不同的分区；墓碑、待同步的业务id、点赞事件流与对应的Set在同一个分区，
+ *     每条Redis命令、每个脚本都只访问一个slot，热点业务的点赞也分散到多个分区的事件流和脏集合中</li>
+ *     <li>每个节点用本地的滑动窗口统计本节点收到的点赞请求，{@link #HOT_WINDOW}内超过{@value #HOT_THRESHOLD}次即为热点，
+ *     阈值是单个节点的请求数，不是集群的总数，请求均匀分布时集群总请求数约为阈值乘以节点数</li>
+ *     <li>拆分状态记录在 {@value RedisConstants#LIKES_SHARDED_KEY} 中，每个节点定时加载到本地，点赞时不读取Redis</li>
+ *     <li>拆分和合并各分为两个阶段，每个阶段至少持续{@link #SETTLE}，保证所有节点都已加载到同一阶段或相邻阶段。
+ *     两个阶段都同时查询业务的Set和分片，点赞从源位置迁往目标位置：
+ *         <ul>
+ *             <li>{@link Phase#PREPARING}、{@link Phase#FOLD_PREPARING}：点赞仍写入源位置，同时移除目标位置中的用户</li>
+ *             <li>{@link Phase#MIGRATING}、{@link Phase#FOLDING}：点赞写入目标位置，同时移除源位置中的用户；
+ *             所有节点都进入该阶段后，定时任务用SSCAN分批把源位置的用户复制到目标位置，取消点赞记录的墓碑避免复制回来</li>
+ *             <li>{@link Phase#SHARDED}：业务的Set已清空，只读写分片，超过{@link #COOL_DOWN}没有节点检测到热点时开始合并</li>
+ *         </ul>
+ *     </li>
+ * </ol>
+ * 合并完成后删除业务的拆分状态，拆分状态只包含当前的热点业务
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LikedBizShards {
+
+    /**
+     * 热点业务的分片数量
+     */
+    public static final int SHARD_COUNT = 8;
+    /**
+     * 点赞数据的分区数量，需要大于分片数量，修改后KEY会变化，不能修改
+     */
+    public static final int PARTITION_COUNT = 16;
+    /**
+     * 滑动窗口的长度和其中的点赞请求次数阈值，都是单个节点的
+     */
+    static final Duration HOT_WINDOW = Duration.ofSeconds(10);
+    static final int HOT_THRESHOLD = 500;
+    /**
+     * 每个阶段至少持续的时间，需要大于{@link #STALE_LIMIT}加上一次点赞请求的耗时
+     */
+    public static final Duration SETTLE = Duration.ofSeconds(30);
+    /**
+     * 拆分的业务超过这个时间没有被检测为热点，合并回业务的Set，不小于{@link #TOMBSTONE_TTL}，上一轮的墓碑已过期
+     */
+    public static final Duration COOL_DOWN = Duration.ofMinutes(10);
+    /**
+     * 每个节点记录拆分的业务仍是热点的最小间隔
+     */
+    private static final Duration HOT_MARK_INTERVAL = Duration.ofMinutes(1);
+    /**
+     * 定时加载拆分状态的间隔（毫秒）
+     */
+    private static final long REFRESH_INTERVAL_MILLIS = 5000;
+    /**
+     * 本地拆分状态的最长有效期，定时加载失败超过这个时间后，点赞时同步加载
+     */
+    private static final Duration STALE_LIMIT = Duration.ofSeconds(10);
+    /**
+     * 迁移时每批复制的用户数量
+     */
+    static final int MIGRATE_BATCH_SIZE = 500;
+    /**
+     * 拆分、合并过程中取消点赞的墓碑的有效期，只需要覆盖一批迁移的耗时
+     */
+    public static final Duration TOMBSTONE_TTL = Duration.ofMinutes(10);
+    /**
+     * 分片哈希的模数，保证计算过程不溢出，历史分片数据依赖这个算法，不能修改
+     */
+    private static final int HASH_MODULUS = 1000003;
+
+    private static final RedisScript<Long> MIGRATE_SCRIPT;
+
+    static {
+        MIGRATE_SCRIPT = RedisScript.of(new ClassPathResource("lua/liked_shard_migrate.lua"), Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 业务id到滑动窗口，长时间没有点赞的业务自动移除
+     */
+    private final Cache<Long, RateWindow> windows = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(HOT_WINDOW)
+            .build();
+
+    /**
+     * 本节点最近记录过仍是热点的业务id
+     */
+    private final Cache<Long, Boolean> hotMarks = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(HOT_MARK_INTERVAL)
+            .build();
+
+    /**
+     * 本地的拆分状态，业务id到阶段，以及加载的时间
+     */
+    private volatile Map<Long, Phase> phases = Collections.emptyMap();
+    private volatile long loadedAt;
+
+    /**
+     * 定时加载拆分状态
+     */
+    @Scheduled(fixedDelay = REFRESH_INTERVAL_MILLIS)
+    public void scheduledReload() {
+        try {
+            reload();
+        } catch (Exception e) {
+            // 加载失败时继续使用本地的状态，超过有效期后点赞时同步加载
+            log.error("加载热点业务的拆分状态发生异常", e);
+        }
+    }
+
+    /**
+     * 从Redis加载所有业务的拆分状态
+     */
+    public synchronized void reload() {
+        long now = System.currentTimeMillis();
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(RedisConstants.LIKES_SHARDED_KEY);
+        Map<Long, Phase> loaded = new HashMap<>(entries.size());
+        entries.forEach((id, value) -> loaded.put(Long.valueOf(id.toString()), ShardState.parse(value.toString()).phase));
+        phases = loaded;
+        loadedAt = now;
+    }
+
+    private Map<Long, Phase> phases() {
+        if (System.currentTimeMillis() - loadedAt > STALE_LIMIT.toMillis()) {
+            // 本地状态过期时不能继续使用，否则可能写入其它节点不再读取的位置
+            synchronized (this) {
+                if (System.currentTimeMillis() - loadedAt > STALE_LIMIT.toMillis()) {
+                    reload();
+                }
+            }
+        }
+        return phases;
+    }
+
+    /**
+     * 记录本节点收到的一次点赞请求，业务成为热点时拆分，已拆分的业务记录仍是热点
+     * @param bizId 业务id
+     * @param bizType 业务类型
+     */
+    public void recordLike(Long bizId, String bizType) {
+        RateWindow window = windows.get(bizId, id -> new RateWindow((int) HOT_WINDOW.getSeconds()));
+        if (window.add(System.currentTimeMillis() / 1000) < HOT_THRESHOLD) {
+            return;
+        }
+        try {
+            if (phases().containsKey(bizId)) {
+                markHot(bizId);
+                return;
+            }
+            if (split(bizId, bizType)) {
+                log.info("业务 {} 成为点赞热点，开始拆分为{}个分片", bizId, SHARD_COUNT);
+            }
+        } catch (RuntimeException e) {
+            // 拆分失败不影响点赞，下次检测时重试
+            log.error("拆分热点业务 {} 的点赞用户失败", bizId, e);
+        }
+    }
+
+    /**
+     * 记录业务仍是热点，每个节点每{@link #HOT_MARK_INTERVAL}最多写入一次
+     */
+    private void markHot(Long bizId) {
+        if (hotMarks.getIfPresent(bizId) != null) {
+            return;
+        }
+        hotMarks.put(bizId, Boolean.TRUE);
+        redisTemplate.opsForZSet().add(RedisConstants.LIKES_HOT_KEY, bizId.toString(), System.currentTimeMillis());
+    }
+
+    /**
+     * 开始拆分业务的点赞用户，之后由{@link #advance(Duration, Duration)}推进
+     * @return 是否是这次开始拆分的
+     */
+    public boolean split(Long bizId, String bizType) {
+        ShardState state = new ShardState(Phase.PREPARING, System.currentTimeMillis(), bizType);
+        Boolean added = redisTemplate.opsForHash().putIfAbsent(
+                RedisConstants.LIKES_SHARDED_KEY, bizId.toString(), state.format());
+        if (Boolean.TRUE.equals(added)) {
+            // 上一轮拆分可能遗留分片的墓碑，迁移时会跳过之后重新点赞的用户
+            for (int i = 0; i < SHARD_COUNT; i++) {
+                redisTemplate.delete(tombstoneKey(bizId, i));
+            }
+        }
+        reload();
+        return Boolean.TRUE.equals(added);
+    }
+
+    /**
+     * 推进拆分、合并中的业务，由定时任务调用
+     * @param settle 当前阶段至少持续的时间，正常使用{@link #SETTLE}
+     * @param coolDown 拆分的业务多久没有被检测为热点时开始合并，正常使用{@link #COOL_DOWN}
+     * @return 推进的业务数量
+     */
+    public int advance(Duration settle, Duration coolDown) {
+        long now = System.currentTimeMillis();
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(RedisConstants.LIKES_SHARDED_KEY);
+        Map<String, Double> hotAt = loadHotAt(entries.keySet());
+        int count = 0;
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            Long bizId = Long.valueOf(entry.getKey().toString());
+            ShardState state = ShardState.parse(entry.getValue().toString());
+            if (now - state.since < settle.toMillis()) {
+                continue;
+            }
+            switch (state.phase) {
+                case SHARDED:
+                    // 1.拆分完成后一段时间内没有被检测为热点，开始合并，先清理上一轮合并遗留的墓碑
+                    double lastHot = Math.max(state.since, hotAt.getOrDefault(bizId.toString(), 0D));
+                    if (now - lastHot < coolDown.toMillis()) {
+                        continue;
+                    }
+                    redisTemplate.delete(tombstoneKey(bizId));
+                    log.info("热点业务 {} 已冷却，开始合并分片", bizId);
+                    break;
+                case MIGRATING:
+                    // 2.所有节点都已写入分片，把业务的Set中剩余的用户迁移到分片，迁移过程中同步的点赞总数可能重复计算了用户，重新同步
+                    int moved = migrate(bizKey(bizId), batch -> migrateBatch(bizId, batch));
+                    markDirty(bizId, state.bizType);
+                    log.info("热点业务 {} 的 {} 个点赞用户已迁移到分片", bizId, moved);
+                    break;
+                case FOLDING:
+                    // 3.所有节点都已写入业务的Set，把分片中剩余的用户迁移回业务的Set，删除拆分状态
+                    int folded = 0;
+                    for (int i = 0; i < SHARD_COUNT; i++) {
+                        int shard = i;
+                        folded += migrate(shardKey(bizId, shard), batch -> foldBatch(bizId, shard, batch));
+                    }
+                    markDirty(bizId, state.bizType);
+                    redisTemplate.opsForHash().delete(RedisConstants.LIKES_SHARDED_KEY, bizId.toString());
+                    redisTemplate.opsForZSet().remove(RedisConstants.LIKES_HOT_KEY, bizId.toString());
+                    log.info("热点业务 {} 的 {} 个点赞用户已合并回业务的Set", bizId, folded);
+                    count++;
+                    continue;
+                default:
+                    break;
+            }
+            // 4.进入下一阶段
+            ShardState next = new ShardState(state.phase.next(), System.currentTimeMillis(), state.bizType);
+            redisTemplate.opsForHash().put(RedisConstants.LIKES_SHARDED_KEY, bizId.toString(), next.format());
+            count++;
+        }
+        if (count > 0) {
+            reload();
+        }
+        return count;
+    }
+
+    /**
+     * 读取拆分的业务最近被检测为热点的时间，同时删除已合并的业务遗留的记录
+     */
+    private Map<String, Double> loadHotAt(Set<Object> bizIds) {
+        Set<ZSetOperations.TypedTuple<String>> tuples =
+                redisTemplate.opsForZSet().rangeWithScores(RedisConstants.LIKES_HOT_KEY, 0, -1);
+        Map<String, Double> hotAt = new HashMap<>();
+        if (tuples == null) {
+            return hotAt;
+        }
+        List<Object> stale = new ArrayList<>();
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            if (bizIds.contains(tuple.getValue())) {
+                hotAt.put(tuple.getValue(), tuple.getScore());
+            } else {
+                stale.add(tuple.getValue());
+            }
+        }
+        if (!stale.isEmpty()) {
+            redisTemplate.opsForZSet().remove(RedisConstants.LIKES_HOT_KEY, stale.toArray());
+        }
+        return hotAt;
+    }
+
+    private void markDirty(Long bizId, String bizType) {
+        redisTemplate.opsForSet().add(dirtyKey(bizType, partitionOf(bizId)), bizId.toString());
+    }
+
+    /**
+     * 用SSCAN分批迁移一个Set中的用户，不会长时间阻塞Redis
+     * @param source 迁移的Set
+     * @param mover 迁移一批用户
+     * @return 迁移的用户数量
+     */
+    private int migrate(String source, Function<List<String>, Integer> mover) {
+        ScanOptions options = ScanOptions.scanOptions().count(MIGRATE_BATCH_SIZE).build();
+        List<String> batch = new ArrayList<>(MIGRATE_BATCH_SIZE);
+        int moved = 0;
+        try (Cursor<String> cursor = redisTemplate.opsForSet().scan(source, options)) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= MIGRATE_BATCH_SIZE) {
+                    moved += mover.apply(batch);
+                    batch = new ArrayList<>(MIGRATE_BATCH_SIZE);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            moved += mover.apply(batch);
+        }
+        return moved;
+    }
+
+    /**
+     * 拆分时迁移一批用户：先复制到各自的分片，再从业务的Set移除
+     */
+    int migrateBatch(Long bizId, List<String> members) {
+        // 1.按分片分组，每个分片执行一次脚本，跳过迁移过程中取消点赞的用户
+        Map<Integer, List<String>> groups = members.stream()
+                .collect(Collectors.groupingBy(member -> shardOf(Long.valueOf(member))));
+        groups.forEach((shard, users) -> redisTemplate.execute(MIGRATE_SCRIPT,
+                List.of(shardKey(bizId, shard), tombstoneKey(bizId, shard)), users.toArray()));
+        // 2.从业务的Set移除，该阶段不会再有节点写入业务的Set
+        redisTemplate.opsForSet().remove(bizKey(bizId), members.toArray());
+        return members.size();
+    }
+
+    /**
+     * 合并时迁移一个分片中的一批用户：先复制到业务的Set，再从分片移除
+     */
+    int foldBatch(Long bizId, int shard, List<String> members) {
+        // 1.跳过合并过程中取消点赞的用户
+        redisTemplate.execute(MIGRATE_SCRIPT, List.of(bizKey(bizId), tombstoneKey(bizId)), members.toArray());
+        // 2.从分片移除，该阶段不会再有节点写入分片
+        redisTemplate.opsForSet().remove(shardKey(bizId, shard), members.toArray());
+        return members.size();
+    }
+
+    /**
+     * 用户点赞、取消点赞时读写的位置
+     * @param bizId 业务id
+     * @param userId 用户id
+     */
+    public Route route(Long bizId, Long userId) {
+        Phase phase = phases().get(bizId);
+        int shard = shardOf(userId);
+        if (phase == null) {
+            return new Route(bizSet(bizId, false), null);
+        }
+        switch (phase) {
+            case PREPARING:
+                return new Route(bizSet(bizId, false), shardSet(bizId, shard, true));
+            case MIGRATING:
+                return new Route(shardSet(bizId, shard, true), bizSet(bizId, false));
+            case SHARDED:
+                return new Route(shardSet(bizId, shard, false), null);
+            case FOLD_PREPARING:
+                return new Route(shardSet(bizId, shard, false), bizSet(bizId, true));
+            default:
+                return new Route(bizSet(bizId, true), shardSet(bizId, shard, false));
+        }
+    }
+
+    private static LikedSet bizSet(Long bizId, boolean target) {
+        return new LikedSet(bizKey(bizId), target ? tombstoneKey(bizId) : null, partitionOf(bizId));
+    }
+
+    private static LikedSet shardSet(Long bizId, int shard, boolean target) {
+        return new LikedSet(shardKey(bizId, shard), target ? tombstoneKey(bizId, shard) : null, partitionOf(bizId, shard));
+    }
+
+    /**
+     * 批量查询用户是否点赞过业务，每个KEY一条SISMEMBER，一次往返
+     * @param userIds 用户id，与业务id一一对应
+     * @param bizIds 业务id
+     * @return 每个业务是否点赞过
+     */
+    public List<Boolean> isLiked(List<Long> userIds, List<Long> bizIds) {
+        Map<Long, Phase> current = phases();
+        List<List<String>> keys = new ArrayList<>(bizIds.size());
+        for (int i = 0; i < bizIds.size(); i++) {
+            Long bizId = bizIds.get(i);
+            Phase phase = current.get(bizId);
+            String shardKey = shardKey(bizId, userIds.get(i));
+            if (phase == null) {
+                keys.add(List.of(bizKey(bizId)));
+            } else if (phase == Phase.SHARDED) {
+                keys.add(List.of(shardKey));
+            } else {
+                keys.add(List.of(bizKey(bizId), shardKey));
+            }
+        }
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] member = userIds.get(i).toString().getBytes(StandardCharsets.UTF_8);
+                for (String key : keys.get(i)) {
+                    connection.setCommands().sIsMember(key.getBytes(StandardCharsets.UTF_8), member);
+                }
+            }
+            return null;
+        });
+        List<Boolean> liked = new ArrayList<>(bizIds.size());
+        int index = 0;
+        for (List<String> bizKeys : keys) {
+            boolean member = false;
+            for (int j = 0; j < bizKeys.size(); j++) {
+                member |= Boolean.TRUE.equals(results.get(index++));
+            }
+            liked.add(member);
+        }
+        return liked;
+    }
+
+    /**
+     * 批量统计业务的点赞总数，每个KEY一条SCARD，一次往返
+     * @param bizIds 业务id
+     * @return 每个业务的点赞总数
+     */
+    public List<Integer> countLikes(List<Long> bizIds) {
+        Map<Long, Phase> current = phases();
+        List<List<String>> keys = new ArrayList<>(bizIds.size());
+        for (Long bizId : bizIds) {
+            Phase phase = current.get(bizId);
+            List<String> bizKeys = new ArrayList<>(SHARD_COUNT + 1);
+            if (phase != Phase.SHARDED) {
+                bizKeys.add(bizKey(bizId));
+            }
+            if (phase != null) {
+                bizKeys.addAll(shardKeys(bizId));
+            }
+            keys.add(bizKeys);
+        }
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (List<String> bizKeys : keys) {
+                for (String key : bizKeys) {
+                    connection.setCommands().sCard(key.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return null;
+        });
+        List<Integer> counts = new ArrayList<>(bizIds.size());
+        int index = 0;
+        for (List<String> bizKeys : keys) {
+            int count = 0;
+            for (int j = 0; j < bizKeys.size(); j++) {
+                Object result = results.get(index++);
+                count += result == null ? 0 : ((Number) result).intValue();
+            }
+            counts.add(count);
+        }
+        return counts;
+    }
+
+    public static String bizKey(Long bizId) {
+        return RedisConstants.LIKES_BIZ_KEY_PREFIX + tag(partitionOf(bizId)) + ":" + bizId;
+    }
+
+    /**
+     * 用户所在的分片，只有业务拆分后才有数据
+     */
+    public static String shardKey(Long bizId, Long userId) {
+        return shardKey(bizId, shardOf(userId));
+    }
+
+    static String shardKey(Long bizId, int shard) {
+        return RedisConstants.LIKES_BIZ_KEY_PREFIX + tag(partitionOf(bizId, shard)) + ":" + bizId + "#" + shard;
+    }
+
+    /**
+     * 合并时业务的Set的墓碑，与业务的Set在同一个分区
+     */
+    static String tombstoneKey(Long bizId) {
+        return RedisConstants.LIKES_TOMBSTONE_KEY_PREFIX + tag(partitionOf(bizId)) + ":" + bizId;
+    }
+
+    /**
+     * 拆分时分片的墓碑，与分片在同一个分区
+     */
+    static String tombstoneKey(Long bizId, int shard) {
+        return RedisConstants.LIKES_TOMBSTONE_KEY_PREFIX + tag(partitionOf(bizId, shard)) + ":" + bizId + "#" + shard;
+    }
+
+    /**
+     * 分区中待同步点赞总数的业务id
+     */
+    public static String dirtyKey(String bizType, int partition) {
+        return RedisConstants.LIKES_DIRTY_KEY_PREFIX + tag(partition) + ":" + bizType;
+    }
+
+    /**
+     * 分区的点赞事件流
+     */
+    public static String streamKey(int partition) {
+        return RedisConstants.LIKES_STREAM_KEY_PREFIX + tag(partition);
+    }
+
+    private static String tag(int partition) {
+        return "{" + partition + "}";
+    }
+
+    private static List<String> shardKeys(Long bizId) {
+        List<String> keys = new ArrayList<>(SHARD_COUNT);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            keys.add(shardKey(bizId, i));
+        }
+        return keys;
+    }
+
+    /**
+     * 业务的Set所在的分区
+     */
+    static int partitionOf(Long bizId) {
+        return (int) (hash(bizId.toString()) % PARTITION_COUNT);
+    }
+
+    /**
+     * 分片所在的分区，依次排在业务的Set之后，同一业务的分片和业务的Set都在不同的分区
+     */
+    static int partitionOf(Long bizId, int shard) {
+        return (partitionOf(bizId) + 1 + shard) % PARTITION_COUNT;
+    }
+
+    /**
+     * 用户id字符串的哈希取模
+     */
+    static int shardOf(Long userId) {
+        return (int) (hash(userId.toString()) % SHARD_COUNT);
+    }
+
+    private static long hash(String value) {
+        long h = 0;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h * 31 + value.charAt(i)) % HASH_MODULUS;
+        }
+        return h;
+    }
+
+    /**
+     * 拆分、合并的阶段
+     */
+    enum Phase {
+        PREPARING, MIGRATING, SHARDED, FOLD_PREPARING, FOLDING;
+
+        Phase next() {
+            return values()[Math.min(ordinal() + 1, values().length - 1)];
+        }
+    }
+
+    /**
+     * 点赞、取消点赞读写的位置
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Route {
+        /**
+         * 写入的Set
+         */
+        private final LikedSet target;
+        /**
+         * 拆分、合并过程中用户可能所在的另一个Set，点赞、取消点赞时都要从中移除
+         */
+        private final LikedSet other;
+    }
+
+    /**
+     * 一个点赞用户的Set及其所在的分区
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class LikedSet {
+        private final String key;
+        /**
+         * 拆分、合并过程中复制的目标Set的墓碑，取消点赞时写入，点赞时移除，其它情况为null
+         */
+        private final String tombstone;
+        private final int partition;
+    }
+
+    /**
+     * 拆分状态，格式是 阶段:进入阶段的时间:业务类型
+     */
+    @RequiredArgsConstructor
+    static class ShardState {
+        private final Phase phase;
+        private final long since;
+        private final String bizType;
+
+        static ShardState parse(String value) {
+            String[] parts = value.split(":", 3);
+            return new ShardState(Phase.valueOf(parts[0]), Long.parseLong(parts[1]), parts[2]);
+        }
+
+        String format() {
+            return phase + ":" + since + ":" + bizType;
+        }
+    }
+
+    /**
+     * 按秒分桶的滑动窗口
+     */
+    static class RateWindow {
+        private final long[] seconds;
+        private final int[] counts;
+
+        RateWindow(int size) {
+            this.seconds = new long[size];
+            this.counts = new int[size];
+        }
+
+        /**
+         * 记录一次请求
+         * @param now 当前时间（秒）
+         * @return 窗口内的请求次数
+         */
+        synchronized int add(long now) {
+            int index = (int) (now % seconds.length);
+            if (seconds[index] != now) {
+                seconds[index] = now;
+                counts[index] = 0;
+            }
+            counts[index]++;
+            int total = 0;
+            for (int i = 0; i < seconds.length; i++) {
+                if (seconds[i] > now - seconds.length) {
+                    total += counts[i];
+                }
+            }
+            return total;
+        }
+    }
+}
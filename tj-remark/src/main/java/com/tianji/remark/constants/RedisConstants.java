@@ -1,8 +1,18 @@
 package com.tianji.remark.constants;
 
 public interface RedisConstants {
-    /*给业务点赞的用户集合的KEY前缀，后缀是业务id*/
+    /*给业务点赞的用户集合的KEY前缀，完整KEY是 likes:set:biz:{分区}:业务id；热点业务拆分为多个子集合，完整KEY是 likes:set:biz:{分区}:业务id#分片*/
     String LIKES_BIZ_KEY_PREFIX = "likes:set:biz:";
-    /*业务点赞数统计的KEY前缀，后缀是业务类型*/
-    String LIKES_TIMES_KEY_PREFIX = "likes:times:type:";
-}
\ No newline at end of file
+    /*热点业务拆分、合并过程中取消点赞的用户，与复制的目标Set在同一个分区*/
+    String LIKES_TOMBSTONE_KEY_PREFIX = "likes:unliked:biz:";
+    /*热点业务的拆分状态(hash)，field是业务id，值是 阶段:进入阶段的时间:业务类型，合并完成后删除*/
+    String LIKES_SHARDED_KEY = "likes:sharded";
+    /*拆分的业务最近一次被检测为热点的时间(zset)，member是业务id，score是时间（毫秒）*/
+    String LIKES_HOT_KEY = "likes:sharded:hot";
+    /*点赞用户有变化、待同步点赞总数的业务id集合的KEY前缀，完整KEY是 likes:dirty:type:{分区}:业务类型*/
+    String LIKES_DIRTY_KEY_PREFIX = "likes:dirty:type:";
+    /*点赞、取消点赞的事件流的KEY前缀，完整KEY是 likes:stream:{分区}，由消费者组批量持久化到liked_record*/
+    String LIKES_STREAM_KEY_PREFIX = "likes:stream:";
+    /*用户点赞索引的KEY前缀，完整KEY是 likes:user:{bizType}:{userId}，只保留最近的点赞*/
+    String LIKES_USER_KEY_PREFIX = "likes:user:";
+}
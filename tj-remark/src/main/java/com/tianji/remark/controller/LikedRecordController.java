@@ -37,8 +37,10 @@ public class LikedRecordController {
 
     @GetMapping("list")
     @ApiOperation("查询指定业务id的点赞状态")
-    public Set<Long> isBizLiked(@RequestParam("bizIds") List<Long> bizIds){
-        return likedRecordService.isBizLiked(bizIds);
+    public Set<Long> isBizLiked(
+            @RequestParam(value = "bizType", required = false) String bizType,
+            @RequestParam("bizIds") List<Long> bizIds){
+        return likedRecordService.isBizLiked(bizType, bizIds);
     }
 
 }
@@ -0,0 +1,172 @@
+package com.tianji.remark.handler;
+
+import com.tianji.common.utils.CollUtils;
+import com.tianji.remark.cache.LikedBizShards;
+import com.tianji.remark.domain.po.LikedRecord;
+import com.tianji.remark.service.ILikedRecordService;
+import com.xxl.job.core.context.XxlJobHelper;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * <h1>点赞记录持久化任务</h1>
+ * 点赞、取消点赞时追加到所在分区的事件流{@link LikedBizShards#streamKey(int)}，由消费者组逐个分区批量写入liked_record：
+ * <ol>
+ *     <li>接管其它消费者超过{@link #CLAIM_IDLE}未确认的事件（消费者宕机）</li>
+ *     <li>先处理自己未确认的事件，再读取新事件，每{@value #BATCH_SIZE}条一批</li>
+ *     <li>同一批中同一用户对同一业务的多次操作合并为一次，按Redis中当前的点赞状态批量覆盖写入或删除</li>
+ *     <li>写入成功后确认并删除事件，写入失败的事件留在待确认列表中，下次执行时重放</li>
+ * </ol>
+ * 写入按(user_id, biz_id)幂等，且不依赖事件的顺序，事件重放没有影响。
+ * 点赞脚本追加事件时按{@link com.tianji.remark.service.impl.LikedRecordServiceRedisImpl#STREAM_MAX_LEN}近似裁剪，
+ * 消费者组长时间停止时最早的事件会被丢弃，对应用户的点赞记录在下次点赞或取消点赞时才会写入
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LikedRecordStreamHandler {
+
+    static final String GROUP = "liked-record";
+
+    static final int BATCH_SIZE = 500;
+
+    static final Duration CLAIM_IDLE = Duration.ofMinutes(1);
+
+    /**
+     * 每个分区每次最多接管的事件数量，剩余的由下次执行接管
+     */
+    private static final long MAX_CLAIM = 5000;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ILikedRecordService likedRecordService;
+    private final LikedBizShards likedBizShards;
+
+    /**
+     * 当前进程的消费者名称，格式是 pid@hostname
+     */
+    private final String consumerName = ManagementFactory.getRuntimeMXBean().getName();
+
+    @XxlJob("persistLikedRecordJob")
+    public void persistLikedRecordJob() {
+        int count = consume(consumerName, CLAIM_IDLE);
+        XxlJobHelper.handleSuccess("持久化点赞事件" + count + "条");
+    }
+
+    /**
+     * 消费事件流中的点赞事件
+     * @param consumer 消费者名称
+     * @param claimIdle 其它消费者的事件未确认超过这个时间则接管
+     * @return 处理的事件数量
+     */
+    public int consume(String consumer, Duration claimIdle) {
+        // 1.每个分区的事件流都创建消费者组
+        for (int i = 0; i < LikedBizShards.PARTITION_COUNT; i++) {
+            createGroupIfAbsent(LikedBizShards.streamKey(i));
+        }
+        int claimed = 0;
+        int total = 0;
+        for (int i = 0; i < LikedBizShards.PARTITION_COUNT; i++) {
+            String streamKey = LikedBizShards.streamKey(i);
+            // 2.接管宕机消费者的事件
+            claimed += claimIdle(streamKey, consumer, claimIdle);
+            // 3.先重放自己未确认的事件，再读取新事件
+            total += drain(streamKey, consumer, ReadOffset.from("0")) + drain(streamKey, consumer, ReadOffset.lastConsumed());
+        }
+        log.info("持久化点赞事件{}条，其中接管{}条", total, claimed);
+        return total;
+    }
+
+    private int drain(String streamKey, String consumer, ReadOffset offset) {
+        int total = 0;
+        while (true) {
+            List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream().read(
+                    Consumer.from(GROUP, consumer),
+                    StreamReadOptions.empty().count(BATCH_SIZE),
+                    StreamOffset.create(streamKey, offset));
+            if (CollUtils.isEmpty(records)) {
+                break;
+            }
+            apply(streamKey, records);
+            total += records.size();
+            if (records.size() < BATCH_SIZE) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private void apply(String streamKey, List<MapRecord<String, Object, Object>> records) {
+        // 1.合并同一用户对同一业务的多次操作
+        Map<String, LikedRecord> changed = new LinkedHashMap<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            Map<Object, Object> value = record.getValue();
+            LikedRecord r = new LikedRecord()
+                    .setUserId(Long.valueOf(value.get("userId").toString()))
+                    .setBizId(Long.valueOf(value.get("bizId").toString()))
+                    .setBizType(value.get("bizType").toString());
+            changed.put(r.getUserId() + ":" + r.getBizId(), r);
+        }
+        // 2.以Redis中当前的点赞状态为准，重放的旧事件可能晚于新事件处理，不能按事件中的状态写入
+        List<LikedRecord> list = new ArrayList<>(changed.values());
+        List<Boolean> states = likedBizShards.isLiked(
+                list.stream().map(LikedRecord::getUserId).collect(Collectors.toList()),
+                list.stream().map(LikedRecord::getBizId).collect(Collectors.toList()));
+        List<LikedRecord> liked = new ArrayList<>(list.size());
+        List<LikedRecord> unliked = new ArrayList<>();
+        for (int i = 0; i < list.size(); i++) {
+            (states.get(i) ? liked : unliked).add(list.get(i));
+        }
+        // 3.批量写入
+        likedRecordService.applyLikedChanges(liked, unliked);
+        // 4.确认并删除事件
+        RecordId[] ids = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+        redisTemplate.opsForStream().acknowledge(streamKey, GROUP, ids);
+        redisTemplate.opsForStream().delete(streamKey, ids);
+    }
+
+    private int claimIdle(String streamKey, String consumer, Duration claimIdle) {
+        PendingMessages pending = redisTemplate.opsForStream().pending(
+                streamKey, GROUP, Range.unbounded(), MAX_CLAIM);
+        RecordId[] ids = pending.stream()
+                .filter(p -> !consumer.equals(p.getConsumerName())
+                        && p.getElapsedTimeSinceLastDelivery().compareTo(claimIdle) >= 0)
+                .map(PendingMessage::getId)
+                .toArray(RecordId[]::new);
+        if (ids.length == 0) {
+            return 0;
+        }
+        // 只接管仍然超时的事件，被原消费者确认或已被其它消费者接管的不会重复处理
+        List<RecordId> claimed = redisTemplate.execute((RedisCallback<List<RecordId>>) connection ->
+                connection.streamCommands().xClaimJustId(streamKey.getBytes(StandardCharsets.UTF_8),
+                        GROUP, consumer, RedisStreamCommands.XClaimOptions.minIdle(claimIdle).ids(ids)));
+        return claimed == null ? 0 : claimed.size();
+    }
+
+    private void createGroupIfAbsent(String streamKey) {
+        try {
+            redisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands().xGroupCreate(
+                    streamKey.getBytes(StandardCharsets.UTF_8), GROUP, ReadOffset.from("0"), true));
+        } catch (RedisSystemException e) {
+            // 消费者组已存在
+            String message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            if (message == null || !message.contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+}
@@ -4,19 +4,20 @@ import com.tianji.api.dto.remark.LikedTimesDTO;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.StringUtils;
+import com.tianji.remark.cache.LikedBizShards;
 import com.tianji.remark.constants.RedisConstants;
-import com.tianji.remark.domain.po.LikedRecord;
-import com.tianji.remark.service.ILikedRecordService;
 import com.xxl.job.core.handler.annotation.XxlJob;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
 
 import static com.tianji.common.constants.MqConstants.Exchange.LIKE_RECORD_EXCHANGE;
 import static com.tianji.common.constants.MqConstants.Key.LIKED_TIMES_KEY_TEMPLATE;
@@ -29,118 +30,105 @@ import static com.tianji.common.constants.MqConstants.Key.LIKED_TIMES_KEY_TEMPLA
 @RequiredArgsConstructor
 public class LikedTimesJobHandler {
 
+    /**
+     * 每批同步的业务数量，也是一条MQ消息中点赞总数的数量
+     */
+    static final int BATCH_SIZE = 1000;
+
     private final StringRedisTemplate redisTemplate;
     private final RabbitMqHelper mqHelper;
-    private final ILikedRecordService likedRecordService;
+    private final LikedBizShards likedBizShards;
 
     /**
-     * 定时任务：从Redis中读取点赞数据，持久化到数据库并发送到MQ
-     * 该任务会处理所有业务类型的点赞数据
+     * 定时任务：同步点赞有变化的业务，发送点赞总数到MQ，点赞记录由{@link LikedRecordStreamHandler}持久化
+     * <p>
+     * 点赞、取消点赞成功后会把业务id加入所在分区、该业务类型的脏集合，任务用SPOP原子地弹出一批业务id，
+     * 弹出之后的新点赞会重新加入脏集合，由下次任务同步，不会丢失；同步失败的业务id放回脏集合重试
      */
     @XxlJob("syncLikedTimesJob")
     public void syncLikedTimesJob() {
         log.info("开始执行点赞数据同步定时任务...");
-
-        // 1. 扫描所有业务类型的点赞统计key
-        // 使用 keys 命令扫描所有符合模式的key（生产环境建议使用 scan 命令）
-        Set<String> keys = redisTemplate.keys(RedisConstants.LIKES_TIMES_KEY_PREFIX + "*");
-
-        if (CollUtils.isEmpty(keys)) {
-            log.info("没有需要同步的点赞数据");
-            return;
+        // 1.用SCAN查找有变化的业务类型，不阻塞Redis
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(RedisConstants.LIKES_DIRTY_KEY_PREFIX + "*").count(100).build();
+        Set<String> bizTypes = new LinkedHashSet<>();
+        try (Cursor<byte[]> cursor = redisTemplate.executeWithStickyConnection(
+                (RedisCallback<Cursor<byte[]>>) connection -> connection.scan(options))) {
+            while (cursor.hasNext()) {
+                // KEY的格式是 likes:dirty:type:{分区}:业务类型
+                String key = new String(cursor.next(), StandardCharsets.UTF_8);
+                bizTypes.add(key.substring(key.indexOf("}:") + 2));
+            }
         }
-
-        log.info("找到 {} 个业务类型需要同步点赞数据", keys.size());
-
-        // 2. 遍历每个业务类型的key
-        for (String key : keys) {
+        // 2.逐个业务类型同步，互不影响
+        for (String bizType : bizTypes) {
             try {
-                // 2.1 从key中提取业务类型
-                String bizType = key.replace(RedisConstants.LIKES_TIMES_KEY_PREFIX, "");
-
-                // 2.2 从Redis ZSet中读取所有数据
-                // ZSet中 member是bizId，score是点赞总数
-                Set<ZSetOperations.TypedTuple<String>> typedTuples =
-                    redisTemplate.opsForZSet().rangeWithScores(key, 0, -1);
+                int count = syncBizType(bizType);
+                log.info("业务类型 {} 的 {} 条业务的点赞数据已同步", bizType, count);
+            } catch (Exception e) {
+                log.error("处理业务类型 {} 的点赞数据时发生异常", bizType, e);
+            }
+        }
+        log.info("点赞数据同步定时任务执行完成");
+    }
 
-                if (CollUtils.isEmpty(typedTuples)) {
-                    log.debug("业务类型 {} 没有点赞数据", bizType);
+    /**
+     * 同步一个业务类型下有变化的业务，直到每个分区的脏集合中剩余不足一批
+     * @return 同步的业务数量
+     */
+    public int syncBizType(String bizType) {
+        int total = 0;
+        boolean more = true;
+        while (more) {
+            // 1.从每个分区原子地弹出一批有变化的业务id，热点业务的分片在多个分区，合并重复的业务id
+            Map<String, List<String>> popped = new LinkedHashMap<>();
+            Set<String> bizIds = new LinkedHashSet<>();
+            more = false;
+            for (int i = 0; i < LikedBizShards.PARTITION_COUNT; i++) {
+                String dirtyKey = LikedBizShards.dirtyKey(bizType, i);
+                List<String> ids = redisTemplate.opsForSet().pop(dirtyKey, BATCH_SIZE);
+                if (CollUtils.isEmpty(ids)) {
                     continue;
                 }
-
-                log.info("业务类型 {} 有 {} 条业务的点赞数据需要同步", bizType, typedTuples.size());
-
-                // 2.3 准备要持久化的点赞记录列表和要发送的点赞总数列表
-                List<LikedRecord> likedRecordList = new ArrayList<>();
-                List<LikedTimesDTO> likedTimesDTOList = new ArrayList<>(typedTuples.size());
-
-                // 2.4 遍历每个业务，读取其点赞用户列表
-                for (ZSetOperations.TypedTuple<String> tuple : typedTuples) {
-                    String bizId = tuple.getValue();
-                    Double score = tuple.getScore();
-
-                    if (bizId == null || score == null) {
-                        continue;
-                    }
-
-                    // 2.4.1 从Redis Set中读取该业务的所有点赞用户
-                    String likesSetKey = RedisConstants.LIKES_BIZ_KEY_PREFIX + bizId;
-                    Set<String> userIds = redisTemplate.opsForSet().members(likesSetKey);
-
-                    if (CollUtils.isNotEmpty(userIds)) {
-                        // 构造点赞记录列表
-                        for (String userId : userIds) {
-                            LikedRecord record = new LikedRecord();
-                            record.setUserId(Long.valueOf(userId));
-                            record.setBizId(Long.valueOf(bizId));
-                            record.setBizType(bizType);
-                            likedRecordList.add(record);
-                        }
-                    }
-
-                    // 2.4.2 构造点赞总数DTO
-                    LikedTimesDTO dto = LikedTimesDTO.of(Long.valueOf(bizId), score.intValue());
-                    likedTimesDTOList.add(dto);
-                }
-
-                // 2.5 批量持久化点赞记录到数据库
-                if (CollUtils.isNotEmpty(likedRecordList)) {
-                    likedRecordService.saveBatch(likedRecordList);
-                    log.info("业务类型 {} 的 {} 条点赞记录已持久化到数据库", bizType, likedRecordList.size());
-                }
-
-                // 2.6 批量发送点赞总数到MQ
-                if (CollUtils.isNotEmpty(likedTimesDTOList)) {
-                    // 根据业务类型生成对应的routing key
-                    String routingKey = StringUtils.format(LIKED_TIMES_KEY_TEMPLATE, bizType);
-
-                    // 批量发送消息到MQ
-                    mqHelper.send(LIKE_RECORD_EXCHANGE, routingKey, likedTimesDTOList);
-
-                    log.info("业务类型 {} 的 {} 条点赞总数已批量发送到MQ", bizType, likedTimesDTOList.size());
-                }
-
-                // 2.7 清理Redis缓存数据
-                // 删除点赞总数的ZSet key
-                redisTemplate.delete(key);
-
-                // 删除每个业务的点赞用户Set key
-                for (ZSetOperations.TypedTuple<String> tuple : typedTuples) {
-                    String bizId = tuple.getValue();
-                    if (bizId != null) {
-                        String likesSetKey = RedisConstants.LIKES_BIZ_KEY_PREFIX + bizId;
-                        redisTemplate.delete(likesSetKey);
-                    }
+                popped.put(dirtyKey, ids);
+                bizIds.addAll(ids);
+                more |= ids.size() >= BATCH_SIZE;
+            }
+            if (bizIds.isEmpty()) {
+                break;
+            }
+            try {
+                for (List<String> batch : CollUtils.split(bizIds, BATCH_SIZE)) {
+                    syncBatch(bizType, batch);
                 }
-
-                log.info("业务类型 {} 的Redis缓存数据已清理", bizType);
-
-            } catch (Exception e) {
-                log.error("处理业务类型 {} 的点赞数据时发生异常", key, e);
-                // 发生异常不影响其他业务类型的处理，继续处理下一个
+            } catch (RuntimeException e) {
+                // 2.同步失败，放回各自的脏集合等待下次重试
+                popped.forEach((dirtyKey, ids) -> redisTemplate.opsForSet().add(dirtyKey, ids.toArray(new String[0])));
+                throw e;
             }
+            total += bizIds.size();
         }
+        return total;
+    }
 
-        log.info("点赞数据同步定时任务执行完成");
+    private void syncBatch(String bizType, List<String> bizIds) {
+        // 1.一次读取每个业务的点赞总数，热点业务累加所有分片
+        List<Integer> counts = likedBizShards.countLikes(
+                bizIds.stream().map(Long::valueOf).collect(Collectors.toList()));
+        List<LikedTimesDTO> likedTimes = new ArrayList<>(bizIds.size());
+        for (int i = 0; i < bizIds.size(); i++) {
+            likedTimes.add(LikedTimesDTO.of(Long.valueOf(bizIds.get(i)), counts.get(i)));
+        }
+        // 2.这一批的点赞总数合并为一条MQ消息
+        mqHelper.send(LIKE_RECORD_EXCHANGE, StringUtils.format(LIKED_TIMES_KEY_TEMPLATE, bizType), likedTimes);
+    }
+
+    /**
+     * 定时任务：推进热点业务的拆分、合并阶段，迁移点赞用户
+     */
+    @XxlJob("advanceLikedShardsJob")
+    public void advanceLikedShardsJob() {
+        int count = likedBizShards.advance(LikedBizShards.SETTLE, LikedBizShards.COOL_DOWN);
+        log.info("推进了 {} 个热点业务的点赞用户拆分、合并", count);
     }
 }
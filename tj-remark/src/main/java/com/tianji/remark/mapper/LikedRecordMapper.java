@@ -1,7 +1,10 @@
 package com.tianji.remark.mapper;
 
+import com.tianji.common.autoconfigure.mybatis.BatchMapper;
 import com.tianji.remark.domain.po.LikedRecord;
-import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -11,6 +14,10 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  * @author author
  * @since 2025-10-27
  */
-public interface LikedRecordMapper extends BaseMapper<LikedRecord> {
+public interface LikedRecordMapper extends BatchMapper<LikedRecord> {
 
+    /**
+     * 按(user_id, biz_id)批量删除点赞记录
+     */
+    int deleteByUserAndBiz(@Param("records") List<LikedRecord> records);
 }
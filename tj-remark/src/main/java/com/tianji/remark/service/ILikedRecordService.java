@@ -25,4 +25,19 @@ public interface ILikedRecordService extends IService<LikedRecord> {
      * @return
      */
     Set<Long> isBizLiked(List<Long> bizIds);
+
+    /**
+     * 批量查询某个业务类型下的点赞状态，优先查询用户的点赞索引
+     * @param bizType 业务类型，为空时同{@link #isBizLiked(List)}
+     * @param bizIds 业务id
+     * @return 点赞过的业务id
+     */
+    Set<Long> isBizLiked(String bizType, List<Long> bizIds);
+
+    /**
+     * 批量写入点赞事件：新增点赞记录，删除取消的点赞记录
+     * @param liked 点赞的记录，按(user_id, biz_id)覆盖写入
+     * @param unliked 取消点赞的记录
+     */
+    void applyLikedChanges(List<LikedRecord> liked, List<LikedRecord> unliked);
 }
@@ -94,4 +94,13 @@ public class LikedRecordServiceImpl extends ServiceImpl<LikedRecordMapper, Liked
     }
 
 
+    @Override
+    public Set<Long> isBizLiked(String bizType, List<Long> bizIds) {
+        return isBizLiked(bizIds);
+    }
+
+    @Override
+    public void applyLikedChanges(List<LikedRecord> liked, List<LikedRecord> unliked) {
+        // 点赞记录实时写入数据库，不需要同步
+    }
 }
@@ -1,32 +1,29 @@
 package com.tianji.remark.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.tianji.api.dto.remark.LikedTimesDTO;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.utils.BooleanUtils;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.StringUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.remark.cache.LikedBizShards;
 import com.tianji.remark.constants.RedisConstants;
 import com.tianji.remark.domain.dto.LikeRecordFormDTO;
 import com.tianji.remark.domain.po.LikedRecord;
 import com.tianji.remark.mapper.LikedRecordMapper;
 import com.tianji.remark.service.ILikedRecordService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.redis.connection.StringRedisConnection;
-import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
+import java.time.Duration;
+import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-import static com.tianji.common.constants.MqConstants.Exchange.LIKE_RECORD_EXCHANGE;
-import static com.tianji.common.constants.MqConstants.Key.LIKED_TIMES_KEY_TEMPLATE;
-
 /**
  * <p>
  * 点赞记录表 服务实现类
@@ -36,68 +33,155 @@ import static com.tianji.common.constants.MqConstants.Key.LIKED_TIMES_KEY_TEMPLA
 @RequiredArgsConstructor
 public class LikedRecordServiceRedisImpl extends ServiceImpl<LikedRecordMapper, LikedRecord> implements ILikedRecordService {
 
+    /**
+     * 用户点赞索引最多保留的点赞数量，更早的点赞查询业务的点赞用户集合
+     */
+    static final int USER_INDEX_CAP = 1000;
+
+    private static final Duration USER_INDEX_TTL = Duration.ofDays(30);
+
+    /**
+     * 点赞事件流的近似长度上限，消费者组停止或落后时，超出的最早事件被裁剪，避免事件流无限增长
+     */
+    static final long STREAM_MAX_LEN = 1_000_000;
+
+    /**
+     * 雪花id（IdWorker）的起始时间和时间戳的位移
+     */
+    private static final long SNOWFLAKE_EPOCH = 1288834974657L;
+    private static final int SNOWFLAKE_TIMESTAMP_SHIFT = 22;
+
+    /**
+     * 业务服务与点赞服务之间允许的时钟偏差，创建时间在floor之后这个范围内的业务也查询点赞用户集合
+     */
+    private static final long CLOCK_SKEW_MILLIS = 1000;
+
+    private static final RedisScript<Long> LIKE_CHANGE_SCRIPT;
+    private static final RedisScript<Long> LIKED_INDEX_SCRIPT;
+    private static final RedisScript<List> LIKED_QUERY_SCRIPT;
+
+    static {
+        LIKE_CHANGE_SCRIPT = RedisScript.of(new ClassPathResource("lua/like_change.lua"), Long.class);
+        LIKED_INDEX_SCRIPT = RedisScript.of(new ClassPathResource("lua/liked_index.lua"), Long.class);
+        LIKED_QUERY_SCRIPT = RedisScript.of(new ClassPathResource("lua/liked_query.lua"), List.class);
+    }
+
     private final RabbitMqHelper mqHelper;
     private final StringRedisTemplate redisTemplate;
+    private final LikedBizShards likedBizShards;
 
     @Override
     public void addLikedRecord(LikeRecordFormDTO recordDTO) {
-        // 1.基于前端的参数，判断是执行点赞还是取消点赞
-        boolean success = recordDTO.getLiked() ? like(recordDTO) : unlike(recordDTO);
-        // 2.判断是否执行成功，如果失败，则直接结束
-        if (!success) {
-            return;
+        // 1.获取用户id，统计业务的点赞频率，热点业务拆分点赞用户
+        Long userId = UserContext.getUser();
+        Long bizId = recordDTO.getBizId();
+        boolean liked = BooleanUtils.isTrue(recordDTO.getLiked());
+        likedBizShards.recordLike(bizId, recordDTO.getBizType());
+        LikedBizShards.Route route = likedBizShards.route(bizId, userId);
+        // 2.执行SADD或SREM，每个Set在自己的分区内原子地维护墓碑，有变化时标记待同步的业务id、追加点赞事件，
+        // 由定时任务统计点赞总数、持久化点赞记录。拆分、合并过程中取消点赞先从另一个Set移除；
+        // 点赞写入之后再从另一个Set移除，移除成功时重新同步点赞总数，避免同步到重复计算的总数
+        LikedBizShards.LikedSet other = route.getOther();
+        if (!liked && other != null) {
+            changeLikedSet(other, false, userId, recordDTO);
         }
-        // 3.如果执行成功，统计点赞总数
-        Long likedTimes = redisTemplate.opsForSet()
-                .size(RedisConstants.LIKES_BIZ_KEY_PREFIX + recordDTO.getBizId());
-        if (likedTimes == null) {
-            return;
+        changeLikedSet(route.getTarget(), liked, userId, recordDTO);
+        if (liked && other != null) {
+            changeLikedSet(other, false, userId, recordDTO);
         }
-        // 4.缓存点总数到Redis
-        redisTemplate.opsForZSet().add(
-                RedisConstants.LIKES_TIMES_KEY_PREFIX + recordDTO.getBizType(),
-                recordDTO.getBizId().toString(),
-                likedTimes
-        );
+        // 3.维护用户的点赞索引，重复的请求也执行，请求重试时可以修复上次未完成的索引
+        redisTemplate.execute(LIKED_INDEX_SCRIPT, List.of(userIndexKey(recordDTO.getBizType(), userId)),
+                bizId.toString(), liked ? "1" : "0", String.valueOf(System.currentTimeMillis()),
+                String.valueOf(USER_INDEX_CAP), String.valueOf(USER_INDEX_TTL.getSeconds()));
     }
 
-    private boolean unlike(LikeRecordFormDTO recordDTO) {
-        // 1.获取用户id
-        Long userId = UserContext.getUser();
-        // 2.获取Key
-        String key = RedisConstants.LIKES_BIZ_KEY_PREFIX + recordDTO.getBizId();
-        // 3.执行SREM命令
-        Long result = redisTemplate.opsForSet().remove(key, userId.toString());
-        return result != null && result > 0;
+    /**
+     * 在一个点赞用户的Set中写入或移除用户，脚本的所有KEY都在该Set的分区
+     * @param add true写入，false移除
+     */
+    private void changeLikedSet(LikedBizShards.LikedSet set, boolean add, Long userId, LikeRecordFormDTO recordDTO) {
+        List<String> keys = new ArrayList<>(4);
+        keys.add(set.getKey());
+        keys.add(LikedBizShards.dirtyKey(recordDTO.getBizType(), set.getPartition()));
+        keys.add(LikedBizShards.streamKey(set.getPartition()));
+        if (set.getTombstone() != null) {
+            keys.add(set.getTombstone());
+        }
+        redisTemplate.execute(LIKE_CHANGE_SCRIPT, keys,
+                userId.toString(), recordDTO.getBizId().toString(), recordDTO.getBizType(), add ? "1" : "0",
+                BooleanUtils.isTrue(recordDTO.getLiked()) ? "1" : "0", String.valueOf(STREAM_MAX_LEN),
+                String.valueOf(LikedBizShards.TOMBSTONE_TTL.getSeconds()));
     }
 
-    private boolean like(LikeRecordFormDTO recordDTO) {
-        // 1.获取用户id
-        Long userId = UserContext.getUser();
-        // 2.获取Key
-        String key = RedisConstants.LIKES_BIZ_KEY_PREFIX + recordDTO.getBizId();
-        // 3.执行SADD命令
-        Long result = redisTemplate.opsForSet().add(key, userId.toString());
-        return result != null && result > 0;
+    @Override
+    @Transactional
+    public void applyLikedChanges(List<LikedRecord> liked, List<LikedRecord> unliked) {
+        if (CollUtils.isNotEmpty(liked)) {
+            getBaseMapper().upsertAll(liked);
+        }
+        if (CollUtils.isNotEmpty(unliked)) {
+            getBaseMapper().deleteByUserAndBiz(unliked);
+        }
     }
 
     @Override
     public Set<Long> isBizLiked(List<Long> bizIds) {
+        return queryLikedSets(UserContext.getUser(), bizIds);
+    }
+
+    @Override
+    public Set<Long> isBizLiked(String bizType, List<Long> bizIds) {
+        if (StringUtils.isBlank(bizType)) {
+            return isBizLiked(bizIds);
+        }
+        if (CollUtils.isEmpty(bizIds)) {
+            return CollUtils.emptySet();
+        }
         // 1.获取登录用户id
         Long userId = UserContext.getUser();
-        // 2.查询点赞状态
-        List<Object> objects = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
-            StringRedisConnection src = (StringRedisConnection) connection;
-            for (Long bizId : bizIds) {
-                String key = RedisConstants.LIKES_BIZ_KEY_PREFIX + bizId;
-                src.sIsMember(key, userId.toString());
+        // 2.一次查询用户点赞索引中的这些业务
+        List<Object> result = redisTemplate.execute(LIKED_QUERY_SCRIPT,
+                List.of(userIndexKey(bizType, userId)),
+                bizIds.stream().map(String::valueOf).toArray());
+        if (CollUtils.isEmpty(result)) {
+            return queryLikedSets(userId, bizIds);
+        }
+        // 3.命中的是点赞过的；未命中且创建时间早于索引floor的，可能是更早的点赞，查询业务的点赞用户集合
+        long floor = (long) Double.parseDouble(result.get(0).toString());
+        Set<Long> liked = new HashSet<>();
+        List<Long> olds = new ArrayList<>();
+        for (int i = 0; i < bizIds.size(); i++) {
+            Long bizId = bizIds.get(i);
+            if (Long.valueOf(1L).equals(result.get(i + 1))) {
+                liked.add(bizId);
+            } else if (floor < 0 || bizCreateTime(bizId) <= floor + CLOCK_SKEW_MILLIS) {
+                olds.add(bizId);
             }
-            return null;
-        });
-        // 3.返回结果
-        return IntStream.range(0, objects.size()) // 创建从0到集合size的流
-                .filter(i -> (boolean) objects.get(i)) // 遍历每个元素，保留结果为true的角标i
+        }
+        if (CollUtils.isNotEmpty(olds)) {
+            liked.addAll(queryLikedSets(userId, olds));
+        }
+        return liked;
+    }
+
+    private Set<Long> queryLikedSets(Long userId, List<Long> bizIds) {
+        // 1.查询点赞状态，热点业务同时查询用户所在的分片
+        List<Boolean> liked = likedBizShards.isLiked(Collections.nCopies(bizIds.size(), userId), bizIds);
+        // 2.返回结果
+        return IntStream.range(0, liked.size()) // 创建从0到集合size的流
+                .filter(liked::get) // 遍历每个元素，保留结果为true的角标i
                 .mapToObj(bizIds::get)// 用角标i取bizIds中的对应数据，就是点赞过的id
                 .collect(Collectors.toSet());// 收集
     }
-}
\ No newline at end of file
+
+    private static String userIndexKey(String bizType, Long userId) {
+        return RedisConstants.LIKES_USER_KEY_PREFIX + bizType + ":" + userId;
+    }
+
+    /**
+     * 业务id是雪花算法生成的，高位是创建时间（毫秒），不是雪花id的返回值很小，会按早期的业务处理
+     */
+    static long bizCreateTime(Long bizId) {
+        return (bizId >> SNOWFLAKE_TIMESTAMP_SHIFT) + SNOWFLAKE_EPOCH;
+    }
+}
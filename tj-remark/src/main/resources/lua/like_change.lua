@@ -0,0 +1,28 @@
+-- KEYS[1]：点赞用户(set)，业务的Set或热点业务的一个分片，KEYS[2]：同一分区中待同步点赞总数的业务id(set)，
+-- KEYS[3]：同一分区的点赞事件流(stream)，KEYS[4]：可选，拆分、合并过程中复制的目标Set的墓碑(set)
+-- 所有KEY的hash tag都是同一个分区号，在同一个slot
+-- ARGV[1]：用户id，ARGV[2]：业务id，ARGV[3]：业务类型，ARGV[4]：1写入用户，0移除用户，
+-- ARGV[5]：1点赞，0取消点赞，ARGV[6]：点赞事件流的近似长度上限，ARGV[7]：墓碑的有效期（秒）
+-- 返回：1表示Set有变化，0表示没有变化
+local changed
+if ARGV[4] == '1' then
+    changed = redis.call('sadd', KEYS[1], ARGV[1])
+else
+    changed = redis.call('srem', KEYS[1], ARGV[1])
+end
+if KEYS[4] then
+    if ARGV[5] == '1' then
+        redis.call('srem', KEYS[4], ARGV[1])
+    else
+        -- 迁移时不再把该用户复制到目标Set
+        redis.call('sadd', KEYS[4], ARGV[1])
+        redis.call('expire', KEYS[4], ARGV[7])
+    end
+end
+if changed == 0 then
+    return 0
+end
+redis.call('sadd', KEYS[2], ARGV[2])
+-- 事件流按近似长度裁剪，消费者组停止时不会无限增长
+redis.call('xadd', KEYS[3], 'MAXLEN', '~', ARGV[6], '*', 'userId', ARGV[1], 'bizId', ARGV[2], 'bizType', ARGV[3], 'liked', ARGV[5])
+return 1
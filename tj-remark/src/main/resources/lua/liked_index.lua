@@ -0,0 +1,25 @@
+-- KEYS[1]：用户在该业务类型下的点赞索引(zset)，member是业务id，score是点赞时间，
+--          特殊member 'floor'的score之后创建的业务，用户的点赞一定在索引中
+-- ARGV[1]：业务id，ARGV[2]：1点赞，0取消点赞，ARGV[3]：当前时间（毫秒），
+-- ARGV[4]：索引最多保留的点赞数量，ARGV[5]：索引的有效期（秒）
+if ARGV[2] == '0' then
+    redis.call('zrem', KEYS[1], ARGV[1])
+    return 1
+end
+if redis.call('exists', KEYS[1]) == 0 then
+    -- 新建的索引只包含之后的点赞
+    redis.call('zadd', KEYS[1], ARGV[3], 'floor')
+end
+redis.call('zadd', KEYS[1], ARGV[3], ARGV[1])
+local size = redis.call('zcard', KEYS[1]) - 1
+local cap = tonumber(ARGV[4])
+if size > cap then
+    -- 淘汰最早的点赞，之前创建的业务不再由索引判断
+    local floor = tonumber(redis.call('zscore', KEYS[1], 'floor'))
+    redis.call('zrem', KEYS[1], 'floor')
+    local removed = redis.call('zrange', KEYS[1], 0, size - cap - 1, 'WITHSCORES')
+    redis.call('zremrangebyrank', KEYS[1], 0, size - cap - 1)
+    redis.call('zadd', KEYS[1], math.max(floor, tonumber(removed[#removed]) + 1), 'floor')
+end
+redis.call('expire', KEYS[1], ARGV[5])
+return 1
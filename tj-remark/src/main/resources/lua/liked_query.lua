@@ -0,0 +1,13 @@
+-- KEYS[1]：用户在该业务类型下的点赞索引(zset)
+-- ARGV：要查询的业务id
+-- 返回：[索引的floor，索引不存在时为-1, 业务1是否点赞(1/0), 业务2是否点赞, ...]
+local floor = redis.call('zscore', KEYS[1], 'floor')
+local result = { floor or '-1' }
+for i, bizId in ipairs(ARGV) do
+    if redis.call('zscore', KEYS[1], bizId) then
+        result[i + 1] = 1
+    else
+        result[i + 1] = 0
+    end
+end
+return result
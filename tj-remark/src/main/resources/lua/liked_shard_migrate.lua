@@ -0,0 +1,11 @@
+-- KEYS[1]：复制的目标Set，拆分时是一个分片，合并时是业务的Set，KEYS[2]：目标Set的墓碑(set)，两个KEY在同一个slot
+-- ARGV：源位置中属于目标Set的用户id
+-- 迁移过程中取消点赞的用户在墓碑中，不复制，避免恢复已取消的点赞
+-- 返回：复制到目标Set的用户数量
+local count = 0
+for i = 1, #ARGV do
+    if redis.call('sismember', KEYS[2], ARGV[i]) == 0 then
+        count = count + redis.call('sadd', KEYS[1], ARGV[i])
+    end
+end
+return count
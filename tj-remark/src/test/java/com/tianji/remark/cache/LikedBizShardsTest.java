@@ -0,0 +1,448 @@
+package com.tianji.remark.cache;
+
+import com.tianji.api.dto.remark.LikedTimesDTO;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.utils.UserContext;
+import com.tianji.remark.constants.RedisConstants;
+import com.tianji.remark.domain.dto.LikeRecordFormDTO;
+import com.tianji.remark.handler.LikedTimesJobHandler;
+import com.tianji.remark.service.impl.LikedRecordServiceRedisImpl;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import io.lettuce.core.cluster.SlotHash;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class LikedBizShardsTest {
+
+    private static final String BIZ_TYPE = "QA";
+    private static final int BIZ_COUNT = 5;
+    private static final int THREADS = 8;
+    private static final int USERS_PER_THREAD = 100;
+    /**
+     * 并发测试中每个阶段持续的时间，单个进程内切换阶段后立即生效，只需要覆盖进行中的点赞请求
+     */
+    private static final Duration SETTLE = Duration.ofMillis(200);
+
+    private static StringRedisTemplate redisTemplate;
+
+    private LikedBizShards shards;
+    private LikedRecordServiceRedisImpl likedRecordService;
+    private LikedTimesJobHandler handler;
+    private RabbitMqHelper mqHelper;
+
+    /**
+     * MQ收到的每个业务最新的点赞总数
+     */
+    private final Map<Long, Integer> published = new ConcurrentHashMap<>();
+
+    @BeforeAll
+    static void init() {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        EmbeddedRedisSupport.flushAll();
+        mqHelper = mock(RabbitMqHelper.class);
+        doAnswer(i -> {
+            for (LikedTimesDTO dto : (List<LikedTimesDTO>) i.getArgument(2)) {
+                published.put(dto.getBizId(), dto.getLikedTimes());
+            }
+            return null;
+        }).when(mqHelper).send(anyString(), eq(BIZ_TYPE + ".times.changed"), any());
+        useShards(new LikedBizShards(redisTemplate));
+    }
+
+    private void useShards(LikedBizShards likedBizShards) {
+        shards = likedBizShards;
+        likedRecordService = new LikedRecordServiceRedisImpl(mock(RabbitMqHelper.class), redisTemplate, shards);
+        handler = new LikedTimesJobHandler(redisTemplate, mqHelper, shards);
+    }
+
+    @Test
+    void testSplitMatchesJavaHash() {
+        for (long userId = 1; userId <= 300; userId++) {
+            like(userId, 1L, true);
+        }
+        long snowflakeUser = 1_900_000_000_000_000_001L;
+        like(snowflakeUser, 1L, true);
+
+        // 1.准备阶段仍写入业务的Set
+        assertTrue(shards.split(1L, BIZ_TYPE));
+        assertFalse(shards.split(1L, BIZ_TYPE));
+        like(1000L, 1L, true);
+        like(1L, 1L, false);
+        assertEquals(List.of(301), shards.countLikes(List.of(1L)));
+
+        // 2.迁移阶段写入分片，取消点赞同时移除业务的Set中的用户
+        assertEquals(1, shards.advance(Duration.ZERO, LikedBizShards.COOL_DOWN));
+        like(1001L, 1L, true);
+        like(2L, 1L, false);
+        assertEquals(Boolean.TRUE, redisTemplate.opsForSet().isMember(LikedBizShards.shardKey(1L, 1001L), "1001"));
+        assertEquals(List.of(301), shards.countLikes(List.of(1L)));
+        assertEquals(List.of(true, true, false, false), shards.isLiked(
+                List.of(1000L, 1001L, 1L, 2L), List.of(1L, 1L, 1L, 1L)));
+
+        // 3.迁移完成后业务的Set已清空，每个用户都在Java计算的分片中，仍是热点时不合并
+        assertEquals(1, shards.advance(Duration.ZERO, LikedBizShards.COOL_DOWN));
+        assertEquals(0, shards.advance(Duration.ZERO, LikedBizShards.COOL_DOWN));
+        assertEquals(Boolean.FALSE, redisTemplate.hasKey(LikedBizShards.bizKey(1L)));
+        for (long userId = 3; userId <= 300; userId++) {
+            assertEquals(Boolean.TRUE, redisTemplate.opsForSet().isMember(
+                    LikedBizShards.shardKey(1L, userId), String.valueOf(userId)), "用户" + userId);
+        }
+        assertEquals(Boolean.TRUE, redisTemplate.opsForSet().isMember(
+                LikedBizShards.shardKey(1L, snowflakeUser), String.valueOf(snowflakeUser)));
+        // 4.每个分片都有用户，分片的分区各不相同
+        for (int i = 0; i < LikedBizShards.SHARD_COUNT; i++) {
+            String key = LikedBizShards.shardKey(1L, i);
+            assertEquals("likes:set:biz:{" + LikedBizShards.partitionOf(1L, i) + "}:1#" + i, key);
+            Long size = redisTemplate.opsForSet().size(key);
+            assertTrue(size != null && size > 0, "分片" + i);
+        }
+        assertEquals(List.of(301), shards.countLikes(List.of(1L)));
+        assertEquals(Boolean.TRUE, redisTemplate.opsForSet().isMember(
+                LikedBizShards.dirtyKey(BIZ_TYPE, LikedBizShards.partitionOf(1L)), "1"));
+
+        // 5.拆分完成后只读写分片
+        like(1L, 1L, true);
+        like(1000L, 1L, false);
+        assertEquals(List.of(301), shards.countLikes(List.of(1L)));
+        assertEquals(List.of(true, false), shards.isLiked(List.of(1L, 1000L), List.of(1L, 1L)));
+        assertEquals(Boolean.FALSE, redisTemplate.hasKey(LikedBizShards.bizKey(1L)));
+    }
+
+    /**
+     * 迁移读取一批用户之后取消的点赞，不会被这一批复制回分片
+     */
+    @Test
+    void testUnlikeDuringMigrationNotRestored() {
+        for (long userId = 1; userId <= 3; userId++) {
+            like(userId, 1L, true);
+        }
+        shards.split(1L, BIZ_TYPE);
+        shards.advance(Duration.ZERO, LikedBizShards.COOL_DOWN);
+        // 1.迁移读取了一批用户，复制之前用户2取消点赞
+        List<String> batch = List.of("1", "2", "3");
+        like(2L, 1L, false);
+        shards.migrateBatch(1L, batch);
+        assertEquals(List.of(2), shards.countLikes(List.of(1L)));
+        assertEquals(List.of(true, false, true), shards.isLiked(List.of(1L, 2L, 3L), List.of(1L, 1L, 1L)));
+
+        // 2.再次点赞会移除墓碑
+        like(2L, 1L, true);
+        shards.migrateBatch(1L, List.of("2"));
+        shards.advance(Duration.ZERO, LikedBizShards.COOL_DOWN);
+        assertEquals(List.of(3), shards.countLikes(List.of(1L)));
+        assertEquals(List.of(true, true, true), shards.isLiked(List.of(1L, 2L, 3L), List.of(1L, 1L, 1L)));
+    }
+
+    @Test
+    void testFoldBackWhenCooled() {
+        for (long userId = 1; userId <= 300; userId++) {
+            like(userId, 1L, true);
+        }
+        shards.split(1L, BIZ_TYPE);
+        shards.advance(Duration.ZERO, LikedBizShards.COOL_DOWN);
+        shards.advance(Duration.ZERO, LikedBizShards.COOL_DOWN);
+        assertEquals(Boolean.FALSE, redisTemplate.hasKey(LikedBizShards.bizKey(1L)));
+
+        // 1.冷却后开始合并，准备阶段仍写入分片，同时移除业务的Set中的用户
+        assertEquals(1, shards.advance(Duration.ZERO, Duration.ZERO));
+        like(1000L, 1L, true);
+        like(1L, 1L, false);
+        assertEquals(Boolean.TRUE, redisTemplate.opsForSet().isMember(LikedBizShards.shardKey(1L, 1000L), "1000"));
+        assertEquals(List.of(300), shards.countLikes(List.of(1L)));
+
+        // 2.合并阶段写入业务的Set，取消点赞同时移除分片中的用户
+        assertEquals(1, shards.advance(Duration.ZERO, Duration.ZERO));
+        like(1001L, 1L, true);
+        like(2L, 1L, false);
+        like(1L, 1L, true);
+        assertEquals(Boolean.TRUE, redisTemplate.opsForSet().isMember(LikedBizShards.bizKey(1L), "1001"));
+        assertEquals(List.of(301), shards.countLikes(List.of(1L)));
+        assertEquals(List.of(true, true, true, false), shards.isLiked(
+                List.of(1000L, 1001L, 1L, 2L), List.of(1L, 1L, 1L, 1L)));
+
+        // 3.合并完成后分片已清空，删除拆分状态，重新同步点赞总数
+        redisTemplate.delete(LikedBizShards.dirtyKey(BIZ_TYPE, LikedBizShards.partitionOf(1L)));
+        assertEquals(1, shards.advance(Duration.ZERO, Duration.ZERO));
+        assertEquals(0, shards.advance(Duration.ZERO, Duration.ZERO));
+        assertFalse(redisTemplate.opsForHash().hasKey(RedisConstants.LIKES_SHARDED_KEY, "1"));
+        for (int i = 0; i < LikedBizShards.SHARD_COUNT; i++) {
+            assertEquals(Boolean.FALSE, redisTemplate.hasKey(LikedBizShards.shardKey(1L, i)), "分片" + i);
+        }
+        assertEquals(301, redisTemplate.opsForSet().size(LikedBizShards.bizKey(1L)));
+        assertEquals(List.of(301), shards.countLikes(List.of(1L)));
+        assertEquals(Boolean.TRUE, redisTemplate.opsForSet().isMember(
+                LikedBizShards.dirtyKey(BIZ_TYPE, LikedBizShards.partitionOf(1L)), "1"));
+
+        // 4.之后只读写业务的Set，再次成为热点时可以重新拆分
+        like(3L, 1L, false);
+        assertEquals(List.of(300), shards.countLikes(List.of(1L)));
+        assertTrue(shards.split(1L, BIZ_TYPE));
+    }
+
+    /**
+     * 合并读取一批用户之后取消的点赞，不会被这一批复制回业务的Set
+     */
+    @Test
+    void testUnlikeDuringFoldNotRestored() {
+        for (long userId = 1; userId <= 3; userId++) {
+            like(userId, 1L, true);
+        }
+        shards.split(1L, BIZ_TYPE);
+        for (int i = 0; i < 4; i++) {
+            shards.advance(Duration.ZERO, Duration.ZERO);
+        }
+        // 1.合并读取了用户2所在分片的一批用户，复制之前用户2取消点赞
+        int shard = LikedBizShards.shardOf(2L);
+        List<String> batch = new ArrayList<>(redisTemplate.opsForSet().members(LikedBizShards.shardKey(1L, shard)));
+        like(2L, 1L, false);
+        shards.foldBatch(1L, shard, batch);
+        assertEquals(List.of(2), shards.countLikes(List.of(1L)));
+        assertEquals(List.of(true, false, true), shards.isLiked(List.of(1L, 2L, 3L), List.of(1L, 1L, 1L)));
+
+        // 2.再次点赞会移除墓碑
+        like(2L, 1L, true);
+        shards.advance(Duration.ZERO, Duration.ZERO);
+        assertEquals(List.of(3), shards.countLikes(List.of(1L)));
+        assertEquals(3, redisTemplate.opsForSet().size(LikedBizShards.bizKey(1L)));
+    }
+
+    /**
+     * 拆分的业务仍是热点时不合并，冷却时间从最近一次检测为热点开始计算
+     */
+    @Test
+    void testHotBizNotFolded() {
+        String since = String.valueOf(System.currentTimeMillis() - Duration.ofHours(1).toMillis());
+        redisTemplate.opsForHash().put(RedisConstants.LIKES_SHARDED_KEY, "1", "SHARDED:" + since + ":" + BIZ_TYPE);
+        redisTemplate.opsForHash().put(RedisConstants.LIKES_SHARDED_KEY, "2", "SHARDED:" + since + ":" + BIZ_TYPE);
+        // 已合并的业务遗留的记录
+        redisTemplate.opsForZSet().add(RedisConstants.LIKES_HOT_KEY, "3", 0);
+        for (int i = 0; i < LikedBizShards.HOT_THRESHOLD; i++) {
+            shards.recordLike(1L, BIZ_TYPE);
+        }
+        assertNotNull(redisTemplate.opsForZSet().score(RedisConstants.LIKES_HOT_KEY, "1"));
+
+        assertEquals(1, shards.advance(Duration.ZERO, LikedBizShards.COOL_DOWN));
+        assertTrue(redisTemplate.opsForHash().get(RedisConstants.LIKES_SHARDED_KEY, "1").toString().startsWith("SHARDED:"));
+        assertTrue(redisTemplate.opsForHash().get(RedisConstants.LIKES_SHARDED_KEY, "2").toString().startsWith("FOLD_PREPARING:"));
+        assertEquals(Set.of("1"), redisTemplate.opsForZSet().range(RedisConstants.LIKES_HOT_KEY, 0, -1));
+    }
+
+    /**
+     * 拆分、合并的每个阶段，点赞、迁移执行的每个脚本的KEY都在同一个slot，同一业务的分片和业务的Set在不同的slot
+     */
+    @Test
+    void testScriptKeysInOneSlot() {
+        List<List<String>> scriptKeys = new CopyOnWriteArrayList<>();
+        StringRedisTemplate recording = new StringRedisTemplate(redisTemplate.getRequiredConnectionFactory()) {
+            @Override
+            public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+                scriptKeys.add(keys);
+                return super.execute(script, keys, args);
+            }
+        };
+        shards = new LikedBizShards(recording);
+        likedRecordService = new LikedRecordServiceRedisImpl(mock(RabbitMqHelper.class), recording, shards);
+        // 1.走完拆分、合并的每个阶段，每个阶段都点赞、取消点赞
+        for (long userId = 1; userId <= 50; userId++) {
+            like(userId, 1L, true);
+        }
+        shards.split(1L, BIZ_TYPE);
+        for (int round = 0; round < 6; round++) {
+            for (long userId = 1; userId <= 20; userId++) {
+                like(userId, 1L, userId % 2 == round % 2);
+            }
+            shards.advance(Duration.ZERO, Duration.ZERO);
+        }
+        assertFalse(redisTemplate.opsForHash().hasKey(RedisConstants.LIKES_SHARDED_KEY, "1"));
+
+        // 2.每个脚本的KEY都在同一个slot，包括带墓碑的点赞和迁移
+        assertTrue(scriptKeys.stream().anyMatch(keys -> keys.size() == 4));
+        assertTrue(scriptKeys.stream().anyMatch(keys -> keys.size() == 2));
+        for (List<String> keys : scriptKeys) {
+            int slot = SlotHash.getSlot(keys.get(0));
+            for (String key : keys) {
+                assertEquals(slot, SlotHash.getSlot(key), keys.toString());
+            }
+        }
+        // 3.点赞事件和待同步的业务id分散到各个分片所在的分区
+        for (int i = 0; i < LikedBizShards.SHARD_COUNT; i++) {
+            int partition = LikedBizShards.partitionOf(1L, i);
+            assertTrue(redisTemplate.opsForStream().size(LikedBizShards.streamKey(partition)) > 0, "分区" + partition);
+        }
+        // 4.同一业务的分片和业务的Set在不同的slot
+        for (long bizId = 1; bizId <= 100; bizId++) {
+            Set<Integer> slots = new HashSet<>();
+            slots.add(SlotHash.getSlot(LikedBizShards.bizKey(bizId)));
+            for (int i = 0; i < LikedBizShards.SHARD_COUNT; i++) {
+                slots.add(SlotHash.getSlot(LikedBizShards.shardKey(bizId, i)));
+            }
+            assertEquals(LikedBizShards.SHARD_COUNT + 1, slots.size(), "业务" + bizId);
+        }
+    }
+
+    @Test
+    void testDetectHotBiz() {
+        for (int i = 1; i < LikedBizShards.HOT_THRESHOLD; i++) {
+            shards.recordLike(1L, BIZ_TYPE);
+        }
+        assertFalse(redisTemplate.opsForHash().hasKey(RedisConstants.LIKES_SHARDED_KEY, "1"));
+        shards.recordLike(1L, BIZ_TYPE);
+        Object state = redisTemplate.opsForHash().get(RedisConstants.LIKES_SHARDED_KEY, "1");
+        assertNotNull(state);
+        assertTrue(state.toString().startsWith("PREPARING:"));
+        assertTrue(state.toString().endsWith(":" + BIZ_TYPE));
+        // 其它业务不受影响
+        shards.recordLike(2L, BIZ_TYPE);
+        assertFalse(redisTemplate.opsForHash().hasKey(RedisConstants.LIKES_SHARDED_KEY, "2"));
+    }
+
+    @Test
+    void testSlidingWindow() {
+        LikedBizShards.RateWindow window = new LikedBizShards.RateWindow(10);
+        assertEquals(1, window.add(100));
+        assertEquals(2, window.add(100));
+        assertEquals(3, window.add(109));
+        // 第100秒的请求移出窗口
+        assertEquals(2, window.add(110));
+        assertEquals(1, window.add(200));
+    }
+
+    /**
+     * 8个线程并发点赞、取消点赞，同时反复拆分、合并一部分业务，并反复同步点赞总数，最终的点赞总数和点赞状态准确
+     */
+    @Test
+    void testExactTotalsUnderConcurrentWrites() throws Exception {
+        // 并发写入的请求数超过热点阈值，关闭热点检测，只由测试拆分、合并
+        useShards(new LikedBizShards(redisTemplate) {
+            @Override
+            public void recordLike(Long bizId, String bizType) {
+            }
+        });
+        // 1.每个线程负责不同的用户，线程内按顺序操作，最终状态是确定的，拆分、合并完成前持续写入
+        AtomicBoolean finished = new AtomicBoolean(false);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Map<Long, Set<Long>>>> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            writers.add(executor.submit(() -> {
+                Random random = new Random(thread);
+                Map<Long, Set<Long>> liked = new HashMap<>();
+                for (int i = 0; i < 2000 || !finished.get(); i++) {
+                    long userId = thread * USERS_PER_THREAD + 1 + random.nextInt(USERS_PER_THREAD);
+                    long bizId = 1 + random.nextInt(BIZ_COUNT);
+                    boolean like = random.nextInt(3) > 0;
+                    like(userId, bizId, like);
+                    Set<Long> users = liked.computeIfAbsent(bizId, id -> new HashSet<>());
+                    if (like) {
+                        users.add(userId);
+                    } else {
+                        users.remove(userId);
+                    }
+                }
+                return liked;
+            }));
+        }
+        int[] rounds = new int[1];
+        Future<?> resharder = Executors.newSingleThreadExecutor().submit(() -> {
+            for (int cycle = 0; cycle < 2; cycle++) {
+                Thread.sleep(SETTLE.toMillis());
+                for (long bizId = 1; bizId <= BIZ_COUNT; bizId += 2) {
+                    shards.split(bizId, BIZ_TYPE);
+                }
+                // 拆分完成前不合并
+                while (!allInPhase("SHARDED:")) {
+                    advanceAndSync(LikedBizShards.COOL_DOWN);
+                    rounds[0]++;
+                }
+                while (!allFolded()) {
+                    advanceAndSync(Duration.ZERO);
+                    rounds[0]++;
+                }
+            }
+            finished.set(true);
+            return null;
+        });
+        resharder.get(60, TimeUnit.SECONDS);
+        Map<Long, Set<Long>> expected = new HashMap<>();
+        for (Future<Map<Long, Set<Long>>> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS).forEach((bizId, users) ->
+                    expected.computeIfAbsent(bizId, id -> new HashSet<>()).addAll(users));
+        }
+        executor.shutdown();
+        assertTrue(rounds[0] > 2, "推进次数" + rounds[0]);
+
+        // 2.合并的业务只剩业务的Set，点赞总数、点赞状态和同步到MQ的总数都是准确的
+        handler.syncBizType(BIZ_TYPE);
+        assertEquals(0, redisTemplate.opsForHash().size(RedisConstants.LIKES_SHARDED_KEY));
+        List<Long> bizIds = new ArrayList<>();
+        List<Integer> exact = new ArrayList<>();
+        for (long bizId = 1; bizId <= BIZ_COUNT; bizId++) {
+            bizIds.add(bizId);
+            exact.add(expected.get(bizId).size());
+            assertEquals(expected.get(bizId).size(), published.get(bizId), "业务" + bizId);
+            assertEquals(expected.get(bizId).size(), redisTemplate.opsForSet().size(LikedBizShards.bizKey(bizId)), "业务" + bizId);
+        }
+        assertEquals(exact, shards.countLikes(bizIds));
+        for (long userId = 1; userId <= THREADS * USERS_PER_THREAD; userId++) {
+            List<Boolean> liked = shards.isLiked(Collections.nCopies(BIZ_COUNT, userId), bizIds);
+            for (int i = 0; i < BIZ_COUNT; i++) {
+                assertEquals(expected.get(bizIds.get(i)).contains(userId), liked.get(i),
+                        "用户" + userId + "业务" + bizIds.get(i));
+            }
+        }
+    }
+
+    private void advanceAndSync(Duration coolDown) throws InterruptedException {
+        Thread.sleep(SETTLE.toMillis() / 4);
+        shards.advance(SETTLE, coolDown);
+        handler.syncBizType(BIZ_TYPE);
+    }
+
+    private boolean allInPhase(String phase) {
+        for (long bizId = 1; bizId <= BIZ_COUNT; bizId += 2) {
+            Object state = redisTemplate.opsForHash().get(RedisConstants.LIKES_SHARDED_KEY, String.valueOf(bizId));
+            if (state == null || !state.toString().startsWith(phase)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean allFolded() {
+        Long size = redisTemplate.opsForHash().size(RedisConstants.LIKES_SHARDED_KEY);
+        return size == null || size == 0;
+    }
+
+    private void like(long userId, long bizId, boolean liked) {
+        LikeRecordFormDTO dto = new LikeRecordFormDTO();
+        dto.setBizId(bizId);
+        dto.setBizType(BIZ_TYPE);
+        dto.setLiked(liked);
+        UserContext.setUser(userId);
+        try {
+            likedRecordService.addLikedRecord(dto);
+        } finally {
+            UserContext.removeUser();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.tianji.remark.handler;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.utils.UserContext;
+import com.tianji.remark.cache.LikedBizShards;
+import com.tianji.remark.domain.dto.LikeRecordFormDTO;
+import com.tianji.remark.domain.po.LikedRecord;
+import com.tianji.remark.mapper.LikedRecordMapper;
+import com.tianji.remark.service.ILikedRecordService;
+import com.tianji.remark.service.impl.LikedRecordServiceRedisImpl;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import com.tianji.common.test.H2MybatisSupport;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class LikedRecordStreamHandlerTest {
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS liked_record")
+        void drop();
+
+        @Update("CREATE TABLE liked_record (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id BIGINT NOT NULL, " +
+                "biz_id BIGINT NOT NULL, biz_type VARCHAR(16) NOT NULL, " +
+                "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, update_time DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                "CONSTRAINT uk_user_biz UNIQUE (user_id, biz_id))")
+        void create();
+    }
+
+    private static StringRedisTemplate redisTemplate;
+    private static SqlSessionTemplate sqlSession;
+
+    private LikedRecordMapper recordMapper;
+    private LikedBizShards shards;
+    private LikedRecordServiceRedisImpl likedRecordService;
+    private LikedRecordStreamHandler handler;
+
+    @BeforeAll
+    static void init() throws IOException {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+        sqlSession = H2MybatisSupport.sqlSession("liked_record_stream", SchemaMapper.class, LikedRecordMapper.class);
+        Configuration configuration = sqlSession.getConfiguration();
+        String resource = "mapper/LikedRecordMapper.xml";
+        try (InputStream in = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        SchemaMapper schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.drop();
+        schema.create();
+        EmbeddedRedisSupport.flushAll();
+        recordMapper = sqlSession.getMapper(LikedRecordMapper.class);
+        shards = new LikedBizShards(redisTemplate);
+        likedRecordService = new LikedRecordServiceRedisImpl(mock(RabbitMqHelper.class), redisTemplate, shards);
+        ReflectionTestUtils.setField(likedRecordService, "baseMapper", recordMapper);
+        handler = new LikedRecordStreamHandler(redisTemplate, likedRecordService, shards);
+    }
+
+    @Test
+    void testCollapseLikeAndUnlike() {
+        // 1.同一批中的点赞、取消点赞合并，重复点赞不产生事件
+        like(1L, 10L, true);
+        like(1L, 10L, false);
+        like(1L, 10L, true);
+        like(1L, 10L, true);
+        like(2L, 10L, true);
+        like(2L, 10L, false);
+        like(3L, 20L, true);
+        assertEquals(6, streamSize());
+        assertEquals(6, handler.consume("c1", LikedRecordStreamHandler.CLAIM_IDLE));
+        assertEquals(Set.of("1:10", "3:20"), savedRecords());
+        assertEquals(0, streamSize());
+
+        // 2.之后的批次删除取消的点赞，重复写入已有的点赞没有影响
+        like(3L, 20L, false);
+        like(2L, 10L, true);
+        like(1L, 10L, false);
+        like(1L, 10L, true);
+        assertEquals(4, handler.consume("c1", LikedRecordStreamHandler.CLAIM_IDLE));
+        assertEquals(Set.of("1:10", "2:10"), savedRecords());
+        assertEquals(0, handler.consume("c1", LikedRecordStreamHandler.CLAIM_IDLE));
+    }
+
+    @Test
+    void testReplayAfterConsumerCrash() {
+        for (long userId = 1; userId <= 1200; userId++) {
+            like(userId, userId % 7, true);
+        }
+        for (long userId = 1; userId <= 1200; userId += 3) {
+            like(userId, userId % 7, false);
+        }
+        // 1.消费者c1读取第一批后写入数据库前宕机，事件留在待确认列表中
+        ILikedRecordService crashing = mock(ILikedRecordService.class);
+        doThrow(new IllegalStateException("宕机")).when(crashing).applyLikedChanges(any(), any());
+        LikedRecordStreamHandler crashed = new LikedRecordStreamHandler(redisTemplate, crashing, shards);
+        assertThrows(IllegalStateException.class, () -> crashed.consume("c1", LikedRecordStreamHandler.CLAIM_IDLE));
+        long pending = pendingSize();
+        assertTrue(pending > 0 && pending <= LikedRecordStreamHandler.BATCH_SIZE, "待确认" + pending);
+        assertEquals(0, recordMapper.selectCount(null));
+
+        // 2.c1未超时时不被接管，c2只处理新事件
+        int events = 1200 + 400;
+        assertEquals(events - pending, handler.consume("c2", Duration.ofMinutes(1)));
+
+        // 3.超时后c2接管并重放c1未确认的事件，这些点赞事件晚于之后的取消点赞处理，结果仍与Redis一致
+        assertEquals(pending, handler.consume("c2", Duration.ZERO));
+        assertEquals(0, pendingSize());
+        assertEquals(0, streamSize());
+        assertEquals(800, recordMapper.selectCount(null));
+        for (long bizId = 0; bizId < 7; bizId++) {
+            Set<String> likers = redisTemplate.opsForSet().members(LikedBizShards.bizKey(bizId));
+            Set<String> saved = recordMapper.selectList(new QueryWrapper<LikedRecord>().eq("biz_id", bizId)).stream()
+                    .map(r -> r.getUserId().toString()).collect(Collectors.toSet());
+            assertEquals(likers, saved, "业务" + bizId);
+        }
+    }
+
+    @Test
+    void testReplayOwnPendingAfterRestart() {
+        like(1L, 10L, true);
+        like(2L, 10L, true);
+        ILikedRecordService crashing = mock(ILikedRecordService.class);
+        doThrow(new IllegalStateException("宕机")).when(crashing).applyLikedChanges(any(), any());
+        assertThrows(IllegalStateException.class,
+                () -> new LikedRecordStreamHandler(redisTemplate, crashing, shards).consume("c1", LikedRecordStreamHandler.CLAIM_IDLE));
+
+        // 重启后同名消费者先重放自己未确认的事件
+        like(3L, 10L, true);
+        assertEquals(3, handler.consume("c1", LikedRecordStreamHandler.CLAIM_IDLE));
+        assertEquals(Set.of("1:10", "2:10", "3:10"), savedRecords());
+    }
+
+    private long streamSize() {
+        long size = 0;
+        for (int i = 0; i < LikedBizShards.PARTITION_COUNT; i++) {
+            size += redisTemplate.opsForStream().size(LikedBizShards.streamKey(i));
+        }
+        return size;
+    }
+
+    private long pendingSize() {
+        long size = 0;
+        for (int i = 0; i < LikedBizShards.PARTITION_COUNT; i++) {
+            size += redisTemplate.opsForStream().pending(LikedBizShards.streamKey(i), LikedRecordStreamHandler.GROUP)
+                    .getTotalPendingMessages();
+        }
+        return size;
+    }
+
+    private Set<String> savedRecords() {
+        List<LikedRecord> records = recordMapper.selectList(null);
+        return records.stream().map(r -> r.getUserId() + ":" + r.getBizId()).collect(Collectors.toSet());
+    }
+
+    private void like(long userId, long bizId, boolean liked) {
+        LikeRecordFormDTO dto = new LikeRecordFormDTO();
+        dto.setBizId(bizId);
+        dto.setBizType("QA");
+        dto.setLiked(liked);
+        UserContext.setUser(userId);
+        try {
+            likedRecordService.addLikedRecord(dto);
+        } finally {
+            UserContext.removeUser();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.tianji.remark.handler;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.tianji.api.dto.remark.LikedTimesDTO;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.utils.UserContext;
+import com.tianji.remark.cache.LikedBizShards;
+import com.tianji.remark.domain.dto.LikeRecordFormDTO;
+import com.tianji.remark.domain.po.LikedRecord;
+import com.tianji.remark.mapper.LikedRecordMapper;
+import com.tianji.remark.service.impl.LikedRecordServiceRedisImpl;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import com.tianji.common.test.H2MybatisSupport;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LikedTimesJobHandlerTest {
+
+    private static final String BIZ_TYPE = "QA";
+    private static final int BIZ_COUNT = 50;
+
+    public interface SchemaMapper {
+        @Update("DROP TABLE IF EXISTS liked_record")
+        void drop();
+
+        @Update("CREATE TABLE liked_record (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id BIGINT NOT NULL, " +
+                "biz_id BIGINT NOT NULL, biz_type VARCHAR(16) NOT NULL, " +
+                "create_time DATETIME DEFAULT CURRENT_TIMESTAMP, update_time DATETIME DEFAULT CURRENT_TIMESTAMP, " +
+                "CONSTRAINT uk_user_biz UNIQUE (user_id, biz_id))")
+        void create();
+    }
+
+    private static StringRedisTemplate redisTemplate;
+    private static SqlSessionTemplate sqlSession;
+
+    private LikedRecordMapper recordMapper;
+    private LikedBizShards shards;
+    private LikedRecordServiceRedisImpl likedRecordService;
+    private RabbitMqHelper mqHelper;
+    private LikedTimesJobHandler handler;
+    private LikedRecordStreamHandler streamHandler;
+
+    /**
+     * MQ收到的每个业务最新的点赞总数
+     */
+    private final Map<Long, Integer> published = new ConcurrentHashMap<>();
+
+    @BeforeAll
+    static void init() throws IOException {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+        sqlSession = H2MybatisSupport.sqlSession("liked_record", SchemaMapper.class, LikedRecordMapper.class);
+        Configuration configuration = sqlSession.getConfiguration();
+        String resource = "mapper/LikedRecordMapper.xml";
+        try (InputStream in = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        SchemaMapper schema = sqlSession.getMapper(SchemaMapper.class);
+        schema.drop();
+        schema.create();
+        EmbeddedRedisSupport.flushAll();
+        recordMapper = sqlSession.getMapper(LikedRecordMapper.class);
+        shards = new LikedBizShards(redisTemplate);
+        likedRecordService = new LikedRecordServiceRedisImpl(mock(RabbitMqHelper.class), redisTemplate, shards);
+        ReflectionTestUtils.setField(likedRecordService, "baseMapper", recordMapper);
+        mqHelper = mock(RabbitMqHelper.class);
+        doAnswer(i -> {
+            for (LikedTimesDTO dto : (List<LikedTimesDTO>) i.getArgument(2)) {
+                published.put(dto.getBizId(), dto.getLikedTimes());
+            }
+            return null;
+        }).when(mqHelper).send(anyString(), eq(BIZ_TYPE + ".times.changed"), any());
+        handler = new LikedTimesJobHandler(redisTemplate, mqHelper, shards);
+        streamHandler = new LikedRecordStreamHandler(redisTemplate, likedRecordService, shards);
+    }
+
+    @Test
+    void testNoLikesLostDuringSync() throws Exception {
+        // 1.8个线程并发点赞、取消点赞，同时不停地同步点赞总数、持久化点赞记录
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            long seed = t;
+            writers.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 1500; i++) {
+                    like(1 + random.nextInt(200), 1 + random.nextInt(BIZ_COUNT), random.nextInt(3) > 0);
+                }
+            }));
+        }
+        AtomicBoolean writing = new AtomicBoolean(true);
+        int[] syncs = new int[1];
+        Future<?> syncer = Executors.newSingleThreadExecutor().submit(() -> {
+            while (writing.get()) {
+                handler.syncBizType(BIZ_TYPE);
+                streamHandler.consume("test", LikedRecordStreamHandler.CLAIM_IDLE);
+                syncs[0]++;
+            }
+        });
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        writing.set(false);
+        syncer.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertTrue(syncs[0] > 1, "同步次数" + syncs[0]);
+
+        // 2.最后再同步一次，MQ和数据库与Redis一致
+        handler.syncBizType(BIZ_TYPE);
+        streamHandler.consume("test", LikedRecordStreamHandler.CLAIM_IDLE);
+        assertEquals(0, dirtySize());
+        assertEquals(0, streamSize());
+        assertEquals(BIZ_COUNT, published.size());
+        for (long bizId = 1; bizId <= BIZ_COUNT; bizId++) {
+            Set<String> likers = redisTemplate.opsForSet().members(LikedBizShards.bizKey(bizId));
+            assertNotNull(likers);
+            assertEquals(likers.size(), published.get(bizId), "业务" + bizId);
+            Set<String> saved = recordMapper.selectList(new QueryWrapper<LikedRecord>().eq("biz_id", bizId)).stream()
+                    .map(r -> r.getUserId().toString()).collect(Collectors.toSet());
+            assertEquals(likers, saved, "业务" + bizId);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedBatchRetried() {
+        for (long bizId = 1; bizId <= 3; bizId++) {
+            like(1L, bizId, true);
+        }
+        like(2L, 1L, true);
+        doThrow(new IllegalStateException("MQ不可用")).when(mqHelper).send(anyString(), anyString(), any());
+
+        // 1.发送失败，弹出的业务id放回脏集合
+        assertThrows(IllegalStateException.class, () -> handler.syncBizType(BIZ_TYPE));
+        assertEquals(3, dirtySize());
+
+        // 2.重试成功，一条消息包含整批的点赞总数
+        reset(mqHelper);
+        assertEquals(3, handler.syncBizType(BIZ_TYPE));
+        ArgumentCaptor<List<LikedTimesDTO>> captor = ArgumentCaptor.forClass(List.class);
+        verify(mqHelper, times(1)).send(anyString(), eq(BIZ_TYPE + ".times.changed"), captor.capture());
+        assertEquals(Set.of(LikedTimesDTO.of(1L, 2), LikedTimesDTO.of(2L, 1), LikedTimesDTO.of(3L, 1)),
+                new HashSet<>(captor.getValue()));
+        // 3.没有变化时不发送
+        reset(mqHelper);
+        assertEquals(0, handler.syncBizType(BIZ_TYPE));
+        verifyNoInteractions(mqHelper);
+    }
+
+    private long dirtySize() {
+        long size = 0;
+        for (int i = 0; i < LikedBizShards.PARTITION_COUNT; i++) {
+            size += redisTemplate.opsForSet().size(LikedBizShards.dirtyKey(BIZ_TYPE, i));
+        }
+        return size;
+    }
+
+    private long streamSize() {
+        long size = 0;
+        for (int i = 0; i < LikedBizShards.PARTITION_COUNT; i++) {
+            size += redisTemplate.opsForStream().size(LikedBizShards.streamKey(i));
+        }
+        return size;
+    }
+
+    private void like(long userId, long bizId, boolean liked) {
+        LikeRecordFormDTO dto = new LikeRecordFormDTO();
+        dto.setBizId(bizId);
+        dto.setBizType(BIZ_TYPE);
+        dto.setLiked(liked);
+        UserContext.setUser(userId);
+        try {
+            likedRecordService.addLikedRecord(dto);
+        } finally {
+            UserContext.removeUser();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.tianji.remark.service.impl;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.utils.UserContext;
+import com.tianji.remark.cache.LikedBizShards;
+import com.tianji.remark.constants.RedisConstants;
+import com.tianji.remark.domain.dto.LikeRecordFormDTO;
+import com.tianji.common.test.EmbeddedRedisSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.*;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class LikedRecordServiceRedisImplTest {
+
+    private static final String BIZ_TYPE = "QA";
+    private static final long USER_ID = 7L;
+    private static final String INDEX_KEY = RedisConstants.LIKES_USER_KEY_PREFIX + BIZ_TYPE + ":" + USER_ID;
+
+    private static StringRedisTemplate redisTemplate;
+
+    private LikedRecordServiceRedisImpl likedRecordService;
+
+    @BeforeAll
+    static void init() {
+        redisTemplate = EmbeddedRedisSupport.redisTemplate();
+    }
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedisSupport.flushAll();
+        likedRecordService = new LikedRecordServiceRedisImpl(mock(RabbitMqHelper.class), redisTemplate,
+                new LikedBizShards(redisTemplate));
+        UserContext.setUser(USER_ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserContext.removeUser();
+    }
+
+    @Test
+    void testBizCreateTime() {
+        long now = System.currentTimeMillis();
+        long createTime = LikedRecordServiceRedisImpl.bizCreateTime(IdWorker.getId());
+        assertTrue(Math.abs(createTime - now) < 1000, "创建时间" + createTime);
+        // 不是雪花id的业务按早期的业务处理
+        assertTrue(LikedRecordServiceRedisImpl.bizCreateTime(12345L) < now - 365L * 24 * 3600 * 1000);
+    }
+
+    /**
+     * 索引建立之前的点赞、非雪花id、随机的点赞和取消点赞，按索引查询与逐个查询点赞用户集合的结果一致
+     */
+    @Test
+    void testIndexMatchesLikedSets() {
+        Random random = new Random(1);
+        List<Long> bizIds = new ArrayList<>();
+        LongStream.rangeClosed(1, 50).forEach(bizIds::add);
+        for (int i = 0; i < 50; i++) {
+            bizIds.add(IdWorker.getId());
+        }
+        // 1.索引建立之前的点赞
+        for (Long bizId : bizIds) {
+            if (random.nextBoolean()) {
+                like(bizId, true);
+            }
+        }
+        redisTemplate.delete(INDEX_KEY);
+        assertEquals(likedRecordService.isBizLiked(bizIds), likedRecordService.isBizLiked(BIZ_TYPE, bizIds));
+
+        // 2.索引建立之后新创建的业务，随机点赞和取消点赞
+        for (int i = 0; i < 50; i++) {
+            bizIds.add(IdWorker.getId());
+        }
+        for (int i = 0; i < 500; i++) {
+            like(bizIds.get(random.nextInt(bizIds.size())), random.nextInt(3) > 0);
+        }
+        Set<Long> expected = likedRecordService.isBizLiked(bizIds);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, likedRecordService.isBizLiked(BIZ_TYPE, bizIds));
+        // 3.没有索引时查询点赞用户集合
+        assertEquals(expected, likedRecordService.isBizLiked("NOTE", bizIds));
+    }
+
+    @Test
+    void testIndexCapped() {
+        int count = LikedRecordServiceRedisImpl.USER_INDEX_CAP + 200;
+        List<Long> bizIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            bizIds.add(IdWorker.getId());
+        }
+        for (Long bizId : bizIds) {
+            like(bizId, true);
+        }
+        like(bizIds.get(count - 1), false);
+
+        // 1.只保留最近的点赞和floor
+        Long size = redisTemplate.opsForZSet().zCard(INDEX_KEY);
+        assertNotNull(size);
+        assertTrue(size <= LikedRecordServiceRedisImpl.USER_INDEX_CAP + 1, "索引大小" + size);
+        assertNull(redisTemplate.opsForZSet().score(INDEX_KEY, bizIds.get(0).toString()));
+        Double floor = redisTemplate.opsForZSet().score(INDEX_KEY, "floor");
+        assertNotNull(floor);
+        assertTrue(floor > LikedRecordServiceRedisImpl.bizCreateTime(bizIds.get(0)));
+        Long ttl = redisTemplate.getExpire(INDEX_KEY);
+        assertTrue(ttl != null && ttl > 0);
+
+        // 2.被淘汰的点赞查询点赞用户集合，结果不变
+        Set<Long> expected = new HashSet<>(bizIds.subList(0, count - 1));
+        assertEquals(expected, likedRecordService.isBizLiked(BIZ_TYPE, bizIds));
+        assertEquals(expected, likedRecordService.isBizLiked(bizIds));
+    }
+
+    /**
+     * 索引建立之后创建的业务，未命中索引就是没有点赞，不再查询点赞用户集合
+     */
+    @Test
+    void testIndexAuthoritativeForNewBiz() throws InterruptedException {
+        like(1L, true);
+        Thread.sleep(1100);
+        long bizId = IdWorker.getId();
+        // 绕过点赞接口直接写入点赞用户集合，按索引查询不会读到
+        redisTemplate.opsForSet().add(LikedBizShards.bizKey(bizId), String.valueOf(USER_ID));
+        assertEquals(Set.of(1L), likedRecordService.isBizLiked(BIZ_TYPE, List.of(1L, bizId)));
+        assertEquals(Set.of(1L, bizId), likedRecordService.isBizLiked(List.of(1L, bizId)));
+        // 没有类型时与原来的查询一致
+        assertEquals(Set.of(1L, bizId), likedRecordService.isBizLiked(null, List.of(1L, bizId)));
+        assertEquals(Set.of(), likedRecordService.isBizLiked(BIZ_TYPE, List.of()));
+    }
+
+    private void like(long bizId, boolean liked) {
+        LikeRecordFormDTO dto = new LikeRecordFormDTO();
+        dto.setBizId(bizId);
+        dto.setBizType(BIZ_TYPE);
+        dto.setLiked(liked);
+        likedRecordService.addLikedRecord(dto);
+    }
+}
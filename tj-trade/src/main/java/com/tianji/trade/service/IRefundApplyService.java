@@ -41,7 +41,15 @@ public interface IRefundApplyService extends IService<RefundApply> {
 
     void handleRefundResult(RefundResultDTO refundResult);
 
-    List<RefundApply> queryApplyToSend(int page, int size);
+    /**
+     * 按id游标查询当前分片内审批通过、待发送的退款申请
+     *
+     * @param lastId     上一页的最大id
+     * @param shardIndex 分片序号
+     * @param shardTotal 分片总数
+     * @param limit      每页数量
+     */
+    List<RefundApply> queryApplyToSend(long lastId, int shardIndex, int shardTotal, int limit);
 
     void sendRefundRequest(RefundApply refundApply);
 
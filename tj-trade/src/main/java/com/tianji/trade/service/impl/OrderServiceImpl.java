@@ -19,6 +19,7 @@ import com.tianji.common.exceptions.DbException;
 import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.common.autoconfigure.datasource.annotations.ReadOnlyRoute;
 import com.tianji.pay.sdk.dto.PayResultDTO;
 import com.tianji.trade.config.TradeProperties;
 import com.tianji.trade.constants.OrderStatus;
@@ -311,6 +312,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
     }
 
     @Override
+    @ReadOnlyRoute
     public PageDTO<OrderPageVO> queryMyOrderPage(OrderPageQuery pageQuery) {
         Long userId = UserContext.getUser();
         // 1.分页排序条件
@@ -458,14 +458,15 @@ public class RefundApplyServiceImpl extends ServiceImpl<RefundApplyMapper, Refun
     }
 
     @Override
-    public List<RefundApply> queryApplyToSend(int index, int size) {
-        Page<RefundApply> page = lambdaQuery()
+    public List<RefundApply> queryApplyToSend(long lastId, int shardIndex, int shardTotal, int limit) {
+        // 按id游标分页，只查询当前分片的数据
+        return lambdaQuery()
                 .eq(RefundApply::getStatus, AGREE.getValue())
-                .page(new Page<>(index, size));
-        if (page == null || CollUtils.isEmpty(page.getRecords())) {
-            return CollUtils.emptyList();
-        }
-        return page.getRecords();
+                .gt(RefundApply::getId, lastId)
+                .apply("MOD(id, {0}) = {1}", shardTotal, shardIndex)
+                .orderByAsc(RefundApply::getId)
+                .last("LIMIT " + limit)
+                .list();
     }
 
     @Override
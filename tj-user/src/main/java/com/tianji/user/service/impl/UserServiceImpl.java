@@ -6,6 +6,8 @@ import com.tianji.api.client.auth.AuthClient;
 import com.tianji.api.dto.auth.RoleDTO;
 import com.tianji.api.dto.user.LoginFormDTO;
 import com.tianji.api.dto.user.UserDTO;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.constants.MqConstants;
 import com.tianji.common.domain.dto.LoginUserDTO;
 import com.tianji.common.enums.UserType;
 import com.tianji.common.exceptions.BadRequestException;
@@ -14,6 +16,7 @@ import com.tianji.common.exceptions.UnauthorizedException;
 import com.tianji.common.utils.AssertUtils;
 import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.StringUtils;
+import com.tianji.common.utils.TransactionUtils;
 import com.tianji.common.utils.UserContext;
 import com.tianji.user.domain.dto.UserFormDTO;
 import com.tianji.user.domain.po.User;
@@ -52,6 +55,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     private AuthClient authClient;
     @Autowired
     private IUserDetailService detailService;
+    @Autowired
+    private RabbitMqHelper rabbitMqHelper;
 
     @Override
     public LoginUserDTO queryUserDetail(LoginFormDTO loginDTO, boolean isStaff) {
@@ -209,6 +214,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         UserDetail detail = BeanUtils.toBean(userDTO, UserDetail.class);
         detail.setType(null);
         detailService.updateById(detail);
+        // 3.事务提交后通知用户信息变更，其它服务据此更新冗余的用户名、头像
+        publishUserUpdated(detail.getId());
     }
 
     @Override
@@ -240,6 +247,17 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         detail.setRoleId(null);
         detail.setType(null);
         detailService.updateById(detail);
+        // 3.通知用户信息变更
+        publishUserUpdated(detail.getId());
+    }
+
+    private void publishUserUpdated(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        // 异步发送，发送失败不影响已保存的用户信息
+        TransactionUtils.afterCommit(() -> rabbitMqHelper.sendAsync(
+                MqConstants.Exchange.USER_EXCHANGE, MqConstants.Key.USER_UPDATE_KEY, userId));
     }
 
     public User loginByPw(LoginFormDTO loginDTO) {